@@ -15,6 +15,8 @@
  *******************************************************************************/
 package org.vanilladb.core.query.algebra;
 
+import java.util.Map;
+
 import org.vanilladb.core.sql.Constant;
 import org.vanilladb.core.sql.predicate.Predicate;
 import org.vanilladb.core.storage.record.RecordId;
@@ -85,6 +87,12 @@ public class SelectScan implements UpdateScan {
 		us.setVal(fldname, val);
 	}
 
+	@Override
+	public void setVals(Map<String, Constant> fldVals) {
+		UpdateScan us = (UpdateScan) s;
+		us.setVals(fldVals);
+	}
+
 	@Override
 	public void delete() {
 		UpdateScan us = (UpdateScan) s;
@@ -97,6 +105,12 @@ public class SelectScan implements UpdateScan {
 		us.insert();
 	}
 
+	@Override
+	public void insert(Map<String, Constant> fldVals) {
+		UpdateScan us = (UpdateScan) s;
+		us.insert(fldVals);
+	}
+
 	@Override
 	public RecordId getRecordId() {
 		UpdateScan us = (UpdateScan) s;
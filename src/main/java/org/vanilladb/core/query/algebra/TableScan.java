@@ -15,6 +15,8 @@
  *******************************************************************************/
 package org.vanilladb.core.query.algebra;
 
+import java.util.Map;
+
 import org.vanilladb.core.sql.Constant;
 import org.vanilladb.core.sql.Schema;
 import org.vanilladb.core.storage.metadata.TableInfo;
@@ -92,6 +94,11 @@ public class TableScan implements UpdateScan {
 		rf.setVal(fldName, val);
 	}
 
+	@Override
+	public void setVals(Map<String, Constant> fldVals) {
+		rf.setVals(fldVals);
+	}
+
 	@Override
 	public void delete() {
 		rf.delete();
@@ -102,6 +109,11 @@ public class TableScan implements UpdateScan {
 		rf.insert();
 	}
 
+	@Override
+	public void insert(Map<String, Constant> fldVals) {
+		rf.insert(fldVals);
+	}
+
 	@Override
 	public RecordId getRecordId() {
 		return rf.currentRecordId();
@@ -15,6 +15,8 @@
  *******************************************************************************/
 package org.vanilladb.core.query.algebra;
 
+import java.util.Map;
+
 import org.vanilladb.core.sql.Constant;
 import org.vanilladb.core.storage.record.RecordId;
 
@@ -32,11 +34,28 @@ public interface UpdateScan extends Scan {
 	 */
 	void setVal(String fldName, Constant val);
 
+	/**
+	 * Modifies the values of the specified fields of the current record at
+	 * once.
+	 * 
+	 * @param fldVals
+	 *            the map from field names to the new values
+	 */
+	void setVals(Map<String, Constant> fldVals);
+
 	/**
 	 * Inserts a new record somewhere in the scan.
 	 */
 	void insert();
 
+	/**
+	 * Inserts a new record with the specified values somewhere in the scan.
+	 * 
+	 * @param fldVals
+	 *            the map from field names to the values of the new record
+	 */
+	void insert(Map<String, Constant> fldVals);
+
 	/**
 	 * Deletes the current record from the scan.
 	 */
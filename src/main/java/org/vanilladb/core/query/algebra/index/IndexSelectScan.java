@@ -15,6 +15,8 @@
  *******************************************************************************/
 package org.vanilladb.core.query.algebra.index;
 
+import java.util.Map;
+
 import org.vanilladb.core.query.algebra.Scan;
 import org.vanilladb.core.query.algebra.TableScan;
 import org.vanilladb.core.query.algebra.UpdateScan;
@@ -113,6 +115,11 @@ public class IndexSelectScan implements UpdateScan {
 		ts.setVal(fldName, val);
 	}
 
+	@Override
+	public void setVals(Map<String, Constant> fldVals) {
+		ts.setVals(fldVals);
+	}
+
 	@Override
 	public void delete() {
 		ts.delete();
@@ -123,6 +130,11 @@ public class IndexSelectScan implements UpdateScan {
 		ts.insert();
 	}
 
+	@Override
+	public void insert(Map<String, Constant> fldVals) {
+		ts.insert(fldVals);
+	}
+
 	@Override
 	public RecordId getRecordId() {
 		return ts.getRecordId();
@@ -16,7 +16,9 @@
 package org.vanilladb.core.query.planner;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 
 import org.vanilladb.core.query.algebra.Plan;
 import org.vanilladb.core.query.algebra.SelectPlan;
@@ -67,8 +69,10 @@ public class BasicUpdatePlanner implements UpdatePlanner {
 		int count = 0;
 		while (us.next()) {
 			Collection<String> targetflds = data.targetFields();
+			Map<String, Constant> fldVals = new HashMap<String, Constant>();
 			for (String fld : targetflds)
-				us.setVal(fld, data.newValue(fld).evaluate(us));
+				fldVals.put(fld, data.newValue(fld).evaluate(us));
+			us.setVals(fldVals);
 			count++;
 		}
 		us.close();
@@ -80,10 +84,11 @@ public class BasicUpdatePlanner implements UpdatePlanner {
 	public int executeInsert(InsertData data, Transaction tx) {
 		Plan p = new TablePlan(data.tableName(), tx);
 		UpdateScan us = (UpdateScan) p.open();
-		us.insert();
+		Map<String, Constant> fldVals = new HashMap<String, Constant>();
 		Iterator<Constant> iter = data.vals().iterator();
 		for (String fldname : data.fields())
-			us.setVal(fldname, iter.next());
+			fldVals.put(fldname, iter.next());
+		us.insert(fldVals);
 
 		us.close();
 		VanillaDb.statMgr().countRecordUpdates(data.tableName(), 1);
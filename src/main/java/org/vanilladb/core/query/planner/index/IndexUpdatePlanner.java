@@ -65,10 +65,7 @@ public class IndexUpdatePlanner implements UpdatePlanner {
 
 		// Insert the record into the record file
 		UpdateScan s = (UpdateScan) p.open();
-		s.insert();
-		for (Map.Entry<String, Constant> fldValPair : fldValMap.entrySet()) {
-			s.setVal(fldValPair.getKey(), fldValPair.getValue());
-		}
+		s.insert(fldValMap);
 		RecordId rid = s.getRecordId();
 		s.close();
 		
@@ -195,8 +192,8 @@ public class IndexUpdatePlanner implements UpdatePlanner {
 				
 				oldValMap.put(fieldName, oldVal);
 				newValMap.put(fieldName, newVal);
-				s.setVal(fieldName, newVal);
 			}
+			s.setVals(newValMap);
 			
 			RecordId rid = s.getRecordId();
 			
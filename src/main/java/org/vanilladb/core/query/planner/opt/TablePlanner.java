@@ -140,6 +140,14 @@ class TablePlanner {
 		return new MultiBufferProductPlan(trunk, p, tx);
 	}
 
+	/**
+	 * Returns true if the transaction reads a snapshot. The indexes are not
+	 * versioned, so such a transaction scans the tables instead.
+	 */
+	private boolean readsSnapshot() {
+		return tx.bufferMgr().readsSnapshot();
+	}
+
 	/**
 	 * Identify and construct an index select plan based on the predicate and
 	 * indexes by examining the constants opposite to an indexed field in all
@@ -149,6 +157,8 @@ class TablePlanner {
 	 * that help the identification: e.g., "F < C", not "F - C < 0".
 	 */
 	private Plan makeIndexSelectPlan() {
+		if (readsSnapshot())
+			return null;
 		return IndexSelector.selectByBestMatchedIndex(tblName, tp, pred, tx);
 	}
 
@@ -161,6 +171,9 @@ class TablePlanner {
 	 * help the identification: e.g., "F1 = F2", not "F1 - F2 = 0".
 	 */
 	private Plan makeIndexJoinPlan(Plan trunk, Schema trunkSch) {
+		if (readsSnapshot())
+			return null;
+		
 		int matchedCount = 0;
 		IndexInfo bestIndex = null;
 		Map<String, String> bestJoinPairs = null; // <Outer Field -> Self Field>
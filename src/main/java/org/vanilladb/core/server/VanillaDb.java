@@ -31,8 +31,11 @@ import org.vanilladb.core.query.planner.opt.HeuristicQueryPlanner;
 import org.vanilladb.core.server.task.TaskMgr;
 import org.vanilladb.core.sql.storedprocedure.SampleStoredProcedureFactory;
 import org.vanilladb.core.sql.storedprocedure.StoredProcedureFactory;
+import org.vanilladb.core.storage.buffer.PageCleanerTask;
 import org.vanilladb.core.storage.file.FileMgr;
+import org.vanilladb.core.storage.log.LogFlushTask;
 import org.vanilladb.core.storage.log.LogMgr;
+import org.vanilladb.core.storage.log.LogWriterTask;
 import org.vanilladb.core.storage.metadata.CatalogMgr;
 import org.vanilladb.core.storage.metadata.statistics.StatMgr;
 import org.vanilladb.core.storage.tx.Transaction;
@@ -119,6 +122,18 @@ public class VanillaDb {
 		initTaskMgr();
 		initTxMgr();
 
+		// initializing group commit task
+		boolean doGroupCommit = CoreProperties.getLoader()
+				.getPropertyAsBoolean(VanillaDb.class.getName() + ".DO_GROUP_COMMIT", true);
+		if (doGroupCommit)
+			initGroupCommitTask();
+
+		// initializing log writing task
+		boolean doAsyncLogWriting = CoreProperties.getLoader()
+				.getPropertyAsBoolean(VanillaDb.class.getName() + ".DO_ASYNC_LOG_WRITING", true);
+		if (doAsyncLogWriting)
+			initLogWritingTask();
+
 		// the first transaction for initializing the system
 		Transaction initTx = txMgr.newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
 
@@ -155,6 +170,12 @@ public class VanillaDb {
 		if (doCheckpointing)
 			initCheckpointingTask();
 
+		// initializing page cleaning task
+		boolean doPageCleaning = CoreProperties.getLoader()
+				.getPropertyAsBoolean(VanillaDb.class.getName() + ".DO_PAGE_CLEANING", true);
+		if (doPageCleaning)
+			initPageCleaningTask();
+
 		// finish initialization
 		inited = true;
 	}
@@ -234,6 +255,27 @@ public class VanillaDb {
 		taskMgr.runTask(new CheckpointTask());
 	}
 
+	/**
+	 * Initialize a background task writing back dirty buffers.
+	 */
+	public static void initPageCleaningTask() {
+		taskMgr.runTask(new PageCleanerTask());
+	}
+
+	/**
+	 * Initialize a background task flushing the log for groups of commits.
+	 */
+	public static void initGroupCommitTask() {
+		taskMgr.runTask(new LogFlushTask(logMgr));
+	}
+
+	/**
+	 * Initialize a background task writing the full log pages.
+	 */
+	public static void initLogWritingTask() {
+		taskMgr.runTask(new LogWriterTask(logMgr));
+	}
+
 	public static FileMgr fileMgr() {
 		return fileMgr;
 	}
@@ -52,14 +52,19 @@ public class Buffer {
 	private BlockId blk = null;
 	private AtomicInteger pins = new AtomicInteger(0);
 	private AtomicBoolean isRecentlyPinned = new AtomicBoolean(false);
+	// Whether the buffer waits in the queue of the replacement policy,
+	// guarded by the swap lock
+	private boolean isQueued = false;
 	private boolean isNew = false;
 	private boolean isModified = false;
 	// TODO: We use (-1, -1) for the default value. Will this be a problem ?
 	private LogSeqNum lastLsn = LogSeqNum.DEFAULT_VALUE;
+	// The LSN of the first log record applied since the page was last written
+	private LogSeqNum recLsn = null;
 	
 	// Locks
 	private final ReadWriteLock contentLock = new ReentrantReadWriteLock();
-	private final Lock swapLock = new ReentrantLock();
+	private final ReentrantLock swapLock = new ReentrantLock();
 	private final Lock flushLock = new ReentrantLock();
 	
 	/**
@@ -133,6 +138,10 @@ public class Buffer {
 			
 			isModified = true;
 			
+			// An unlogged modification is covered by a log record newer
+			// than the current page LSN
+			if (recLsn == null)
+				recLsn = (lsn != null) ? lsn : lastLsn;
 			if (lsn != null && lsn.compareTo(lastLsn) > 0)
 				lastLsn = lsn;
 			
@@ -141,6 +150,14 @@ public class Buffer {
 				lastLsn.writeToPage(contents, LAST_LSN_OFFSET);				
 			}
 			
+			// Keep the overwritten bytes for the snapshots
+			if (VersionStore.isVersioned(blk) && BufferMgr.versionStore.records(txNum)
+					&& DATA_START_OFFSET + offset + Page.size(val) <= Page.BLOCK_SIZE) {
+				byte[] before = new byte[Page.size(val)];
+				contents.getBytes(DATA_START_OFFSET + offset, before);
+				BufferMgr.versionStore.recordChange(blk, txNum, offset, before);
+			}
+			
 			contents.setVal(DATA_START_OFFSET + offset, val);
 		} finally {
 			contentLock.writeLock().unlock();
@@ -164,6 +181,48 @@ public class Buffer {
 		}
 	}
 
+	/**
+	 * Copies the whole page of this buffer, including the LSN in front of the
+	 * data, into the specified array. The caller should lock the flushing
+	 * mechanism to get a page holding all the logged modifications.
+	 * 
+	 * @param dst
+	 *            the array of {@link Page#BLOCK_SIZE} bytes to be populated
+	 */
+	public void copyPage(byte[] dst) {
+		contentLock.readLock().lock();
+		try {
+			contents.getBytes(0, dst);
+		} finally {
+			contentLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Creates a private copy of this buffer holding the block as of the
+	 * specified snapshot. The copy is not managed by the buffer pool and must
+	 * be closed after use.
+	 * 
+	 * @param ts
+	 *            the timestamp of the snapshot
+	 * @return the copy of the buffer
+	 */
+	Buffer snapshot(long ts) {
+		Buffer copy = new Buffer();
+		byte[] page = new byte[Page.BLOCK_SIZE];
+		contentLock.readLock().lock();
+		try {
+			contents.getBytes(0, page);
+			BufferMgr.versionStore.rollBack(blk, page, DATA_START_OFFSET, ts);
+			copy.blk = blk;
+			copy.lastLsn = lastLsn;
+		} finally {
+			contentLock.readLock().unlock();
+		}
+		copy.contents.setBytes(0, page, page.length);
+		return copy;
+	}
+
 	/**
 	 * Returns a block ID refers to the disk block that the buffer is pinned to. <br><br>
 	 * 
@@ -205,6 +264,17 @@ public class Buffer {
 		return swapLock;
 	}
 
+	/**
+	 * Returns true if the calling thread holds the swap lock. Since the lock
+	 * is reentrant, a thread taking the locks of several buffers uses this to
+	 * skip the ones it already holds.
+	 * 
+	 * @return true if the calling thread holds the swap lock
+	 */
+	boolean isSwapLockHeldByCurrentThread() {
+		return swapLock.isHeldByCurrentThread();
+	}
+
 	protected void close() {
 		contentLock.writeLock().lock();
 		try {
@@ -228,6 +298,7 @@ public class Buffer {
 				contents.write(blk);
 				isModified = false;
 				isNew = false;
+				recLsn = null;
 			}
 		} finally {
 			flushLock.unlock();
@@ -273,6 +344,44 @@ public class Buffer {
 		return isRecentlyPinned.getAndSet(false);
 	}
 
+	/**
+	 * Returns true if the buffer is in the queue of replaceable buffers kept
+	 * by the replacement policy. The caller must hold the swap lock.
+	 * 
+	 * @return true if the buffer is queued
+	 */
+	boolean isQueued() {
+		return isQueued;
+	}
+
+	/**
+	 * Marks whether the buffer is in the queue of replaceable buffers kept by
+	 * the replacement policy. The caller must hold the swap lock.
+	 * 
+	 * @param queued
+	 *            true if the buffer has been queued
+	 */
+	void setQueued(boolean queued) {
+		isQueued = queued;
+	}
+
+	/**
+	 * Returns the LSN from which the log records have to be redone to bring
+	 * the page on disk up to date with this buffer.
+	 * 
+	 * @return the recovery LSN, or null if the buffer is not dirty
+	 */
+	LogSeqNum recoveryLsn() {
+		contentLock.readLock().lock();
+		try {
+			if (recLsn == null && isNew)
+				return lastLsn;
+			return recLsn;
+		} finally {
+			contentLock.readLock().unlock();
+		}
+	}
+
 	/**
 	 * Returns true if the buffer is dirty due to a modification.
 	 * 
@@ -287,6 +396,21 @@ public class Buffer {
 		}
 	}
 
+	/**
+	 * Returns true if the page has to be written back before the buffer can be
+	 * assigned to another block.
+	 * 
+	 * @return true if the page is new or modified since it was last written
+	 */
+	boolean isDirty() {
+		contentLock.readLock().lock();
+		try {
+			return isNew || isModified;
+		} finally {
+			contentLock.readLock().unlock();
+		}
+	}
+
 	/**
 	 * Reads the contents of the specified block into the buffer's page. If the
 	 * buffer was dirty, then the contents of the previous page are first
@@ -310,6 +434,75 @@ public class Buffer {
 		lastLsn = LogSeqNum.readFromPage(contents, LAST_LSN_OFFSET);
 	}
 
+	/**
+	 * Reads the contents of consecutive blocks into the specified buffers using
+	 * a single I/O request. The buffers must be clean and unpinned, and the
+	 * calling thread must hold their swap locks.
+	 * 
+	 * @param firstBlk
+	 *            the block ID of the first block
+	 * @param buffs
+	 *            the buffers, one for each block
+	 */
+	static void assignToBlocks(BlockId firstBlk, Buffer[] buffs) {
+		Page[] pages = new Page[buffs.length];
+		for (int i = 0; i < buffs.length; i++) {
+			Buffer buff = buffs[i];
+			if (buff.pins.get() > 0) {
+				throw new RuntimeException("The buffer is pinned by other transactions");
+			}
+			
+			buff.flush();
+			buff.blk = new BlockId(firstBlk.fileName(), firstBlk.number() + i);
+			pages[i] = buff.contents;
+		}
+		
+		Page.read(firstBlk, pages);
+		for (Buffer buff : buffs) {
+			buff.pins.set(0);
+			buff.lastLsn = LogSeqNum.readFromPage(buff.contents, LAST_LSN_OFFSET);
+		}
+	}
+
+	/**
+	 * Writes the pages of the specified buffers, which hold consecutive blocks,
+	 * using a single I/O request. The method ensures that the corresponding log
+	 * records have been written to disk prior to writing the pages. The
+	 * buffers must be unpinned and the calling thread must hold their swap
+	 * locks.
+	 * 
+	 * @param buffs
+	 *            the buffers ordered by their blocks
+	 */
+	static void flush(Buffer[] buffs) {
+		for (Buffer buff : buffs) {
+			buff.contentLock.writeLock().lock();
+			buff.flushLock.lock();
+		}
+		try {
+			Page[] pages = new Page[buffs.length];
+			LogSeqNum maxLsn = LogSeqNum.DEFAULT_VALUE;
+			for (int i = 0; i < buffs.length; i++) {
+				pages[i] = buffs[i].contents;
+				if (buffs[i].lastLsn.compareTo(maxLsn) > 0)
+					maxLsn = buffs[i].lastLsn;
+			}
+			
+			VanillaDb.logMgr().flush(maxLsn);
+			Page.write(buffs[0].blk, pages);
+			for (Buffer buff : buffs) {
+				buff.isModified = false;
+				buff.isNew = false;
+				buff.recLsn = null;
+			}
+		} finally {
+			for (int i = buffs.length - 1; i >= 0; i--) {
+				buffs[i].flushLock.unlock();
+				buffs[i].contentLock.writeLock().unlock();
+			}
+		}
+	}
+
 	/**
 	 * Initializes the buffer's page according to the specified formatter, and
 	 * appends the page to the specified file. If the buffer was dirty, then the
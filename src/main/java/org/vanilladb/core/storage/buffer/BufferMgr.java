@@ -21,15 +21,20 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.log.LogSeqNum;
 import org.vanilladb.core.storage.tx.Transaction;
 import org.vanilladb.core.storage.tx.TransactionLifecycleListener;
 import org.vanilladb.core.util.CoreProperties;
+import org.vanilladb.core.util.LatencyHistogram;
 
 /**
  * The publicly-accessible buffer manager. A buffer manager wraps a
@@ -37,9 +42,13 @@ import org.vanilladb.core.util.CoreProperties;
  * difference is that the methods {@link #pin(BlockId)} and
  * {@link #pinNew(String, PageFormatter)} will never return false and null
  * respectively. If no buffers are currently available, then the calling thread
- * will be placed on a waiting list. The waiting threads are removed from the
- * list when a buffer becomes available. If a thread has been waiting for a
- * buffer for an excessive amount of time (currently, 10 seconds) then repins
+ * will be placed on a FIFO waiting list and parked. Only the first thread on
+ * the list is woken up when a buffer becomes available, and it wakes up the
+ * next one after it leaves the list. While the list is not empty, a newly
+ * arriving thread does not take a free buffer but joins the end of the list;
+ * it only shares a buffer that is already pinned. If a thread has been
+ * waiting for a buffer for an excessive amount of time (currently, 10
+ * seconds) then repins
  * all currently holding blocks by the calling transaction. Buffer manager
  * implements {@link TransactionLifecycleListener} for the purpose of unpinning buffers
  * when transaction commit/rollback/recovery.
@@ -55,7 +64,6 @@ public class BufferMgr implements TransactionLifecycleListener {
 	protected static final int BUFFER_POOL_SIZE;
 	private static final long MAX_TIME;
 	private static final long EPSILON;
-	private static final AtomicBoolean hasWaitingTx = new AtomicBoolean();
 
 	static {
 		MAX_TIME = CoreProperties.getLoader().getPropertyAsLong(BufferMgr.class.getName() + ".MAX_TIME", 10000);
@@ -67,33 +75,79 @@ public class BufferMgr implements TransactionLifecycleListener {
 	class PinningBuffer {
 		Buffer buffer;
 		int pinCount = 1;
+		// true if the buffer is a private copy as of the snapshot
+		boolean isSnapshot;
 
 		PinningBuffer(Buffer buffer) {
 			this.buffer = buffer;
 		}
 	}
 
+	private static final long NO_SNAPSHOT = -1;
+
 	protected static BufferPoolMgr bufferPool = new BufferPoolMgr(BUFFER_POOL_SIZE);
-	protected static List<Thread> waitingThreads = new LinkedList<Thread>();
+	protected static Queue<Thread> waitingThreads = new ConcurrentLinkedQueue<Thread>();
+	protected static VersionStore versionStore = new VersionStore();
 	
 	// Record the buffers that is being pinned by the transaction
 	private Map<BlockId, PinningBuffer> pinningBuffers = new HashMap<BlockId, PinningBuffer>();
 	// Record all the buffers that the transaction ever pins in order to flush them later
 	private Set<Buffer> buffersToFlush = new HashSet<Buffer>();
+	// The time the transaction spent waiting for available buffers
+	private LatencyHistogram waitTimes = new LatencyHistogram();
 	private long txNum;
+	// The timestamp of the snapshot read by the transaction
+	private long snapshotTs = NO_SNAPSHOT;
 	
 	public BufferMgr(long txNum) {
 		this.txNum = txNum;
 	}
 
+	/**
+	 * Creates a buffer manager for a transaction which reads the record files
+	 * as of a snapshot taken now. The blocks of record files are pinned as
+	 * private copies reconstructed by the {@link VersionStore}.
+	 * 
+	 * @param txNum
+	 *            the number of the transaction
+	 * @param readsSnapshot
+	 *            whether the transaction reads a snapshot
+	 */
+	public BufferMgr(long txNum, boolean readsSnapshot) {
+		this.txNum = txNum;
+		if (readsSnapshot)
+			snapshotTs = versionStore.takeSnapshot();
+	}
+
+	/**
+	 * Returns true if the transaction reads the record files as of a snapshot.
+	 * 
+	 * @return true if the transaction reads a snapshot
+	 */
+	public boolean readsSnapshot() {
+		return snapshotTs != NO_SNAPSHOT;
+	}
+
+	/**
+	 * Returns the version store that keeps the versions of the blocks read by
+	 * the snapshots.
+	 * 
+	 * @return the version store
+	 */
+	public static VersionStore versionStore() {
+		return versionStore;
+	}
+
 	@Override
 	public void onTxCommit(Transaction tx) {
 		unpinAll(tx);
+		releaseSnapshot();
 	}
 
 	@Override
 	public void onTxRollback(Transaction tx) {
 		unpinAll(tx);
+		releaseSnapshot();
 	}
 
 	@Override
@@ -128,26 +182,33 @@ public class BufferMgr implements TransactionLifecycleListener {
 			long timestamp = System.currentTimeMillis();
 			boolean waitOnce = false;
 
-			// Try to pin a buffer or the pinned buffer for the given BlockId
-			buff = bufferPool.pin(blk);
+			// Try to pin a buffer or the pinned buffer for the given BlockId.
+			// The buffers freed while others are waiting belong to the
+			// waiters, so only a buffer in use can be shared then.
+			if (waitingThreads.isEmpty())
+				buff = bufferPool.pin(blk);
+			else
+				buff = bufferPool.pinIfInUse(blk);
 
 			// If there is no such buffer or no available buffer,
 			// wait for it
 			if (buff == null) {
 				waitOnce = true;
-				synchronized (bufferPool) {
-					hasWaitingTx.set(true);
-					waitingThreads.add(Thread.currentThread());
-
+				long waitStart = System.nanoTime();
+				waitingThreads.add(Thread.currentThread());
+				try {
 					while (buff == null && !waitingTooLong(timestamp)) {
-						bufferPool.wait(MAX_TIME);
-						if (waitingThreads.get(0).equals(Thread.currentThread()))
+						// Only the first waiter tries, so that buffers are
+						// handed to the waiters in FIFO order
+						if (waitingThreads.peek() == Thread.currentThread())
 							buff = bufferPool.pin(blk);
+						if (buff == null)
+							park(timestamp);
 					}
-
+				} finally {
 					waitingThreads.remove(Thread.currentThread());
-					hasWaitingTx.set(!waitingThreads.isEmpty());
 				}
+				waitTimes.record((System.nanoTime() - waitStart) / 1000);
 			}
 
 			// If it still has no buffer after a long wait,
@@ -155,18 +216,24 @@ public class BufferMgr implements TransactionLifecycleListener {
 			if (buff == null) {
 				repin();
 				buff = pin(blk);
+			} else if (snapshotTs != NO_SNAPSHOT && VersionStore.isVersioned(blk)) {
+				// Read a private copy of the block as of the snapshot
+				Buffer copy = buff.snapshot(snapshotTs);
+				bufferPool.unpin(buff);
+				notifyNextWaiter();
+				PinningBuffer pinnedCopy = new PinningBuffer(copy);
+				pinnedCopy.isSnapshot = true;
+				pinningBuffers.put(blk, pinnedCopy);
+				buff = copy;
 			} else {
 				pinningBuffers.put(buff.block(), new PinningBuffer(buff));
 				buffersToFlush.add(buff);
 			}
 
 			// Optimization: A tx, which have waited once to pin a buffer,
-			// is responsible for notifying other waiting txs.
-			if (waitOnce) {
-				synchronized (bufferPool) {
-					bufferPool.notifyAll();
-				}
-			}
+			// is responsible for notifying the next waiting tx.
+			if (waitOnce)
+				notifyNextWaiter();
 
 			return buff;
 		} catch (InterruptedException e) {
@@ -193,24 +260,28 @@ public class BufferMgr implements TransactionLifecycleListener {
 			long timestamp = System.currentTimeMillis();
 			boolean waitOnce = false;
 
-			// Try to pin a buffer or the pinned buffer for the given BlockId
-			buff = bufferPool.pinNew(fileName, fmtr);
+			// Try to pin a new buffer unless others are waiting for one
+			buff = null;
+			if (waitingThreads.isEmpty())
+				buff = bufferPool.pinNew(fileName, fmtr);
 
 			// If there is no such buffer or no available buffer,
 			// wait for it
 			if (buff == null) {
 				waitOnce = true;
-				synchronized (bufferPool) {
-					waitingThreads.add(Thread.currentThread());
-
+				long waitStart = System.nanoTime();
+				waitingThreads.add(Thread.currentThread());
+				try {
 					while (buff == null && !waitingTooLong(timestamp)) {
-						bufferPool.wait(MAX_TIME);
-						if (waitingThreads.get(0).equals(Thread.currentThread()))
+						if (waitingThreads.peek() == Thread.currentThread())
 							buff = bufferPool.pinNew(fileName, fmtr);
+						if (buff == null)
+							park(timestamp);
 					}
-
+				} finally {
 					waitingThreads.remove(Thread.currentThread());
 				}
+				waitTimes.record((System.nanoTime() - waitStart) / 1000);
 			}
 
 			// If it still has no buffer after a long wait,
@@ -224,12 +295,9 @@ public class BufferMgr implements TransactionLifecycleListener {
 			}
 
 			// Optimization: A tx, which has waited once to pin a buffer,
-			// is responsible for notifying other waiting txs.
-			if (waitOnce) {
-				synchronized (bufferPool) {
-					bufferPool.notifyAll();
-				}
-			}
+			// is responsible for notifying the next waiting tx.
+			if (waitOnce)
+				notifyNextWaiter();
 
 			return buff;
 		} catch (InterruptedException e) {
@@ -240,7 +308,7 @@ public class BufferMgr implements TransactionLifecycleListener {
 
 	/**
 	 * Unpins the specified buffer. If the buffer's pin count becomes 0, then
-	 * the threads on the wait list are notified.
+	 * the first thread on the wait list is notified.
 	 * 
 	 * @param buff
 	 *            the buffer to be unpinned
@@ -253,15 +321,12 @@ public class BufferMgr implements TransactionLifecycleListener {
 			pinnedBuff.pinCount--;
 			
 			if (pinnedBuff.pinCount == 0) {
-				bufferPool.unpin(buff);
 				pinningBuffers.remove(blk);
-				
-				// Optimization: If there are no txs waiting for pinning buffers,
-				// skip notifying.
-				if (hasWaitingTx.get()) {
-					synchronized (bufferPool) {
-						bufferPool.notifyAll();
-					}
+				if (pinnedBuff.isSnapshot) {
+					buff.close();
+				} else {
+					bufferPool.unpin(buff);
+					notifyNextWaiter();
 				}
 			}
 		}
@@ -274,6 +339,28 @@ public class BufferMgr implements TransactionLifecycleListener {
 		bufferPool.flushAll();
 	}
 
+	/**
+	 * Returns the dirty page table of the buffer pool. See
+	 * {@link BufferPoolMgr#dirtyPageTable()}.
+	 * 
+	 * @return the dirty pages and the LSNs of their first logged modifications
+	 */
+	public Map<BlockId, LogSeqNum> dirtyPageTable() {
+		return bufferPool.dirtyPageTable();
+	}
+
+	/**
+	 * Writes back the buffers still holding the dirty blocks recorded in the
+	 * specified dirty page table.
+	 * 
+	 * @param dirtyPages a dirty page table returned by
+	 *                   {@link #dirtyPageTable()}
+	 * @return the number of buffers written
+	 */
+	public int flushDirtyPages(Map<BlockId, LogSeqNum> dirtyPages) {
+		return bufferPool.flushDirtyPages(dirtyPages);
+	}
+
 	/**
 	 * Flushes the dirty buffers modified by the host transaction.
 	 */
@@ -292,16 +379,35 @@ public class BufferMgr implements TransactionLifecycleListener {
 		return bufferPool.available();
 	}
 
+	/**
+	 * Returns the histogram of the time that the host transaction has spent
+	 * waiting for available buffers.
+	 * 
+	 * @return the histogram of waiting time
+	 */
+	public LatencyHistogram waitTimeHistogram() {
+		return waitTimes;
+	}
+
 	private void unpinAll(Transaction tx) {
 		// Copy the set of pinned buffers to avoid ConcurrentModificationException
 		Set<PinningBuffer> pinnedBuffs = new HashSet<PinningBuffer>(pinningBuffers.values());
 		if (pinnedBuffs != null) {
-			for (PinningBuffer pinnedBuff : pinnedBuffs)
-				bufferPool.unpin(pinnedBuff.buffer);
+			for (PinningBuffer pinnedBuff : pinnedBuffs) {
+				if (pinnedBuff.isSnapshot)
+					pinnedBuff.buffer.close();
+				else
+					bufferPool.unpin(pinnedBuff.buffer);
+			}
 		}
 
-		synchronized (bufferPool) {
-			bufferPool.notifyAll();
+		notifyNextWaiter();
+	}
+
+	private void releaseSnapshot() {
+		if (snapshotTs != NO_SNAPSHOT) {
+			versionStore.releaseSnapshot(snapshotTs);
+			snapshotTs = NO_SNAPSHOT;
 		}
 	}
 
@@ -330,10 +436,17 @@ public class BufferMgr implements TransactionLifecycleListener {
 			for (Buffer buf : buffersToBeUnpinned)
 				unpin(buf);
 
-			// Wait other threads pinning blocks
-			synchronized (bufferPool) {
-				bufferPool.wait(MAX_TIME);
+			// Wait other threads pinning blocks by queuing behind them
+			long timestamp = System.currentTimeMillis();
+			waitingThreads.add(Thread.currentThread());
+			try {
+				notifyNextWaiter();
+				while (waitingThreads.peek() != Thread.currentThread() && !waitingTooLong(timestamp))
+					park(timestamp);
+			} finally {
+				waitingThreads.remove(Thread.currentThread());
 			}
+			notifyNextWaiter();
 
 			// Re-pin all blocks
 			for (BlockId blk : blksToBeRepinned)
@@ -346,4 +459,25 @@ public class BufferMgr implements TransactionLifecycleListener {
 	private boolean waitingTooLong(long startTime) {
 		return System.currentTimeMillis() - startTime + EPSILON > MAX_TIME;
 	}
+
+	/**
+	 * Parks the calling thread until it is notified or it has waited for too
+	 * long since the specified time.
+	 */
+	private void park(long startTime) throws InterruptedException {
+		long remaining = MAX_TIME - (System.currentTimeMillis() - startTime);
+		if (remaining > 0)
+			LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(remaining));
+		if (Thread.interrupted())
+			throw new InterruptedException();
+	}
+
+	/**
+	 * Wakes up the first thread on the wait list, if any.
+	 */
+	private static void notifyNextWaiter() {
+		Thread next = waitingThreads.peek();
+		if (next != null)
+			LockSupport.unpark(next);
+	}
 }
@@ -15,7 +15,10 @@
  *******************************************************************************/
 package org.vanilladb.core.storage.buffer;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
@@ -23,14 +26,25 @@ import java.util.concurrent.locks.ReentrantLock;
 import org.vanilladb.core.server.VanillaDb;
 import org.vanilladb.core.storage.file.BlockId;
 import org.vanilladb.core.storage.file.FileMgr;
+import org.vanilladb.core.storage.log.LogSeqNum;
+import org.vanilladb.core.util.CoreProperties;
 
 /**
  * Manages the pinning and unpinning of buffers to blocks.
  */
 class BufferPoolMgr {
+	private static final Class<?> REPLACEMENT_POLICY_CLS;
+
+	static {
+		REPLACEMENT_POLICY_CLS = CoreProperties.getLoader().getPropertyAsClass(
+				BufferPoolMgr.class.getName() + ".REPLACEMENT_POLICY", ClockReplacementPolicy.class,
+				ReplacementPolicy.class);
+	}
+
 	private Buffer[] bufferPool;
 	private Map<BlockId, Buffer> blockMap;
-	private volatile int lastReplacedBuff;
+	private ReplacementPolicy replacementPolicy;
+	private SequentialPrefetcher prefetcher;
 	private AtomicInteger numAvailable;
 	
 	// Optimization: Lock striping
@@ -50,12 +64,25 @@ class BufferPoolMgr {
 	 * @param numBuffs the number of buffer slots to allocate. Must be at least 2.
 	 */
 	BufferPoolMgr(int numBuffs) {
+		this(numBuffs, newReplacementPolicy());
+	}
+
+	/**
+	 * Creates a buffer manager having the specified number of buffer slots and
+	 * using the specified policy to choose the buffers to be replaced.
+	 * 
+	 * @param numBuffs the number of buffer slots to allocate. Must be at least 2.
+	 * @param policy   the replacement policy
+	 */
+	BufferPoolMgr(int numBuffs, ReplacementPolicy policy) {
 		bufferPool = new Buffer[numBuffs];
 		blockMap = new ConcurrentHashMap<BlockId, Buffer>(numBuffs);
 		numAvailable = new AtomicInteger(numBuffs);
-		lastReplacedBuff = 0;
 		for (int i = 0; i < numBuffs; i++)
 			bufferPool[i] = new Buffer();
+		replacementPolicy = policy;
+		replacementPolicy.init(bufferPool);
+		prefetcher = new SequentialPrefetcher(this);
 
 		for (int i = 0; i < stripSize; ++i) {
 			fileLocks[i] = new ReentrantLock();
@@ -64,6 +91,14 @@ class BufferPoolMgr {
 		}
 	}
 
+	private static ReplacementPolicy newReplacementPolicy() {
+		try {
+			return (ReplacementPolicy) REPLACEMENT_POLICY_CLS.getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new RuntimeException("cannot create the replacement policy " + REPLACEMENT_POLICY_CLS, e);
+		}
+	}
+
 	// Optimization: Lock striping
 	private ReentrantLock prepareFileLock(Object o) {
 		int code = o.hashCode() % fileLocks.length;
@@ -82,6 +117,13 @@ class BufferPoolMgr {
 		return prepareReentrantLatch(dataBlockLatches, o);
 	}
 
+	private ReentrantLock prepareBlockLatch(BlockId blk) {
+		if (blk.fileName().endsWith(".idx"))
+			return prepareIndexBlockLatch(blk);
+		else
+			return prepareDataBlockLatch(blk);
+	}
+
 	private ReentrantLock prepareReentrantLatch(ReentrantLock[] latches, Object o) {
 		int code = o.hashCode() % latches.length;
 		if (code < 0) {
@@ -105,6 +147,156 @@ class BufferPoolMgr {
 		}
 	}
 
+	/**
+	 * Returns the dirty page table of the pool, which maps each dirty block of
+	 * the permanent files to the LSN from which the log has to be redone to
+	 * bring the block on disk up to date. The pinned blocks are included with
+	 * their page LSNs, since a modification may have been logged but not yet
+	 * applied. The table is built without blocking the transactions using the
+	 * buffers.
+	 * 
+	 * @return the dirty pages and their recovery LSNs
+	 */
+	Map<BlockId, LogSeqNum> dirtyPageTable() {
+		Map<BlockId, LogSeqNum> dpt = new TreeMap<BlockId, LogSeqNum>();
+		for (Buffer buff : bufferPool) {
+			// The swap lock keeps the block and its recovery LSN consistent
+			buff.getSwapLock().lock();
+			try {
+				BlockId blk = buff.block();
+				if (blk == null || blk.fileName().startsWith(FileMgr.TMP_FILE_NAME_PREFIX))
+					continue;
+				LogSeqNum recLsn = buff.recoveryLsn();
+				// A pinned buffer may be about to apply a logged modification
+				if (recLsn == null && buff.isPinned())
+					recLsn = buff.lastLsn();
+				if (recLsn != null)
+					dpt.put(blk, recLsn);
+			} finally {
+				buff.getSwapLock().unlock();
+			}
+		}
+		return dpt;
+	}
+
+	/**
+	 * Writes back the buffers which still hold the blocks in the specified
+	 * dirty page table and are still dirty. A block which has been written, or
+	 * swapped out, since the table was taken is skipped. Each buffer is locked
+	 * only while it is written, so the transactions keep running.
+	 * 
+	 * @param dirtyPages the dirty page table returned by
+	 *                   {@link #dirtyPageTable()}
+	 * @return the number of buffers written
+	 */
+	int flushDirtyPages(Map<BlockId, LogSeqNum> dirtyPages) {
+		int count = 0;
+		for (Buffer buff : bufferPool) {
+			buff.getSwapLock().lock();
+			try {
+				BlockId blk = buff.block();
+				if (blk != null && dirtyPages.containsKey(blk) && buff.isDirty()) {
+					buff.flush();
+					count++;
+				}
+			} finally {
+				buff.getSwapLock().unlock();
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Writes back a batch of the dirty buffers that no one is pinning, so that
+	 * the buffers chosen for replacement are likely to be clean. Nothing is
+	 * written if the clean and unpinned buffers already make up the target
+	 * fraction of the pool. The log records of the whole batch are flushed at
+	 * once before any page is written, and the pages are written in the order
+	 * of their block ids, with the consecutive blocks written in one request.
+	 * 
+	 * @param targetCleanRatio the fraction of the pool that should be clean and
+	 *                         unpinned
+	 * @param maxBatchSize     the maximum number of buffers to write
+	 * @return the number of buffers written
+	 */
+	int cleanBuffers(double targetCleanRatio, int maxBatchSize) {
+		// Collect the unpinned dirty buffers ordered by their blocks
+		TreeMap<BlockId, Buffer> dirtyBuffs = new TreeMap<BlockId, Buffer>();
+		int numClean = 0;
+		for (Buffer buff : bufferPool) {
+			BlockId blk = buff.block();
+			if (blk == null || buff.isPinned())
+				continue;
+			if (buff.isDirty())
+				dirtyBuffs.put(blk, buff);
+			else
+				numClean++;
+		}
+
+		int numToClean = Math.min(maxBatchSize,
+				(int) Math.ceil(bufferPool.length * targetCleanRatio) - numClean);
+		if (numToClean <= 0 || dirtyBuffs.isEmpty())
+			return 0;
+
+		List<Map.Entry<BlockId, Buffer>> batch = new ArrayList<Map.Entry<BlockId, Buffer>>(numToClean);
+		LogSeqNum maxLsn = LogSeqNum.DEFAULT_VALUE;
+		for (Map.Entry<BlockId, Buffer> entry : dirtyBuffs.entrySet()) {
+			if (batch.size() == numToClean)
+				break;
+			batch.add(entry);
+			LogSeqNum lsn = entry.getValue().lastLsn();
+			if (lsn.compareTo(maxLsn) > 0)
+				maxLsn = lsn;
+		}
+
+		// Write ahead the log records of the batch with one log flush
+		VanillaDb.logMgr().flush(maxLsn);
+
+		int numWritten = 0;
+		List<Buffer> run = new ArrayList<Buffer>();
+		BlockId lastBlk = null;
+		for (Map.Entry<BlockId, Buffer> entry : batch) {
+			BlockId blk = entry.getKey();
+			Buffer buff = entry.getValue();
+			if (!run.isEmpty() && !isNextBlock(lastBlk, blk))
+				numWritten += flushRun(run);
+
+			// Skip the buffers being swapped or pinned by transactions
+			if (buff.getSwapLock().tryLock()) {
+				if (!buff.isPinned() && blk.equals(buff.block())) {
+					run.add(buff);
+					lastBlk = blk;
+					continue;
+				}
+				buff.getSwapLock().unlock();
+			}
+			numWritten += flushRun(run);
+		}
+		numWritten += flushRun(run);
+		return numWritten;
+	}
+
+	/**
+	 * Writes the buffers holding consecutive blocks and releases their swap
+	 * locks.
+	 */
+	private int flushRun(List<Buffer> run) {
+		if (run.isEmpty())
+			return 0;
+		try {
+			Buffer.flush(run.toArray(new Buffer[run.size()]));
+			return run.size();
+		} finally {
+			for (Buffer buff : run)
+				buff.getSwapLock().unlock();
+			run.clear();
+		}
+	}
+
+	private static boolean isNextBlock(BlockId blk, BlockId nextBlk) {
+		return blk.fileName().equals(nextBlk.fileName()) && blk.number() + 1 == nextBlk.number();
+	}
+
 	/**
 	 * Pins a buffer to the specified block. If there is already a buffer assigned
 	 * to that block then that buffer is used; otherwise, an unpinned buffer from
@@ -114,16 +306,11 @@ class BufferPoolMgr {
 	 * @return the pinned buffer
 	 */
 	Buffer pin(BlockId blk) {
+		prefetcher.onPin(blk);
+
 		// The blockLatch prevents race condition.
 		// Only one tx can trigger the swapping action for the same block.
-		ReentrantLock blockLatch;
-
-		String fileName = blk.fileName();
-		if (fileName.endsWith(".idx"))
-			blockLatch = prepareIndexBlockLatch(blk);
-		else
-			blockLatch = prepareDataBlockLatch(blk);
-
+		ReentrantLock blockLatch = prepareBlockLatch(blk);
 		blockLatch.lock();
 
 		try {
@@ -134,40 +321,29 @@ class BufferPoolMgr {
 			if (buff == null) {
 
 				// Choose Unpinned Buffer
-				int lastReplacedBuff = this.lastReplacedBuff;
-				int currBlk = (lastReplacedBuff + 1) % bufferPool.length;
-				// Note: this check will fail if there is only one buffer
-				while (currBlk != lastReplacedBuff) {
-					buff = bufferPool[currBlk];
-
-					// Get the lock of buffer if it is free
-					if (buff.getSwapLock().tryLock()) {
-						try {
-							// Check if there is no one use it
-							if (!buff.isPinned() && !buff.checkRecentlyPinnedAndReset()) {
-								this.lastReplacedBuff = currBlk;
-
-								// Swap
-								BlockId oldBlk = buff.block();
-								if (oldBlk != null)
-									blockMap.remove(oldBlk);
-								buff.assignToBlock(blk);
-								blockMap.put(blk, buff);
-								if (!buff.isPinned())
-									numAvailable.decrementAndGet();
-
-								// Pin this buffer
-								buff.pin();
-								return buff;
-							}
-						} finally {
-							// Release the lock of buffer
-							buff.getSwapLock().unlock();
-						}
-					}
-					currBlk = (currBlk + 1) % bufferPool.length;
+				buff = chooseUnpinnedBuffer();
+				if (buff == null)
+					return null;
+
+				// The buffer is handed over with its lock held
+				try {
+					// Swap
+					BlockId oldBlk = buff.block();
+					if (oldBlk != null)
+						blockMap.remove(oldBlk);
+					buff.assignToBlock(blk);
+					blockMap.put(blk, buff);
+					replacementPolicy.onReplace(buff, oldBlk);
+					if (!buff.isPinned())
+						numAvailable.decrementAndGet();
+
+					// Pin this buffer
+					buff.pin();
+					return buff;
+				} finally {
+					// Release the lock of buffer
+					buff.getSwapLock().unlock();
 				}
-				return null;
 
 			// If it exists
 			} else {
@@ -186,6 +362,7 @@ class BufferPoolMgr {
 						if (!buff.isPinned())
 							numAvailable.decrementAndGet();
 						buff.pin();
+						replacementPolicy.onHit(buff);
 						return buff;
 					}
 					return pin(blk);
@@ -204,6 +381,131 @@ class BufferPoolMgr {
 		}
 	}
 
+	/**
+	 * Pins the buffer assigned to the specified block only if someone else is
+	 * pinning it. Such a pin does not take a buffer away from the threads
+	 * waiting for one.
+	 * 
+	 * @param blk
+	 *            a block ID
+	 * @return the pinned buffer, or null if the block is not in a pinned
+	 *         buffer
+	 */
+	Buffer pinIfInUse(BlockId blk) {
+		Buffer buff = findExistingBuffer(blk);
+		if (buff == null)
+			return null;
+
+		buff.getSwapLock().lock();
+		try {
+			// Check its block id before pinning since it might be swapped
+			if (!buff.isPinned() || !buff.block().equals(blk))
+				return null;
+			buff.pin();
+			replacementPolicy.onHit(buff);
+		} finally {
+			buff.getSwapLock().unlock();
+		}
+		prefetcher.onPin(blk);
+		return buff;
+	}
+
+	/**
+	 * Reads the specified range of blocks into unpinned buffers without pinning
+	 * them. The blocks already in the pool are skipped, and each run of missing
+	 * blocks is read with one request. Prefetching stops at the end of the file,
+	 * or when the buffer chosen for replacement is dirty, since a page should
+	 * not be written for a block that may never be pinned.
+	 * 
+	 * @param fileName    the name of the file
+	 * @param startBlkNum the first block to read
+	 * @param endBlkNum   the last block to read
+	 */
+	void prefetch(String fileName, long startBlkNum, long endBlkNum) {
+		// The blocks being appended are not on the disk yet
+		long fileSize;
+		ReentrantLock fileLock = prepareFileLock(fileName);
+		fileLock.lock();
+		try {
+			fileSize = VanillaDb.fileMgr().size(fileName);
+		} finally {
+			fileLock.unlock();
+		}
+
+		endBlkNum = Math.min(endBlkNum, fileSize - 1);
+		long blkNum = startBlkNum;
+		while (blkNum <= endBlkNum) {
+			int numHandled = prefetchRun(fileName, blkNum, endBlkNum);
+			if (numHandled < 0)
+				return;
+			blkNum += numHandled;
+		}
+	}
+
+	/**
+	 * Reads the run of missing blocks starting from the specified block. Since
+	 * the latches and the buffers of a run are held together, they are only
+	 * acquired if no one else is holding them.
+	 * 
+	 * @return the number of blocks read or skipped, or -1 if there is no clean
+	 *         buffer to use
+	 */
+	private int prefetchRun(String fileName, long startBlkNum, long endBlkNum) {
+		List<ReentrantLock> latches = new ArrayList<ReentrantLock>();
+		List<Buffer> buffs = new ArrayList<Buffer>();
+		boolean outOfBuffers = false;
+		try {
+			for (long blkNum = startBlkNum; blkNum <= endBlkNum; blkNum++) {
+				BlockId blk = new BlockId(fileName, blkNum);
+				ReentrantLock blockLatch = prepareBlockLatch(blk);
+				if (!blockLatch.tryLock())
+					break;
+				latches.add(blockLatch);
+				if (findExistingBuffer(blk) != null)
+					break;
+
+				// The buffer is handed over with its lock held
+				Buffer buff = chooseUnpinnedBuffer();
+				if (buff != null && buff.isDirty()) {
+					replacementPolicy.onUnpinned(buff);
+					buff.getSwapLock().unlock();
+					buff = null;
+				}
+				if (buff == null) {
+					outOfBuffers = true;
+					break;
+				}
+				buffs.add(buff);
+			}
+
+			if (!buffs.isEmpty()) {
+				// Swap, but leave the buffers unpinned
+				Buffer[] run = buffs.toArray(new Buffer[buffs.size()]);
+				BlockId[] oldBlks = new BlockId[run.length];
+				for (int i = 0; i < run.length; i++) {
+					oldBlks[i] = run[i].block();
+					if (oldBlks[i] != null)
+						blockMap.remove(oldBlks[i]);
+				}
+				Buffer.assignToBlocks(new BlockId(fileName, startBlkNum), run);
+				for (int i = 0; i < run.length; i++) {
+					blockMap.put(run[i].block(), run[i]);
+					replacementPolicy.onPrefetch(run[i], oldBlks[i]);
+					replacementPolicy.onUnpinned(run[i]);
+				}
+			}
+		} finally {
+			for (Buffer buff : buffs)
+				buff.getSwapLock().unlock();
+			for (ReentrantLock blockLatch : latches)
+				blockLatch.unlock();
+		}
+
+		if (buffs.isEmpty())
+			return outOfBuffers ? -1 : 1;
+		return buffs.size();
+	}
+
 	/**
 	 * Allocates a new block in the specified file, and pins a buffer to it. Returns
 	 * null (without allocating the block) if there are no available buffers.
@@ -218,38 +520,29 @@ class BufferPoolMgr {
 		fileLock.lock();
 		try {
 			// Choose Unpinned Buffer
-			int lastReplacedBuff = this.lastReplacedBuff;
-			int currBlk = (lastReplacedBuff + 1) % bufferPool.length;
-			while (currBlk != lastReplacedBuff) {
-				Buffer buff = bufferPool[currBlk];
-
-				// Get the lock of buffer if it is free
-				if (buff.getSwapLock().tryLock()) {
-					try {
-						if (!buff.isPinned() && !buff.checkRecentlyPinnedAndReset()) {
-							this.lastReplacedBuff = currBlk;
-
-							// Swap
-							BlockId oldBlk = buff.block();
-							if (oldBlk != null)
-								blockMap.remove(oldBlk);
-							buff.assignToNew(fileName, fmtr);
-							blockMap.put(buff.block(), buff);
-							if (!buff.isPinned())
-								numAvailable.decrementAndGet();
-
-							// Pin this buffer
-							buff.pin();
-							return buff;
-						}
-					} finally {
-						// Release the lock of buffer
-						buff.getSwapLock().unlock();
-					}
-				}
-				currBlk = (currBlk + 1) % bufferPool.length;
+			Buffer buff = chooseUnpinnedBuffer();
+			if (buff == null)
+				return null;
+
+			// The buffer is handed over with its lock held
+			try {
+				// Swap
+				BlockId oldBlk = buff.block();
+				if (oldBlk != null)
+					blockMap.remove(oldBlk);
+				buff.assignToNew(fileName, fmtr);
+				blockMap.put(buff.block(), buff);
+				replacementPolicy.onReplace(buff, oldBlk);
+				if (!buff.isPinned())
+					numAvailable.decrementAndGet();
+
+				// Pin this buffer
+				buff.pin();
+				return buff;
+			} finally {
+				// Release the lock of buffer
+				buff.getSwapLock().unlock();
 			}
-			return null;
 		} finally {
 			fileLock.unlock();
 		}
@@ -266,8 +559,10 @@ class BufferPoolMgr {
 				// Get the lock of buffer
 				buff.getSwapLock().lock();
 				buff.unpin();
-				if (!buff.isPinned())
+				if (!buff.isPinned()) {
 					numAvailable.incrementAndGet();
+					replacementPolicy.onUnpinned(buff);
+				}
 			} finally {
 				// Release the lock of buffer
 				buff.getSwapLock().unlock();
@@ -284,7 +579,20 @@ class BufferPoolMgr {
 		return numAvailable.get();
 	}
 
-	private Buffer findExistingBuffer(BlockId blk) {
+	Buffer findExistingBuffer(BlockId blk) {
 		return blockMap.get(blk);
 	}
+
+	/**
+	 * Chooses an unpinned buffer and locks it. The replacement policy decides
+	 * the victim. The policy is told about every buffer whose last pin is
+	 * released, so it can keep the replaceable buffers in a queue instead of
+	 * sweeping the pool.
+	 * 
+	 * @return the chosen buffer with its swap lock held, or null if there is no
+	 *         available buffer
+	 */
+	private Buffer chooseUnpinnedBuffer() {
+		return replacementPolicy.chooseVictim();
+	}
 }
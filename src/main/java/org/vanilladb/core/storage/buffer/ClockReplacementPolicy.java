@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright 2016, 2026 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.buffer;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.vanilladb.core.storage.file.BlockId;
+
+/**
+ * The clock (second-chance) replacement policy. Instead of sweeping the whole
+ * pool, the hand of the clock goes around a concurrent FIFO queue of the
+ * unpinned buffers. A buffer is enqueued when its last pin is released. A
+ * buffer taken from the queue is replaced, unless it has been pinned since the
+ * previous visit, in which case it goes back to the tail for a second chance.
+ * A buffer pinned again while it is queued is dropped when it is taken, and
+ * comes back when it is unpinned. A replacement therefore never visits the
+ * pinned buffers and takes O(1) expected time, however many of the buffers
+ * are pinned.
+ */
+class ClockReplacementPolicy extends ReplacementPolicy {
+	private Queue<Buffer> unpinned = new ConcurrentLinkedQueue<Buffer>();
+	private int poolSize;
+
+	@Override
+	void init(Buffer[] bufferPool) {
+		poolSize = bufferPool.length;
+		for (Buffer buff : bufferPool) {
+			buff.getSwapLock().lock();
+			try {
+				buff.setQueued(true);
+				unpinned.add(buff);
+			} finally {
+				buff.getSwapLock().unlock();
+			}
+		}
+	}
+
+	@Override
+	Buffer chooseVictim() {
+		// Each queued buffer gets at most one second chance, so two rounds of
+		// the queue are enough to find a victim if there is one
+		for (int i = 0; i < 2 * poolSize; i++) {
+			Buffer buff = unpinned.poll();
+			if (buff == null)
+				return null;
+
+			// The buffer is being pinned, unpinned or flushed, visit it later
+			if (!buff.getSwapLock().tryLock()) {
+				unpinned.add(buff);
+				continue;
+			}
+
+			if (buff.isPinned()) {
+				// It is enqueued again when it is unpinned
+				buff.setQueued(false);
+			} else if (buff.checkRecentlyPinnedAndReset()) {
+				unpinned.add(buff);
+			} else {
+				buff.setQueued(false);
+				return buff;
+			}
+			buff.getSwapLock().unlock();
+		}
+		return null;
+	}
+
+	@Override
+	void onHit(Buffer buff) {
+		// do nothing, the reference bit is set by Buffer.pin()
+	}
+
+	@Override
+	void onReplace(Buffer buff, BlockId oldBlk) {
+		// do nothing
+	}
+
+	@Override
+	void onPrefetch(Buffer buff, BlockId oldBlk) {
+		// do nothing, the reference bit is left cleared
+	}
+
+	@Override
+	void onUnpinned(Buffer buff) {
+		if (!buff.isQueued()) {
+			buff.setQueued(true);
+			unpinned.add(buff);
+		}
+	}
+}
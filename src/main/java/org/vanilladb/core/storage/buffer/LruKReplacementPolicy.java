@@ -0,0 +1,260 @@
+/*******************************************************************************
+ * Copyright 2016, 2026 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.buffer;
+
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.util.CoreProperties;
+
+/**
+ * The LRU-K replacement policy. The policy replaces the buffer whose K-th most
+ * recent reference is the oldest. A block referenced fewer than K times is
+ * treated as infinitely old, so the blocks touched only once by a sequential
+ * scan are replaced before the blocks that are referenced repeatedly.
+ *
+ * <p>
+ * The reference history of a replaced block is retained for a while, so a
+ * block that comes back soon after being replaced does not have to earn its
+ * K references again.
+ * </p>
+ *
+ * <p>
+ * Reading a block ahead is not a reference. A prefetched block stays cold
+ * until it is pinned K times, but it is replaced after the cold blocks that
+ * were loaded before it, so that it is still in the pool when the scan
+ * reaches it.
+ * </p>
+ *
+ * <p>
+ * A hit does not take the lock of the policy. It records the reference in the
+ * history of the buffer, which is guarded by the swap lock of the buffer, and
+ * queues the history. The queued histories are put in order the next time a
+ * victim is chosen. Misses still choose their victims and update the order
+ * under the lock of the policy, so a workload in which many threads miss at
+ * the same time is better served by {@link ClockReplacementPolicy}.
+ * </p>
+ */
+class LruKReplacementPolicy extends ReplacementPolicy {
+	private static final int K;
+
+	static {
+		K = CoreProperties.getLoader().getPropertyAsInteger(LruKReplacementPolicy.class.getName() + ".K", 2);
+	}
+
+	/**
+	 * The last K references of a buffer, stored in a circular array.
+	 */
+	private static class History {
+		final Buffer buff;
+		final long id;
+		long[] refs = new long[K];
+		int next, count;
+		// the time the block was read ahead, used until it is referenced
+		long loaded = -1;
+
+		// The rank after the latest reference, and the rank in the order
+		volatile Rank latest;
+		Rank ranked;
+		final AtomicBoolean queued = new AtomicBoolean();
+
+		History(Buffer buff, long id) {
+			this.buff = buff;
+			this.id = id;
+		}
+
+		void copyFrom(History h) {
+			refs = h.refs;
+			next = h.next;
+			count = h.count;
+			loaded = h.loaded;
+		}
+
+		void reference(long time) {
+			refs[next] = time;
+			next = (next + 1) % K;
+			if (count < K)
+				count++;
+		}
+
+		long kthRef() {
+			// a buffer referenced fewer than K times is infinitely old
+			return count < K ? -1 : refs[next];
+		}
+
+		long lastRef() {
+			return count == 0 ? loaded : refs[(next + K - 1) % K];
+		}
+	}
+
+	/**
+	 * A snapshot of a history. The order keeps snapshots, since a history
+	 * changes while it is in the order.
+	 */
+	private static class Rank {
+		final History h;
+		final long kthRef, lastRef;
+
+		Rank(History h) {
+			this.h = h;
+			kthRef = h.kthRef();
+			lastRef = h.lastRef();
+		}
+	}
+
+	private static final Comparator<Rank> COLDEST_FIRST = new Comparator<Rank>() {
+		@Override
+		public int compare(Rank r1, Rank r2) {
+			int result = Long.compare(r1.kthRef, r2.kthRef);
+			if (result != 0)
+				return result;
+			result = Long.compare(r1.lastRef, r2.lastRef);
+			if (result != 0)
+				return result;
+			return Long.compare(r1.h.id, r2.h.id);
+		}
+	};
+
+	// read without the lock by onHit()
+	private volatile Map<Buffer, History> histories;
+	private TreeSet<Rank> order = new TreeSet<Rank>(COLDEST_FIRST);
+	private Map<BlockId, History> retained;
+	private AtomicLong time = new AtomicLong();
+	// the histories referenced since the order was last updated
+	private Queue<History> referenced = new ConcurrentLinkedQueue<History>();
+
+	@Override
+	synchronized void init(Buffer[] bufferPool) {
+		final int retainedSize = bufferPool.length;
+		Map<Buffer, History> histories = new IdentityHashMap<Buffer, History>(bufferPool.length);
+		retained = new LinkedHashMap<BlockId, History>(retainedSize, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<BlockId, History> eldest) {
+				return size() > retainedSize;
+			}
+		};
+		for (int i = 0; i < bufferPool.length; i++) {
+			History h = new History(bufferPool[i], i);
+			histories.put(bufferPool[i], h);
+			rerank(h);
+		}
+		this.histories = histories;
+	}
+
+	@Override
+	synchronized Buffer chooseVictim() {
+		reorder();
+		for (Rank r : order)
+			if (tryAcquire(r.h.buff))
+				return r.h.buff;
+		return null;
+	}
+
+	@Override
+	void onHit(Buffer buff) {
+		History h = histories.get(buff);
+		h.reference(time.incrementAndGet());
+		h.latest = new Rank(h);
+		if (!h.queued.get() && h.queued.compareAndSet(false, true))
+			referenced.add(h);
+	}
+
+	@Override
+	synchronized void onReplace(Buffer buff, BlockId oldBlk) {
+		History h = assign(buff, oldBlk);
+		h.reference(time.incrementAndGet());
+		rerank(h);
+	}
+
+	@Override
+	synchronized void onPrefetch(Buffer buff, BlockId oldBlk) {
+		History h = assign(buff, oldBlk);
+		if (h.count == 0)
+			h.loaded = time.incrementAndGet();
+		rerank(h);
+	}
+
+	@Override
+	void onUnpinned(Buffer buff) {
+		// do nothing, the pinned buffers are skipped by chooseVictim()
+	}
+
+	/**
+	 * Gives the buffer the history of its new block. The caller must rerank
+	 * the buffer after updating the history.
+	 */
+	private History assign(Buffer buff, BlockId oldBlk) {
+		History h = histories.get(buff);
+
+		// Retain the history of the old block
+		if (oldBlk != null && h.count > 0) {
+			History old = new History(null, h.id);
+			old.copyFrom(h);
+			retained.put(oldBlk, old);
+		}
+
+		// Restore the history of the new block if it was replaced recently
+		History old = retained.remove(buff.block());
+		if (old != null) {
+			h.copyFrom(old);
+		} else {
+			h.refs = new long[K];
+			h.next = 0;
+			h.count = 0;
+			h.loaded = -1;
+		}
+		return h;
+	}
+
+	/**
+	 * Moves the history to the position of its current references.
+	 */
+	private void rerank(History h) {
+		h.latest = new Rank(h);
+		move(h, h.latest);
+	}
+
+	/**
+	 * Moves the histories referenced by hits since the last call.
+	 */
+	private void reorder() {
+		History h;
+		while ((h = referenced.poll()) != null) {
+			// Clear the flag first, so a later hit queues the history again
+			h.queued.set(false);
+			Rank r = h.latest;
+			if (r != h.ranked)
+				move(h, r);
+		}
+	}
+
+	private void move(History h, Rank r) {
+		if (h.ranked != null)
+			order.remove(h.ranked);
+		h.ranked = r;
+		order.add(r);
+	}
+}
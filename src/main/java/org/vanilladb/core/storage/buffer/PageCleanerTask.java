@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright 2016, 2026 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.buffer;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.vanilladb.core.server.task.Task;
+import org.vanilladb.core.util.CoreProperties;
+
+/**
+ * The task periodically writes back the dirty buffers that no one is pinning,
+ * so that a transaction missing a block rarely has to write the old page of
+ * the replaced buffer by itself.
+ */
+public class PageCleanerTask extends Task {
+	private static Logger logger = Logger.getLogger(PageCleanerTask.class.getName());
+
+	private static final long PERIOD;
+	private static final double TARGET_CLEAN_RATIO;
+	private static final int BATCH_SIZE;
+
+	static {
+		PERIOD = CoreProperties.getLoader().getPropertyAsLong(PageCleanerTask.class.getName() + ".PERIOD", 100);
+		TARGET_CLEAN_RATIO = CoreProperties.getLoader()
+				.getPropertyAsDouble(PageCleanerTask.class.getName() + ".TARGET_CLEAN_RATIO", 0.1);
+		BATCH_SIZE = CoreProperties.getLoader().getPropertyAsInteger(PageCleanerTask.class.getName() + ".BATCH_SIZE",
+				64);
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			int numWritten = BufferMgr.bufferPool.cleanBuffers(TARGET_CLEAN_RATIO, BATCH_SIZE);
+			if (logger.isLoggable(Level.FINE) && numWritten > 0)
+				logger.fine("the page cleaner wrote " + numWritten + " buffers");
+
+			// Keep going without a break if a full batch was not enough
+			if (numWritten < BATCH_SIZE) {
+				try {
+					Thread.sleep(PERIOD);
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright 2016, 2026 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.buffer;
+
+import org.vanilladb.core.storage.file.BlockId;
+
+/**
+ * Decides which buffer of a {@link BufferPoolMgr} should be swapped out when a
+ * block that is not in the pool needs a buffer. The buffer pool manager
+ * notifies the policy whenever a buffer is hit, assigned to a new block,
+ * filled with a prefetched block, or no longer pinned, so that the policy can keep its own view of how hot each
+ * buffer is and of which buffers can be replaced.
+ *
+ * <p>
+ * A policy is shared by all the threads pinning buffers. The notifications
+ * are delivered while the caller holds the swap lock of the given buffer, so
+ * the events of a single buffer are never delivered concurrently.
+ * </p>
+ */
+abstract class ReplacementPolicy {
+
+	/**
+	 * Sets up the policy for the specified buffers. This method is called
+	 * exactly once by {@link BufferPoolMgr} before any buffer is pinned.
+	 *
+	 * @param bufferPool
+	 *            all the buffers managed by the buffer pool
+	 */
+	abstract void init(Buffer[] bufferPool);
+
+	/**
+	 * Chooses an unpinned buffer to be replaced. If a buffer is returned, the
+	 * calling thread holds its swap lock and is responsible for releasing
+	 * it.
+	 *
+	 * @return the chosen buffer, or null if there is no replaceable buffer
+	 */
+	abstract Buffer chooseVictim();
+
+	/**
+	 * Notifies the policy that a buffer already holding the requested block
+	 * has been pinned.
+	 *
+	 * @param buff
+	 *            the pinned buffer
+	 */
+	abstract void onHit(Buffer buff);
+
+	/**
+	 * Notifies the policy that a buffer chosen by {@link #chooseVictim()} has
+	 * been assigned to a new block.
+	 *
+	 * @param buff
+	 *            the replaced buffer
+	 * @param oldBlk
+	 *            the block that the buffer held before, or null if the buffer
+	 *            was never used
+	 */
+	abstract void onReplace(Buffer buff, BlockId oldBlk);
+
+	/**
+	 * Notifies the policy that a buffer chosen by {@link #chooseVictim()} has
+	 * been filled with a block that is read ahead. Unlike
+	 * {@link #onReplace(Buffer, BlockId)}, this is not a reference to the
+	 * block, since no one has asked for it yet.
+	 *
+	 * @param buff
+	 *            the replaced buffer
+	 * @param oldBlk
+	 *            the block that the buffer held before, or null if the buffer
+	 *            was never used
+	 */
+	abstract void onPrefetch(Buffer buff, BlockId oldBlk);
+
+	/**
+	 * Notifies the policy that no one is pinning a buffer any more. This
+	 * happens when the last pin of the buffer is released, when the buffer
+	 * has been filled without being pinned, and when a buffer chosen by
+	 * {@link #chooseVictim()} is given up.
+	 *
+	 * @param buff
+	 *            the unpinned buffer
+	 */
+	abstract void onUnpinned(Buffer buff);
+
+	/**
+	 * Tries to take the swap lock of the specified buffer. The lock is kept
+	 * only if no one is pinning the buffer. A buffer whose lock is already
+	 * held by the calling thread is skipped, since a prefetch run chooses
+	 * several victims before releasing any of them.
+	 *
+	 * @param buff
+	 *            the candidate buffer
+	 * @return true if the calling thread now holds the swap lock of an
+	 *         unpinned buffer
+	 */
+	protected boolean tryAcquire(Buffer buff) {
+		if (buff.isSwapLockHeldByCurrentThread())
+			return false;
+		if (!buff.getSwapLock().tryLock())
+			return false;
+		if (buff.isPinned()) {
+			buff.getSwapLock().unlock();
+			return false;
+		}
+		return true;
+	}
+}
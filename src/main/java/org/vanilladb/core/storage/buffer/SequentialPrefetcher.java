@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright 2016, 2026 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.buffer;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.server.task.Task;
+import org.vanilladb.core.server.task.TaskMgr;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.file.FileMgr;
+import org.vanilladb.core.util.CoreProperties;
+
+/**
+ * Detects sequential pinning of the blocks in a file, such as a table scan or
+ * a walk along the sibling leaves of a B-tree, and reads the following blocks
+ * into the buffer pool in the background before they are pinned.
+ * 
+ * <p>
+ * The access streams are kept in a fixed number of slots hashed by file name,
+ * so a scan on a file is tracked as long as no other file hashed into the same
+ * slot is being pinned at the same time.
+ * </p>
+ */
+class SequentialPrefetcher {
+	private static Logger logger = Logger.getLogger(SequentialPrefetcher.class.getName());
+
+	private static final int WINDOW_SIZE;
+	private static final int TRIGGER_LENGTH;
+
+	static {
+		WINDOW_SIZE = CoreProperties.getLoader()
+				.getPropertyAsInteger(SequentialPrefetcher.class.getName() + ".WINDOW_SIZE", 8);
+		TRIGGER_LENGTH = CoreProperties.getLoader()
+				.getPropertyAsInteger(SequentialPrefetcher.class.getName() + ".TRIGGER_LENGTH", 3);
+	}
+
+	private static class Stream {
+		String fileName;
+		long lastBlkNum = -1;
+		int runLength;
+		long prefetchedUpTo = -1;
+	}
+
+	private static final int streamSlots = 1009;
+	private Stream[] streams = new Stream[streamSlots];
+	private BufferPoolMgr bufferPool;
+
+	SequentialPrefetcher(BufferPoolMgr bufferPool) {
+		this.bufferPool = bufferPool;
+		for (int i = 0; i < streamSlots; i++)
+			streams[i] = new Stream();
+	}
+
+	/**
+	 * Records that the specified block is being pinned. If the block extends a
+	 * sequential run which is long enough and the blocks read ahead are about
+	 * to run out, the next window of blocks is requested.
+	 * 
+	 * @param blk the block being pinned
+	 */
+	void onPin(BlockId blk) {
+		String fileName = blk.fileName();
+
+		// The temporary files may be deleted as soon as they are scanned
+		if (WINDOW_SIZE <= 0 || fileName.startsWith(FileMgr.TMP_FILE_NAME_PREFIX))
+			return;
+
+		long blkNum = blk.number();
+		long startBlkNum, endBlkNum;
+		Stream stream = prepareStream(fileName);
+		synchronized (stream) {
+			if (!fileName.equals(stream.fileName)) {
+				stream.fileName = fileName;
+				stream.lastBlkNum = -1;
+			}
+			if (blkNum == stream.lastBlkNum)
+				return;
+
+			if (blkNum == stream.lastBlkNum + 1) {
+				stream.runLength++;
+			} else {
+				stream.runLength = 1;
+				stream.prefetchedUpTo = blkNum;
+			}
+			stream.lastBlkNum = blkNum;
+
+			// Request the next window when half of the current one is consumed
+			if (stream.runLength < TRIGGER_LENGTH || stream.prefetchedUpTo - blkNum > WINDOW_SIZE / 2)
+				return;
+			startBlkNum = Math.max(stream.prefetchedUpTo, blkNum) + 1;
+			endBlkNum = blkNum + WINDOW_SIZE;
+			stream.prefetchedUpTo = endBlkNum;
+		}
+		requestPrefetch(fileName, startBlkNum, endBlkNum);
+	}
+
+	private void requestPrefetch(final String fileName, final long startBlkNum, final long endBlkNum) {
+		// The low-level tests may run without a task manager
+		TaskMgr taskMgr = VanillaDb.taskMgr();
+		if (taskMgr == null)
+			return;
+
+		taskMgr.runTask(new Task() {
+			@Override
+			public void run() {
+				try {
+					bufferPool.prefetch(fileName, startBlkNum, endBlkNum);
+				} catch (RuntimeException e) {
+					// Prefetching is only a hint, the scan will read the blocks itself
+					if (logger.isLoggable(Level.WARNING))
+						logger.warning("fail to prefetch " + fileName + ": " + e.getMessage());
+				}
+			}
+		});
+	}
+
+	private Stream prepareStream(String fileName) {
+		int code = fileName.hashCode() % streamSlots;
+		if (code < 0)
+			code += streamSlots;
+		return streams[code];
+	}
+}
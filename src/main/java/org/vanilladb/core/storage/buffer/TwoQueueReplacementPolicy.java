@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * Copyright 2016, 2026 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.buffer;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.util.CoreProperties;
+
+/**
+ * The 2Q replacement policy. A block read into the pool first enters a FIFO
+ * queue, A1in. When it is replaced from A1in, its id is remembered in a ghost
+ * queue, A1out. Only a block which is referenced again while its id is still
+ * in A1out is admitted into the LRU queue, Am. Since a sequential scan touches
+ * each block once, its blocks never leave A1in and cannot flush the hot blocks
+ * in Am.
+ *
+ * <p>
+ * A prefetched block also enters A1in, but its id is kept in A1out until the
+ * block is pinned, since reading a block ahead is not a reference.
+ * </p>
+ *
+ * <p>
+ * A hit does not take the lock of the policy. It only counts the hit under the
+ * swap lock of the buffer and queues the buffer, and the queues are updated
+ * the next time a victim is chosen. Misses still choose their victims and
+ * update the queues under the lock of the policy, so a workload in which many
+ * threads miss at the same time is better served by
+ * {@link ClockReplacementPolicy}.
+ * </p>
+ */
+class TwoQueueReplacementPolicy extends ReplacementPolicy {
+	private static final double A1IN_RATIO, A1OUT_RATIO;
+
+	static {
+		A1IN_RATIO = CoreProperties.getLoader()
+				.getPropertyAsDouble(TwoQueueReplacementPolicy.class.getName() + ".A1IN_RATIO", 0.25);
+		A1OUT_RATIO = CoreProperties.getLoader()
+				.getPropertyAsDouble(TwoQueueReplacementPolicy.class.getName() + ".A1OUT_RATIO", 0.5);
+	}
+
+	/**
+	 * The hits of a buffer that have not been applied to the queues yet.
+	 */
+	private static class Hits {
+		final Buffer buff;
+		// the block of the buffer, as seen by the queues
+		BlockId blk;
+		// counted under the swap lock of the buffer
+		volatile long count;
+		long applied;
+		final AtomicBoolean queued = new AtomicBoolean();
+
+		Hits(Buffer buff) {
+			this.buff = buff;
+		}
+	}
+
+	// Both queues are ordered from the oldest to the newest
+	private LinkedHashSet<Buffer> a1in = new LinkedHashSet<Buffer>();
+	private LinkedHashSet<Buffer> am = new LinkedHashSet<Buffer>();
+	private LinkedHashSet<BlockId> a1out = new LinkedHashSet<BlockId>();
+	private int a1inSize, a1outSize;
+	// read without the lock by onHit()
+	private volatile Map<Buffer, Hits> hits;
+	// the buffers hit since the queues were last updated
+	private Queue<Hits> referenced = new ConcurrentLinkedQueue<Hits>();
+
+	@Override
+	synchronized void init(Buffer[] bufferPool) {
+		a1inSize = Math.max(1, (int) (bufferPool.length * A1IN_RATIO));
+		a1outSize = Math.max(1, (int) (bufferPool.length * A1OUT_RATIO));
+
+		// Unused buffers stay in A1in, so they are replaced first
+		Map<Buffer, Hits> hits = new IdentityHashMap<Buffer, Hits>(bufferPool.length);
+		for (Buffer buff : bufferPool) {
+			a1in.add(buff);
+			hits.put(buff, new Hits(buff));
+		}
+		this.hits = hits;
+	}
+
+	@Override
+	synchronized Buffer chooseVictim() {
+		applyHits();
+		Buffer buff = null;
+		if (a1in.size() > a1inSize)
+			buff = chooseFrom(a1in);
+		if (buff == null)
+			buff = chooseFrom(am);
+		if (buff == null)
+			buff = chooseFrom(a1in);
+		return buff;
+	}
+
+	@Override
+	void onHit(Buffer buff) {
+		Hits h = hits.get(buff);
+		h.count++;
+		if (!h.queued.get() && h.queued.compareAndSet(false, true))
+			referenced.add(h);
+	}
+
+	@Override
+	synchronized void onReplace(Buffer buff, BlockId oldBlk) {
+		evict(buff, oldBlk);
+		if (a1out.remove(buff.block()))
+			am.add(buff);
+		else
+			a1in.add(buff);
+	}
+
+	@Override
+	synchronized void onPrefetch(Buffer buff, BlockId oldBlk) {
+		evict(buff, oldBlk);
+		a1in.add(buff);
+	}
+
+	@Override
+	void onUnpinned(Buffer buff) {
+		// do nothing, the pinned buffers are skipped by chooseVictim()
+	}
+
+	/**
+	 * Takes the buffer out of the queues and remembers the id of its old
+	 * block if it is replaced from A1in. The hits on the old block are
+	 * dropped.
+	 */
+	private void evict(Buffer buff, BlockId oldBlk) {
+		if (a1in.remove(buff) && oldBlk != null) {
+			a1out.add(oldBlk);
+			if (a1out.size() > a1outSize) {
+				Iterator<BlockId> iter = a1out.iterator();
+				iter.next();
+				iter.remove();
+			}
+		}
+		am.remove(buff);
+
+		Hits h = hits.get(buff);
+		h.blk = buff.block();
+		h.applied = h.count;
+	}
+
+	/**
+	 * Applies the hits queued since the last call.
+	 */
+	private void applyHits() {
+		Hits h;
+		while ((h = referenced.poll()) != null) {
+			// Clear the flag first, so a later hit queues the buffer again
+			h.queued.set(false);
+			long count = h.count;
+			if (count == h.applied)
+				continue;
+			h.applied = count;
+
+			// A hit in A1in is considered as a correlated reference, unless it
+			// is the first reference of a prefetched block
+			if (am.remove(h.buff) || (a1out.remove(h.blk) && a1in.remove(h.buff)))
+				am.add(h.buff);
+		}
+	}
+
+	private Buffer chooseFrom(LinkedHashSet<Buffer> queue) {
+		for (Buffer buff : queue)
+			if (tryAcquire(buff))
+				return buff;
+		return null;
+	}
+}
@@ -0,0 +1,299 @@
+/*******************************************************************************
+ * Copyright 2016, 2026 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.buffer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.file.FileMgr;
+import org.vanilladb.core.storage.tx.Transaction;
+import org.vanilladb.core.storage.tx.TransactionLifecycleListener;
+import org.vanilladb.core.util.CoreProperties;
+
+/**
+ * Keeps the before images of the recent modifications on record files, so that
+ * a read-only transaction can read the blocks as of a snapshot without taking
+ * any lock.
+ * 
+ * <p>
+ * Every modification made by a registered transaction on a record file is
+ * recorded with the bytes it overwrites. When a transaction commits or rolls
+ * back, it is given a commit timestamp before it releases its locks. A
+ * snapshot taken at timestamp <em>ts</em> sees exactly the transactions
+ * committed at or before <em>ts</em>: a block is reconstructed by undoing, from
+ * the newest to the oldest, the modifications of the other transactions. The
+ * modifications of a finished transaction are discarded once every active
+ * snapshot sees it.
+ * </p>
+ * 
+ * <p>
+ * The reconstruction relies on the modifications of a record being ordered by
+ * the commit order, which holds as long as the record locks are held until the
+ * end of transactions. The pages of indexes and the file headers are updated
+ * under short-term locks, so they are not versioned.
+ * </p>
+ */
+public class VersionStore implements TransactionLifecycleListener {
+	public static final boolean SNAPSHOT_READ_ONLY_TXS;
+
+	static {
+		SNAPSHOT_READ_ONLY_TXS = CoreProperties.getLoader()
+				.getPropertyAsBoolean(VersionStore.class.getName() + ".SNAPSHOT_READ_ONLY_TXS", false);
+	}
+
+	private static final long UNCOMMITTED = Long.MAX_VALUE;
+
+	private static class Writer {
+		volatile long commitTs = UNCOMMITTED;
+		// The blocks modified by the transaction
+		final Set<BlockVersions> blocks = new HashSet<BlockVersions>();
+	}
+
+	private static class Change {
+		final Writer writer;
+		final int offset;
+		final byte[] before;
+
+		Change(Writer writer, int offset, byte[] before) {
+			this.writer = writer;
+			this.offset = offset;
+			this.before = before;
+		}
+	}
+
+	private static class BlockVersions {
+		final BlockId blk;
+		// Ordered from the oldest to the newest
+		final List<Change> changes = new ArrayList<Change>();
+		// Set when the versions are removed from the store
+		boolean removed;
+
+		BlockVersions(BlockId blk) {
+			this.blk = blk;
+		}
+	}
+
+	private final Map<Long, Writer> writers = new ConcurrentHashMap<Long, Writer>();
+	private final Map<BlockId, BlockVersions> blockVersions = new ConcurrentHashMap<BlockId, BlockVersions>();
+
+	// The following are guarded by this store
+	private long lastCommitTs;
+	// Maps the timestamp of each active snapshot to its number of readers
+	private final TreeMap<Long, Integer> snapshots = new TreeMap<Long, Integer>();
+	// Ordered by the commit timestamps
+	private final Queue<Writer> finishedWriters = new ArrayDeque<Writer>();
+
+	/**
+	 * Returns true if the record pages of the specified file are versioned.
+	 * Only the record files of tables are versioned, excluding temporary
+	 * tables.
+	 * 
+	 * @param fileName
+	 *            the name of the file
+	 * @return true if the record pages of the file are versioned
+	 */
+	public static boolean isVersioned(String fileName) {
+		return fileName.endsWith(".tbl") && !fileName.startsWith(FileMgr.TMP_FILE_NAME_PREFIX);
+	}
+
+	/**
+	 * Returns true if the modifications on the specified block are versioned.
+	 * The first block of a record file holds its file header, which is not
+	 * versioned.
+	 * 
+	 * @param blk
+	 *            the id of the block
+	 * @return true if the modifications on the block are versioned
+	 */
+	public static boolean isVersioned(BlockId blk) {
+		return blk.number() > 0 && isVersioned(blk.fileName());
+	}
+
+	/**
+	 * Starts recording the modifications of the specified transaction. This
+	 * method must be called before the transaction modifies anything.
+	 * 
+	 * @param txNum
+	 *            the number of the transaction
+	 */
+	public void register(long txNum) {
+		writers.put(txNum, new Writer());
+	}
+
+	@Override
+	public void onTxCommit(Transaction tx) {
+		finish(tx.getTransactionNumber());
+	}
+
+	@Override
+	public void onTxRollback(Transaction tx) {
+		// The rolled back modifications have been undone, so the undoing
+		// modifications cancel them in every snapshot
+		finish(tx.getTransactionNumber());
+	}
+
+	@Override
+	public void onTxEndStatement(Transaction tx) {
+		// do nothing
+	}
+
+	/**
+	 * Takes a snapshot of the committed data. The snapshot must be released
+	 * by {@link #releaseSnapshot(long)}.
+	 * 
+	 * @return the timestamp of the snapshot
+	 */
+	public synchronized long takeSnapshot() {
+		Integer count = snapshots.get(lastCommitTs);
+		snapshots.put(lastCommitTs, count == null ? 1 : count + 1);
+		return lastCommitTs;
+	}
+
+	/**
+	 * Releases a snapshot taken by {@link #takeSnapshot()}.
+	 * 
+	 * @param ts
+	 *            the timestamp of the snapshot
+	 */
+	public void releaseSnapshot(long ts) {
+		synchronized (this) {
+			int count = snapshots.get(ts);
+			if (count == 1)
+				snapshots.remove(ts);
+			else
+				snapshots.put(ts, count - 1);
+		}
+		discardVersions();
+	}
+
+	/**
+	 * Returns true if the modifications of the specified transaction are
+	 * recorded.
+	 */
+	boolean records(long txNum) {
+		return writers.containsKey(txNum);
+	}
+
+	/**
+	 * Records a modification on the specified block. The caller must hold the
+	 * exclusive access to the contents of the block.
+	 */
+	void recordChange(BlockId blk, long txNum, int offset, byte[] before) {
+		Writer writer = writers.get(txNum);
+		if (writer == null)
+			return;
+
+		Change change = new Change(writer, offset, before);
+		while (true) {
+			BlockVersions versions = blockVersions.get(blk);
+			if (versions == null) {
+				versions = new BlockVersions(blk);
+				BlockVersions existing = blockVersions.putIfAbsent(blk, versions);
+				if (existing != null)
+					versions = existing;
+			}
+			synchronized (versions) {
+				// The versions may be removed before we enter the monitor
+				if (versions.removed)
+					continue;
+				versions.changes.add(change);
+			}
+			synchronized (writer) {
+				writer.blocks.add(versions);
+			}
+			return;
+		}
+	}
+
+	/**
+	 * Undoes the modifications on the specified page that are not seen by the
+	 * specified snapshot. The caller must hold the shared access to the
+	 * contents of the block, so that no modification is recorded meanwhile.
+	 * 
+	 * @param blk
+	 *            the block held by the page
+	 * @param page
+	 *            the bytes of the whole page
+	 * @param dataStart
+	 *            the offset of the data in the page
+	 * @param ts
+	 *            the timestamp of the snapshot
+	 */
+	void rollBack(BlockId blk, byte[] page, int dataStart, long ts) {
+		BlockVersions versions = blockVersions.get(blk);
+		if (versions == null)
+			return;
+
+		Change[] changes;
+		synchronized (versions) {
+			changes = versions.changes.toArray(new Change[versions.changes.size()]);
+		}
+		for (int i = changes.length - 1; i >= 0; i--) {
+			Change change = changes[i];
+			if (change.writer.commitTs > ts)
+				System.arraycopy(change.before, 0, page, dataStart + change.offset, change.before.length);
+		}
+	}
+
+	private void finish(long txNum) {
+		Writer writer = writers.remove(txNum);
+		if (writer == null)
+			return;
+
+		synchronized (this) {
+			writer.commitTs = ++lastCommitTs;
+			finishedWriters.add(writer);
+		}
+		discardVersions();
+	}
+
+	/**
+	 * Discards the modifications of the finished transactions that are seen
+	 * by every active snapshot.
+	 */
+	private void discardVersions() {
+		List<Writer> discarded = new ArrayList<Writer>();
+		synchronized (this) {
+			long oldestTs = snapshots.isEmpty() ? lastCommitTs : snapshots.firstKey();
+			while (!finishedWriters.isEmpty() && finishedWriters.peek().commitTs <= oldestTs)
+				discarded.add(finishedWriters.poll());
+		}
+
+		for (Writer writer : discarded) {
+			for (BlockVersions versions : writer.blocks) {
+				synchronized (versions) {
+					Iterator<Change> iter = versions.changes.iterator();
+					while (iter.hasNext())
+						if (iter.next().writer == writer)
+							iter.remove();
+					if (versions.changes.isEmpty() && !versions.removed) {
+						versions.removed = true;
+						blockVersions.remove(versions.blk, versions);
+					}
+				}
+			}
+		}
+	}
+}
@@ -20,6 +20,8 @@ import static org.vanilladb.core.storage.log.LogMgr.DEFAULT_LOG_FILE;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
@@ -185,6 +187,94 @@ public class FileMgr {
 		}
 	}
 
+	/**
+	 * Writes the first bytes of a byte buffer into a disk block. The rest of
+	 * the block is left as it is on disk.
+	 * 
+	 * @param blk
+	 *            a block ID
+	 * @param buffer
+	 *            the byte buffer
+	 * @param length
+	 *            the number of bytes to be written
+	 */
+	void write(BlockId blk, IoBuffer buffer, int length) {
+		try {
+			IoChannel fileChannel = getFileChannel(blk.fileName());
+
+			// write only the head of the buffer
+			buffer.clear();
+			buffer.limit(length);
+			try {
+				fileChannel.write(buffer, blk.number() * BLOCK_SIZE);
+			} finally {
+				buffer.clear();
+			}
+			
+			// for controller
+			TransactionProfiler.getLocalProfiler().incrementDiskIOCount();
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new RuntimeException("cannot write block" + blk);
+		}
+	}
+
+	/**
+	 * Reads the contents of consecutive disk blocks into the specified byte
+	 * buffers with a single I/O request.
+	 * 
+	 * @param firstBlk
+	 *            the block ID of the first block
+	 * @param buffers
+	 *            the byte buffers, one for each block
+	 */
+	void readBlocks(BlockId firstBlk, IoBuffer[] buffers) {
+		try {
+			IoChannel fileChannel = getFileChannel(firstBlk.fileName());
+
+			// clear the buffers
+			for (IoBuffer buffer : buffers)
+				buffer.clear();
+
+			// read the blocks from file
+			fileChannel.read(buffers, firstBlk.number() * BLOCK_SIZE);
+			
+			// for controller
+			TransactionProfiler.getLocalProfiler().incrementDiskIOCount();
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new RuntimeException("cannot read " + buffers.length + " blocks from " + firstBlk);
+		}
+	}
+
+	/**
+	 * Writes the contents of the specified byte buffers into consecutive disk
+	 * blocks with a single I/O request.
+	 * 
+	 * @param firstBlk
+	 *            the block ID of the first block
+	 * @param buffers
+	 *            the byte buffers, one for each block
+	 */
+	void writeBlocks(BlockId firstBlk, IoBuffer[] buffers) {
+		try {
+			IoChannel fileChannel = getFileChannel(firstBlk.fileName());
+
+			// rewind the buffers
+			for (IoBuffer buffer : buffers)
+				buffer.rewind();
+
+			// write the blocks to the file
+			fileChannel.write(buffers, firstBlk.number() * BLOCK_SIZE);
+			
+			// for controller
+			TransactionProfiler.getLocalProfiler().incrementDiskIOCount();
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new RuntimeException("cannot write " + buffers.length + " blocks from " + firstBlk);
+		}
+	}
+
 	/**
 	 * Gets the block id of the new block appended in the specified file.
 	 * 
@@ -262,6 +352,24 @@ public class FileMgr {
 		return isNew;
 	}
 
+	/**
+	 * Returns the directory where the files of the database are stored.
+	 * 
+	 * @return the database directory
+	 */
+	public File dbDirectory() {
+		return dbDirectory;
+	}
+
+	/**
+	 * Returns the directory where the segments of the log are stored.
+	 * 
+	 * @return the log directory
+	 */
+	public File logDirectory() {
+		return logDirectory;
+	}
+
 	/**
 	 * Returns the file channel for the specified filename. The file channel is
 	 * stored in a map keyed on the filename. If the file is not open, then it
@@ -278,8 +386,7 @@ public class FileMgr {
 			IoChannel fileChannel = openFiles.get(fileName);
 
 			if (fileChannel == null) {
-				File dbFile = fileName.equals(DEFAULT_LOG_FILE) ? new File(logDirectory, fileName)
-						: new File(dbDirectory, fileName);
+				File dbFile = fileOf(fileName);
 				fileChannel = new VirtualChannel(IoAllocator.newIoChannel(dbFile));
 				
 				openFiles.put(fileName, fileChannel);
@@ -304,7 +411,7 @@ public class FileMgr {
 					fileChannel.close();
 
 				// Delete the file
-				boolean hasDeleted = new File(dbDirectory, fileName).delete();
+				boolean hasDeleted = fileOf(fileName).delete();
 				if (!hasDeleted && logger.isLoggable(Level.WARNING))
 					logger.warning("cannot delete file: " + fileName);
 			}
@@ -314,4 +421,62 @@ public class FileMgr {
 			e.printStackTrace();
 		}
 	}
+
+	/**
+	 * Returns the names of the files whose names start with the specified
+	 * prefix. The files are searched in the directory where a file named after
+	 * the prefix would be stored.
+	 * 
+	 * @param prefix
+	 *            the prefix of the file names
+	 * @return the names of the files
+	 */
+	public List<String> listFiles(String prefix) {
+		List<String> fileNames = new ArrayList<String>();
+		String[] names = fileOf(prefix).getParentFile().list();
+		if (names != null)
+			for (String name : names)
+				if (name.startsWith(prefix))
+					fileNames.add(name);
+		return fileNames;
+	}
+
+	/**
+	 * Moves the specified file into the directory named after the database
+	 * under the specified archive directory.
+	 * 
+	 * @param fileName
+	 *            the name of the target file
+	 * @param archiveDir
+	 *            the path of the archive directory
+	 */
+	public void archive(String fileName, String archiveDir) {
+		File dir = new File(archiveDir, dbDirectory.getName());
+		if (!dir.exists() && !dir.mkdirs())
+			throw new RuntimeException("cannot create " + dir);
+
+		try {
+			synchronized (prepareAnchor(fileName)) {
+				IoChannel fileChannel = openFiles.remove(fileName);
+				if (fileChannel != null)
+					fileChannel.close();
+
+				if (!fileOf(fileName).renameTo(new File(dir, fileName)))
+					throw new RuntimeException("cannot archive " + fileName + " into " + dir);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new RuntimeException("cannot archive " + fileName);
+		}
+	}
+
+	/**
+	 * Returns the file where the specified file is stored. The segments of the
+	 * log are stored in the log directory, and the others are stored in the
+	 * database directory.
+	 */
+	private File fileOf(String fileName) {
+		return fileName.startsWith(DEFAULT_LOG_FILE) ? new File(logDirectory, fileName)
+				: new File(dbDirectory, fileName);
+	}
 }
@@ -123,6 +123,54 @@ public class Page {
 		fileMgr.write(blk, contents);
 	}
 
+	/**
+	 * Writes the first bytes of the page to the specified disk block. The rest
+	 * of the block is left as it is on disk.
+	 * 
+	 * @param blk
+	 *            a block ID
+	 * @param length
+	 *            the number of bytes to be written
+	 */
+	public synchronized void write(BlockId blk, int length) {
+		fileMgr.write(blk, contents, length);
+	}
+
+	/**
+	 * Populates the specified pages with the contents of consecutive disk
+	 * blocks using a single I/O request. The caller must make sure that no one
+	 * else accesses these pages during the call.
+	 * 
+	 * @param firstBlk
+	 *            the block ID of the first block
+	 * @param pages
+	 *            the pages to be populated, one for each block
+	 */
+	public static void read(BlockId firstBlk, Page[] pages) {
+		VanillaDb.fileMgr().readBlocks(firstBlk, contentsOf(pages));
+	}
+
+	/**
+	 * Writes the contents of the specified pages to consecutive disk blocks
+	 * using a single I/O request. The caller must make sure that no one else
+	 * accesses these pages during the call.
+	 * 
+	 * @param firstBlk
+	 *            the block ID of the first block
+	 * @param pages
+	 *            the pages to be written, one for each block
+	 */
+	public static void write(BlockId firstBlk, Page[] pages) {
+		VanillaDb.fileMgr().writeBlocks(firstBlk, contentsOf(pages));
+	}
+
+	private static IoBuffer[] contentsOf(Page[] pages) {
+		IoBuffer[] buffers = new IoBuffer[pages.length];
+		for (int i = 0; i < pages.length; i++)
+			buffers[i] = pages[i].contents;
+		return buffers;
+	}
+
 	/**
 	 * Appends the contents of the page to the specified file.
 	 * 
@@ -194,6 +242,36 @@ public class Page {
 		contents.put(offset, byteval);
 	}
 
+	/**
+	 * Copies the bytes at the specified offset of this page into the specified
+	 * array, which is filled up.
+	 * 
+	 * @param offset
+	 *            the byte offset within the page
+	 * @param dst
+	 *            the array to be filled
+	 */
+	public synchronized void getBytes(int offset, byte[] dst) {
+		contents.get(offset, dst);
+	}
+
+	/**
+	 * Writes the first bytes of the specified array to the specified offset on
+	 * the page.
+	 * 
+	 * @param offset
+	 *            the byte offset within the page
+	 * @param src
+	 *            the array holding the bytes
+	 * @param length
+	 *            the number of bytes to be written
+	 */
+	public synchronized void setBytes(int offset, byte[] src, int length) {
+		if (offset + length > BLOCK_SIZE)
+			throw new BufferOverflowException();
+		contents.put(offset, src, 0, length);
+	}
+
 	/**
 	 * Close this page to release resources.
 	 */
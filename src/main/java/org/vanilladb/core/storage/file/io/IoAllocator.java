@@ -17,9 +17,12 @@ package org.vanilladb.core.storage.file.io;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.vanilladb.core.storage.file.io.javanio.JavaNioByteBuffer;
 import org.vanilladb.core.storage.file.io.javanio.JavaNioFileChannel;
+import org.vanilladb.core.storage.file.io.javanio.JavaNioMappedFileChannel;
 import org.vanilladb.core.storage.file.io.jaydio.JaydioDirectByteBuffer;
 import org.vanilladb.core.storage.file.io.jaydio.JaydioDirectIoChannel;
 import org.vanilladb.core.util.CoreProperties;
@@ -27,10 +30,16 @@ import org.vanilladb.core.util.CoreProperties;
 public class IoAllocator {
 
 	private static boolean USE_O_DIRECT;
+	private static Set<String> MMAP_FILES = new HashSet<String>();
 
 	static {
 		USE_O_DIRECT = CoreProperties.getLoader().getPropertyAsBoolean(
 				IoAllocator.class.getName() + ".USE_O_DIRECT", false);
+		String[] mmapFiles = CoreProperties.getLoader().getPropertyAsStringArray(
+				IoAllocator.class.getName() + ".MMAP_FILES", new String[0]);
+		for (String fileName : mmapFiles)
+			if (!fileName.trim().isEmpty())
+				MMAP_FILES.add(fileName.trim());
 	}
 
 	public static IoBuffer newIoBuffer(int capacity) {
@@ -40,9 +49,21 @@ public class IoAllocator {
 			return new JavaNioByteBuffer(capacity);
 	}
 
+	/**
+	 * Opens a channel for the specified file. When O_DIRECT is not used, the
+	 * files listed in MMAP_FILES are read through memory mappings, and the
+	 * others are read by positional reads.
+	 * 
+	 * @param file
+	 *            the file to be opened
+	 * @return the channel of the file
+	 * @throws IOException
+	 */
 	public static IoChannel newIoChannel(File file) throws IOException {
 		if (USE_O_DIRECT)
 			return new JaydioDirectIoChannel(file);
+		else if (MMAP_FILES.contains(file.getName()))
+			return new JavaNioMappedFileChannel(file);
 		else
 			return new JavaNioFileChannel(file);
 	}
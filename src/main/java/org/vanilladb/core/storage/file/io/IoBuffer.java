@@ -21,10 +21,22 @@ public interface IoBuffer {
 
 	IoBuffer put(int position, byte[] src);
 
+	IoBuffer put(int position, byte[] src, int offset, int length);
+
 	void clear();
 
 	void rewind();
 
+	/**
+	 * Limits the bytes to be written from the start of the buffer. A buffer
+	 * for direct I/O may round the limit up to its alignment. The limit is
+	 * reset by {@link #clear()}.
+	 * 
+	 * @param newLimit
+	 *            the number of bytes to be written
+	 */
+	void limit(int newLimit);
+
 	void close();
 
 }
@@ -23,6 +23,33 @@ public interface IoChannel {
 	
 	int write(IoBuffer buffer, long position) throws IOException;
 	
+	/**
+	 * Reads a contiguous range of the file into the specified buffers, filling
+	 * them in order, with as few system calls as the underlying channel
+	 * allows.
+	 * 
+	 * @param buffers
+	 *            the buffers to be filled
+	 * @param position
+	 *            the position of the file to start reading
+	 * @return the number of bytes read
+	 * @throws IOException
+	 */
+	long read(IoBuffer[] buffers, long position) throws IOException;
+	
+	/**
+	 * Writes the specified buffers, in order, to a contiguous range of the
+	 * file with as few system calls as the underlying channel allows.
+	 * 
+	 * @param buffers
+	 *            the buffers to be written
+	 * @param position
+	 *            the position of the file to start writing
+	 * @return the number of bytes written
+	 * @throws IOException
+	 */
+	long write(IoBuffer[] buffers, long position) throws IOException;
+	
 	long append(IoBuffer buffer) throws IOException;
 	
 	long size() throws IOException;
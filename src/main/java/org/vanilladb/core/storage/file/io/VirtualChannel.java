@@ -18,7 +18,7 @@ public class VirtualChannel implements IoChannel{
 	
 	public VirtualChannel(IoChannel fileChannel) throws IOException {
 		this.fileChannel = fileChannel;
-		this.curFileSize.set((int) fileChannel.size() / Page.BLOCK_SIZE);
+		this.curFileSize.set(blocksOf(fileChannel.size()));
 	}
 	
 	@Override
@@ -31,7 +31,23 @@ public class VirtualChannel implements IoChannel{
 		int writeSize = fileChannel.write(buffer, position);
 		
 		if (size() < fileChannel.size()) {
-			curFileSize.set((int) fileChannel.size() / Page.BLOCK_SIZE);
+			curFileSize.set(blocksOf(fileChannel.size()));
+		}
+		
+		return writeSize;
+	}
+
+	@Override
+	public long read(IoBuffer[] buffers, long position) throws IOException {
+		return fileChannel.read(buffers, position);
+	}
+
+	@Override
+	public long write(IoBuffer[] buffers, long position) throws IOException {
+		long writeSize = fileChannel.write(buffers, position);
+		
+		if (size() < fileChannel.size()) {
+			curFileSize.set(blocksOf(fileChannel.size()));
 		}
 		
 		return writeSize;
@@ -57,4 +73,8 @@ public class VirtualChannel implements IoChannel{
 		fileChannel.close();
 	}
 	
+	// The last block may be written partially
+	private static int blocksOf(long size) {
+		return (int) ((size + Page.BLOCK_SIZE - 1) / Page.BLOCK_SIZE);
+	}
 }
\ No newline at end of file
@@ -40,6 +40,13 @@ public class JavaNioByteBuffer implements IoBuffer {
 		byteBuffer.put(src);
 		return this;
 	}
+
+	@Override
+	public IoBuffer put(int position, byte[] src, int offset, int length) {
+		byteBuffer.position(position);
+		byteBuffer.put(src, offset, length);
+		return this;
+	}
 	
 	@Override
 	public void clear() {
@@ -51,6 +58,11 @@ public class JavaNioByteBuffer implements IoBuffer {
 		byteBuffer.rewind();
 	}
 
+	@Override
+	public void limit(int newLimit) {
+		byteBuffer.limit(newLimit);
+	}
+
 	@Override
 	public void close() {
 		// do nothing
@@ -18,85 +18,127 @@ package org.vanilladb.core.storage.file.io.javanio;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.vanilladb.core.storage.file.io.IoBuffer;
 import org.vanilladb.core.storage.file.io.IoChannel;
 
+/**
+ * A channel based on the positional I/O of {@link FileChannel}. Positional
+ * reads and writes are thread-safe, so they are issued without locking and
+ * the writes to different blocks of a file may proceed in parallel. The size
+ * of the file is tracked by an atomic counter.
+ */
 public class JavaNioFileChannel implements IoChannel {
 
 	private FileChannel fileChannel;
-	private ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	// The scattering and gathering operations move the position of the channel
+	private ReentrantLock positionLock = new ReentrantLock();
 
 	// Optimization: store the size of each table
-	private long fileSize;
+	private AtomicLong fileSize;
 
 	public JavaNioFileChannel(File file) throws IOException {
 		@SuppressWarnings("resource")
 		RandomAccessFile f = new RandomAccessFile(file, "rws");
 		fileChannel = f.getChannel();
-		fileSize = fileChannel.size();
+		fileSize = new AtomicLong(fileChannel.size());
 	}
 
 	@Override
 	public int read(IoBuffer buffer, long position) throws IOException {
-		lock.readLock().lock();
-		try {
-			JavaNioByteBuffer javaBuffer = (JavaNioByteBuffer) buffer;
-			return fileChannel.read(javaBuffer.getByteBuffer(), position);
-		} finally {
-			lock.readLock().unlock();
-		}
+		JavaNioByteBuffer javaBuffer = (JavaNioByteBuffer) buffer;
+		return fileChannel.read(javaBuffer.getByteBuffer(), position);
 	}
 
 	@Override
 	public int write(IoBuffer buffer, long position) throws IOException {
-		lock.writeLock().lock();
+		JavaNioByteBuffer javaBuffer = (JavaNioByteBuffer) buffer;
+		int writeSize = fileChannel.write(javaBuffer.getByteBuffer(), position);
+
+		// Check if we need to update the size
+		extendSize(fileSize, position + writeSize);
+
+		return writeSize;
+	}
+
+	@Override
+	public long read(IoBuffer[] buffers, long position) throws IOException {
+		positionLock.lock();
 		try {
-			JavaNioByteBuffer javaBuffer = (JavaNioByteBuffer) buffer;
-			int writeSize = fileChannel.write(javaBuffer.getByteBuffer(), position);
-			
-			// Check if we need to update the size
-			if (position + writeSize > fileSize)
-				fileSize = position + writeSize;
-			
-			return writeSize;
+			ByteBuffer[] byteBuffers = toByteBuffers(buffers);
+			fileChannel.position(position);
+			long readSize = 0;
+			while (byteBuffers[byteBuffers.length - 1].hasRemaining()) {
+				long n = fileChannel.read(byteBuffers);
+				if (n < 0)
+					break;
+				readSize += n;
+			}
+			return readSize;
 		} finally {
-			lock.writeLock().unlock();
+			positionLock.unlock();
 		}
 	}
 
 	@Override
-	public long append(IoBuffer buffer) throws IOException {
-		lock.writeLock().lock();
+	public long write(IoBuffer[] buffers, long position) throws IOException {
+		long writeSize = 0;
+		positionLock.lock();
 		try {
-			JavaNioByteBuffer javaBuffer = (JavaNioByteBuffer) buffer;
-			int appendSize = fileChannel.write(javaBuffer.getByteBuffer(), fileSize);
-			fileSize += appendSize;
-			return fileSize;
+			ByteBuffer[] byteBuffers = toByteBuffers(buffers);
+			fileChannel.position(position);
+			while (byteBuffers[byteBuffers.length - 1].hasRemaining())
+				writeSize += fileChannel.write(byteBuffers);
 		} finally {
-			lock.writeLock().unlock();
+			positionLock.unlock();
 		}
+
+		// Check if we need to update the size
+		extendSize(fileSize, position + writeSize);
+
+		return writeSize;
+	}
+
+	@Override
+	public long append(IoBuffer buffer) throws IOException {
+		ByteBuffer byteBuffer = ((JavaNioByteBuffer) buffer).getByteBuffer();
+
+		// Reserve the space first, so concurrent appends never overlap
+		int appendSize = byteBuffer.remaining();
+		long position = fileSize.getAndAdd(appendSize);
+		while (byteBuffer.hasRemaining())
+			position += fileChannel.write(byteBuffer, position);
+		return position;
 	}
 
 	@Override
 	public long size() throws IOException {
-		lock.readLock().lock();
-		try {
-			return fileSize;
-		} finally {
-			lock.readLock().unlock();
-		}
+		return fileSize.get();
 	}
 
 	@Override
 	public void close() throws IOException {
-		lock.writeLock().lock();
-		try {
-			fileChannel.close();
-		} finally {
-			lock.writeLock().unlock();
-		}
+		fileChannel.close();
+	}
+
+	private ByteBuffer[] toByteBuffers(IoBuffer[] buffers) {
+		ByteBuffer[] byteBuffers = new ByteBuffer[buffers.length];
+		for (int i = 0; i < buffers.length; i++)
+			byteBuffers[i] = ((JavaNioByteBuffer) buffers[i]).getByteBuffer();
+		return byteBuffers;
+	}
+
+	/**
+	 * Raises the recorded file size to the specified end of a write, unless a
+	 * concurrent write has already extended the file further.
+	 */
+	static void extendSize(AtomicLong fileSize, long end) {
+		long size = fileSize.get();
+		while (end > size && !fileSize.compareAndSet(size, end))
+			size = fileSize.get();
 	}
 }
@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * Copyright 2016, 2026 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.file.io.javanio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.vanilladb.core.storage.file.io.IoBuffer;
+import org.vanilladb.core.storage.file.io.IoChannel;
+
+/**
+ * A channel serving reads from read-only memory mappings of the file, which
+ * saves a system call and a copy into the kernel for each read of a cached
+ * block. Writes still go through the file channel; since the mappings share
+ * the page cache with the channel, the written data is visible to later reads.
+ * 
+ * <p>
+ * The file is mapped in fixed-size regions. A region is mapped only over the
+ * part of the file that exists, and the last region is remapped when a read
+ * goes beyond it after the file grows.
+ * </p>
+ */
+public class JavaNioMappedFileChannel implements IoChannel {
+
+	private static final long REGION_SIZE = 64 * 1024 * 1024;
+
+	private FileChannel fileChannel;
+	// The gathering writes move the position of the channel
+	private ReentrantLock positionLock = new ReentrantLock();
+	private final Object mappingLock = new Object();
+
+	// Optimization: store the size of each table
+	private AtomicLong fileSize;
+	private volatile MappedByteBuffer[] regions = new MappedByteBuffer[0];
+	private volatile long mappedSize;
+
+	public JavaNioMappedFileChannel(File file) throws IOException {
+		@SuppressWarnings("resource")
+		RandomAccessFile f = new RandomAccessFile(file, "rws");
+		fileChannel = f.getChannel();
+		fileSize = new AtomicLong(fileChannel.size());
+	}
+
+	@Override
+	public int read(IoBuffer buffer, long position) throws IOException {
+		JavaNioByteBuffer javaBuffer = (JavaNioByteBuffer) buffer;
+		return readFromMapping(javaBuffer.getByteBuffer(), position);
+	}
+
+	@Override
+	public int write(IoBuffer buffer, long position) throws IOException {
+		JavaNioByteBuffer javaBuffer = (JavaNioByteBuffer) buffer;
+		int writeSize = fileChannel.write(javaBuffer.getByteBuffer(), position);
+
+		// Check if we need to update the size
+		JavaNioFileChannel.extendSize(fileSize, position + writeSize);
+
+		return writeSize;
+	}
+
+	@Override
+	public long read(IoBuffer[] buffers, long position) throws IOException {
+		long readSize = 0;
+		for (IoBuffer buffer : buffers) {
+			JavaNioByteBuffer javaBuffer = (JavaNioByteBuffer) buffer;
+			int n = readFromMapping(javaBuffer.getByteBuffer(), position + readSize);
+			if (n <= 0)
+				break;
+			readSize += n;
+		}
+		return readSize;
+	}
+
+	@Override
+	public long write(IoBuffer[] buffers, long position) throws IOException {
+		ByteBuffer[] byteBuffers = new ByteBuffer[buffers.length];
+		for (int i = 0; i < buffers.length; i++)
+			byteBuffers[i] = ((JavaNioByteBuffer) buffers[i]).getByteBuffer();
+
+		long writeSize = 0;
+		positionLock.lock();
+		try {
+			fileChannel.position(position);
+			while (byteBuffers[byteBuffers.length - 1].hasRemaining())
+				writeSize += fileChannel.write(byteBuffers);
+		} finally {
+			positionLock.unlock();
+		}
+
+		// Check if we need to update the size
+		JavaNioFileChannel.extendSize(fileSize, position + writeSize);
+
+		return writeSize;
+	}
+
+	@Override
+	public long append(IoBuffer buffer) throws IOException {
+		ByteBuffer byteBuffer = ((JavaNioByteBuffer) buffer).getByteBuffer();
+
+		// Reserve the space first, so concurrent appends never overlap
+		long position = fileSize.getAndAdd(byteBuffer.remaining());
+		while (byteBuffer.hasRemaining())
+			position += fileChannel.write(byteBuffer, position);
+		return position;
+	}
+
+	@Override
+	public long size() throws IOException {
+		return fileSize.get();
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized (mappingLock) {
+			// The mappings are released when they are garbage collected
+			regions = new MappedByteBuffer[0];
+			mappedSize = 0;
+			fileChannel.close();
+		}
+	}
+
+	/**
+	 * Copies the bytes starting from the specified position of the file into
+	 * the destination.
+	 */
+	private int readFromMapping(ByteBuffer dst, long position) throws IOException {
+		long size = fileSize.get();
+		if (position >= size)
+			return -1;
+
+		long end = Math.min(position + dst.remaining(), size);
+
+		// The regions are published before the mapped size
+		long mappedSize = this.mappedSize;
+		MappedByteBuffer[] regions = this.regions;
+		if (end > mappedSize || (end - 1) / REGION_SIZE >= regions.length) {
+			regions = remap();
+			mappedSize = this.mappedSize;
+		}
+
+		// An append may have reserved space that is not written yet
+		end = Math.min(end, mappedSize);
+		if (position >= end)
+			return -1;
+
+		int readSize = 0;
+		while (position < end) {
+			int regionIdx = (int) (position / REGION_SIZE);
+			int offset = (int) (position % REGION_SIZE);
+			int length = (int) Math.min(end - position, REGION_SIZE - offset);
+
+			// Duplicate the region so that the readers do not share a position
+			ByteBuffer src = regions[regionIdx].duplicate();
+			src.position(offset);
+			src.limit(offset + length);
+			dst.put(src);
+
+			position += length;
+			readSize += length;
+		}
+		return readSize;
+	}
+
+	/**
+	 * Maps the part of the file which has not been mapped yet.
+	 */
+	private MappedByteBuffer[] remap() throws IOException {
+		synchronized (mappingLock) {
+			// Never map beyond the end of the file, or the file is extended
+			long size = fileChannel.size();
+			if (size <= mappedSize)
+				return regions;
+
+			int numRegions = (int) ((size + REGION_SIZE - 1) / REGION_SIZE);
+			MappedByteBuffer[] newRegions = Arrays.copyOf(regions, numRegions);
+
+			// Only the last region of the old mapping can be partial
+			int firstToMap = (int) (mappedSize / REGION_SIZE);
+			for (int i = firstToMap; i < numRegions; i++) {
+				long start = i * REGION_SIZE;
+				newRegions[i] = fileChannel.map(MapMode.READ_ONLY, start, Math.min(REGION_SIZE, size - start));
+			}
+
+			regions = newRegions;
+			mappedSize = size;
+			return newRegions;
+		}
+	}
+}
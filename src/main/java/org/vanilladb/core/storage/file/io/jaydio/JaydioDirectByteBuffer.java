@@ -24,10 +24,12 @@ import org.vanilladb.core.storage.file.io.IoBuffer;
 public class JaydioDirectByteBuffer implements IoBuffer {
 
 	private AlignedDirectByteBuffer byteBuffer;
+	private int alignment;
 	
 	public JaydioDirectByteBuffer(int capacity) {
-		byteBuffer = AlignedDirectByteBuffer
-				.allocate(DirectIoLib.getLibForPath(FileMgr.DB_FILES_DIR), capacity);
+		DirectIoLib lib = DirectIoLib.getLibForPath(FileMgr.DB_FILES_DIR);
+		byteBuffer = AlignedDirectByteBuffer.allocate(lib, capacity);
+		alignment = lib.blockSize();
 	}
 	
 	@Override
@@ -43,6 +45,13 @@ public class JaydioDirectByteBuffer implements IoBuffer {
 		byteBuffer.put(src);
 		return this;
 	}
+
+	@Override
+	public IoBuffer put(int position, byte[] src, int offset, int length) {
+		byteBuffer.position(position);
+		byteBuffer.put(src, offset, length);
+		return this;
+	}
 	
 	@Override
 	public void clear() {
@@ -54,6 +63,13 @@ public class JaydioDirectByteBuffer implements IoBuffer {
 		byteBuffer.rewind();
 	}
 
+	@Override
+	public void limit(int newLimit) {
+		// O_DIRECT only writes whole aligned blocks
+		int aligned = (newLimit + alignment - 1) / alignment * alignment;
+		byteBuffer.limit(Math.min(aligned, byteBuffer.capacity()));
+	}
+
 	@Override
 	public void close() {
 		byteBuffer.close();
@@ -67,6 +67,46 @@ public class JaydioDirectIoChannel implements IoChannel {
 		}
 	}
 
+	@Override
+	public long read(IoBuffer[] buffers, long position) throws IOException {
+		// Jaydio has no scattering read, so the buffers are read one by one
+		// under a single acquisition of the lock
+		lock.readLock().lock();
+		try {
+			long readSize = 0;
+			for (IoBuffer buffer : buffers) {
+				JaydioDirectByteBuffer jaydioBuffer = (JaydioDirectByteBuffer) buffer;
+				int n = fileChannel.read(jaydioBuffer.getAlignedDirectByteBuffer(), position + readSize);
+				if (n <= 0)
+					break;
+				readSize += n;
+			}
+			return readSize;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public long write(IoBuffer[] buffers, long position) throws IOException {
+		lock.writeLock().lock();
+		try {
+			long writeSize = 0;
+			for (IoBuffer buffer : buffers) {
+				JaydioDirectByteBuffer jaydioBuffer = (JaydioDirectByteBuffer) buffer;
+				writeSize += fileChannel.write(jaydioBuffer.getAlignedDirectByteBuffer(), position + writeSize);
+			}
+
+			// Check if we need to update the size
+			if (position + writeSize > fileSize)
+				fileSize = position + writeSize;
+
+			return writeSize;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
 	@Override
 	public long append(IoBuffer buffer) throws IOException {
 		lock.writeLock().lock();
@@ -468,8 +468,13 @@ public class BTreePage {
 	}
 
 	private void setVal(int offset, Constant val) {
-		LogSeqNum lsn = tx.recoveryMgr().logSetVal(currentBuff, offset, val);
-		currentBuff.setVal(offset, val, tx.getTransactionNumber(), lsn);
+		currentBuff.lockFlushing();
+		try {
+			LogSeqNum lsn = tx.recoveryMgr().logSetVal(currentBuff, offset, val);
+			currentBuff.setVal(offset, val, tx.getTransactionNumber(), lsn);
+		} finally {
+			currentBuff.unlockFlushing();
+		}
 	}
 
 	private void setValWithoutLogging(int offset, Constant val) {
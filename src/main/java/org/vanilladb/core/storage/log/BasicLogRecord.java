@@ -15,24 +15,38 @@
  *******************************************************************************/
 package org.vanilladb.core.storage.log;
 
+import static java.sql.Types.BIGINT;
+import static java.sql.Types.DOUBLE;
+import static java.sql.Types.INTEGER;
+import static java.sql.Types.VARCHAR;
+
+import org.vanilladb.core.sql.BigIntConstant;
 import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.DoubleConstant;
+import org.vanilladb.core.sql.IntegerConstant;
 import org.vanilladb.core.sql.Type;
+import org.vanilladb.core.sql.VarcharConstant;
 import org.vanilladb.core.storage.file.Page;
 
 /**
- * A log record located at a specified position of a specified page. The method
- * {@link #nextVal} reads the values sequentially but has no idea what values
- * are. Thus the client is responsible for knowing how many values are in the
- * log record, and what their types are.
+ * A log record located at a specified position of a specified page. The
+ * methods of this class read the values written by a {@link LogRecordBuilder}
+ * sequentially but have no idea what values are. Thus the client is
+ * responsible for knowing how many values are in the log record, and what
+ * their types are.
  */
 public class BasicLogRecord {
+	private static final int POINTER_SIZE = Page.maxSize(Type.INTEGER);
+
 	private LogSeqNum lsn;
-	private Page pg;
+	private byte[] bytes;
 	private int currentPos;
 
 	/**
 	 * A log record located at the specified position of the specified page.
 	 * This constructor is called exclusively by {@link LogIterator#next()}.
+	 * The bytes of the record are copied from the page at once, so the page
+	 * can be reused afterwards.
 	 * 
 	 * @param pg
 	 *            the page containing the log record
@@ -40,16 +54,36 @@ public class BasicLogRecord {
 	 *            the sequence number of the log record
 	 */
 	public BasicLogRecord(Page pg, LogSeqNum lsn) {
-		this.pg = pg;
 		this.lsn = lsn;
-		this.currentPos = (int) lsn.offset();
+		int start = (int) lsn.offset();
+
+		// The pointer before the record points to the one after it
+		int end = (Integer) pg.getVal(start - POINTER_SIZE, Type.INTEGER).asJavaVal() - POINTER_SIZE;
+		bytes = new byte[end - start];
+		pg.getBytes(start, bytes);
 	}
 
-	/**
-	 * Returns the next value of this log record.
-	 * 
-	 * @return the next value
-	 */
+	public int nextInt() {
+		long val = nextUnsigned();
+		return (int) ((val >>> 1) ^ -(val & 1));
+	}
+
+	public long nextLong() {
+		long val = nextUnsigned();
+		return (val >>> 1) ^ -(val & 1);
+	}
+
+	public String nextString() {
+		char[] chars = new char[(int) nextUnsigned()];
+		for (int i = 0; i < chars.length; i++)
+			chars[i] = (char) nextUnsigned();
+		return new String(chars);
+	}
+
+	public Type nextType() {
+		int sqlType = nextInt();
+		return Type.newInstance(sqlType, nextInt());
+	}
 
 	/**
 	 * Returns the next value of this log record.
@@ -59,9 +93,25 @@ public class BasicLogRecord {
 	 * @return the next value
 	 */
 	public Constant nextVal(Type type) {
-		Constant val = pg.getVal(currentPos, type);
-		currentPos += Page.size(val);
-		return val;
+		switch (type.getSqlType()) {
+		case INTEGER:
+			return new IntegerConstant(nextInt());
+		case BIGINT:
+			return new BigIntConstant(nextLong());
+		case DOUBLE:
+			long bits = 0;
+			for (int i = 0; i < 8; i++)
+				bits = (bits << 8) | (bytes[currentPos++] & 0xFF);
+			return new DoubleConstant(Double.longBitsToDouble(bits));
+		case VARCHAR:
+			return new VarcharConstant(nextString(), type);
+		}
+		throw new UnsupportedOperationException("Unspported SQL type: " + type.getSqlType());
+	}
+
+	public LogSeqNum nextLsn() {
+		long blkNum = nextLong();
+		return new LogSeqNum(blkNum, nextLong());
 	}
 
 	/**
@@ -72,4 +122,16 @@ public class BasicLogRecord {
 	public LogSeqNum getLSN() {
 		return lsn;
 	}
+
+	private long nextUnsigned() {
+		long val = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = bytes[currentPos++];
+			val |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0);
+		return val;
+	}
 }
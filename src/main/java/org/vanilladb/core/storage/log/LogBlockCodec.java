@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * Copyright 2016, 2026 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.log;
+
+import java.util.Arrays;
+
+/**
+ * A fast LZ77 codec for log blocks, using the block format of LZ4. The data
+ * is a sequence of tokens, each of which is followed by a run of literals
+ * and a match, which is a 2-byte offset back into the decoded data and an
+ * extended length. The last token only has literals.
+ * 
+ * <p>
+ * A log block is full of repeated file names, transaction numbers and field
+ * offsets, which the codec finds with a single hash probe per position.
+ * </p>
+ */
+class LogBlockCodec {
+	private static final int MIN_MATCH = 4, LAST_LITERALS = 5, MAX_OFFSET = 65535;
+	private static final int HASH_BITS = 12;
+
+	private int[] table = new int[1 << HASH_BITS];
+
+	/**
+	 * Compresses the source bytes into the destination array. The codec keeps
+	 * a hash table, so an instance cannot be shared by concurrent callers.
+	 * 
+	 * @param src
+	 *            the bytes to be compressed
+	 * @param srcLen
+	 *            the number of bytes to be compressed
+	 * @param dst
+	 *            the array to hold the compressed bytes
+	 * @return the number of compressed bytes, or -1 if they do not fit into
+	 *         the destination array
+	 */
+	int compress(byte[] src, int srcLen, byte[] dst) {
+		Arrays.fill(table, -1);
+		int anchor = 0, pos = 0, out = 0;
+		int matchLimit = srcLen - LAST_LITERALS;
+		while (pos < matchLimit - MIN_MATCH) {
+			int seq = readInt(src, pos);
+			int h = (seq * -1640531535) >>> (32 - HASH_BITS);
+			int ref = table[h];
+			table[h] = pos;
+			if (ref < 0 || pos - ref > MAX_OFFSET || readInt(src, ref) != seq) {
+				pos++;
+				continue;
+			}
+
+			int len = MIN_MATCH;
+			while (pos + len < matchLimit && src[ref + len] == src[pos + len])
+				len++;
+			out = writeSequence(src, anchor, pos - anchor, pos - ref, len, dst, out);
+			if (out < 0)
+				return -1;
+			pos += len;
+			anchor = pos;
+		}
+		return writeSequence(src, anchor, srcLen - anchor, 0, 0, dst, out);
+	}
+
+	/**
+	 * Decompresses the source bytes into the destination array.
+	 * 
+	 * @param src
+	 *            the compressed bytes
+	 * @param srcOff
+	 *            the offset of the first compressed byte
+	 * @param srcLen
+	 *            the number of compressed bytes
+	 * @param dst
+	 *            the array to hold the decompressed bytes
+	 * @return the number of decompressed bytes
+	 */
+	static int decompress(byte[] src, int srcOff, int srcLen, byte[] dst) {
+		int pos = srcOff, end = srcOff + srcLen, out = 0;
+		while (pos < end) {
+			int token = src[pos++] & 0xFF;
+
+			int literals = token >>> 4;
+			if (literals == 15) {
+				int b;
+				do {
+					b = src[pos++] & 0xFF;
+					literals += b;
+				} while (b == 255);
+			}
+			System.arraycopy(src, pos, dst, out, literals);
+			pos += literals;
+			out += literals;
+			if (pos >= end)
+				break;
+
+			int offset = (src[pos++] & 0xFF) | (src[pos++] & 0xFF) << 8;
+			int len = token & 15;
+			if (len == 15) {
+				int b;
+				do {
+					b = src[pos++] & 0xFF;
+					len += b;
+				} while (b == 255);
+			}
+			len += MIN_MATCH;
+
+			// The match may overlap the bytes it produces
+			int ref = out - offset;
+			for (int i = 0; i < len; i++)
+				dst[out++] = dst[ref++];
+		}
+		return out;
+	}
+
+	private static int writeSequence(byte[] src, int litOff, int literals, int offset, int len, byte[] dst,
+			int out) {
+		int need = 1 + literals + literals / 255 + 1 + (len > 0 ? 2 + len / 255 + 1 : 0);
+		if (out + need > dst.length)
+			return -1;
+
+		int tokenPos = out++;
+		int token = Math.min(literals, 15) << 4;
+		out = writeLength(literals, dst, out);
+		System.arraycopy(src, litOff, dst, out, literals);
+		out += literals;
+		if (len > 0) {
+			dst[out++] = (byte) offset;
+			dst[out++] = (byte) (offset >>> 8);
+			token |= Math.min(len - MIN_MATCH, 15);
+			out = writeLength(len - MIN_MATCH, dst, out);
+		}
+		dst[tokenPos] = (byte) token;
+		return out;
+	}
+
+	private static int writeLength(int len, byte[] dst, int out) {
+		if (len < 15)
+			return out;
+		len -= 15;
+		while (len >= 255) {
+			dst[out++] = (byte) 255;
+			len -= 255;
+		}
+		dst[out++] = (byte) len;
+		return out;
+	}
+
+	private static int readInt(byte[] b, int pos) {
+		return (b[pos] & 0xFF) | (b[pos + 1] & 0xFF) << 8 | (b[pos + 2] & 0xFF) << 16 | (b[pos + 3] & 0xFF) << 24;
+	}
+}
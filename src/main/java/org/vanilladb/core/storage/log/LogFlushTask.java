@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Copyright 2016, 2026 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.log;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.vanilladb.core.server.task.Task;
+
+/**
+ * The task flushes the log for the committing transactions in batches, so that
+ * a group of commits costs only one synchronous write of the log.
+ */
+public class LogFlushTask extends Task {
+	private static Logger logger = Logger.getLogger(LogFlushTask.class.getName());
+
+	private LogMgr logMgr;
+
+	public LogFlushTask(LogMgr logMgr) {
+		this.logMgr = logMgr;
+	}
+
+	@Override
+	public void run() {
+		logMgr.attachFlusher();
+		while (true) {
+			logMgr.awaitCommitters();
+			int batchSize = logMgr.flushCommitters();
+			if (logger.isLoggable(Level.FINEST))
+				logger.finest("the log flusher committed " + batchSize + " transactions");
+		}
+	}
+}
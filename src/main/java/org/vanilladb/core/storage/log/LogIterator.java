@@ -28,6 +28,7 @@ import org.vanilladb.core.storage.tx.recovery.ReversibleIterator;
 public class LogIterator implements ReversibleIterator<BasicLogRecord> {
 	// Optimization: store the size of pointer to other log record
 	private int pointerSize = Page.maxSize(INTEGER);
+	private LogSegments segments;
 	private BlockId blk;
 	private Page pg = new Page();
 	private int currentRec;
@@ -39,12 +40,15 @@ public class LogIterator implements ReversibleIterator<BasicLogRecord> {
 	 * last log record. This constructor is called exclusively by
 	 * {@link LogMgr#iterator()}.
 	 * 
+	 * @param segments
+	 *            the segments storing the log
 	 * @param blk
 	 *            the id of the last block of the log file
 	 */
-	public LogIterator(BlockId blk) {
+	public LogIterator(LogSegments segments, BlockId blk) {
+		this.segments = segments;
 		this.blk = this.endBlk = blk;
-		pg.read(blk);
+		segments.read(blk.number(), pg);
 		currentRec = (Integer) pg.getVal(LogMgr.LAST_POS, INTEGER).asJavaVal();
 	}
 
@@ -60,7 +64,7 @@ public class LogIterator implements ReversibleIterator<BasicLogRecord> {
 			currentRec = currentRec - pointerSize;
 			isForward = true;
 		}
-		return currentRec > 0 || blk.number() > 0;
+		return currentRec > 0 || blk.number() > segments.firstBlock();
 	}
 
 	/**
@@ -120,7 +124,7 @@ public class LogIterator implements ReversibleIterator<BasicLogRecord> {
 	 */
 	private void moveToNextBlock() {
 		blk = new BlockId(blk.fileName(), blk.number() - 1);
-		pg.read(blk);
+		segments.read(blk.number(), pg);
 		currentRec = (Integer) pg.getVal(LogMgr.LAST_POS, INTEGER).asJavaVal();
 	}
 
@@ -130,7 +134,7 @@ public class LogIterator implements ReversibleIterator<BasicLogRecord> {
 	 */
 	private void moveToPrevBlock() {
 		blk = new BlockId(blk.fileName(), blk.number() + 1);
-		pg.read(blk);
+		segments.read(blk.number(), pg);
 		currentRec = 0 + pointerSize;
 	}
 }
@@ -18,7 +18,16 @@ package org.vanilladb.core.storage.log;
 import static org.vanilladb.core.sql.Type.INTEGER;
 import static org.vanilladb.core.storage.file.Page.BLOCK_SIZE;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.vanilladb.core.server.VanillaDb;
@@ -32,10 +41,41 @@ import org.vanilladb.core.util.CoreProperties;
 
 /**
  * The low-level log manager. This log manager is responsible for writing log
- * records into a log file. A log record can be any sequence of integer and
- * string values. The log manager does not understand the meaning of these
- * values, which are written and read by the
+ * records into a log file. A log record can be any sequence of values encoded
+ * by a {@link LogRecordBuilder}. The log manager does not understand the
+ * meaning of these values, which are written and read by the
  * {@link org.vanilladb.core.storage.tx.recovery.RecoveryMgr recovery manager}.
+ * 
+ * <p>
+ * If a {@link LogFlushTask} is running for the manager, the flushes requested
+ * by committing transactions through {@link #flushCommit(LogSeqNum)} are
+ * grouped: the committers wait in a queue, and the flusher writes the log once
+ * for the whole batch. The other flushes, such as the ones before writing a
+ * dirty page, are never delayed.
+ * </p>
+ * 
+ * <p>
+ * The tail of the log is kept in a ring of pages. If a {@link LogWriterTask}
+ * is running for the manager, an appender simply moves to the next page of the
+ * ring when the current one is full, and the writer writes the full pages in
+ * the background. An appender blocks only if the ring is full of pages which
+ * have not been written yet.
+ * </p>
+ * 
+ * <p>
+ * Appenders do not hold a lock while writing their records. An appender
+ * reserves the space of its record, which also decides its LSN, by moving the
+ * tail of the current page atomically, and then copies the record into the
+ * reserved space in parallel with the others. Only the records before the
+ * first incomplete one are treated as a part of the log when the page is
+ * flushed.
+ * </p>
+ * 
+ * <p>
+ * The log is stored in {@link LogSegments segment files}. The segments which
+ * are no longer needed by the recovery can be removed by
+ * {@link #truncate(LogSeqNum)}, so the log does not grow without bound.
+ * </p>
  */
 public class LogMgr implements Iterable<BasicLogRecord> {
 	/**
@@ -43,28 +83,69 @@ public class LogMgr implements Iterable<BasicLogRecord> {
 	 * value of 0 means that the pointer is the first value in the page.
 	 */
 	public static final int LAST_POS = 0;
+	/**
+	 * The size of the largest record that fits in an empty block, leaving
+	 * room for the pointers around it.
+	 */
+	public static final int MAX_RECORD_SIZE = BLOCK_SIZE - Page.maxSize(INTEGER) * 4 - 1;
 	public static final String DEFAULT_LOG_FILE;
+	private static final long GROUP_COMMIT_MAX_DELAY;
+	private static final int GROUP_COMMIT_MAX_BATCH;
+	private static final int LOG_BUFFER_PAGES;
 
 	// Optimization: store the size of pointer to other log record
 	private int pointerSize = Page.maxSize(INTEGER);
-	private Page myPage = new Page();
+	private Page[] ring = new Page[LOG_BUFFER_PAGES];
+	// The LSN of the last record in each full page of the ring
+	private LogSeqNum[] lastLsnOfPages = new LogSeqNum[LOG_BUFFER_PAGES];
+	// The end of each complete record in each page, indexed by its start
+	private AtomicIntegerArray[] recordEnds = new AtomicIntegerArray[LOG_BUFFER_PAGES];
+	private Page myPage;
 	private BlockId currentBlk;
-	private int currentPos;
-	private LogSeqNum lastLsn = LogSeqNum.DEFAULT_VALUE;
-	private LogSeqNum lastFlushedLsn = LogSeqNum.DEFAULT_VALUE;
+	// The block number and the end of the reserved space in the current page
+	private final AtomicLong tail = new AtomicLong();
+	// The end of the complete records from the start of the current page
+	private int completedPos;
+	private int lastCompletedRec;
+	private volatile LogSeqNum lastFlushedLsn = LogSeqNum.DEFAULT_VALUE;
+	// The number of the callers that keep the segments from being removed
+	private int truncationHolds;
 
 	private final Lock logMgrLock = new ReentrantLock();
 
+	// For writing the full pages asynchronously
+	private Thread writer;
+	private final Condition pagesFilled = logMgrLock.newCondition();
+	private final Condition pagesWritten = logMgrLock.newCondition();
+	// The blocks before this one have been written and will not change
+	private long nextBlkToWrite;
+	private boolean writing;
+	private long writingFrom;
+
+	// For group commit
+	private volatile Thread flusher;
+	private final Queue<Thread> committers = new ConcurrentLinkedQueue<Thread>();
+	private final AtomicInteger numCommitters = new AtomicInteger();
+
 	static {
 		DEFAULT_LOG_FILE = CoreProperties.getLoader().getPropertyAsString(LogMgr.class.getName() + ".LOG_FILE",
 				"vanilladb.log");
+		// in microseconds
+		GROUP_COMMIT_MAX_DELAY = CoreProperties.getLoader()
+				.getPropertyAsLong(LogMgr.class.getName() + ".GROUP_COMMIT_MAX_DELAY", 500);
+		GROUP_COMMIT_MAX_BATCH = CoreProperties.getLoader()
+				.getPropertyAsInteger(LogMgr.class.getName() + ".GROUP_COMMIT_MAX_BATCH", 64);
+		LOG_BUFFER_PAGES = Math.max(1,
+				CoreProperties.getLoader().getPropertyAsInteger(LogMgr.class.getName() + ".LOG_BUFFER_PAGES", 16));
 	}
 	
 	private String logFile;
+	private LogSegments segments;
 
 	/**
 	 * Creates the manager for the specified log file. If the log file does not
-	 * yet exist, it is created with an empty first block. This constructor
+	 * yet exist, it is created with an empty first block. The log is continued
+	 * from the last block of its segments otherwise. This constructor
 	 * depends on a {@link FileMgr} object that it gets from the method
 	 * {@link VanillaDb#fileMgr()}. That object is created during system
 	 * initialization. Thus this constructor cannot be called until
@@ -76,15 +157,34 @@ public class LogMgr implements Iterable<BasicLogRecord> {
 	}
 	
 	public LogMgr(String logFileName) {
+		this(logFileName, LogSegments.COMPRESS_BLOCKS);
+	}
+
+	/**
+	 * Creates the manager for the specified log file, which compresses the log
+	 * blocks or not regardless of {@link LogSegments#COMPRESS_BLOCKS}.
+	 * 
+	 * @param logFileName
+	 *            the name of the log file
+	 * @param compressBlocks
+	 *            whether to compress the log blocks before writing them
+	 */
+	public LogMgr(String logFileName, boolean compressBlocks) {
 		logFile = logFileName;
-		long logsize = VanillaDb.fileMgr().size(logFile);
-		if (logsize == 0)
-			appendNewBlock();
+		for (int i = 0; i < ring.length; i++)
+			ring[i] = new Page();
+
+		segments = new LogSegments(logFile, compressBlocks);
+		long logsize = segments.size();
+		if (logsize <= segments.firstBlock())
+			appendNewBlock(logsize);
 		else {
 			currentBlk = new BlockId(logFile, logsize - 1);
-			myPage.read(currentBlk);
-			currentPos = getLastRecordPosition() + pointerSize * 2;
+			myPage = ring[slotOf(currentBlk.number())];
+			segments.read(currentBlk.number(), myPage);
+			openPage(getLastRecordPosition() + pointerSize * 2);
 		}
+		nextBlkToWrite = currentBlk.number();
 	}
 
 	/**
@@ -95,6 +195,10 @@ public class LogMgr implements Iterable<BasicLogRecord> {
 	 *            the LSN of a log record
 	 */
 	public void flush(LogSeqNum lsn) {
+		// The record may have been written with a full page or a batch
+		if (lsn.compareTo(lastFlushedLsn) < 0)
+			return;
+
 		logMgrLock.lock();
 		try {
 			if (lsn.compareTo(lastFlushedLsn) >= 0)
@@ -104,6 +208,50 @@ public class LogMgr implements Iterable<BasicLogRecord> {
 		}
 	}
 
+	/**
+	 * Ensures that the commit record of a transaction has been written to
+	 * disk. If a {@link LogFlushTask} is running, the caller joins the next
+	 * batch of committers instead of writing the log by itself.
+	 * 
+	 * @param lsn
+	 *            the LSN of the commit record
+	 */
+	public void flushCommit(LogSeqNum lsn) {
+		Thread flusher = this.flusher;
+		if (flusher == null) {
+			flush(lsn);
+			return;
+		}
+
+		// The record may have been written with a full page or a batch
+		if (lsn.compareTo(lastFlushedLsn) <= 0)
+			return;
+
+		// Join the next batch, waking up the flusher if we start a batch or
+		// fill it up
+		Thread self = Thread.currentThread();
+		int num = numCommitters.incrementAndGet();
+		committers.add(self);
+		if (num == 1 || num >= GROUP_COMMIT_MAX_BATCH)
+			LockSupport.unpark(flusher);
+
+		while (lsn.compareTo(lastFlushedLsn) > 0) {
+			LockSupport.park(this);
+
+			// An interrupted thread cannot park, so it flushes by itself
+			if (Thread.interrupted()) {
+				logMgrLock.lock();
+				try {
+					if (lsn.compareTo(lastFlushedLsn) > 0)
+						flush();
+				} finally {
+					logMgrLock.unlock();
+				}
+				self.interrupt();
+			}
+		}
+	}
+
 	/**
 	 * Returns an iterator for the log records, which will be returned in
 	 * reverse order starting with the most recent.
@@ -115,49 +263,192 @@ public class LogMgr implements Iterable<BasicLogRecord> {
 		logMgrLock.lock();
 		try {
 			flush();
-			return new LogIterator(currentBlk);
+			return new LogIterator(segments, currentBlk);
 		} finally {
 			logMgrLock.unlock();
 		}
 	}
 
 	/**
-	 * Appends a log record to the file. The record contains an arbitrary array
-	 * of values. The method also writes an integer to the end of each log
-	 * record whose value is the offset of the corresponding integer for the
-	 * previous log record. These integers allow log records to be read in
-	 * reverse order.
+	 * Appends a log record containing an arbitrary array of values to the
+	 * file.
 	 * 
 	 * @param rec
 	 *            the list of values
 	 * @return the LSN of the log record
+	 * @see #append(LogRecordBuilder)
 	 */
 	public LogSeqNum append(Constant[] rec) {
+		LogRecordBuilder builder = LogRecordBuilder.forCurrentThread();
+		for (Constant c : rec)
+			builder.putVal(c);
+		return append(builder);
+	}
+
+	/**
+	 * Appends the encoded log record to the file. The method also writes an
+	 * integer to the end of each log record whose value is the offset of the
+	 * corresponding integer for the previous log record. These integers allow
+	 * log records to be read in reverse order.
+	 * 
+	 * @param rec
+	 *            the encoded log record
+	 * @return the LSN of the log record
+	 * @throws IllegalArgumentException
+	 *             if the record is larger than {@link #MAX_RECORD_SIZE}
+	 */
+	public LogSeqNum append(LogRecordBuilder rec) {
+		// A record that does not fit in an empty block would never find one
+		if (rec.size() > MAX_RECORD_SIZE)
+			throw new IllegalArgumentException("log record too large: " + rec.size() + " bytes");
+
+		// two integers that point to the previous and next log records
+		int recsize = rec.size() + pointerSize * 2;
+
+		while (true) {
+			// Reserve the space, which decides the LSN
+			long t = tail.get();
+			int pos = positionOf(t);
+			if (pos + recsize < BLOCK_SIZE) {
+				if (tail.compareAndSet(t, t + recsize)) {
+					long blkNum = blockOf(t);
+					copyRecord(blkNum, pos, rec);
+					return new LogSeqNum(blkNum, pos);
+				}
+			} else {
+				// if the log record doesn't fit, move to the next block
+				moveToNextBlock(recsize);
+			}
+		}
+	}
+
+	/**
+	 * Removes the segments of the log which contain only the records before the
+	 * specified LSN. The recovery never needs those records if the LSN is the
+	 * redo point of the last checkpoint. The segments which have not been
+	 * written completely are always kept. Nothing is removed while the
+	 * truncation is suspended.
+	 * 
+	 * @param lsn
+	 *            the LSN of the oldest record to be kept
+	 * @return the number of segments removed
+	 * @see #suspendTruncation()
+	 */
+	public int truncate(LogSeqNum lsn) {
 		logMgrLock.lock();
 		try {
-			// two integers that point to the previous and next log records
-			int recsize = pointerSize * 2;
-			for (Constant c : rec)
-				recsize += Page.size(c);
+			if (truncationHolds > 0)
+				return 0;
+			return segments.removeBefore(Math.min(lsn.blkNum(), nextBlkToWrite));
+		} finally {
+			logMgrLock.unlock();
+		}
+	}
 
-			// if the log record doesn't fit, move to the next block
-			if (currentPos + recsize >= BLOCK_SIZE) {
-				flush();
-				appendNewBlock();
-			}
-			
-			// Get the current LSN
-			LogSeqNum lsn = currentLSN();
-			
-			// Append a record
-			for (Constant c : rec)
-				appendVal(c);
-			finalizeRecord();
-			
-			// Remember this LSN
-			lastLsn = lsn;
-			
-			return lsn;
+	/**
+	 * Keeps the segments of the log from being removed until
+	 * {@link #resumeTruncation()} is called, so the log can be read while the
+	 * checkpoints go on.
+	 */
+	public void suspendTruncation() {
+		logMgrLock.lock();
+		try {
+			truncationHolds++;
+		} finally {
+			logMgrLock.unlock();
+		}
+	}
+
+	/**
+	 * Allows the segments of the log to be removed again.
+	 * 
+	 * @see #suspendTruncation()
+	 */
+	public void resumeTruncation() {
+		logMgrLock.lock();
+		try {
+			truncationHolds--;
+		} finally {
+			logMgrLock.unlock();
+		}
+	}
+
+	/**
+	 * Writes all the records appended so far to disk. The LSN returned is the
+	 * end of the written records: the records appended before the call have
+	 * smaller LSNs, and the records appended later have greater ones.
+	 * 
+	 * @return the LSN at the end of the log
+	 */
+	public LogSeqNum flushAll() {
+		logMgrLock.lock();
+		try {
+			long t = tail.get();
+			flush();
+			return new LogSeqNum(blockOf(t), positionOf(t));
+		} finally {
+			logMgrLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of the first block kept in the log.
+	 * 
+	 * @return the number of the first block
+	 */
+	public long firstBlock() {
+		return segments.firstBlock();
+	}
+
+	/**
+	 * Reads a block of the log which has been written to disk. The caller
+	 * does not have to care about the writer, which may be writing the same
+	 * block at the moment.
+	 * 
+	 * @param blkNum
+	 *            the number of a log block
+	 * @param page
+	 *            the page to be populated
+	 */
+	public void read(long blkNum, Page page) {
+		logMgrLock.lock();
+		try {
+			while (writing)
+				pagesWritten.awaitUninterruptibly();
+			segments.read(blkNum, page);
+		} finally {
+			logMgrLock.unlock();
+		}
+	}
+
+	/**
+	 * Discards the records after the specified one, so the next record is
+	 * appended right after it. The LSN must be the LSN of a record in the
+	 * log. This is used to bring a restored database back to a point in
+	 * time, before any transaction modifies the database.
+	 * 
+	 * @param lsn
+	 *            the LSN of the last record to be kept
+	 */
+	public void cut(LogSeqNum lsn) {
+		logMgrLock.lock();
+		try {
+			flush();
+
+			Page page = ring[slotOf(lsn.blkNum())];
+			segments.read(lsn.blkNum(), page);
+			// The pointer in front of a record points to its end
+			int end = (Integer) page.getVal((int) lsn.offset() - pointerSize, INTEGER).asJavaVal() - pointerSize;
+			page.setVal(LAST_POS, new IntegerConstant(end));
+			segments.cutAfter(lsn.blkNum(), page);
+
+			for (int i = 0; i < lastLsnOfPages.length; i++)
+				lastLsnOfPages[i] = null;
+			myPage = page;
+			currentBlk = new BlockId(logFile, lsn.blkNum());
+			openPage(end + pointerSize * 2);
+			nextBlkToWrite = currentBlk.number();
+			lastFlushedLsn = lsn;
 		} finally {
 			logMgrLock.unlock();
 		}
@@ -169,90 +460,328 @@ public class LogMgr implements Iterable<BasicLogRecord> {
 	public void removeAndCreateNewLog() {
 		logMgrLock.lock();
 		try {
-			VanillaDb.fileMgr().delete(logFile);
+			// The writer must not write the old blocks to the new file
+			while (writing)
+				pagesWritten.awaitUninterruptibly();
+
+			segments.removeAll();
 			
 			// Reset all the data
-			lastLsn = LogSeqNum.DEFAULT_VALUE;
 			lastFlushedLsn = LogSeqNum.DEFAULT_VALUE;
+			for (int i = 0; i < lastLsnOfPages.length; i++)
+				lastLsnOfPages[i] = null;
 			
-			// 'myPage', 'currentBlk' and 'currentPos' are reset in this method
-			appendNewBlock();
+			// 'myPage', 'currentBlk' and the tail are reset in this method
+			appendNewBlock(0);
+			nextBlkToWrite = currentBlk.number();
 		} finally {
 			logMgrLock.unlock();
 		}
 	}
 
 	/**
-	 * Adds the specified value to the page at the position denoted by
-	 * currentPos. Then increments currentPos by the size of the value.
+	 * Makes the calling thread the flusher of the group commits. The flushes
+	 * requested after this call are served by the flusher.
+	 */
+	void attachFlusher() {
+		flusher = Thread.currentThread();
+	}
+
+	/**
+	 * Waits until a committer asks for a flush, and then gives the other
+	 * committers a chance to join the batch. The wait for the others ends when
+	 * the batch is full or the maximum delay has passed. A lone committer is
+	 * not delayed, since the committers arriving during its flush form the
+	 * next batch anyway.
+	 */
+	void awaitCommitters() {
+		while (numCommitters.get() == 0)
+			LockSupport.park(this);
+		if (numCommitters.get() == 1)
+			return;
+
+		long deadline = System.nanoTime() + GROUP_COMMIT_MAX_DELAY * 1000;
+		long remaining;
+		while (numCommitters.get() < GROUP_COMMIT_MAX_BATCH && (remaining = deadline - System.nanoTime()) > 0)
+			LockSupport.parkNanos(this, remaining);
+	}
+
+	/**
+	 * Writes the log once for all the committers waiting so far, and then wakes
+	 * them up.
 	 * 
-	 * @param val
-	 *            the value to be added to the page
+	 * @return the number of committers in the batch
 	 */
-	private void appendVal(Constant val) {
-		myPage.setVal(currentPos, val);
-		currentPos += Page.size(val);
+	int flushCommitters() {
+		List<Thread> batch = new ArrayList<Thread>();
+		Thread committer;
+		while ((committer = committers.poll()) != null)
+			batch.add(committer);
+		if (batch.isEmpty())
+			return 0;
+		numCommitters.addAndGet(-batch.size());
+
+		logMgrLock.lock();
+		try {
+			flush();
+		} finally {
+			logMgrLock.unlock();
+		}
+
+		for (Thread t : batch)
+			LockSupport.unpark(t);
+		return batch.size();
 	}
 
 	/**
-	 * Returns the LSN of the most recent log record. As implemented, the LSN is
-	 * the block number and the offset in the block where the record is stored.
+	 * Makes the calling thread the writer of the full log pages. From now on,
+	 * the appenders leave the full pages in the ring for the writer.
+	 */
+	void attachWriter() {
+		logMgrLock.lock();
+		try {
+			writer = Thread.currentThread();
+		} finally {
+			logMgrLock.unlock();
+		}
+	}
+
+	/**
+	 * Waits until there are full pages in the ring, and then writes them to the
+	 * log file with one sequential write.
 	 * 
-	 * @return the LSN of the most recent log record
+	 * @return the number of pages written
+	 */
+	int writeFullPages() {
+		long first, end;
+		Page[] pages;
+		logMgrLock.lock();
+		try {
+			while (nextBlkToWrite >= currentBlk.number())
+				pagesFilled.awaitUninterruptibly();
+
+			// The full pages are no longer modified by the appenders
+			first = nextBlkToWrite;
+			end = currentBlk.number();
+			pages = pagesOf(first, end);
+			writing = true;
+			writingFrom = first;
+		} finally {
+			logMgrLock.unlock();
+		}
+
+		try {
+			segments.write(first, pages);
+		} finally {
+			logMgrLock.lock();
+			try {
+				writing = false;
+				if (end > nextBlkToWrite) {
+					nextBlkToWrite = end;
+					LogSeqNum lsn = lastLsnOfPages[slotOf(end - 1)];
+					if (lsn != null && lsn.compareTo(lastFlushedLsn) > 0)
+						lastFlushedLsn = lsn;
+				}
+				pagesWritten.signalAll();
+			} finally {
+				logMgrLock.unlock();
+			}
+		}
+		return pages.length;
+	}
+
+	/**
+	 * Copies a record into the space reserved for it, and links the record to
+	 * the previous one in the page.
+	 */
+	private void copyRecord(long blkNum, int pos, LogRecordBuilder rec) {
+		int slot = slotOf(blkNum);
+		Page page = ring[slot];
+		page.setBytes(pos, rec.bytes(), rec.size());
+		int offset = pos + rec.size();
+
+		// The previous record ends right before this record, and the first
+		// record points back to the start of the page
+		page.setVal(offset, new IntegerConstant(pos - pointerSize * 2));
+		page.setVal(pos - pointerSize, new IntegerConstant(offset + pointerSize));
+
+		// The next pointer is set by the next record, or when the page is full
+		recordEnds[slot].set(pos, offset + pointerSize * 2);
+	}
+
+	/**
+	 * Closes the current page, which does not have enough space for a record
+	 * of the specified size, and moves to the next block.
 	 */
-	private LogSeqNum currentLSN() {
-		return new LogSeqNum(currentBlk.number(), currentPos);
+	private void moveToNextBlock(int recsize) {
+		logMgrLock.lock();
+		try {
+			long t = tail.get();
+			while (positionOf(t) < BLOCK_SIZE) {
+				// Another appender may have moved to the next block
+				if (positionOf(t) + recsize < BLOCK_SIZE)
+					return;
+
+				// Stop others from reserving the rest of the page
+				if (tail.compareAndSet(t, closedTail(t))) {
+					finishPage(positionOf(t));
+					break;
+				}
+				t = tail.get();
+			}
+
+			while (positionOf(tail.get()) == BLOCK_SIZE) {
+				if (writer == null) {
+					flush();
+					appendNewBlock(currentBlk.number() + 1);
+				} else if (isWritten(currentBlk.number() + 1 - ring.length)) {
+					// The page of the oldest block in the ring can be reused
+					appendNewBlock(currentBlk.number() + 1);
+					pagesFilled.signal();
+				} else {
+					// Wait for the writer, and then check again since another
+					// appender may have moved to the next block
+					pagesFilled.signal();
+					pagesWritten.awaitUninterruptibly();
+				}
+			}
+		} finally {
+			logMgrLock.unlock();
+		}
+	}
+
+	/**
+	 * Waits for the records reserved in the closed page, and then completes
+	 * the pointers in the page.
+	 */
+	private void finishPage(int end) {
+		waitForRecords(end);
+		if (lastCompletedRec >= 0) {
+			setLastRecordPosition(end - pointerSize * 2);
+			myPage.setVal(end - pointerSize, new IntegerConstant(LAST_POS + pointerSize));
+			lastLsnOfPages[slotOf(currentBlk.number())] = new LogSeqNum(currentBlk.number(), lastCompletedRec);
+		}
+	}
+
+	/**
+	 * Waits until the records in the current page are complete up to the
+	 * specified position. The appenders copy their records without the lock,
+	 * so they finish soon.
+	 */
+	private void waitForRecords(int end) {
+		AtomicIntegerArray ends = recordEnds[slotOf(currentBlk.number())];
+		while (true) {
+			int recEnd;
+			while (completedPos < BLOCK_SIZE && (recEnd = ends.get(completedPos)) != 0) {
+				lastCompletedRec = completedPos;
+				completedPos = recEnd;
+			}
+			if (completedPos >= end)
+				return;
+			Thread.yield();
+		}
 	}
 
 	/**
-	 * Writes the current page to the log file.
+	 * Writes the current page, along with the full pages that have not been
+	 * written yet, to the log file.
 	 */
 	private void flush() {
-		myPage.write(currentBlk);
-		lastFlushedLsn = lastLsn;
+		// The pages being written by the writer cannot be shared, since a
+		// write moves the positions of their buffers
+		while (writing)
+			pagesWritten.awaitUninterruptibly();
+
+		// Include all the records reserved so far, unless the page is closed
+		// and finished already
+		int end = positionOf(tail.get());
+		if (end < BLOCK_SIZE) {
+			waitForRecords(end);
+			if (lastCompletedRec >= 0)
+				setLastRecordPosition(completedPos - pointerSize * 2);
+		}
+
+		long first = nextBlkToWrite;
+		if (first == currentBlk.number())
+			segments.write(first, myPage);
+		else {
+			// Keep the appenders from moving the position of the current page
+			synchronized (myPage) {
+				segments.write(first, pagesOf(first, currentBlk.number() + 1));
+			}
+		}
+		nextBlkToWrite = currentBlk.number();
+
+		LogSeqNum lsn = null;
+		if (lastCompletedRec >= 0)
+			lsn = new LogSeqNum(currentBlk.number(), lastCompletedRec);
+		else if (currentBlk.number() > 0)
+			lsn = lastLsnOfPages[slotOf(currentBlk.number() - 1)];
+		if (lsn != null && lsn.compareTo(lastFlushedLsn) > 0)
+			lastFlushedLsn = lsn;
+		pagesWritten.signalAll();
 	}
 
 	/**
-	 * Clear the current page, and append it to the log file.
+	 * Moves to the page of the ring for the specified block, and clears the
+	 * page. The block is written to its segment when the page is flushed.
 	 */
-	private void appendNewBlock() {
+	private void appendNewBlock(long blkNum) {
+		myPage = ring[slotOf(blkNum)];
 		setLastRecordPosition(0);
-		currentPos = pointerSize * 2;
-		currentBlk = myPage.append(logFile);
+		currentBlk = new BlockId(logFile, blkNum);
+		openPage(pointerSize * 2);
 	}
 
 	/**
-	 * Sets up a circular chain of pointers to the records in the page. There is
-	 * an integer added to the end of each log record whose value is the offset
-	 * of the previous log record. The first four bytes of the page contain an
-	 * integer whose value is the offset of the integer for the last log record
-	 * in the page.
+	 * Lets the appenders reserve space in the current page from the specified
+	 * position.
 	 */
-	private void finalizeRecord() {
-		myPage.setVal(currentPos, new IntegerConstant(getLastRecordPosition()));
-		setPreviousNextRecordPosition(currentPos + pointerSize);
-		setLastRecordPosition(currentPos);
-		currentPos += pointerSize;
-		setNextRecordPosition(currentPos);
+	private void openPage(int pos) {
+		recordEnds[slotOf(currentBlk.number())] = new AtomicIntegerArray(BLOCK_SIZE);
+		completedPos = pos;
+		lastCompletedRec = -1;
+		tail.set((currentBlk.number() << 32) | pos);
+	}
 
-		// leave for next pointer
-		currentPos += pointerSize;
+	private static long blockOf(long tail) {
+		return tail >>> 32;
 	}
 
-	private int getLastRecordPosition() {
-		return (Integer) myPage.getVal(LAST_POS, INTEGER).asJavaVal();
+	private static int positionOf(long tail) {
+		return (int) tail;
 	}
 
-	private void setLastRecordPosition(int pos) {
-		myPage.setVal(LAST_POS, new IntegerConstant(pos));
+	private static long closedTail(long tail) {
+		return (tail & 0xFFFFFFFF00000000L) | BLOCK_SIZE;
 	}
 
-	private void setNextRecordPosition(int pos) {
-		myPage.setVal(pos, new IntegerConstant(LAST_POS + pointerSize));
+	/**
+	 * Checks if the specified block has been written and is not being written
+	 * by the writer, so its page in the ring can be reused.
+	 */
+	private boolean isWritten(long blkNum) {
+		if (blkNum < 0)
+			return true;
+		return blkNum < nextBlkToWrite && !(writing && blkNum >= writingFrom);
+	}
+
+	private int slotOf(long blkNum) {
+		return (int) (blkNum % ring.length);
+	}
+
+	private Page[] pagesOf(long startBlk, long endBlk) {
+		Page[] pages = new Page[(int) (endBlk - startBlk)];
+		for (int i = 0; i < pages.length; i++)
+			pages[i] = ring[slotOf(startBlk + i)];
+		return pages;
 	}
 
-	private void setPreviousNextRecordPosition(int pos) {
-		int lastPos = (Integer) myPage.getVal(LAST_POS, INTEGER).asJavaVal();
-		myPage.setVal(lastPos + pointerSize, new IntegerConstant(pos));
+	private int getLastRecordPosition() {
+		return (Integer) myPage.getVal(LAST_POS, INTEGER).asJavaVal();
+	}
+
+	private void setLastRecordPosition(int pos) {
+		myPage.setVal(LAST_POS, new IntegerConstant(pos));
 	}
 }
@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright 2016, 2026 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.log;
+
+import static java.sql.Types.BIGINT;
+import static java.sql.Types.DOUBLE;
+import static java.sql.Types.INTEGER;
+import static java.sql.Types.VARCHAR;
+
+import java.util.Arrays;
+
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.Type;
+
+/**
+ * Encodes the values of a log record into a compact binary form, which is
+ * appended to the log by {@link LogMgr#append(LogRecordBuilder)} and decoded
+ * by the methods of {@link BasicLogRecord} in the same order.
+ * 
+ * <p>
+ * Integers are written as zig-zag varints, so the numbers that are usually
+ * small, such as operation IDs, transaction numbers, block numbers and
+ * offsets, take only one or two bytes. A string is written as its length
+ * followed by its characters, each of which takes one byte if it is an ASCII
+ * character.
+ * </p>
+ * 
+ * <p>
+ * The builder of each thread is reused by the records the thread appends, so
+ * encoding a record does not allocate anything once the builder is large
+ * enough.
+ * </p>
+ */
+public class LogRecordBuilder {
+	/**
+	 * The maximum number of bytes taken by an integer or a long.
+	 */
+	public static final int MAX_VAR_LONG_SIZE = 10;
+
+	private static final ThreadLocal<LogRecordBuilder> builders = new ThreadLocal<LogRecordBuilder>() {
+		@Override
+		protected LogRecordBuilder initialValue() {
+			return new LogRecordBuilder();
+		}
+	};
+
+	/**
+	 * Returns the empty builder of the calling thread. The builder must not be
+	 * used any more once the record has been appended to the log.
+	 * 
+	 * @return the builder of the calling thread
+	 */
+	public static LogRecordBuilder forCurrentThread() {
+		LogRecordBuilder builder = builders.get();
+		builder.size = 0;
+		return builder;
+	}
+
+	/**
+	 * Returns the maximum number of bytes taken by the specified string.
+	 * 
+	 * @param s
+	 *            the string
+	 * @return the maximum number of bytes
+	 */
+	public static int maxSize(String s) {
+		return 5 + 3 * s.length();
+	}
+
+	private byte[] bytes = new byte[64];
+	private int size;
+
+	public LogRecordBuilder putInt(int val) {
+		putUnsigned(((long) val << 1) ^ (val >> 31));
+		return this;
+	}
+
+	public LogRecordBuilder putLong(long val) {
+		putUnsigned((val << 1) ^ (val >> 63));
+		return this;
+	}
+
+	public LogRecordBuilder putString(String val) {
+		int len = val.length();
+		putUnsigned(len);
+		ensureCapacity(3 * len);
+		for (int i = 0; i < len; i++)
+			putUnsigned(val.charAt(i));
+		return this;
+	}
+
+	public LogRecordBuilder putType(Type type) {
+		putInt(type.getSqlType());
+		putInt(type.getArgument());
+		return this;
+	}
+
+	/**
+	 * Appends a value. The type of the value is not written, so it must be
+	 * known when the value is read back by {@link BasicLogRecord#nextVal(Type)}.
+	 * 
+	 * @param val
+	 *            the value
+	 * @return this builder
+	 */
+	public LogRecordBuilder putVal(Constant val) {
+		switch (val.getType().getSqlType()) {
+		case INTEGER:
+			return putInt((Integer) val.asJavaVal());
+		case BIGINT:
+			return putLong((Long) val.asJavaVal());
+		case DOUBLE:
+			long bits = Double.doubleToRawLongBits((Double) val.asJavaVal());
+			ensureCapacity(8);
+			for (int shift = 56; shift >= 0; shift -= 8)
+				bytes[size++] = (byte) (bits >>> shift);
+			return this;
+		case VARCHAR:
+			return putString((String) val.asJavaVal());
+		}
+		throw new UnsupportedOperationException("Unspported SQL type: " + val.getType().getSqlType());
+	}
+
+	public LogRecordBuilder putLsn(LogSeqNum lsn) {
+		putLong(lsn.blkNum());
+		putLong(lsn.offset());
+		return this;
+	}
+
+	/**
+	 * Returns the number of bytes of the record built so far.
+	 * 
+	 * @return the size of the record
+	 */
+	public int size() {
+		return size;
+	}
+
+	byte[] bytes() {
+		return bytes;
+	}
+
+	private void putUnsigned(long val) {
+		ensureCapacity(MAX_VAR_LONG_SIZE);
+		while ((val & ~0x7FL) != 0) {
+			bytes[size++] = (byte) ((val & 0x7F) | 0x80);
+			val >>>= 7;
+		}
+		bytes[size++] = (byte) val;
+	}
+
+	private void ensureCapacity(int more) {
+		if (size + more > bytes.length)
+			bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + more));
+	}
+}
@@ -0,0 +1,419 @@
+/*******************************************************************************
+ * Copyright 2016, 2026 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.log;
+
+import static org.vanilladb.core.sql.Type.INTEGER;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.file.FileMgr;
+import org.vanilladb.core.storage.file.Page;
+import org.vanilladb.core.util.CoreProperties;
+
+/**
+ * The segment files of a log. The blocks of a log are numbered as if the log
+ * were a single file, and every {@link #SEGMENT_SIZE} consecutive blocks are
+ * stored in a segment file named after the log and the number of the segment.
+ * Thus the segments holding only old blocks can be removed without changing
+ * the numbers of the other blocks, which are a part of the LSNs.
+ * 
+ * <p>
+ * A removed segment is moved to the archive directory if one is given, so the
+ * log can still be replayed from an older backup. Otherwise, it is deleted.
+ * </p>
+ * 
+ * <p>
+ * The version of the record format is kept in a header file next to the
+ * segments, which is written when the log is created. A log written in
+ * another format, including the single-file log of the earlier versions that
+ * has no header, is rejected when it is opened. To upgrade, recover the
+ * database with the version that wrote the log, take a checkpoint with no
+ * active transaction, and then remove the log files.
+ * </p>
+ * 
+ * <p>
+ * If the compression is turned on, e.g., by {@link #COMPRESS_BLOCKS}, the
+ * records of each block are compressed before they are written, and only the
+ * head of the block holding the compressed bytes is written. Since the block
+ * keeps its position in the segment, the LSNs are not changed. A compressed
+ * block starts with the negative of its compressed size, which tells it apart
+ * from an uncompressed block, so the log can be read no matter the option was
+ * set or not when it was written.
+ * </p>
+ */
+public class LogSegments {
+	private static Logger logger = Logger.getLogger(LogSegments.class.getName());
+
+	/**
+	 * The number of blocks in a segment.
+	 */
+	public static final int SEGMENT_SIZE;
+	private static final String ARCHIVE_DIR;
+
+	/**
+	 * Whether to compress the log blocks before writing them.
+	 */
+	public static final boolean COMPRESS_BLOCKS;
+	private static final int SECTOR_SIZE = 512;
+	private static final int HEADER_SIZE = Page.maxSize(INTEGER);
+
+	/**
+	 * The version of the log format. The version 1 is the single-file log
+	 * whose records are written value by value, and the version 2 encodes the
+	 * records in the compact binary form of {@link LogRecordBuilder}.
+	 */
+	public static final int FORMAT_VERSION = 2;
+	private static final int FORMAT_MAGIC = 0x56444c47;
+
+	static {
+		SEGMENT_SIZE = Math.max(1,
+				CoreProperties.getLoader().getPropertyAsInteger(LogSegments.class.getName() + ".SEGMENT_SIZE", 4096));
+		ARCHIVE_DIR = CoreProperties.getLoader().getPropertyAsString(LogSegments.class.getName() + ".ARCHIVE_DIR",
+				"");
+		COMPRESS_BLOCKS = CoreProperties.getLoader()
+				.getPropertyAsBoolean(LogSegments.class.getName() + ".COMPRESS_BLOCKS", false);
+	}
+
+	private String logFile;
+	private final boolean compressBlocks;
+	private FileMgr fileMgr = VanillaDb.fileMgr();
+	private volatile long firstSegment, lastSegment;
+
+	// Only used by the writes, which are never issued concurrently
+	private LogBlockCodec codec;
+	private Page compressedPage;
+	private byte[] rawBytes, compressedBytes;
+
+	/**
+	 * Opens the segments of the specified log which are left on disk.
+	 * 
+	 * @param logFile
+	 *            the name of the log
+	 */
+	public LogSegments(String logFile) {
+		this(logFile, COMPRESS_BLOCKS);
+	}
+
+	/**
+	 * Opens the segments of the specified log which are left on disk.
+	 * 
+	 * @param logFile
+	 *            the name of the log
+	 * @param compressBlocks
+	 *            whether to compress the log blocks before writing them
+	 */
+	public LogSegments(String logFile, boolean compressBlocks) {
+		this.logFile = logFile;
+		this.compressBlocks = compressBlocks;
+		firstSegment = Long.MAX_VALUE;
+		lastSegment = 0;
+		for (String fileName : fileMgr.listFiles(logFile + ".")) {
+			long segment = segmentOfFile(fileName);
+			if (segment >= 0) {
+				firstSegment = Math.min(firstSegment, segment);
+				lastSegment = Math.max(lastSegment, segment);
+			}
+		}
+		if (firstSegment == Long.MAX_VALUE)
+			firstSegment = 0;
+
+		// The last segment may be created without any block written
+		while (lastSegment > firstSegment && fileMgr.size(fileName(lastSegment)) == 0)
+			lastSegment--;
+
+		checkFormat();
+
+		if (compressBlocks) {
+			codec = new LogBlockCodec();
+			compressedPage = new Page();
+			rawBytes = new byte[Page.BLOCK_SIZE];
+			compressedBytes = new byte[Math.max(0, Page.BLOCK_SIZE - SECTOR_SIZE - HEADER_SIZE)];
+		}
+	}
+
+	/**
+	 * Returns the name of the file storing the specified segment.
+	 * 
+	 * @param segment
+	 *            the number of the segment
+	 * @return the name of the segment file
+	 */
+	public String fileName(long segment) {
+		return logFile + "." + segment;
+	}
+
+	/**
+	 * Returns the segment which the specified block belongs to.
+	 * 
+	 * @param blkNum
+	 *            the number of a log block
+	 * @return the number of the segment
+	 */
+	public static long segmentOf(long blkNum) {
+		return blkNum / SEGMENT_SIZE;
+	}
+
+	/**
+	 * Returns the block of the segment file where the specified log block is
+	 * stored.
+	 * 
+	 * @param blkNum
+	 *            the number of a log block
+	 * @return the block in the segment file
+	 */
+	public BlockId blockOf(long blkNum) {
+		return new BlockId(fileName(segmentOf(blkNum)), blkNum % SEGMENT_SIZE);
+	}
+
+	/**
+	 * Returns the number of the first block kept in the segments.
+	 * 
+	 * @return the number of the first block
+	 */
+	public long firstBlock() {
+		return firstSegment * SEGMENT_SIZE;
+	}
+
+	/**
+	 * Returns the number of blocks of the log, including the blocks of the
+	 * removed segments.
+	 * 
+	 * @return the number of blocks
+	 */
+	public long size() {
+		return lastSegment * SEGMENT_SIZE + fileMgr.size(fileName(lastSegment));
+	}
+
+	/**
+	 * Reads the specified log block into the page.
+	 * 
+	 * @param blkNum
+	 *            the number of a log block
+	 * @param page
+	 *            the page to be populated
+	 */
+	public void read(long blkNum, Page page) {
+		page.read(blockOf(blkNum));
+		int header = (Integer) page.getVal(0, INTEGER).asJavaVal();
+		if (header < 0) {
+			byte[] compressed = new byte[-header - 1];
+			page.getBytes(HEADER_SIZE, compressed);
+			byte[] raw = new byte[Page.BLOCK_SIZE];
+			int length = LogBlockCodec.decompress(compressed, 0, compressed.length, raw);
+			page.setBytes(0, raw, length);
+		}
+	}
+
+	/**
+	 * Writes the page to the specified log block.
+	 * 
+	 * @param blkNum
+	 *            the number of a log block
+	 * @param page
+	 *            the page to be written
+	 */
+	public void write(long blkNum, Page page) {
+		if (compressBlocks)
+			writeCompressed(blkNum, page);
+		else
+			page.write(blockOf(blkNum));
+		lastSegment = Math.max(lastSegment, segmentOf(blkNum));
+	}
+
+	/**
+	 * Writes the pages to consecutive log blocks. The pages are written with
+	 * one I/O request for each segment they span.
+	 * 
+	 * @param firstBlkNum
+	 *            the number of the first log block
+	 * @param pages
+	 *            the pages to be written, one for each block
+	 */
+	public void write(long firstBlkNum, Page[] pages) {
+		if (compressBlocks) {
+			// The compressed blocks are not contiguous on disk
+			for (int i = 0; i < pages.length; i++)
+				write(firstBlkNum + i, pages[i]);
+			return;
+		}
+
+		int start = 0;
+		while (start < pages.length) {
+			long blkNum = firstBlkNum + start;
+			int count = (int) Math.min(pages.length - start, SEGMENT_SIZE - blkNum % SEGMENT_SIZE);
+			if (count == 1)
+				pages[start].write(blockOf(blkNum));
+			else {
+				Page[] part = new Page[count];
+				System.arraycopy(pages, start, part, 0, count);
+				Page.write(blockOf(blkNum), part);
+			}
+			lastSegment = Math.max(lastSegment, segmentOf(blkNum + count - 1));
+			start += count;
+		}
+	}
+
+	/**
+	 * Removes the segments which contain only the blocks before the specified
+	 * one. The segment containing the block is kept.
+	 * 
+	 * @param blkNum
+	 *            the number of the first block to be kept
+	 * @return the number of segments removed
+	 */
+	public int removeBefore(long blkNum) {
+		long end = Math.min(segmentOf(blkNum), lastSegment);
+		int count = 0;
+		for (long segment = firstSegment; segment < end; segment++) {
+			// Move the start first, so no one reads a removed segment
+			firstSegment = segment + 1;
+			if (ARCHIVE_DIR.isEmpty())
+				fileMgr.delete(fileName(segment));
+			else
+				fileMgr.archive(fileName(segment), ARCHIVE_DIR);
+			count++;
+		}
+		if (count > 0 && logger.isLoggable(Level.INFO))
+			logger.info("removed " + count + " log segment(s) before block " + firstBlock() + " of " + logFile);
+		return count;
+	}
+
+	/**
+	 * Removes the blocks after the specified one, and writes the page to that
+	 * block. Since a segment file cannot be shortened, the segment holding the
+	 * block is written again from its start.
+	 * 
+	 * @param blkNum
+	 *            the number of the last block to be kept
+	 * @param page
+	 *            the new contents of the block
+	 */
+	public void cutAfter(long blkNum, Page page) {
+		long segment = segmentOf(blkNum);
+		for (long s = segment + 1; s <= lastSegment; s++)
+			fileMgr.delete(fileName(s));
+		lastSegment = segment;
+
+		long first = Math.max(firstBlock(), segment * SEGMENT_SIZE);
+		byte[][] blocks = new byte[(int) (blkNum - first)][];
+		Page buffer = new Page();
+		for (int i = 0; i < blocks.length; i++) {
+			blocks[i] = new byte[Page.BLOCK_SIZE];
+			read(first + i, buffer);
+			buffer.getBytes(0, blocks[i]);
+		}
+
+		fileMgr.delete(fileName(segment));
+		for (int i = 0; i < blocks.length; i++) {
+			buffer.setBytes(0, blocks[i], blocks[i].length);
+			write(first + i, buffer);
+		}
+		write(blkNum, page);
+		buffer.close();
+	}
+
+	/**
+	 * Removes all the segments. The next block is written to the first
+	 * segment.
+	 */
+	public void removeAll() {
+		for (long segment = firstSegment; segment <= lastSegment; segment++)
+			fileMgr.delete(fileName(segment));
+		firstSegment = lastSegment = 0;
+	}
+
+	/**
+	 * Compresses the records of the page, and writes the compressed bytes to
+	 * the head of the block. If the records cannot be compressed to save a
+	 * sector, the whole page is written as it is.
+	 */
+	private void writeCompressed(long blkNum, Page page) {
+		// The records end after the pointers of the last record
+		int pointerSize = Page.maxSize(INTEGER);
+		int length = (Integer) page.getVal(LogMgr.LAST_POS, INTEGER).asJavaVal() + pointerSize * 2;
+		page.getBytes(0, rawBytes);
+		int compressed = codec.compress(rawBytes, length, compressedBytes);
+		if (compressed < 0) {
+			page.write(blockOf(blkNum));
+			return;
+		}
+
+		compressedPage.setVal(0, new IntegerConstant(-compressed - 1));
+		compressedPage.setBytes(HEADER_SIZE, compressedBytes, compressed);
+		int size = HEADER_SIZE + compressed;
+		compressedPage.write(blockOf(blkNum), (size + SECTOR_SIZE - 1) / SECTOR_SIZE * SECTOR_SIZE);
+	}
+
+	/**
+	 * Checks the format version in the header file of the log, or writes the
+	 * header if the log is new.
+	 */
+	private void checkFormat() {
+		String headerFile = logFile + ".header";
+		boolean hasHeader = false, hasSegments = false, hasOldLog = false;
+		for (String fileName : fileMgr.listFiles(logFile)) {
+			if (fileName.equals(headerFile))
+				hasHeader = true;
+			else if (fileName.equals(logFile))
+				hasOldLog = fileMgr.size(logFile) > 0;
+			else if (fileName.startsWith(logFile + ".") && segmentOfFile(fileName) >= 0)
+				hasSegments = true;
+		}
+
+		if (hasOldLog)
+			throw new RuntimeException("the log " + logFile + " is in the format version 1, but the version "
+					+ FORMAT_VERSION + " is required; recover the database with the version that wrote it, "
+					+ "take a checkpoint with no active transaction, and remove the log before upgrading");
+
+		BlockId headerBlk = new BlockId(headerFile, 0);
+		Page page = new Page();
+		try {
+			if (!hasHeader || fileMgr.size(headerFile) == 0) {
+				if (hasSegments)
+					throw new RuntimeException("the log " + logFile + " has no format header");
+				page.setVal(0, new IntegerConstant(FORMAT_MAGIC));
+				page.setVal(HEADER_SIZE, new IntegerConstant(FORMAT_VERSION));
+				page.write(headerBlk);
+				return;
+			}
+
+			page.read(headerBlk);
+			int magic = (Integer) page.getVal(0, INTEGER).asJavaVal();
+			int version = (Integer) page.getVal(HEADER_SIZE, INTEGER).asJavaVal();
+			if (magic != FORMAT_MAGIC)
+				throw new RuntimeException("the log " + logFile + " has a corrupted format header");
+			if (version != FORMAT_VERSION)
+				throw new RuntimeException("the log " + logFile + " is in the format version " + version
+						+ ", but the version " + FORMAT_VERSION + " is required");
+		} finally {
+			page.close();
+		}
+	}
+
+	private long segmentOfFile(String fileName) {
+		String suffix = fileName.substring(logFile.length() + 1);
+		if (suffix.isEmpty())
+			return -1;
+		for (int i = 0; i < suffix.length(); i++)
+			if (!Character.isDigit(suffix.charAt(i)))
+				return -1;
+		return Long.parseLong(suffix);
+	}
+}
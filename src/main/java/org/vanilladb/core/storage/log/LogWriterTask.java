@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Copyright 2016, 2026 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.log;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.vanilladb.core.server.task.Task;
+
+/**
+ * The task writes the full pages in the log buffer of a {@link LogMgr}, so
+ * that the appenders do not have to wait for the disk when they move to a new
+ * log page.
+ */
+public class LogWriterTask extends Task {
+	private static Logger logger = Logger.getLogger(LogWriterTask.class.getName());
+
+	private LogMgr logMgr;
+
+	public LogWriterTask(LogMgr logMgr) {
+		this.logMgr = logMgr;
+	}
+
+	@Override
+	public void run() {
+		logMgr.attachWriter();
+		while (true) {
+			int numWritten = logMgr.writeFullPages();
+			if (logger.isLoggable(Level.FINEST))
+				logger.finest("the log writer wrote " + numWritten + " pages");
+		}
+	}
+}
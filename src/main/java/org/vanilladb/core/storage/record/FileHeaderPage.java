@@ -155,8 +155,13 @@ public class FileHeaderPage {
 			throw new UnsupportedOperationException();
 		if (!isTempTable())
 			tx.concurrencyMgr().modifyBlock(blk);
-		LogSeqNum lsn = tx.recoveryMgr().logSetVal(currentBuff, offset, val);
-		currentBuff.setVal(offset, val, tx.getTransactionNumber(), lsn);
+		currentBuff.lockFlushing();
+		try {
+			LogSeqNum lsn = tx.recoveryMgr().logSetVal(currentBuff, offset, val);
+			currentBuff.setVal(offset, val, tx.getTransactionNumber(), lsn);
+		} finally {
+			currentBuff.unlockFlushing();
+		}
 	}
 
 	private boolean isTempTable() {
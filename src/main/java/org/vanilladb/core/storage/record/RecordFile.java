@@ -15,6 +15,9 @@
  *******************************************************************************/
 package org.vanilladb.core.storage.record;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.locks.ReentrantLock;
 import org.vanilladb.core.server.VanillaDb;
 import org.vanilladb.core.sql.Constant;
@@ -167,12 +170,21 @@ public class RecordFile implements Record {
 	public void setVal(String fldName, Constant val) {
 		if (tx.isReadOnly() && !isTempTable())
 			throw new UnsupportedOperationException();
-		Type fldType = ti.schema().type(fldName);
+		rp.setVal(fldName, castTo(fldName, val));
+	}
 
-		Constant v = val.castTo(fldType);
-		if (Page.size(v) > Page.maxSize(fldType))
-			throw new SchemaIncompatibleException();
-		rp.setVal(fldName, v);
+	/**
+	 * Sets the values of the specified fields in the current record. Unlike
+	 * calling {@link #setVal(String, Constant)} for each field, the whole row
+	 * is logged once.
+	 * 
+	 * @param fldVals
+	 *            the map from field names to the new values
+	 */
+	public void setVals(Map<String, Constant> fldVals) {
+		if (tx.isReadOnly() && !isTempTable())
+			throw new UnsupportedOperationException();
+		rp.setVals(castAll(fldVals));
 	}
 
 	/**
@@ -223,6 +235,17 @@ public class RecordFile implements Record {
 	 * then a new block is appended to the file.
 	 */
 	public void insert() {
+		insert(Collections.<String, Constant>emptyMap());
+	}
+
+	/**
+	 * Inserts a new record with the specified values somewhere in the file.
+	 * The record and its values are logged once, instead of once per field.
+	 * 
+	 * @param fldVals
+	 *            the map from field names to the values of the new record
+	 */
+	public void insert(Map<String, Constant> fldVals) {
 		// Block read-only transaction
 		if (tx.isReadOnly() && !isTempTable())
 			throw new UnsupportedOperationException();
@@ -232,6 +255,8 @@ public class RecordFile implements Record {
 		if (!isTempTable())
 			tx.concurrencyMgr().modifyFile(fileName);
 
+		Map<String, Constant> vals = castAll(fldVals);
+
 		// Modify the free chain which is start from a pointer in
 		// the header of the file.
 		if (fhp == null)
@@ -244,7 +269,7 @@ public class RecordFile implements Record {
 			if (fhp.hasDeletedSlots()) {
 				// Insert into a deleted slot
 				moveToRecordId(fhp.getLastDeletedSlot());
-				RecordId lds = rp.insertIntoDeletedSlot();
+				RecordId lds = rp.insertIntoDeletedSlot(vals);
 				fhp.setLastDeletedSlot(lds);
 			} else {
 				// Insert into a empty slot
@@ -252,13 +277,13 @@ public class RecordFile implements Record {
 					// Create the first data block
 					appendBlock();
 					moveTo(1);
-					rp.insertIntoNextEmptySlot();
+					rp.insertIntoNextEmptySlot(vals);
 				} else {
 					// Find the tail page
 					RecordId tailSlot = fhp.getTailSolt();
 					moveToRecordId(tailSlot);
 
-					while (!rp.insertIntoNextEmptySlot()) {
+					while (!rp.insertIntoNextEmptySlot(vals)) {
 						if (atLastBlock())
 							appendBlock();
 						// 100th percentile latency: 3099
@@ -413,6 +438,21 @@ public class RecordFile implements Record {
 			fhp = null;
 	}
 
+	private Constant castTo(String fldName, Constant val) {
+		Type fldType = ti.schema().type(fldName);
+		Constant v = val.castTo(fldType);
+		if (Page.size(v) > Page.maxSize(fldType))
+			throw new SchemaIncompatibleException();
+		return v;
+	}
+
+	private Map<String, Constant> castAll(Map<String, Constant> fldVals) {
+		Map<String, Constant> vals = new HashMap<String, Constant>();
+		for (Map.Entry<String, Constant> fldVal : fldVals.entrySet())
+			vals.put(fldVal.getKey(), castTo(fldVal.getKey(), fldVal.getValue()));
+		return vals;
+	}
+
 	private boolean isTempTable() {
 		return fileName.startsWith("_temp");
 	}
@@ -18,6 +18,9 @@ package org.vanilladb.core.storage.record;
 import static org.vanilladb.core.sql.Type.BIGINT;
 import static org.vanilladb.core.sql.Type.INTEGER;
 
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -30,9 +33,11 @@ import org.vanilladb.core.sql.Type;
 import org.vanilladb.core.storage.buffer.Buffer;
 import org.vanilladb.core.storage.file.BlockId;
 import org.vanilladb.core.storage.file.Page;
+import org.vanilladb.core.storage.log.LogMgr;
 import org.vanilladb.core.storage.log.LogSeqNum;
 import org.vanilladb.core.storage.metadata.TableInfo;
 import org.vanilladb.core.storage.tx.Transaction;
+import org.vanilladb.core.storage.tx.recovery.RecoveryMgr;
 
 /**
  * Manages the placement and access of records in a block.
@@ -48,6 +53,9 @@ public class RecordPage implements Record {
 	private static final IntegerConstant INUSE_CONST = new IntegerConstant(
 			INUSE), EMPTY_CONST = new IntegerConstant(EMPTY);
 
+	private static final RecordId NO_SLOT = new RecordId(new BlockId("", 0), 0);
+	private static final int INSERT = 0, DELETE = 1, UPDATE = 2;
+
 	private Transaction tx;
 	private BlockId blk;
 	private TableInfo ti;
@@ -57,6 +65,7 @@ public class RecordPage implements Record {
 	private int slotSize;
 	private int currentSlot = -1;
 	private Map<String, Integer> myOffsetMap;
+	private String[] myFields;
 
 	// Optimization: Materialize the offset map.
 	// /**
@@ -148,7 +157,9 @@ public class RecordPage implements Record {
 		Schema sch = ti.schema();
 		int pos = 0;
 		myOffsetMap = new HashMap<String, Integer>();
+		myFields = new String[sch.fields().size()];
 		for (String fldname : sch.fields()) {
+			myFields[myOffsetMap.size()] = fldname;
 			myOffsetMap.put(fldname, pos);
 			pos += Page.maxSize(sch.type(fldname));
 		}
@@ -198,8 +209,19 @@ public class RecordPage implements Record {
 	 *            the constant value stored in that field
 	 */
 	public void setVal(String fldName, Constant val) {
-		int position = fieldPos(fldName);
-		setVal(position, val);
+		setVals(Collections.singletonMap(fldName, val));
+	}
+
+	/**
+	 * Stores the values at the specified fields of this record. The values
+	 * are logged by a single log record.
+	 * 
+	 * @param vals
+	 *            the map from field names to the constant values stored in
+	 *            those fields
+	 */
+	public void setVals(Map<String, Constant> vals) {
+		writeRow(UPDATE, null, vals);
 	}
 
 	/**
@@ -212,9 +234,7 @@ public class RecordPage implements Record {
 	 * 
 	 */
 	public void delete(RecordId nextDeletedSlot) {
-		Constant flag = EMPTY_CONST;
-		setVal(currentPos(), flag);
-		setNextDeletedSlotId(nextDeletedSlot);
+		writeRow(DELETE, nextDeletedSlot, Collections.<String, Constant>emptyMap());
 	}
 	
 	/**
@@ -226,7 +246,8 @@ public class RecordPage implements Record {
 		if (!getVal(currentPos(), INTEGER).equals(EMPTY_CONST))
 			return false;
 		
-		setVal(currentPos(), INUSE_CONST);
+		// Keep the free chain pointer, since the caller still follows it
+		writeRow(INSERT, getNextDeletedSlotId(), Collections.<String, Constant>emptyMap());
 		return true;
 	}
 
@@ -237,11 +258,21 @@ public class RecordPage implements Record {
 	 * @return false if the insertion was not possible
 	 */
 	public boolean insertIntoNextEmptySlot() {
+		return insertIntoNextEmptySlot(Collections.<String, Constant>emptyMap());
+	}
+
+	/**
+	 * Inserts a new record with the specified values somewhere in the page.
+	 * Return false if there were no available slots.
+	 * 
+	 * @param vals
+	 *            the map from field names to the values of the new record
+	 * @return false if the insertion was not possible
+	 */
+	public boolean insertIntoNextEmptySlot(Map<String, Constant> vals) {
 		boolean found = searchFor(EMPTY);
-		if (found) {
-			Constant flag = INUSE_CONST;
-			setVal(currentPos(), flag);
-		}
+		if (found)
+			writeRow(INSERT, NO_SLOT, vals);
 		return found;
 	}
 
@@ -252,14 +283,24 @@ public class RecordPage implements Record {
 	 * @return the record id of the next deleted slot
 	 */
 	public RecordId insertIntoDeletedSlot() {
+		return insertIntoDeletedSlot(Collections.<String, Constant>emptyMap());
+	}
+
+	/**
+	 * Inserts a new record with the specified values into this deleted slot
+	 * and return the record id of the next one.
+	 * 
+	 * @param vals
+	 *            the map from field names to the values of the new record
+	 * @return the record id of the next deleted slot
+	 */
+	public RecordId insertIntoDeletedSlot(Map<String, Constant> vals) {
 		RecordId nds = getNextDeletedSlotId();
 		// Important: Erase the free chain information.
 		// If we didn't do this, it would crash when
 		// a tx try to set a VARCHAR at this position
 		// since the getVal would get negative size.
-		setNextDeletedSlotId(new RecordId(new BlockId("", 0), 0));
-		Constant flag = INUSE_CONST;
-		setVal(currentPos(), flag);
+		writeRow(INSERT, NO_SLOT, vals);
 		return nds;
 	}
 
@@ -361,9 +402,111 @@ public class RecordPage implements Record {
 			throw new UnsupportedOperationException();
 		if (!isTempTable())
 			tx.concurrencyMgr().modifyRecord(new RecordId(blk, currentSlot));
-		LogSeqNum lsn = doLog ? tx.recoveryMgr().logSetVal(currentBuff, offset, val)
-				: null;
-		currentBuff.setVal(offset, val, tx.getTransactionNumber(), lsn);
+		// Keep the page from being written between logging and applying, so
+		// the page LSN tells which log records the page holds
+		currentBuff.lockFlushing();
+		try {
+			LogSeqNum lsn = doLog ? tx.recoveryMgr().logSetVal(currentBuff, offset, val)
+					: null;
+			currentBuff.setVal(offset, val, tx.getTransactionNumber(), lsn);
+		} finally {
+			currentBuff.unlockFlushing();
+		}
+	}
+
+	/**
+	 * Inserts, deletes or updates the current record. The slot header and all
+	 * the given values are usually covered by one log record. A row too large
+	 * for a log block is logged by several records, and the values after the
+	 * first record are written as updates. None of them can reach the disk
+	 * before the others in either case.
+	 */
+	private void writeRow(int op, RecordId ptr, Map<String, Constant> vals) {
+		if (tx.isReadOnly() && !isTempTable())
+			throw new UnsupportedOperationException();
+		if (!isTempTable())
+			tx.concurrencyMgr().modifyRecord(new RecordId(blk, currentSlot));
+
+		// Order the values as the fields in the schema
+		int[] fieldIds = new int[vals.size()];
+		int[] offsets = new int[vals.size()];
+		Constant[] newVals = new Constant[vals.size()];
+		int j = 0;
+		for (int i = 0; i < myFields.length && j < offsets.length; i++) {
+			Constant val = vals.get(myFields[i]);
+			if (val != null) {
+				fieldIds[j] = i;
+				offsets[j] = FLAG_SIZE + myOffsetMap.get(myFields[i]);
+				newVals[j] = val;
+				j++;
+			}
+		}
+		if (j < offsets.length)
+			throw new IllegalArgumentException("unknown fields in " + vals.keySet());
+
+		int slotPos = currentPos();
+		long txNum = tx.getTransactionNumber();
+		currentBuff.lockFlushing();
+		try {
+			int from = 0;
+			do {
+				int to = doLog ? endOfLogGroup(fieldIds, from) : offsets.length;
+				BitSet groupFields = new BitSet(myFields.length);
+				for (int i = from; i < to; i++)
+					groupFields.set(fieldIds[i]);
+				int[] groupOffsets = offsets;
+				Constant[] groupVals = newVals;
+				if (from > 0 || to < offsets.length) {
+					groupOffsets = Arrays.copyOfRange(offsets, from, to);
+					groupVals = Arrays.copyOfRange(newVals, from, to);
+				}
+
+				LogSeqNum lsn = null;
+				if (doLog) {
+					if (op == INSERT)
+						lsn = tx.recoveryMgr().logRowInsertion(currentBuff, slotPos, ptr.block().number(), ptr.id(),
+								groupFields, groupOffsets, groupVals);
+					else if (op == DELETE)
+						lsn = tx.recoveryMgr().logRowDeletion(currentBuff, slotPos, ptr.block().number(), ptr.id());
+					else
+						lsn = tx.recoveryMgr().logRowUpdate(currentBuff, slotPos, groupFields, groupOffsets,
+								groupVals);
+				}
+
+				if (op != UPDATE) {
+					int position = slotPos + FLAG_SIZE;
+					currentBuff.setVal(slotPos, op == INSERT ? INUSE_CONST : EMPTY_CONST, txNum, lsn);
+					currentBuff.setVal(position, new BigIntConstant(ptr.block().number()), txNum, lsn);
+					position += Page.maxSize(BIGINT);
+					currentBuff.setVal(position, new IntegerConstant(ptr.id()), txNum, lsn);
+				}
+				for (int i = 0; i < groupOffsets.length; i++)
+					currentBuff.setVal(slotPos + groupOffsets[i], groupVals[i], txNum, lsn);
+
+				// The rest of the row updates the values written so far
+				op = UPDATE;
+				from = to;
+			} while (from < offsets.length);
+		} finally {
+			currentBuff.unlockFlushing();
+		}
+	}
+
+	/**
+	 * Returns the end of the group of fields starting from the specified one
+	 * that fits in a log record. A group has at least one field.
+	 */
+	private int endOfLogGroup(int[] fieldIds, int from) {
+		Schema sch = ti.schema();
+		int size = RecoveryMgr.maxRowRecordOverhead(blk, myFields.length);
+		int to = from;
+		while (to < fieldIds.length) {
+			size += RecoveryMgr.maxRowFieldSize(sch.type(myFields[fieldIds[to]]));
+			if (size > LogMgr.MAX_RECORD_SIZE && to > from)
+				break;
+			to++;
+		}
+		return to;
 	}
 
 	private boolean isTempTable() {
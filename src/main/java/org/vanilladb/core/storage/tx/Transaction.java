@@ -15,13 +15,14 @@
  *******************************************************************************/
 package org.vanilladb.core.storage.tx;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.vanilladb.core.server.VanillaDb;
 import org.vanilladb.core.storage.buffer.BufferMgr;
+import org.vanilladb.core.storage.buffer.VersionStore;
 import org.vanilladb.core.storage.tx.concurrency.ConcurrencyMgr;
 import org.vanilladb.core.storage.tx.recovery.RecoveryMgr;
 
@@ -63,13 +64,39 @@ public class Transaction {
 	public Transaction(TransactionMgr txMgr, TransactionLifecycleListener concurMgr,
 			TransactionLifecycleListener recoveryMgr, TransactionLifecycleListener bufferMgr, boolean readOnly,
 			long txNum) {
+		this(txMgr, concurMgr, recoveryMgr, bufferMgr, readOnly, txNum,
+				VersionStore.SNAPSHOT_READ_ONLY_TXS && !readOnly);
+	}
+
+	/**
+	 * Creates a new transaction which may keep the versions of its
+	 * modifications for the snapshots.
+	 * 
+	 * @param txMgr
+	 *            the transaction manager
+	 * @param concurMgr
+	 *            the associated concurrency manager
+	 * @param recoveryMgr
+	 *            the associated recovery manager
+	 * @param bufferMgr
+	 *            the associated buffer manager
+	 * @param readOnly
+	 *            is read-only mode
+	 * @param txNum
+	 *            the number of the transaction
+	 * @param versioned
+	 *            whether the modifications are kept in the version store
+	 */
+	public Transaction(TransactionMgr txMgr, TransactionLifecycleListener concurMgr,
+			TransactionLifecycleListener recoveryMgr, TransactionLifecycleListener bufferMgr, boolean readOnly,
+			long txNum, boolean versioned) {
 		this.concurMgr = (ConcurrencyMgr) concurMgr;
 		this.recoveryMgr = (RecoveryMgr) recoveryMgr;
 		this.bufferMgr = (BufferMgr) bufferMgr;
 		this.txNum = txNum;
 		this.readOnly = readOnly;
 
-		lifecycleListeners = new LinkedList<TransactionLifecycleListener>();
+		lifecycleListeners = new ArrayList<TransactionLifecycleListener>(4);
 		// XXX: A transaction manager must be added before a recovery manager to
 		// prevent the following scenario:
 		// <COMMIT 1>
@@ -87,6 +114,15 @@ public class Transaction {
 		 * until the recovery procedure complete.
 		 */
 		addLifecycleListener(recoveryMgr);
+		/*
+		 * The modifications must be committed in the version store before the
+		 * locks are released, so that a snapshot never sees a modification
+		 * without the modifications it depends on.
+		 */
+		if (versioned) {
+			BufferMgr.versionStore().register(txNum);
+			addLifecycleListener(BufferMgr.versionStore());
+		}
 		addLifecycleListener(concurMgr);
 		addLifecycleListener(bufferMgr);
 	}
@@ -101,6 +137,10 @@ public class Transaction {
 	 * locks, and unpins any pinned blocks.
 	 */
 	public void commit() {
+		// An optimistic concurrency manager may abort the transaction here,
+		// before the commit record is written
+		concurMgr.validate();
+
 		for (TransactionLifecycleListener l : lifecycleListeners)
 			l.onTxCommit(this);
 
@@ -17,20 +17,27 @@ package org.vanilladb.core.storage.tx;
 
 import java.lang.reflect.Constructor;
 import java.sql.Connection;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.vanilladb.core.server.VanillaDb;
 import org.vanilladb.core.storage.buffer.BufferMgr;
+import org.vanilladb.core.storage.buffer.VersionStore;
+import org.vanilladb.core.storage.file.BlockId;
 import org.vanilladb.core.storage.log.LogSeqNum;
 import org.vanilladb.core.storage.tx.concurrency.ConcurrencyMgr;
+import org.vanilladb.core.storage.tx.concurrency.OptimisticConcurrencyMgr;
 import org.vanilladb.core.storage.tx.concurrency.ReadCommittedConcurrencyMgr;
 import org.vanilladb.core.storage.tx.concurrency.RepeatableReadConcurrencyMgr;
 import org.vanilladb.core.storage.tx.concurrency.SerializableConcurrencyMgr;
+import org.vanilladb.core.storage.tx.concurrency.SnapshotConcurrencyMgr;
 import org.vanilladb.core.storage.tx.recovery.RecoveryMgr;
 import org.vanilladb.core.util.CoreProperties;
 
@@ -42,6 +49,8 @@ import org.vanilladb.core.util.CoreProperties;
 public class TransactionMgr implements TransactionLifecycleListener {
 	private static Logger logger = Logger.getLogger(TransactionMgr.class.getName());
 	public static Class<?> serialConcurMgrCls, rrConcurMgrCls, rcConcurMgrCls, recoveryMgrCls, bufferMgrCls;
+	private static final ConcurrencyMgrFactory serialConcurMgrFactory, rrConcurMgrFactory, rcConcurMgrFactory;
+	private static final RecoveryMgrFactory recoveryMgrFactory;
 	static {
 		serialConcurMgrCls = CoreProperties.getLoader().getPropertyAsClass(
 				TransactionMgr.class.getName() + ".SERIALIZABLE_CONCUR_MGR", SerializableConcurrencyMgr.class,
@@ -54,61 +63,126 @@ public class TransactionMgr implements TransactionLifecycleListener {
 				ConcurrencyMgr.class);
 		recoveryMgrCls = CoreProperties.getLoader().getPropertyAsClass(TransactionMgr.class.getName() + ".RECOVERY_MGR",
 				RecoveryMgr.class, RecoveryMgr.class);
+		serialConcurMgrFactory = concurMgrFactory(serialConcurMgrCls);
+		rrConcurMgrFactory = concurMgrFactory(rrConcurMgrCls);
+		rcConcurMgrFactory = concurMgrFactory(rcConcurMgrCls);
+		recoveryMgrFactory = recoveryMgrFactory(recoveryMgrCls);
 	}
 
-	// Optimization for preventing becoming bottleneck when creating a
-	// transaction
-	// XXX: There is a potential risk for overflowing here
-	// private Long[] threadTxNums = new Long[TaskMgr.THREAD_POOL_SIZE * 10];
-	// private ReentrantReadWriteLock activeTxsLock = new
-	// ReentrantReadWriteLock();
-
-	// Old method for maintaining active transaction list
-	// When the above optimization ready, switch to that one
-	private Set<Long> activeTxs = new HashSet<Long>();
-
-	private long nextTxNum = 0;
-	// Optimization: Use separate lock for nextTxNum
-	private Object txNumLock = new Object();
+	/**
+	 * Creates the concurrency managers of one class. The factories are
+	 * resolved once when the class is loaded, so creating a transaction does
+	 * not look up constructors.
+	 */
+	private static abstract class ConcurrencyMgrFactory {
+		abstract ConcurrencyMgr newConcurrencyMgr(long txNum);
+	}
 
-	public TransactionMgr() {
-		// for (int i = 0; i < threadTxNums.length; i++)
-		// threadTxNums[i] = -1L;
+	/**
+	 * Creates the recovery managers of one class.
+	 */
+	private static abstract class RecoveryMgrFactory {
+		abstract RecoveryMgr newRecoveryMgr(long txNum, boolean readOnly);
 	}
 
-	// public synchronized ArrayList<Transaction> getActiveTransactions() {
-	// return activeTxs;
-	// }
+	private static ConcurrencyMgrFactory concurMgrFactory(Class<?> cls) {
+		// The built-in managers are created without reflection
+		if (cls == SerializableConcurrencyMgr.class)
+			return new ConcurrencyMgrFactory() {
+				@Override
+				ConcurrencyMgr newConcurrencyMgr(long txNum) {
+					return new SerializableConcurrencyMgr(txNum);
+				}
+			};
+		if (cls == RepeatableReadConcurrencyMgr.class)
+			return new ConcurrencyMgrFactory() {
+				@Override
+				ConcurrencyMgr newConcurrencyMgr(long txNum) {
+					return new RepeatableReadConcurrencyMgr(txNum);
+				}
+			};
+		if (cls == ReadCommittedConcurrencyMgr.class)
+			return new ConcurrencyMgrFactory() {
+				@Override
+				ConcurrencyMgr newConcurrencyMgr(long txNum) {
+					return new ReadCommittedConcurrencyMgr(txNum);
+				}
+			};
 
-	@Override
-	public void onTxCommit(Transaction tx) {
+		if (cls == OptimisticConcurrencyMgr.class)
+			return new ConcurrencyMgrFactory() {
+				@Override
+				ConcurrencyMgr newConcurrencyMgr(long txNum) {
+					return new OptimisticConcurrencyMgr(txNum);
+				}
+			};
 
-		// activeTxsLock.readLock().lock();
-		// try {
-		// threadTxNums[(int) Thread.currentThread().getId()] = -1L;
-		// } finally {
-		// activeTxsLock.readLock().unlock();
-		// }
+		final Constructor<?> ct;
+		try {
+			ct = cls.getConstructor(Long.TYPE);
+		} catch (NoSuchMethodException e) {
+			throw new IllegalArgumentException("no constructor (long) in " + cls.getName(), e);
+		}
+		return new ConcurrencyMgrFactory() {
+			@Override
+			ConcurrencyMgr newConcurrencyMgr(long txNum) {
+				try {
+					return (ConcurrencyMgr) ct.newInstance(txNum);
+				} catch (ReflectiveOperationException e) {
+					throw new RuntimeException("cannot create " + ct.getDeclaringClass().getName(), e);
+				}
+			}
+		};
+	}
+
+	private static RecoveryMgrFactory recoveryMgrFactory(Class<?> cls) {
+		if (cls == RecoveryMgr.class)
+			return new RecoveryMgrFactory() {
+				@Override
+				RecoveryMgr newRecoveryMgr(long txNum, boolean readOnly) {
+					return new RecoveryMgr(txNum, readOnly);
+				}
+			};
 
-		synchronized (this) {
-			activeTxs.remove(tx.getTransactionNumber());
+		final Constructor<?> ct;
+		try {
+			ct = cls.getConstructor(Long.TYPE, Boolean.TYPE);
+		} catch (NoSuchMethodException e) {
+			throw new IllegalArgumentException("no constructor (long, boolean) in " + cls.getName(), e);
 		}
+		return new RecoveryMgrFactory() {
+			@Override
+			RecoveryMgr newRecoveryMgr(long txNum, boolean readOnly) {
+				try {
+					return (RecoveryMgr) ct.newInstance(txNum, readOnly);
+				} catch (ReflectiveOperationException e) {
+					throw new RuntimeException("cannot create " + ct.getDeclaringClass().getName(), e);
+				}
+			}
+		};
 	}
 
-	@Override
-	public void onTxRollback(Transaction tx) {
+	// The active transactions are registered without a lock, so that starting
+	// and finishing transactions scale with the number of threads. The
+	// transactions are ordered by their numbers and by the LSNs of their start
+	// records, which gives the watermarks at a glance.
+	private final ConcurrentSkipListSet<Long> activeTxNums = new ConcurrentSkipListSet<Long>();
+	private final ConcurrentSkipListSet<LogSeqNum> activeStartLsns = new ConcurrentSkipListSet<LogSeqNum>();
+	private final LongAdder activeTxCount = new LongAdder();
 
-		// activeTxsLock.readLock().lock();
-		// try {
-		// threadTxNums[(int) Thread.currentThread().getId()] = -1L;
-		// } finally {
-		// activeTxsLock.readLock().unlock();
-		// }
+	private final AtomicLong nextTxNum = new AtomicLong();
 
-		synchronized (this) {
-			activeTxs.remove(tx.getTransactionNumber());
+	public TransactionMgr() {
+	}
 
-		}
+	@Override
+	public void onTxCommit(Transaction tx) {
+		unregister(tx);
+	}
+
+	@Override
+	public void onTxRollback(Transaction tx) {
+		unregister(tx);
 	}
 
 	@Override
@@ -117,7 +191,19 @@ public class TransactionMgr implements TransactionLifecycleListener {
 	}
 
 	/**
-	 * Creates non-quiescent checkpoint record.
+	 * Creates a fuzzy checkpoint. The checkpoint writes back the dirty pages,
+	 * and then logs the active transactions and the pages which are still
+	 * dirty.
+	 * The transactions keep running the whole time; they are only held back
+	 * while the active transactions are copied.
+	 * 
+	 * <p>
+	 * The recovery redoes the log from the start of the checkpoint, or from
+	 * the start of the oldest transaction active at the checkpoint, whichever
+	 * comes first. The latter covers the modifications logged before the
+	 * checkpoint but applied to a page after it was written back. The log
+	 * segments before that point are removed once the checkpoint is on disk.
+	 * </p>
 	 * 
 	 * @param checkpointTx
 	 *            the transaction that performs checkpointing
@@ -151,115 +237,166 @@ public class TransactionMgr implements TransactionLifecycleListener {
 		// activeTxsLock.writeLock().unlock();
 		// }
 
-		// Old method
-		synchronized (this) {
-			txNums = new LinkedList<Long>(activeTxs);
-			checkpointTx.bufferMgr().flushAll();
-			LogSeqNum lsn = checkpointTx.recoveryMgr().checkpoint(txNums);
-			VanillaDb.logMgr().flush(lsn);
-		}
+		LogSeqNum ckptStartLsn = checkpointTx.recoveryMgr().logCheckpointStart();
+		LogSeqNum redoLsn = ckptStartLsn;
+		txNums = new LinkedList<Long>(activeTxNums);
+		LogSeqNum oldestLsn = oldestStartLsn();
+		if (oldestLsn != null && oldestLsn.compareTo(redoLsn) < 0)
+			redoLsn = oldestLsn;
+
+		// Write back the dirty pages without blocking the transactions
+		Map<BlockId, LogSeqNum> dirtyPages = checkpointTx.bufferMgr().dirtyPageTable();
+		checkpointTx.bufferMgr().flushDirtyPages(dirtyPages);
+
+		// Log the pages which may still miss a modification logged before the
+		// checkpoint started. The recovery takes the other pages as up to
+		// date until they are modified again.
+		dirtyPages = checkpointTx.bufferMgr().dirtyPageTable();
+		Iterator<LogSeqNum> recLsns = dirtyPages.values().iterator();
+		while (recLsns.hasNext())
+			if (recLsns.next().compareTo(ckptStartLsn) >= 0)
+				recLsns.remove();
+		checkpointTx.recoveryMgr().logDirtyPages(dirtyPages);
+
+		LogSeqNum lsn = checkpointTx.recoveryMgr().checkpoint(txNums, redoLsn);
+		VanillaDb.logMgr().flush(lsn);
+
+		// The log before the redo point is no longer needed
+		VanillaDb.logMgr().truncate(redoLsn);
 	}
 
 	public Transaction newTransaction(int isolationLevel, boolean readOnly) {
 		// Dispatch new transaction number
-		long txNum = -1;
-		synchronized (txNumLock) {
-			txNum = nextTxNum;
-			nextTxNum++;
-		}
-		return newTransaction(isolationLevel, readOnly, txNum);
+		long txNum = nextTxNum.getAndIncrement();
+		return createTransaction(isolationLevel, readOnly, txNum, VersionStore.SNAPSHOT_READ_ONLY_TXS);
+	}
+
+	/**
+	 * Creates a serializable transaction that takes part in the snapshot
+	 * reads, whether or not they are enabled for the other transactions. A
+	 * read-only transaction reads a snapshot, and the other ones keep the
+	 * versions of their modifications. A snapshot is only consistent if all
+	 * the transactions modifying the files it reads are created this way.
+	 * 
+	 * @param readOnly
+	 *            whether the transaction is read-only
+	 * @return the new transaction
+	 */
+	public Transaction newSnapshotTransaction(boolean readOnly) {
+		long txNum = nextTxNum.getAndIncrement();
+		return createTransaction(Connection.TRANSACTION_SERIALIZABLE, readOnly, txNum, true);
+	}
+
+	/**
+	 * Creates a transaction which redoes the log records in a thread of its
+	 * own during the recovery. The transaction modifies the pages in the
+	 * buffer pool directly, never a snapshot of them, and writes no log
+	 * record, since the modifications it redoes are already in the log. It is
+	 * not counted as an active transaction.
+	 *
+	 * @return the new transaction
+	 */
+	public Transaction newRedoTransaction() {
+		long txNum = nextTxNum.getAndIncrement();
+		// A recovery manager created as read-only writes no start record
+		RecoveryMgr recoveryMgr = recoveryMgrFactory.newRecoveryMgr(txNum, true);
+		BufferMgr bufferMgr = new BufferMgr(txNum);
+		ConcurrencyMgr concurMgr = new SerializableConcurrencyMgr(txNum);
+		return new Transaction(this, concurMgr, recoveryMgr, bufferMgr, false, txNum, false);
 	}
 
 	public Transaction newTransaction(int isolationLevel, boolean readOnly, long txNum) {
 		// Update next transaction number
-		synchronized (txNumLock) {
-			if (txNum >= nextTxNum)
-				nextTxNum = txNum + 1;
-		}
-		return createTransaction(isolationLevel, readOnly, txNum);
+		long next = nextTxNum.get();
+		while (txNum >= next && !nextTxNum.compareAndSet(next, txNum + 1))
+			next = nextTxNum.get();
+		return createTransaction(isolationLevel, readOnly, txNum, VersionStore.SNAPSHOT_READ_ONLY_TXS);
 	}
 
 	public long getNextTxNum() {
-		synchronized (txNumLock) {
-			return nextTxNum;
-		}
+		return nextTxNum.get();
+	}
+
+	public int getActiveTxCount() {
+		return activeTxCount.intValue();
+	}
+
+	/**
+	 * Returns the number of the oldest active transaction. Every transaction
+	 * numbered below the watermark has finished, except a transaction being
+	 * created, which has done nothing yet.
+	 * 
+	 * @return the number of the oldest active transaction, or the next
+	 *         transaction number if no transaction is active
+	 */
+	public long oldestActiveTxNum() {
+		long next = nextTxNum.get();
+		Iterator<Long> iter = activeTxNums.iterator();
+		return iter.hasNext() ? Math.min(iter.next(), next) : next;
 	}
-	 
-	public int getActiveTxCount() { 
-		synchronized (this) { 
-			return activeTxs.size(); 
-		} 
+
+	/**
+	 * Returns the LSN of the start record of the oldest active transaction. No
+	 * log record of the active transactions precedes this LSN, except the start
+	 * record of a transaction being created, whose LSN is added right after
+	 * the record is written. Such a transaction is already counted as active
+	 * and has nothing else logged, so losing its start record to a truncation
+	 * only makes the recovery scan the whole log to roll it back.
+	 * 
+	 * @return the LSN, or null if no active transaction has logged anything
+	 */
+	public LogSeqNum oldestStartLsn() {
+		Iterator<LogSeqNum> iter = activeStartLsns.iterator();
+		return iter.hasNext() ? iter.next() : null;
 	}
 
-	private Transaction createTransaction(int isolationLevel, boolean readOnly, long txNum) {
+	private Transaction createTransaction(int isolationLevel, boolean readOnly, long txNum, boolean snapshots) {
 		if (logger.isLoggable(Level.FINE))
 			logger.fine("new transaction: " + txNum);
 
+		// Register the transaction before it writes its start record, so that
+		// a checkpoint taken in between lists it as active
+		activeTxNums.add(txNum);
+		activeTxCount.increment();
+
 		// Create a recovery manager
-		RecoveryMgr recoveryMgr = null;
-		try {
-			Class<?> partypes[] = new Class[2];
-			partypes[0] = Long.TYPE;
-			partypes[1] = Boolean.TYPE;
-			Constructor<?> ct = recoveryMgrCls.getConstructor(partypes);
-			recoveryMgr = (RecoveryMgr) ct.newInstance(new Long(txNum), new Boolean(readOnly));
-		} catch (Exception e) {
-			e.printStackTrace();
+		RecoveryMgr recoveryMgr = recoveryMgrFactory.newRecoveryMgr(txNum, readOnly);
+		if (recoveryMgr.startLsn() != null)
+			activeStartLsns.add(recoveryMgr.startLsn());
+
+		// A read-only transaction reads a snapshot without locking the records
+		if (readOnly && snapshots) {
+			BufferMgr bufferMgr = new BufferMgr(txNum, true);
+			ConcurrencyMgr concurMgr = new SnapshotConcurrencyMgr(txNum);
+			return new Transaction(this, concurMgr, recoveryMgr, bufferMgr, readOnly, txNum);
 		}
 
 		// Create a buffer manager
 		BufferMgr bufferMgr = new BufferMgr(txNum);
 
 		// Create a concurrency manager
-		ConcurrencyMgr concurMgr = null;
-
+		ConcurrencyMgr concurMgr;
 		switch (isolationLevel) {
 		case Connection.TRANSACTION_SERIALIZABLE:
-			try {
-				Class<?> partypes[] = new Class[1];
-				partypes[0] = Long.TYPE;
-				Constructor<?> ct = serialConcurMgrCls.getConstructor(partypes);
-				concurMgr = (ConcurrencyMgr) ct.newInstance(new Long(txNum));
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
+			concurMgr = serialConcurMgrFactory.newConcurrencyMgr(txNum);
 			break;
 		case Connection.TRANSACTION_REPEATABLE_READ:
-			try {
-				Class<?> partypes[] = new Class[1];
-				partypes[0] = Long.TYPE;
-				Constructor<?> ct = rrConcurMgrCls.getConstructor(partypes);
-				concurMgr = (ConcurrencyMgr) ct.newInstance(new Long(txNum));
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
+			concurMgr = rrConcurMgrFactory.newConcurrencyMgr(txNum);
 			break;
 		case Connection.TRANSACTION_READ_COMMITTED:
-			try {
-				Class<?> partypes[] = new Class[1];
-				partypes[0] = Long.TYPE;
-				Constructor<?> ct = rcConcurMgrCls.getConstructor(partypes);
-				concurMgr = (ConcurrencyMgr) ct.newInstance(new Long(txNum));
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
+			concurMgr = rcConcurMgrFactory.newConcurrencyMgr(txNum);
 			break;
 		default:
 			throw new UnsupportedOperationException("unsupported isolation level");
 		}
 
-		Transaction tx = new Transaction(this, concurMgr, recoveryMgr, bufferMgr, readOnly, txNum);
-
-		// activeTxsLock.readLock().lock();
-		// try {
-		// threadTxNums[(int) Thread.currentThread().getId()] = txNum;
-		// } finally {
-		// activeTxsLock.readLock().unlock();
-		// }
+		return new Transaction(this, concurMgr, recoveryMgr, bufferMgr, readOnly, txNum, snapshots && !readOnly);
+	}
 
-		synchronized (this) {
-			activeTxs.add(tx.getTransactionNumber());
-		}
-		return tx;
+	private void unregister(Transaction tx) {
+		if (tx.recoveryMgr().startLsn() != null)
+			activeStartLsns.remove(tx.recoveryMgr().startLsn());
+		if (activeTxNums.remove(tx.getTransactionNumber()))
+			activeTxCount.decrement();
 	}
 }
@@ -127,6 +127,19 @@ public abstract class ConcurrencyMgr implements TransactionLifecycleListener {
 	 *            the block id
 	 */
 	public abstract void readLeafBlock(BlockId blk);
+
+	/**
+	 * Checks whether the transaction can commit. This method is called before
+	 * anything of the transaction is committed. A locking-based manager has
+	 * nothing to check, since the conflicts have been resolved by the locks.
+	 * 
+	 * @throws LockAbortException
+	 *             if the transaction conflicts with another one and must roll
+	 *             back instead
+	 */
+	public void validate() {
+		// do nothing
+	}
 	
 	// =========================================================
 	// The following methods are designed for early lock release
@@ -176,4 +189,38 @@ public abstract class ConcurrencyMgr implements TransactionLifecycleListener {
 	public ReentrantLock getLockForFileHeader(BlockId blk) {
 		return fileHeaderLatches.getLatch(blk);
 	}
+
+	// =========================================================
+	// The following methods report the lock statistics
+	// =========================================================
+
+	/**
+	 * Returns the number of lock requests which have waited for other
+	 * transactions since the system started.
+	 * 
+	 * @return the number of waiting lock requests
+	 */
+	public static long getLockWaitCount() {
+		return lockTbl.lockWaitCount();
+	}
+
+	/**
+	 * Returns the number of transactions aborted for preventing or breaking a
+	 * deadlock since the system started.
+	 * 
+	 * @return the number of deadlock aborts
+	 */
+	public static long getDeadlockAbortCount() {
+		return lockTbl.deadlockAbortCount();
+	}
+
+	/**
+	 * Returns the number of lock requests which have timed out since the
+	 * system started.
+	 * 
+	 * @return the number of lock timeouts
+	 */
+	public static long getLockTimeoutCount() {
+		return lockTbl.timeoutAbortCount();
+	}
 }
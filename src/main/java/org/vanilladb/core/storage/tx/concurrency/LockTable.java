@@ -15,17 +15,20 @@
  *******************************************************************************/
 package org.vanilladb.core.storage.tx.concurrency;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
-import org.vanilladb.core.server.VanillaDb;
-import org.vanilladb.core.server.task.Task;
 import org.vanilladb.core.util.CoreProperties;
 
 /**
@@ -35,27 +38,82 @@ import org.vanilladb.core.util.CoreProperties;
  * granularity.
  * 
  * <p>
- * If a transaction requests to lock an item that causes a conflict with an
- * existing lock on that item, then the transaction is placed into a wait list
- * and will be notified (awaked) to compete for the lock whenever the conflict
- * is resolved. Currently, there is only one wait list for all items.
+ * The lockers of the items are kept in a concurrent map, and each item is
+ * guarded by its own monitor. If a transaction requests to lock an item that
+ * causes a conflict with an existing lock on that item, then the transaction is
+ * appended to the FIFO wait queue of that item and parked. A new request also
+ * waits if it conflicts with a request queued ahead of it, unless its
+ * transaction already holds a lock on the item (e.g., an upgrade), so a
+ * waiting xlock is not starved by a stream of slocks. A request compatible
+ * with both the lockers and the queued requests is granted at once. Whenever a
+ * lock on the item is released, the waiting requests are visited in order,
+ * each one compatible with the lockers and with the requests still queued
+ * ahead of it is granted, and its transaction is unparked directly, so a
+ * release never wakes the transactions waiting for other items. A queued
+ * request therefore always waits for a lock holder or a request ahead of it
+ * that it conflicts with, which is what the waits-for graph records.
+ * </p>
+ * 
+ * <p>
+ * Deadlocks are prevented by default: a transaction requesting a conflicting
+ * lock marks every younger transaction it waits for, either a lock holder or
+ * a request queued ahead of it, for abort. In the detection mode, a
+ * transaction which has waited for a while builds the waits-for graph from the
+ * wait queues, and if it is in a cycle, aborts the transaction in the cycle
+ * holding the fewest locks. The table counts the lock waits and the aborts, so
+ * the two modes can be compared.
  * </p>
  */
 class LockTable {
 	private static final long MAX_TIME;
 	private static final long EPSILON;
+	private static final boolean DEADLOCK_DETECTION;
+	private static final long DETECTION_INTERVAL;
 	final static int IS_LOCK = 0, IX_LOCK = 1, S_LOCK = 2, SIX_LOCK = 3, X_LOCK = 4;
+	private static final boolean[][] COMPATIBLE = {
+			// IS, IX, S, SIX, X
+			{ true, true, true, true, false },
+			{ true, true, false, false, false },
+			{ true, false, true, false, false },
+			{ true, false, false, false, false },
+			{ false, false, false, false, false } };
 
 	static {
 		MAX_TIME = CoreProperties.getLoader().getPropertyAsLong(LockTable.class.getName() + ".MAX_TIME", 10000);
 		EPSILON = CoreProperties.getLoader().getPropertyAsLong(LockTable.class.getName() + ".EPSILON", 50);
+		DEADLOCK_DETECTION = CoreProperties.getLoader()
+				.getPropertyAsBoolean(LockTable.class.getName() + ".DEADLOCK_DETECTION", false);
+		DETECTION_INTERVAL = CoreProperties.getLoader()
+				.getPropertyAsLong(LockTable.class.getName() + ".DETECTION_INTERVAL", 100);
+	}
+
+	/**
+	 * A lock request waiting in the queue of an item.
+	 */
+	static class Waiter {
+		final long txNum;
+		final int lockType;
+		final Lockers lks;
+		final Thread thread;
+		// set by the thread granting the lock, under the monitor of the lockers
+		boolean granted;
+
+		Waiter(long txNum, int lockType, Lockers lks) {
+			this.txNum = txNum;
+			this.lockType = lockType;
+			this.lks = lks;
+			this.thread = Thread.currentThread();
+		}
 	}
 
 	class Lockers {
-		Set<Long> sLockers, ixLockers, isLockers, requestSet;
+		Set<Long> sLockers, ixLockers, isLockers;
 		// only one tx can hold xLock(sixLock) on single item
 		long sixLocker, xLocker;
 		static final long NONE = -1; // for sixLocker, xLocker
+		Deque<Waiter> waiters;
+		// set when the lockers are removed from the lock table
+		boolean removed;
 
 		Lockers() {
 			sLockers = new HashSet<Long>();
@@ -63,101 +121,203 @@ class LockTable {
 			isLockers = new HashSet<Long>();
 			sixLocker = NONE;
 			xLocker = NONE;
-			requestSet = new HashSet<Long>();
+			waiters = new ArrayDeque<Waiter>();
 		}
 
 		@Override
 		public String toString() {
 			return "S: " + sLockers + ",IX: " + ixLockers + ",IS: " + isLockers + ",SIX: " + sixLocker + ",X: "
-					+ xLocker + ", request set: " + requestSet;
+					+ xLocker + ", waiters: " + waiters.size();
 		}
 	}
 
-	class LocktableNotifier extends Task {
+	private Map<Object, Lockers> lockerMap = new ConcurrentHashMap<Object, Lockers>();
+	private Map<Long, Set<Object>> lockByMap = new ConcurrentHashMap<Long, Set<Object>>();
+	private Set<Long> txnsToBeAborted = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+	private Map<Long, Waiter> waitingTxs = new ConcurrentHashMap<Long, Waiter>();
+	private final boolean detectDeadlocks;
+	// Only one transaction searches the waits-for graph at a time
+	private final Object detector = new Object();
 
-		@Override
-		public void run() {
-			while (true) {
-				try {
-					Long txNum = toBeNotified.take();
-					Object anchor = txWaitMap.get(txNum);
+	private final LongAdder lockWaits = new LongAdder();
+	private final LongAdder deadlockAborts = new LongAdder();
+	private final LongAdder timeoutAborts = new LongAdder();
 
-					if (anchor != null) {
-						synchronized (anchor) {
-							anchor.notifyAll();
-						}
+	LockTable() {
+		this(DEADLOCK_DETECTION);
+	}
 
-					}
-				} catch (InterruptedException e) {
-					e.printStackTrace();
-				}
-			}
-		}
+	/**
+	 * Creates a lock table which either prevents or detects deadlocks.
+	 * 
+	 * @param detectDeadlocks
+	 *            true to detect the deadlocks with the waits-for graph, false
+	 *            to prevent them
+	 */
+	LockTable(boolean detectDeadlocks) {
+		this.detectDeadlocks = detectDeadlocks;
 	}
 
-	private Map<Object, Lockers> lockerMap = new HashMap<Object, Lockers>();
-	private Map<Long, Set<Object>> lockByMap = new ConcurrentHashMap<Long, Set<Object>>();
-	private Set<Long> txnsToBeAborted = Collections.synchronizedSet(new HashSet<Long>());
-	private Map<Long, Object> txWaitMap = new ConcurrentHashMap<Long, Object>();
-	private BlockingQueue<Long> toBeNotified = new ArrayBlockingQueue<Long>(1000);
-	private final Object anchors[] = new Object[1009];
-	
-	public LockTable() {
-		for (int i = 0; i < anchors.length; ++i) {
-			anchors[i] = new Object();
+	/**
+	 * Returns the number of lock requests which have waited for other
+	 * transactions.
+	 * 
+	 * @return the number of waiting lock requests
+	 */
+	long lockWaitCount() {
+		return lockWaits.sum();
+	}
+
+	/**
+	 * Returns the number of transactions aborted for preventing or breaking a
+	 * deadlock.
+	 * 
+	 * @return the number of deadlock aborts
+	 */
+	long deadlockAbortCount() {
+		return deadlockAborts.sum();
+	}
+
+	/**
+	 * Returns the number of lock requests which have timed out.
+	 * 
+	 * @return the number of lock timeouts
+	 */
+	long timeoutAbortCount() {
+		return timeoutAborts.sum();
+	}
+
+	private void avoidDeadlock(Waiter waiter) throws LockAbortException {
+		checkVictim(waiter.txNum);
+		for (long tx : waitsFor(waiter))
+			if (tx > waiter.txNum)
+				toBeAbortedAndNotified(tx);
+	}
+
+	private void checkVictim(long txNum) throws LockAbortException {
+		if (txnsToBeAborted.contains(txNum)) {
+			deadlockAborts.increment();
+			if (detectDeadlocks)
+				throw new LockAbortException("abort tx." + txNum + " for breaking deadlock");
+			throw new LockAbortException("abort tx." + txNum + " for preventing deadlock");
 		}
-		VanillaDb.taskMgr().runTask(new LocktableNotifier());
 	}
 
-	private Object getAnchor(Object o) {
-		int code = o.hashCode() % anchors.length;
-		if (code < 0) {
-			code += anchors.length;
+	/**
+	 * Returns the transactions holding a lock on the item that conflicts with
+	 * the requested lock. The caller must hold the monitor of the lockers.
+	 */
+	private Set<Long> conflictingLockers(Lockers lks, long txNum, int lockType) {
+		// IS_LOCK = 0, IX_LOCK = 1, S_LOCK = 2, SIX_LOCK = 3, X_LOCK = 4
+		Set<Long> lockers = new HashSet<Long>();
+		if (lockType == IX_LOCK || lockType == SIX_LOCK || lockType == X_LOCK)
+			lockers.addAll(lks.sLockers);
+		if (lockType == S_LOCK || lockType == SIX_LOCK || lockType == X_LOCK)
+			lockers.addAll(lks.ixLockers);
+		if (lockType == X_LOCK)
+			lockers.addAll(lks.isLockers);
+		if (lockType != IS_LOCK && lks.sixLocker != Lockers.NONE)
+			lockers.add(lks.sixLocker);
+		if (lks.xLocker != Lockers.NONE)
+			lockers.add(lks.xLocker);
+		lockers.remove(txNum);
+		return lockers;
+	}
+
+	/**
+	 * Returns the transactions that a queued request waits for: the holders of
+	 * a conflicting lock and the conflicting requests queued ahead of it. The
+	 * caller must hold the monitor of the lockers.
+	 */
+	private Set<Long> waitsFor(Waiter waiter) {
+		Set<Long> txs = conflictingLockers(waiter.lks, waiter.txNum, waiter.lockType);
+		for (Waiter ahead : waiter.lks.waiters) {
+			if (ahead == waiter)
+				break;
+			if (ahead.txNum != waiter.txNum && conflicts(ahead.lockType, waiter.lockType))
+				txs.add(ahead.txNum);
 		}
-		return anchors[code];
+		return txs;
 	}
 
-	private void avoidDeadlock(Lockers lks, long txNum, int lockType) throws LockAbortException {
+	/**
+	 * Returns true if any of the specified requests, which are queued ahead of
+	 * the requested lock, conflicts with it. The caller must hold the monitor
+	 * of the lockers.
+	 */
+	private static boolean conflictsAhead(Iterable<Waiter> ahead, long txNum, int lockType) {
+		for (Waiter w : ahead)
+			if (w.txNum != txNum && conflicts(w.lockType, lockType))
+				return true;
+		return false;
+	}
+
+	private static boolean conflicts(int lockType1, int lockType2) {
 		// IS_LOCK = 0, IX_LOCK = 1, S_LOCK = 2, SIX_LOCK = 3, X_LOCK = 4
+		return !COMPATIBLE[lockType1][lockType2];
+	}
 
-		if (txnsToBeAborted.contains(txNum))
-			throw new LockAbortException("abort tx." + txNum + " for preventing deadlock");
+	/**
+	 * Searches the waits-for graph for a cycle through the specified waiting
+	 * transaction, and marks the transaction in the cycle that holds the
+	 * fewest locks for abort.
+	 */
+	private void detectDeadlock(long txNum) {
+		synchronized (detector) {
+			List<Long> cycle = new ArrayList<Long>();
+			if (!findCycle(txNum, txNum, cycle, new HashSet<Long>()))
+				return;
 
-		if (lockType == IX_LOCK || lockType == SIX_LOCK || lockType == X_LOCK) {
-			for (Long tx : lks.sLockers) {
-				if (tx > txNum) {
-					toBeAbortedAndNotified(tx);
-				}
-			}
-		}
-		if (lockType == S_LOCK || lockType == SIX_LOCK || lockType == X_LOCK) {
-			for (Long tx : lks.ixLockers) {
-				if (tx > txNum) {
-					toBeAbortedAndNotified(tx);
+			long victim = -1;
+			int minCost = Integer.MAX_VALUE;
+			for (long tx : cycle) {
+				// A waiting transaction does not change its lock set
+				Set<Object> objs = lockByMap.get(tx);
+				int cost = objs == null ? 0 : objs.size();
+				// Prefer the younger one on a tie
+				if (cost < minCost || (cost == minCost && tx > victim)) {
+					victim = tx;
+					minCost = cost;
 				}
 			}
+			toBeAbortedAndNotified(victim);
 		}
-		if (lockType == X_LOCK) {
-			for (Long tx : lks.isLockers) {
-				if (tx > txNum) {
-					toBeAbortedAndNotified(tx);
-				}
-			}
-		}
-		if (lockType == IX_LOCK || lockType == S_LOCK || lockType == SIX_LOCK || lockType == X_LOCK) {
-			if (lks.sixLocker > txNum) {
-				toBeAbortedAndNotified(lks.sixLocker);
-			}
+	}
+
+	private boolean findCycle(long start, long txNum, List<Long> path, Set<Long> visited) {
+		path.add(txNum);
+		for (long blocker : blockersOf(txNum)) {
+			if (blocker == start)
+				return true;
+			if (visited.add(blocker) && findCycle(start, blocker, path, visited))
+				return true;
 		}
-		if (lks.xLocker > txNum) {
-			toBeAbortedAndNotified(lks.xLocker);
+		path.remove(path.size() - 1);
+		return false;
+	}
+
+	/**
+	 * Returns the transactions that the specified transaction is waiting for.
+	 * A transaction which is not waiting, or is going to abort, waits for no
+	 * one.
+	 */
+	private Set<Long> blockersOf(long txNum) {
+		Waiter waiter = waitingTxs.get(txNum);
+		if (waiter == null || txnsToBeAborted.contains(txNum))
+			return Collections.emptySet();
+		synchronized (waiter.lks) {
+			if (waiter.granted)
+				return Collections.emptySet();
+			return waitsFor(waiter);
 		}
 	}
 
 	private void toBeAbortedAndNotified(long txNum) {
 		txnsToBeAborted.add(txNum);
-		if (!toBeNotified.contains(txNum))
-			toBeNotified.add(txNum);
+		// Wake the transaction up if it is waiting, so that it aborts itself
+		Waiter waiter = waitingTxs.get(txNum);
+		if (waiter != null)
+			LockSupport.unpark(waiter.thread);
 	}
 
 	/**
@@ -171,32 +331,7 @@ class LockTable {
 	 * 
 	 */
 	void sLock(Object obj, long txNum) {
-		Object anchor = getAnchor(obj);
-		txWaitMap.put(txNum, anchor);
-		synchronized (anchor) {
-			Lockers lks = prepareLockers(obj);
-
-			if (hasSLock(lks, txNum))
-				return;
-
-			try {
-				long timestamp = System.currentTimeMillis();
-				while (!sLockable(lks, txNum) && !waitingTooLong(timestamp)) {
-					avoidDeadlock(lks, txNum, S_LOCK);
-					lks.requestSet.add(txNum);
-
-					anchor.wait(MAX_TIME);
-					lks.requestSet.remove(txNum);
-				}
-				if (!sLockable(lks, txNum))
-					throw new LockAbortException();
-				lks.sLockers.add(txNum);
-				getObjectSet(txNum).add(obj);
-			} catch (InterruptedException e) {
-				throw new LockAbortException("abort tx." + txNum + " by interrupted");
-			}
-		}
-		txWaitMap.remove(txNum);
+		lock(obj, txNum, S_LOCK);
 	}
 
 	/**
@@ -210,32 +345,7 @@ class LockTable {
 	 * 
 	 */
 	void xLock(Object obj, long txNum) {
-		Object anchor = getAnchor(obj);
-		txWaitMap.put(txNum, anchor);
-		synchronized (anchor) {
-			Lockers lks = prepareLockers(obj);
-
-			if (hasXLock(lks, txNum))
-				return;
-
-			try {
-				long timestamp = System.currentTimeMillis();
-				while (!xLockable(lks, txNum) && !waitingTooLong(timestamp)) {
-					avoidDeadlock(lks, txNum, X_LOCK);
-					lks.requestSet.add(txNum);
-
-					anchor.wait(MAX_TIME);
-					lks.requestSet.remove(txNum);
-				}
-				if (!xLockable(lks, txNum))
-					throw new LockAbortException();
-				lks.xLocker = txNum;
-				getObjectSet(txNum).add(obj);
-			} catch (InterruptedException e) {
-				throw new LockAbortException();
-			}
-		}
-		txWaitMap.remove(txNum);
+		lock(obj, txNum, X_LOCK);
 	}
 
 	/**
@@ -249,32 +359,7 @@ class LockTable {
 	 * 
 	 */
 	void sixLock(Object obj, long txNum) {
-		Object anchor = getAnchor(obj);
-		txWaitMap.put(txNum, anchor);
-		synchronized (anchor) {
-			Lockers lks = prepareLockers(obj);
-
-			if (hasSixLock(lks, txNum))
-				return;
-
-			try {
-				long timestamp = System.currentTimeMillis();
-				while (!sixLockable(lks, txNum) && !waitingTooLong(timestamp)) {
-					avoidDeadlock(lks, txNum, SIX_LOCK);
-					lks.requestSet.add(txNum);
-
-					anchor.wait(MAX_TIME);
-					lks.requestSet.remove(txNum);
-				}
-				if (!sixLockable(lks, txNum))
-					throw new LockAbortException();
-				lks.sixLocker = txNum;
-				getObjectSet(txNum).add(obj);
-			} catch (InterruptedException e) {
-				throw new LockAbortException();
-			}
-		}
-		txWaitMap.remove(txNum);
+		lock(obj, txNum, SIX_LOCK);
 	}
 
 	/**
@@ -287,30 +372,7 @@ class LockTable {
 	 * @param txNum a transaction number
 	 */
 	void isLock(Object obj, long txNum) {
-		Object anchor = getAnchor(obj);
-		txWaitMap.put(txNum, anchor);
-		synchronized (anchor) {
-			Lockers lks = prepareLockers(obj);
-			if (hasIsLock(lks, txNum))
-				return;
-			try {
-				long timestamp = System.currentTimeMillis();
-				while (!isLockable(lks, txNum) && !waitingTooLong(timestamp)) {
-					avoidDeadlock(lks, txNum, IS_LOCK);
-					lks.requestSet.add(txNum);
-
-					anchor.wait(MAX_TIME);
-					lks.requestSet.remove(txNum);
-				}
-				if (!isLockable(lks, txNum))
-					throw new LockAbortException();
-				lks.isLockers.add(txNum);
-				getObjectSet(txNum).add(obj);
-			} catch (InterruptedException e) {
-				throw new LockAbortException();
-			}
-		}
-		txWaitMap.remove(txNum);
+		lock(obj, txNum, IS_LOCK);
 	}
 
 	/**
@@ -323,32 +385,97 @@ class LockTable {
 	 * @param txNum a transaction number
 	 */
 	void ixLock(Object obj, long txNum) {
-		Object anchor = getAnchor(obj);
-		txWaitMap.put(txNum, anchor);
-		synchronized (anchor) {
-			Lockers lks = prepareLockers(obj);
+		lock(obj, txNum, IX_LOCK);
+	}
+
+	private void lock(Object obj, long txNum, int lockType) {
+		Lockers lks;
+		Waiter waiter;
+		while (true) {
+			lks = prepareLockers(obj);
+			synchronized (lks) {
+				// The lockers may be removed before we enter the monitor
+				if (lks.removed)
+					continue;
+
+				if (hasLock(lks, txNum, lockType))
+					return;
+
+				// Do not overtake a conflicting queued request, unless upgrading
+				boolean holder = holdsAnyLock(lks, txNum);
+				if (lockable(lks, txNum, lockType)
+						&& (holder || !conflictsAhead(lks.waiters, txNum, lockType))) {
+					addLocker(lks, txNum, lockType);
+					getObjectSet(txNum).add(obj);
+					return;
+				}
 
-			if (hasIxLock(lks, txNum))
-				return;
+				waiter = new Waiter(txNum, lockType, lks);
+				// An upgrade goes first, since the requests queued behind wait
+				// for its transaction anyway
+				if (holder)
+					lks.waiters.addFirst(waiter);
+				else
+					lks.waiters.addLast(waiter);
+				try {
+					if (detectDeadlocks)
+						checkVictim(txNum);
+					else
+						avoidDeadlock(waiter);
+				} catch (LockAbortException e) {
+					cancel(obj, lks, waiter);
+					throw e;
+				}
+				waitingTxs.put(txNum, waiter);
+				lockWaits.increment();
+				break;
+			}
+		}
 
-			try {
-				long timestamp = System.currentTimeMillis();
-				while (!ixLockable(lks, txNum) && !waitingTooLong(timestamp)) {
-					avoidDeadlock(lks, txNum, IX_LOCK);
-					lks.requestSet.add(txNum);
+		long deadline = System.currentTimeMillis() + MAX_TIME - EPSILON;
+		long nextDetection = System.currentTimeMillis() + DETECTION_INTERVAL;
+		try {
+			while (true) {
+				long now = System.currentTimeMillis();
+				if (detectDeadlocks && now >= nextDetection) {
+					// Search the graph outside the monitor of the lockers
+					detectDeadlock(txNum);
+					nextDetection = now + DETECTION_INTERVAL;
+				} else {
+					long wakeUp = detectDeadlocks ? Math.min(deadline, nextDetection) : deadline;
+					if (wakeUp > now)
+						LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(wakeUp - now));
+				}
 
-					anchor.wait(MAX_TIME);
-					lks.requestSet.remove(txNum);
+				synchronized (lks) {
+					// A granted lock wins over a timeout or an abort
+					if (waiter.granted) {
+						getObjectSet(txNum).add(obj);
+						return;
+					}
+					if (Thread.interrupted()) {
+						cancel(obj, lks, waiter);
+						throw new LockAbortException("abort tx." + txNum + " by interrupted");
+					}
+					if (System.currentTimeMillis() >= deadline) {
+						cancel(obj, lks, waiter);
+						timeoutAborts.increment();
+						throw new LockAbortException();
+					}
+					try {
+						if (detectDeadlocks)
+							checkVictim(txNum);
+						else
+							avoidDeadlock(waiter);
+					} catch (LockAbortException e) {
+						cancel(obj, lks, waiter);
+						throw e;
+					}
 				}
-				if (!ixLockable(lks, txNum))
-					throw new LockAbortException();
-				lks.ixLockers.add(txNum);
-				getObjectSet(txNum).add(obj);
-			} catch (InterruptedException e) {
-				throw new LockAbortException();
 			}
+		} finally {
+			waitingTxs.remove(txNum);
 		}
-		txWaitMap.remove(txNum);
 	}
 
 	/**
@@ -361,28 +488,27 @@ class LockTable {
 	 * @param lockType the type of lock
 	 */
 	void release(Object obj, long txNum, int lockType) {
-		Object anchor = getAnchor(obj);
-		synchronized (anchor) {
-			Lockers lks = lockerMap.get(obj);
-			/*
-			 * In some situation, tx will release the lock of the object that have been
-			 * released.
-			 */
-			if (lks != null) {
-				releaseLock(lks, anchor, txNum, lockType);
-
-				// Check if this transaction have any other lock on this object
-				if (!hasSLock(lks, txNum) && !hasXLock(lks, txNum) && !hasSixLock(lks, txNum) && !hasIsLock(lks, txNum)
-						&& !hasIxLock(lks, txNum)) {
-					getObjectSet(txNum).remove(obj);
-
-					// Remove the locker, if there is no other transaction
-					// having it
-					if (!sLocked(lks) && !xLocked(lks) && !sixLocked(lks) && !isLocked(lks) && !ixLocked(lks)
-							&& lks.requestSet.isEmpty())
-						lockerMap.remove(obj);
-				}
-			}
+		Lockers lks = lockerMap.get(obj);
+		/*
+		 * In some situation, tx will release the lock of the object that have been
+		 * released.
+		 */
+		if (lks == null)
+			return;
+
+		synchronized (lks) {
+			if (lks.removed)
+				return;
+
+			releaseLock(lks, txNum, lockType);
+
+			// Check if this transaction have any other lock on this object
+			if (!hasSLock(lks, txNum) && !hasXLock(lks, txNum) && !hasSixLock(lks, txNum) && !hasIsLock(lks, txNum)
+					&& !hasIxLock(lks, txNum))
+				getObjectSet(txNum).remove(obj);
+
+			handOff(lks);
+			removeIfUnused(obj, lks);
 		}
 	}
 
@@ -397,86 +523,112 @@ class LockTable {
 	void releaseAll(long txNum, boolean sLockOnly) {
 		Set<Object> objectsToRelease = getObjectSet(txNum);
 		for (Object obj : objectsToRelease) {
-			Object anchor = getAnchor(obj);
-			synchronized (anchor) {
-				Lockers lks = lockerMap.get(obj);
+			Lockers lks = lockerMap.get(obj);
+			if (lks == null)
+				continue;
 
-				if (lks != null) {
+			synchronized (lks) {
+				if (lks.removed)
+					continue;
 
-					if (hasSLock(lks, txNum))
-						releaseLock(lks, anchor, txNum, S_LOCK);
+				if (hasSLock(lks, txNum))
+					releaseLock(lks, txNum, S_LOCK);
 
-					if (hasXLock(lks, txNum) && !sLockOnly)
-						releaseLock(lks, anchor, txNum, X_LOCK);
+				if (hasXLock(lks, txNum) && !sLockOnly)
+					releaseLock(lks, txNum, X_LOCK);
 
-					if (hasSixLock(lks, txNum))
-						releaseLock(lks, anchor, txNum, SIX_LOCK);
+				if (hasSixLock(lks, txNum))
+					releaseLock(lks, txNum, SIX_LOCK);
 
-					while (hasIsLock(lks, txNum))
-						releaseLock(lks, anchor, txNum, IS_LOCK);
+				while (hasIsLock(lks, txNum))
+					releaseLock(lks, txNum, IS_LOCK);
 
-					while (hasIxLock(lks, txNum) && !sLockOnly)
-						releaseLock(lks, anchor, txNum, IX_LOCK);
+				while (hasIxLock(lks, txNum) && !sLockOnly)
+					releaseLock(lks, txNum, IX_LOCK);
 
-					// Remove the locker, if there is no other transaction
-					// having it
-					if (!sLocked(lks) && !xLocked(lks) && !sixLocked(lks) && !isLocked(lks) && !ixLocked(lks)
-							&& lks.requestSet.isEmpty())
-						lockerMap.remove(obj);
-				}
+				handOff(lks);
+				removeIfUnused(obj, lks);
 			}
 		}
-		txWaitMap.remove(txNum);
+		waitingTxs.remove(txNum);
 		txnsToBeAborted.remove(txNum);
 		lockByMap.remove(txNum);
 	}
 
-	private void releaseLock(Lockers lks, Object anchor, long txNum, int lockType) {
-		if (lks == null)
-			return;
-
-		// notify all waiting threads and let them check whether they are able to lock
-		anchor.notifyAll();
-
+	private void releaseLock(Lockers lks, long txNum, int lockType) {
 		switch (lockType) {
 		case X_LOCK:
 			if (lks.xLocker == txNum) {
-				lks.xLocker = -1;
+				lks.xLocker = Lockers.NONE;
 			}
 			return;
 		case SIX_LOCK:
 			if (lks.sixLocker == txNum) {
-				lks.sixLocker = -1;
+				lks.sixLocker = Lockers.NONE;
 			}
 			return;
 		case S_LOCK:
-			Set<Long> sl = lks.sLockers;
-			if (sl != null && sl.contains(txNum)) {
-				sl.remove((Long) txNum);
-			}
+			lks.sLockers.remove(txNum);
 			return;
 		case IS_LOCK:
-			Set<Long> isl = lks.isLockers;
-			if (isl != null && isl.contains(txNum)) {
-				isl.remove((Long) txNum);
-			}
+			lks.isLockers.remove(txNum);
 			return;
 		case IX_LOCK:
-			Set<Long> ixl = lks.ixLockers;
-			if (ixl != null && ixl.contains(txNum)) {
-				ixl.remove((Long) txNum);
-			}
+			lks.ixLockers.remove(txNum);
 			return;
 		default:
 			throw new IllegalArgumentException();
 		}
 	}
 
+	/**
+	 * Grants, in the order they arrived, the waiting requests compatible with
+	 * the current lockers and with the requests still queued ahead of them,
+	 * and unparks their transactions. The caller must hold the monitor of the
+	 * lockers.
+	 */
+	private void handOff(Lockers lks) {
+		if (lks.waiters.isEmpty())
+			return;
+		List<Waiter> blocked = new ArrayList<Waiter>();
+		Iterator<Waiter> iter = lks.waiters.iterator();
+		while (iter.hasNext()) {
+			Waiter waiter = iter.next();
+			if (!lockable(lks, waiter.txNum, waiter.lockType)
+					|| conflictsAhead(blocked, waiter.txNum, waiter.lockType)) {
+				blocked.add(waiter);
+				continue;
+			}
+			addLocker(lks, waiter.txNum, waiter.lockType);
+			waiter.granted = true;
+			iter.remove();
+			LockSupport.unpark(waiter.thread);
+		}
+	}
+
+	private void cancel(Object obj, Lockers lks, Waiter waiter) {
+		lks.waiters.remove(waiter);
+		// The requests queued behind may be grantable now
+		handOff(lks);
+		removeIfUnused(obj, lks);
+	}
+
+	private void removeIfUnused(Object obj, Lockers lks) {
+		// Remove the locker, if there is no other transaction having it
+		if (!sLocked(lks) && !xLocked(lks) && !sixLocked(lks) && !isLocked(lks) && !ixLocked(lks)
+				&& lks.waiters.isEmpty()) {
+			lks.removed = true;
+			lockerMap.remove(obj, lks);
+		}
+	}
+
 	private Lockers prepareLockers(Object obj) {
 		Lockers lockers = lockerMap.get(obj);
 		if (lockers == null) {
 			lockers = new Lockers();
-			lockerMap.put(obj, lockers);
+			Lockers existing = lockerMap.putIfAbsent(obj, lockers);
+			if (existing != null)
+				lockers = existing;
 		}
 		return lockers;
 	}
@@ -490,8 +642,60 @@ class LockTable {
 		return objectSet;
 	}
 
-	private boolean waitingTooLong(long starttime) {
-		return System.currentTimeMillis() - starttime + EPSILON > MAX_TIME;
+	private void addLocker(Lockers lks, long txNum, int lockType) {
+		switch (lockType) {
+		case X_LOCK:
+			lks.xLocker = txNum;
+			return;
+		case SIX_LOCK:
+			lks.sixLocker = txNum;
+			return;
+		case S_LOCK:
+			lks.sLockers.add(txNum);
+			return;
+		case IS_LOCK:
+			lks.isLockers.add(txNum);
+			return;
+		case IX_LOCK:
+			lks.ixLockers.add(txNum);
+			return;
+		default:
+			throw new IllegalArgumentException();
+		}
+	}
+
+	private boolean hasLock(Lockers lks, long txNum, int lockType) {
+		switch (lockType) {
+		case X_LOCK:
+			return hasXLock(lks, txNum);
+		case SIX_LOCK:
+			return hasSixLock(lks, txNum);
+		case S_LOCK:
+			return hasSLock(lks, txNum);
+		case IS_LOCK:
+			return hasIsLock(lks, txNum);
+		case IX_LOCK:
+			return hasIxLock(lks, txNum);
+		default:
+			throw new IllegalArgumentException();
+		}
+	}
+
+	private boolean lockable(Lockers lks, long txNum, int lockType) {
+		switch (lockType) {
+		case X_LOCK:
+			return xLockable(lks, txNum);
+		case SIX_LOCK:
+			return sixLockable(lks, txNum);
+		case S_LOCK:
+			return sLockable(lks, txNum);
+		case IS_LOCK:
+			return isLockable(lks, txNum);
+		case IX_LOCK:
+			return ixLockable(lks, txNum);
+		default:
+			throw new IllegalArgumentException();
+		}
 	}
 
 	/*
@@ -542,6 +746,11 @@ class LockTable {
 		return lks != null && lks.ixLockers.contains(txNum);
 	}
 
+	private boolean holdsAnyLock(Lockers lks, long txNum) {
+		return hasSLock(lks, txNum) || hasXLock(lks, txNum) || hasSixLock(lks, txNum) || hasIsLock(lks, txNum)
+				|| hasIxLock(lks, txNum);
+	}
+
 	private boolean isTheOnlySLocker(Lockers lks, long txNum) {
 		return lks != null && lks.sLockers.size() == 1 && lks.sLockers.contains(txNum);
 	}
@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright 2016, 2026 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.tx.concurrency;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.record.RecordId;
+import org.vanilladb.core.storage.tx.Transaction;
+
+/**
+ * An optimistic concurrency manager providing the serializable isolation
+ * level. A transaction takes no lock on the record files. Instead, it
+ * remembers the versions of the items it reads, becomes the owner of the items
+ * it modifies, and checks in {@link #validate()} that none of the read items
+ * has been modified by another transaction before it commits. A transaction
+ * never waits: it aborts as soon as it reads or modifies an item owned by
+ * another transaction.
+ * 
+ * <p>
+ * This manager suits the short transactions which seldom touch the same
+ * records. Transactions inserting into or deleting from the same table always
+ * conflict, since the file is modified as a whole. The indexes are reorganized
+ * in place, so they are still locked as in {@link SerializableConcurrencyMgr}.
+ * All the isolation levels used at the same time must be provided by this
+ * manager, since the versions and the locks do not see each other.
+ * </p>
+ */
+public class OptimisticConcurrencyMgr extends SerializableConcurrencyMgr {
+	private static VersionTable versionTbl = new VersionTable();
+
+	private long startStamp;
+	private Map<Object, Long> readSet = new HashMap<Object, Long>();
+	private Set<Object> writeSet = new LinkedHashSet<Object>();
+
+	public OptimisticConcurrencyMgr(long txNumber) {
+		super(txNumber);
+		startStamp = versionTbl.begin();
+	}
+
+	@Override
+	public void validate() {
+		for (Map.Entry<Object, Long> e : readSet.entrySet())
+			if (!writeSet.contains(e.getKey())
+					&& !versionTbl.validate(e.getKey(), txNum, startStamp, e.getValue()))
+				throw new LockAbortException("validation failed on " + e.getKey());
+	}
+
+	@Override
+	public void onTxCommit(Transaction tx) {
+		finish();
+		super.onTxCommit(tx);
+	}
+
+	@Override
+	public void onTxRollback(Transaction tx) {
+		finish();
+		super.onTxRollback(tx);
+	}
+
+	@Override
+	public void modifyFile(String fileName) {
+		if (isRecordFile(fileName))
+			write(fileName);
+		else
+			super.modifyFile(fileName);
+	}
+
+	@Override
+	public void readFile(String fileName) {
+		if (isRecordFile(fileName))
+			read(fileName);
+		else
+			super.readFile(fileName);
+	}
+
+	@Override
+	public void insertBlock(BlockId blk) {
+		if (isRecordFile(blk.fileName())) {
+			write(blk.fileName());
+			write(blk);
+		} else
+			super.insertBlock(blk);
+	}
+
+	@Override
+	public void modifyBlock(BlockId blk) {
+		if (isRecordFile(blk.fileName()))
+			write(blk);
+		else
+			super.modifyBlock(blk);
+	}
+
+	@Override
+	public void readBlock(BlockId blk) {
+		if (isRecordFile(blk.fileName()))
+			read(blk);
+		else
+			super.readBlock(blk);
+	}
+
+	@Override
+	public void modifyRecord(RecordId recId) {
+		if (isRecordFile(recId.block().fileName()))
+			write(recId);
+		else
+			super.modifyRecord(recId);
+	}
+
+	@Override
+	public void readRecord(RecordId recId) {
+		if (isRecordFile(recId.block().fileName()))
+			read(recId);
+		else
+			super.readRecord(recId);
+	}
+
+	private void read(Object obj) {
+		if (writeSet.contains(obj) || readSet.containsKey(obj))
+			return;
+		readSet.put(obj, versionTbl.read(obj, txNum));
+	}
+
+	private void write(Object obj) {
+		if (writeSet.contains(obj))
+			return;
+		versionTbl.acquire(obj, txNum, startStamp, readSet.get(obj));
+		writeSet.add(obj);
+	}
+
+	private void finish() {
+		versionTbl.releaseAll(writeSet, txNum);
+		versionTbl.end(startStamp);
+		readSet.clear();
+		writeSet.clear();
+	}
+
+	private static boolean isRecordFile(String fileName) {
+		return fileName.endsWith(".tbl");
+	}
+}
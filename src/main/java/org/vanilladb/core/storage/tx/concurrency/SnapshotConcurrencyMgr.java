@@ -0,0 +1,52 @@
+/*******************************************************************************
+ * Copyright 2016, 2026 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.tx.concurrency;
+
+import org.vanilladb.core.storage.buffer.VersionStore;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.record.RecordId;
+
+/**
+ * The concurrency manager of the read-only transactions reading a snapshot.
+ * The records are read from the blocks reconstructed by the
+ * {@link VersionStore}, so reading the record files takes no lock. The indexes
+ * are not versioned, so they are still locked as in
+ * {@link SerializableConcurrencyMgr}.
+ */
+public class SnapshotConcurrencyMgr extends SerializableConcurrencyMgr {
+
+	public SnapshotConcurrencyMgr(long txNumber) {
+		super(txNumber);
+	}
+
+	@Override
+	public void readFile(String fileName) {
+		if (!VersionStore.isVersioned(fileName))
+			super.readFile(fileName);
+	}
+
+	@Override
+	public void readBlock(BlockId blk) {
+		if (!VersionStore.isVersioned(blk))
+			super.readBlock(blk);
+	}
+
+	@Override
+	public void readRecord(RecordId recId) {
+		if (!VersionStore.isVersioned(recId.block()))
+			super.readRecord(recId);
+	}
+}
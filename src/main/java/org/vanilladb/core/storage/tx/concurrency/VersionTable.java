@@ -0,0 +1,247 @@
+/*******************************************************************************
+ * Copyright 2016, 2026 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.tx.concurrency;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the versions of the items (e.g., file, block, or record) modified by
+ * the transactions running under {@link OptimisticConcurrencyMgr}. Each item
+ * has a stamp, which is renewed whenever a transaction modifying the item
+ * commits or rolls back, and at most one owner, the transaction which is
+ * modifying the item. A transaction never waits for an item: a request
+ * conflicting with the owner aborts the transaction right away.
+ * 
+ * <p>
+ * The stamps are drawn from a global clock. An item which has never been
+ * modified has no entry in the table, and the entry of an item is dropped
+ * once all the running transactions started after its stamp was renewed, so
+ * the table only keeps the items modified recently.
+ * </p>
+ */
+class VersionTable {
+	/**
+	 * The stamp of an item which has not been modified since the table was
+	 * created or since its entry was dropped.
+	 */
+	static final long NO_STAMP = 0;
+
+	private static final long NO_OWNER = -1;
+
+	/**
+	 * The version of an item, guarded by its own monitor.
+	 */
+	private static class Version {
+		long stamp = NO_STAMP;
+		long owner = NO_OWNER;
+		boolean removed;
+	}
+
+	/**
+	 * A version renewed by a finished transaction, which can be dropped once no
+	 * running transaction started before the renewal.
+	 */
+	private static class Renewal {
+		final Object obj;
+		final Version ver;
+		final long stamp;
+
+		Renewal(Object obj, Version ver, long stamp) {
+			this.obj = obj;
+			this.ver = ver;
+			this.stamp = stamp;
+		}
+	}
+
+	private final Map<Object, Version> versions = new ConcurrentHashMap<Object, Version>();
+	private final Queue<Renewal> renewals = new ConcurrentLinkedQueue<Renewal>();
+	private final AtomicLong clock = new AtomicLong(NO_STAMP);
+
+	// The start stamps of the running transactions and their counts, guarded
+	// by the monitor of this table
+	private final TreeMap<Long, Integer> startStamps = new TreeMap<Long, Integer>();
+
+	/**
+	 * Registers a starting transaction.
+	 * 
+	 * @return the start stamp of the transaction
+	 */
+	synchronized long begin() {
+		long start = clock.get();
+		Integer count = startStamps.get(start);
+		startStamps.put(start, count == null ? 1 : count + 1);
+		return start;
+	}
+
+	/**
+	 * Unregisters a finished transaction and drops the versions which no
+	 * running transaction can be interested in.
+	 * 
+	 * @param start
+	 *            the start stamp of the transaction
+	 */
+	synchronized void end(long start) {
+		Integer count = startStamps.get(start);
+		if (count != null) {
+			if (count == 1)
+				startStamps.remove(start);
+			else
+				startStamps.put(start, count - 1);
+		}
+
+		long oldestStart = startStamps.isEmpty() ? Long.MAX_VALUE : startStamps.firstKey();
+		Renewal r = renewals.peek();
+		while (r != null && r.stamp < oldestStart) {
+			renewals.poll();
+			synchronized (r.ver) {
+				if (!r.ver.removed && r.ver.owner == NO_OWNER && r.ver.stamp == r.stamp) {
+					r.ver.removed = true;
+					versions.remove(r.obj, r.ver);
+				}
+			}
+			r = renewals.peek();
+		}
+	}
+
+	/**
+	 * Returns the current stamp of the specified item for a reading
+	 * transaction.
+	 * 
+	 * @param obj
+	 *            the item
+	 * @param txNum
+	 *            the reading transaction
+	 * @return the stamp of the item
+	 * @throws LockAbortException
+	 *             if the item is being modified by another transaction
+	 */
+	long read(Object obj, long txNum) {
+		Version ver = versions.get(obj);
+		if (ver == null)
+			return NO_STAMP;
+		synchronized (ver) {
+			if (ver.owner != NO_OWNER && ver.owner != txNum)
+				throw new LockAbortException("item is being modified: " + obj);
+			return ver.stamp;
+		}
+	}
+
+	/**
+	 * Makes the specified transaction the owner of the item, so that the
+	 * transaction can modify it.
+	 * 
+	 * @param obj
+	 *            the item
+	 * @param txNum
+	 *            the modifying transaction
+	 * @param start
+	 *            the start stamp of the transaction
+	 * @param readStamp
+	 *            the stamp of the item when the transaction read it, or null
+	 *            if the transaction did not read it
+	 * @throws LockAbortException
+	 *             if the item is owned by another transaction, or has been
+	 *             modified since the transaction read it
+	 */
+	void acquire(Object obj, long txNum, long start, Long readStamp) {
+		while (true) {
+			Version ver = versions.get(obj);
+			if (ver == null) {
+				Version newVer = new Version();
+				ver = versions.putIfAbsent(obj, newVer);
+				if (ver == null)
+					ver = newVer;
+			}
+			synchronized (ver) {
+				// The entry has been dropped, look it up again
+				if (ver.removed)
+					continue;
+				if (ver.owner == txNum)
+					return;
+				if (ver.owner != NO_OWNER)
+					throw new LockAbortException("item is being modified: " + obj);
+				if (readStamp != null && !isUnchanged(ver, start, readStamp))
+					throw new LockAbortException("item has been modified: " + obj);
+				ver.owner = txNum;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Checks whether the item read by the specified transaction is still the
+	 * same.
+	 * 
+	 * @param obj
+	 *            the item
+	 * @param txNum
+	 *            the reading transaction
+	 * @param start
+	 *            the start stamp of the transaction
+	 * @param readStamp
+	 *            the stamp of the item when the transaction read it
+	 * @return true if the item has not been modified by other transactions
+	 *         since it was read
+	 */
+	boolean validate(Object obj, long txNum, long start, long readStamp) {
+		Version ver = versions.get(obj);
+		// The entry is dropped only after all the running transactions started
+		if (ver == null)
+			return true;
+		synchronized (ver) {
+			if (ver.owner == txNum)
+				return true;
+			if (ver.owner != NO_OWNER)
+				return false;
+			return isUnchanged(ver, start, readStamp);
+		}
+	}
+
+	/**
+	 * Renews the stamps of the items owned by the specified transaction and
+	 * gives up their ownership.
+	 * 
+	 * @param objs
+	 *            the owned items
+	 * @param txNum
+	 *            the owning transaction
+	 */
+	void releaseAll(Collection<Object> objs, long txNum) {
+		if (objs.isEmpty())
+			return;
+		long stamp = clock.incrementAndGet();
+		for (Object obj : objs) {
+			Version ver = versions.get(obj);
+			synchronized (ver) {
+				ver.stamp = stamp;
+				ver.owner = NO_OWNER;
+			}
+			renewals.add(new Renewal(obj, ver, stamp));
+		}
+	}
+
+	private boolean isUnchanged(Version ver, long start, long readStamp) {
+		// A version renewed before the transaction started was already there
+		// when the transaction read the item
+		return ver.stamp == readStamp || ver.stamp <= start;
+	}
+}
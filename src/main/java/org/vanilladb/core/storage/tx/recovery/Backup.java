@@ -0,0 +1,573 @@
+/*******************************************************************************
+ * Copyright 2016, 2026 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.tx.recovery;
+
+import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_COMMIT;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.storage.buffer.Buffer;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.file.FileMgr;
+import org.vanilladb.core.storage.file.Page;
+import org.vanilladb.core.storage.log.LogMgr;
+import org.vanilladb.core.storage.log.LogSegments;
+import org.vanilladb.core.storage.log.LogSeqNum;
+import org.vanilladb.core.storage.tx.Transaction;
+
+/**
+ * An online backup of a database. A backup is taken while the transactions go
+ * on: the blocks of the database files are copied one by one through the
+ * buffers, without any lock of the transactions, so a backup holds pages
+ * copied at different times. The log from the start LSN of the backup to its
+ * end LSN is copied as well, which brings all the pages to the state at the
+ * end of the backup when it is replayed.
+ * 
+ * <p>
+ * A backup can be incremental. An incremental backup copies only the blocks
+ * whose page LSNs show that they have been modified since its base backup
+ * started, along with the blocks appended since then. A restore lays out the
+ * blocks of the base backups first.
+ * </p>
+ * 
+ * <p>
+ * A restore lays out the files of a backup for a database, and then leaves
+ * the rest to the {@link RecoveryMgr#initializeSystem(Transaction) recovery}
+ * when the database starts: the log is cut at the chosen point in time, and
+ * replayed from the start of the backup. The log segments archived or kept
+ * since the backup can be given to replay the log beyond the end of the
+ * backup.
+ * </p>
+ */
+public class Backup {
+	private static Logger logger = Logger.getLogger(Backup.class.getName());
+
+	private static final String MANIFEST_FILE = "backup.properties";
+	private static final String DATA_DIR = "data", LOG_DIR = "log";
+	private static final String RESTORE_FILE = LogMgr.DEFAULT_LOG_FILE + ".restore";
+	private static final String START = "start", END = "end", BASE = "base", SIZE_PREFIX = "size.",
+			TARGET = "target", TIME = "time";
+
+	/**
+	 * Takes a full backup of the database into the specified directory.
+	 * 
+	 * @param tx
+	 *            the transaction reading the blocks
+	 * @param dir
+	 *            the directory for the backup, which must not exist
+	 * @return the backup
+	 */
+	public static Backup create(Transaction tx, File dir) {
+		return create(tx, dir, null);
+	}
+
+	/**
+	 * Takes a backup of the database into the specified directory. Only the
+	 * blocks modified or appended since the base backup started are copied.
+	 * If the database has been recovered since then, the page LSNs do not tell
+	 * the modified blocks, so all the blocks are copied.
+	 * 
+	 * @param tx
+	 *            the transaction reading the blocks
+	 * @param dir
+	 *            the directory for the backup, which must not exist
+	 * @param base
+	 *            the base backup, or null for a full backup
+	 * @return the backup
+	 */
+	public static Backup create(Transaction tx, File dir, Backup base) {
+		if (dir.exists())
+			throw new RuntimeException(dir + " already exists");
+		if (!new File(dir, DATA_DIR).mkdirs() || !new File(dir, LOG_DIR).mkdirs())
+			throw new RuntimeException("cannot create " + dir);
+
+		LogMgr logMgr = VanillaDb.logMgr();
+		// The log since the start is needed until it is copied
+		logMgr.suspendTruncation();
+		try {
+			// The modifications logged before the start are in the pages
+			// copied, but the active transactions may be rolled back later
+			LogSeqNum startLsn = logMgr.flushAll();
+			LogSeqNum oldestLsn = VanillaDb.txMgr().oldestStartLsn();
+			if (oldestLsn != null && oldestLsn.compareTo(startLsn) < 0)
+				startLsn = oldestLsn;
+
+			LogSeqNum recoveredLsn = RecoveryMgr.recoveredLsn();
+			if (base != null && recoveredLsn != null && recoveredLsn.compareTo(base.startLsn) > 0) {
+				if (logger.isLoggable(Level.WARNING))
+					logger.warning("the database has been recovered since " + base.dir + ", taking a full backup");
+				base = null;
+			}
+
+			Map<String, Long> sizes = copyFiles(tx, new File(dir, DATA_DIR), base);
+			LogSeqNum endLsn = logMgr.flushAll();
+			copyLog(new File(dir, LOG_DIR), startLsn, endLsn);
+
+			Backup backup = new Backup(dir, startLsn, endLsn, base == null ? null : base.dir, sizes);
+			backup.save();
+			if (logger.isLoggable(Level.INFO))
+				logger.info((base == null ? "full" : "incremental") + " backup " + dir + " taken from " + startLsn
+						+ " to " + endLsn);
+			return backup;
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new RuntimeException("cannot back up into " + dir);
+		} finally {
+			logMgr.resumeTruncation();
+		}
+	}
+
+	private File dir, baseDir;
+	private LogSeqNum startLsn, endLsn;
+	private Map<String, Long> sizes;
+
+	/**
+	 * Opens the backup in the specified directory.
+	 * 
+	 * @param dir
+	 *            the directory of the backup
+	 */
+	public Backup(File dir) {
+		this.dir = dir;
+		Properties manifest = load(new File(dir, MANIFEST_FILE));
+		startLsn = toLsn(manifest.getProperty(START));
+		endLsn = toLsn(manifest.getProperty(END));
+		String base = manifest.getProperty(BASE);
+		baseDir = (base == null) ? null : new File(base);
+		sizes = new HashMap<String, Long>();
+		for (String key : manifest.stringPropertyNames())
+			if (key.startsWith(SIZE_PREFIX))
+				sizes.put(key.substring(SIZE_PREFIX.length()), Long.parseLong(manifest.getProperty(key)));
+	}
+
+	private Backup(File dir, LogSeqNum startLsn, LogSeqNum endLsn, File baseDir, Map<String, Long> sizes) {
+		this.dir = dir;
+		this.startLsn = startLsn;
+		this.endLsn = endLsn;
+		this.baseDir = baseDir;
+		this.sizes = sizes;
+	}
+
+	/**
+	 * Returns the LSN where the log of the backup starts. The log from this
+	 * LSN is replayed by a restore.
+	 * 
+	 * @return the start LSN
+	 */
+	public LogSeqNum startLsn() {
+		return startLsn;
+	}
+
+	/**
+	 * Returns the LSN where the backup ends. The database can be restored to
+	 * a point after this LSN.
+	 * 
+	 * @return the end LSN
+	 */
+	public LogSeqNum endLsn() {
+		return endLsn;
+	}
+
+	/**
+	 * Returns the base backup of this backup.
+	 * 
+	 * @return the base backup, or null if this is a full backup
+	 */
+	public Backup base() {
+		return (baseDir == null) ? null : new Backup(baseDir);
+	}
+
+	/**
+	 * Restores the backup for the specified database, with all the log
+	 * available.
+	 * 
+	 * @param dbName
+	 *            the name of the database, which must not exist
+	 * @param logDir
+	 *            the directory of the log segments kept since the backup, or
+	 *            null to replay only the log of the backup
+	 */
+	public void restore(String dbName, File logDir) {
+		restore(dbName, logDir, new Properties());
+	}
+
+	/**
+	 * Restores the backup for the specified database, up to the log record of
+	 * the specified LSN.
+	 * 
+	 * @param dbName
+	 *            the name of the database, which must not exist
+	 * @param logDir
+	 *            the directory of the log segments kept since the backup, or
+	 *            null to replay only the log of the backup
+	 * @param targetLsn
+	 *            the LSN of the last log record to be replayed
+	 */
+	public void restore(String dbName, File logDir, LogSeqNum targetLsn) {
+		if (targetLsn.compareTo(endLsn) < 0)
+			throw new IllegalArgumentException("cannot restore to " + targetLsn + " before the end of the backup");
+		Properties point = new Properties();
+		point.setProperty(TARGET, toString(targetLsn));
+		restore(dbName, logDir, point);
+	}
+
+	/**
+	 * Restores the backup for the specified database, with the transactions
+	 * committed by the specified time.
+	 * 
+	 * @param dbName
+	 *            the name of the database, which must not exist
+	 * @param logDir
+	 *            the directory of the log segments kept since the backup, or
+	 *            null to replay only the log of the backup
+	 * @param time
+	 *            the time in milliseconds since the epoch
+	 */
+	public void restore(String dbName, File logDir, long time) {
+		Properties point = new Properties();
+		point.setProperty(TIME, Long.toString(time));
+		restore(dbName, logDir, point);
+	}
+
+	/**
+	 * Cuts the log at the point in time recorded by the restore, if the
+	 * database has just been restored. The recovery then replays the log from
+	 * the LSN returned.
+	 * 
+	 * @return the start LSN of the restored backup, or null if the database is
+	 *         not restored
+	 */
+	static LogSeqNum prepareRestore() {
+		File file = new File(VanillaDb.fileMgr().logDirectory(), RESTORE_FILE);
+		if (!file.exists())
+			return null;
+
+		Properties point = load(file);
+		LogSeqNum startLsn = toLsn(point.getProperty(START));
+		LogSeqNum endLsn = toLsn(point.getProperty(END));
+		LogSeqNum targetLsn = null;
+		if (point.getProperty(TARGET) != null)
+			targetLsn = findRecord(toLsn(point.getProperty(TARGET)));
+		else if (point.getProperty(TIME) != null)
+			targetLsn = lastRecordBefore(Long.parseLong(point.getProperty(TIME)), endLsn);
+
+		if (targetLsn != null) {
+			if (targetLsn.compareTo(endLsn) < 0)
+				throw new RuntimeException("cannot restore to " + targetLsn + " before the end of the backup");
+			VanillaDb.logMgr().cut(targetLsn);
+		}
+		if (logger.isLoggable(Level.INFO))
+			logger.info("restoring the database from " + startLsn + " to "
+					+ (targetLsn == null ? "the end of the log" : targetLsn.toString()));
+		return startLsn;
+	}
+
+	/**
+	 * Finishes the restore once the database has been recovered.
+	 */
+	static void finishRestore() {
+		File file = new File(VanillaDb.fileMgr().logDirectory(), RESTORE_FILE);
+		if (!file.delete())
+			throw new RuntimeException("cannot delete " + file);
+	}
+
+	private void restore(String dbName, File logDir, Properties point) {
+		File dbDir = new File(FileMgr.DB_FILES_DIR, dbName);
+		File dbLogDir = new File(FileMgr.LOG_FILES_DIR, dbName);
+		if (dbDir.exists())
+			throw new RuntimeException(dbDir + " already exists");
+		if (!dbDir.mkdirs() || (!dbLogDir.exists() && !dbLogDir.mkdirs()))
+			throw new RuntimeException("cannot create " + dbName);
+
+		try {
+			// The blocks of a backup take the place of those of its bases
+			LinkedList<Backup> backups = new LinkedList<Backup>();
+			for (Backup backup = this; backup != null; backup = backup.base())
+				backups.addFirst(backup);
+			for (Backup backup : backups)
+				backup.restoreFiles(dbDir);
+
+			// The segments kept since the backup hold more of the log
+			long firstSegment = Long.MAX_VALUE;
+			for (File file : new File(dir, LOG_DIR).listFiles()) {
+				firstSegment = Math.min(firstSegment, segmentOf(file.getName()));
+				copy(file, new File(dbLogDir, file.getName()));
+			}
+			if (logDir != null)
+				for (File file : logDir.listFiles())
+					if (segmentOf(file.getName()) >= firstSegment)
+						copy(file, new File(dbLogDir, file.getName()));
+
+			point.setProperty(START, toString(startLsn));
+			point.setProperty(END, toString(endLsn));
+			store(point, new File(dbLogDir, RESTORE_FILE));
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new RuntimeException("cannot restore " + dbName + " from " + dir);
+		}
+		if (logger.isLoggable(Level.INFO))
+			logger.info("backup " + dir + " restored for " + dbName);
+	}
+
+	private static Map<String, Long> copyFiles(Transaction tx, File dataDir, Backup base) throws IOException {
+		LogSeqNum sinceLsn = (base == null) ? null : base.startLsn;
+		Map<String, Long> sizes = new HashMap<String, Long>();
+		byte[] page = new byte[Page.BLOCK_SIZE];
+
+		// Copy the blocks appended in the meantime, until no more is appended
+		boolean appended = true;
+		while (appended) {
+			appended = false;
+			for (String fileName : dataFiles()) {
+				Long copied = sizes.get(fileName);
+				long size = VanillaDb.fileMgr().size(fileName);
+				if (copied != null && copied >= size)
+					continue;
+				appended = true;
+
+				long baseSize = (base == null) ? 0 : base.size(fileName);
+				DataOutputStream out = new DataOutputStream(
+						new BufferedOutputStream(new FileOutputStream(new File(dataDir, fileName), true)));
+				try {
+					for (long blkNum = (copied == null) ? 0 : copied; blkNum < size; blkNum++) {
+						LogSeqNum lsn = (blkNum < baseSize) ? sinceLsn : null;
+						if (copyBlock(tx, new BlockId(fileName, blkNum), lsn, page)) {
+							out.writeLong(blkNum);
+							out.write(page);
+						}
+					}
+				} finally {
+					out.close();
+				}
+				sizes.put(fileName, size);
+			}
+		}
+		return sizes;
+	}
+
+	/**
+	 * Copies the page of the block, if it has been modified since the
+	 * specified LSN.
+	 */
+	private static boolean copyBlock(Transaction tx, BlockId blk, LogSeqNum sinceLsn, byte[] page) {
+		Buffer buff = tx.bufferMgr().pin(blk);
+		// A modification is logged and applied while the flushing is locked
+		buff.lockFlushing();
+		try {
+			if (sinceLsn != null && buff.lastLsn().compareTo(sinceLsn) < 0)
+				return false;
+			buff.copyPage(page);
+			return true;
+		} finally {
+			buff.unlockFlushing();
+			tx.bufferMgr().unpin(buff);
+		}
+	}
+
+	private static void copyLog(File logDir, LogSeqNum startLsn, LogSeqNum endLsn) throws IOException {
+		LogMgr logMgr = VanillaDb.logMgr();
+		// The recovery reads a record before the start to know where to stop
+		long first = Math.max(logMgr.firstBlock(), startLsn.blkNum() - 1);
+		Page page = new Page();
+		byte[] bytes = new byte[Page.BLOCK_SIZE];
+		RandomAccessFile file = null;
+		try {
+			for (long blkNum = first; blkNum <= endLsn.blkNum(); blkNum++) {
+				if (file == null || blkNum % LogSegments.SEGMENT_SIZE == 0) {
+					if (file != null)
+						file.close();
+					String fileName = LogMgr.DEFAULT_LOG_FILE + "." + LogSegments.segmentOf(blkNum);
+					file = new RandomAccessFile(new File(logDir, fileName), "rw");
+				}
+				logMgr.read(blkNum, page);
+				page.getBytes(0, bytes);
+				file.seek(blkNum % LogSegments.SEGMENT_SIZE * Page.BLOCK_SIZE);
+				file.write(bytes);
+			}
+		} finally {
+			if (file != null)
+				file.close();
+			page.close();
+		}
+	}
+
+	private void restoreFiles(File dbDir) throws IOException {
+		byte[] page = new byte[Page.BLOCK_SIZE];
+		for (File backupFile : new File(dir, DATA_DIR).listFiles()) {
+			RandomAccessFile file = new RandomAccessFile(new File(dbDir, backupFile.getName()), "rw");
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(backupFile)));
+			try {
+				for (long n = backupFile.length() / (8 + Page.BLOCK_SIZE); n > 0; n--) {
+					long blkNum = in.readLong();
+					in.readFully(page);
+					file.seek(blkNum * Page.BLOCK_SIZE);
+					file.write(page);
+				}
+			} finally {
+				in.close();
+				file.close();
+			}
+		}
+	}
+
+	private void save() throws IOException {
+		Properties manifest = new Properties();
+		manifest.setProperty(START, toString(startLsn));
+		manifest.setProperty(END, toString(endLsn));
+		if (baseDir != null)
+			manifest.setProperty(BASE, baseDir.getAbsolutePath());
+		for (Map.Entry<String, Long> entry : sizes.entrySet())
+			manifest.setProperty(SIZE_PREFIX + entry.getKey(), entry.getValue().toString());
+		store(manifest, new File(dir, MANIFEST_FILE));
+	}
+
+	private long size(String fileName) {
+		Long size = sizes.get(fileName);
+		return (size == null) ? 0 : size;
+	}
+
+	/**
+	 * Returns the files of the database, except the temporary files and the
+	 * log.
+	 */
+	private static List<String> dataFiles() {
+		List<String> fileNames = new ArrayList<String>();
+		for (String fileName : VanillaDb.fileMgr().dbDirectory().list())
+			if (!fileName.startsWith(FileMgr.TMP_FILE_NAME_PREFIX) && !fileName.startsWith(LogMgr.DEFAULT_LOG_FILE))
+				fileNames.add(fileName);
+		return fileNames;
+	}
+
+	/**
+	 * Returns the LSN of the specified log record, which must be in the log.
+	 */
+	private static LogSeqNum findRecord(LogSeqNum lsn) {
+		ReversibleIterator<LogRecord> iter = new LogRecordIterator();
+		while (iter.hasNext()) {
+			int cmp = iter.next().getLSN().compareTo(lsn);
+			if (cmp == 0)
+				return lsn;
+			if (cmp < 0)
+				break;
+		}
+		throw new RuntimeException("no log record at " + lsn);
+	}
+
+	/**
+	 * Returns the LSN of the last log record before the first commit after
+	 * the specified time, or null if no transaction commits after that time.
+	 */
+	private static LogSeqNum lastRecordBefore(long time, LogSeqNum endLsn) {
+		ReversibleIterator<LogRecord> iter = new LogRecordIterator();
+		LogSeqNum lsn = null;
+		boolean cut = false;
+		while (iter.hasNext()) {
+			LogRecord rec = iter.next();
+			if (cut) {
+				lsn = rec.getLSN();
+				cut = false;
+			}
+			if (rec.getLSN().compareTo(endLsn) < 0)
+				break;
+			if (rec.op() == OP_COMMIT) {
+				if (((CommitRecord) rec).time() <= time)
+					break;
+				cut = true;
+			}
+		}
+		if (cut)
+			throw new RuntimeException("no log record before the commit after " + time);
+		return lsn;
+	}
+
+	private static long segmentOf(String fileName) {
+		String prefix = LogMgr.DEFAULT_LOG_FILE + ".";
+		if (!fileName.startsWith(prefix))
+			return -1;
+		try {
+			return Long.parseLong(fileName.substring(prefix.length()));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private static void copy(File src, File dst) throws IOException {
+		InputStream in = new FileInputStream(src);
+		OutputStream out = new FileOutputStream(dst);
+		try {
+			byte[] bytes = new byte[Page.BLOCK_SIZE];
+			int n;
+			while ((n = in.read(bytes)) > 0)
+				out.write(bytes, 0, n);
+		} finally {
+			in.close();
+			out.close();
+		}
+	}
+
+	private static Properties load(File file) {
+		Properties props = new Properties();
+		try {
+			InputStream in = new FileInputStream(file);
+			try {
+				props.load(in);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new RuntimeException("cannot read " + file);
+		}
+		return props;
+	}
+
+	private static void store(Properties props, File file) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			props.store(out, null);
+		} finally {
+			out.close();
+		}
+	}
+
+	private static String toString(LogSeqNum lsn) {
+		return lsn.blkNum() + "," + lsn.offset();
+	}
+
+	private static LogSeqNum toLsn(String s) {
+		int comma = s.indexOf(',');
+		return new LogSeqNum(Long.parseLong(s.substring(0, comma)), Long.parseLong(s.substring(comma + 1)));
+	}
+}
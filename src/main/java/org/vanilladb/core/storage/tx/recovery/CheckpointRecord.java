@@ -15,39 +15,42 @@
  *******************************************************************************/
 package org.vanilladb.core.storage.tx.recovery;
 
-import static org.vanilladb.core.sql.Type.BIGINT;
-import static org.vanilladb.core.sql.Type.INTEGER;
-
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
 
-import org.vanilladb.core.sql.BigIntConstant;
-import org.vanilladb.core.sql.Constant;
-import org.vanilladb.core.sql.IntegerConstant;
 import org.vanilladb.core.storage.log.BasicLogRecord;
+import org.vanilladb.core.storage.log.LogRecordBuilder;
 import org.vanilladb.core.storage.log.LogSeqNum;
 import org.vanilladb.core.storage.tx.Transaction;
 
 /**
- * The checkpoint log record.
+ * The checkpoint log record. For a fuzzy checkpoint, this record ends the
+ * checkpoint started by a {@link CheckpointStartRecord} and tells the recovery
+ * where to start redoing the log.
  */
 class CheckpointRecord implements LogRecord {
 	private List<Long> txNums;
+	private LogSeqNum redoLsn;
 	private LogSeqNum lsn;
 	/**
 	 * Creates a quiescent checkpoint record.
 	 */
 	public CheckpointRecord() {
 		this.txNums = new ArrayList<Long>();
+		this.redoLsn = LogSeqNum.DEFAULT_VALUE;
 	}
 
 	/**
 	 * Creates a non-quiescent checkpoint record.
+	 * 
+	 * @param txNums
+	 *            the transactions that were active during checkpointing
+	 * @param redoLsn
+	 *            the LSN from which the log has to be redone
 	 */
-	public CheckpointRecord(List<Long> txNums) {
+	public CheckpointRecord(List<Long> txNums, LogSeqNum redoLsn) {
 		this.txNums = txNums;
-		
+		this.redoLsn = redoLsn;
 	}
 
 	/**
@@ -58,25 +61,27 @@ class CheckpointRecord implements LogRecord {
 	 *            the basic log record
 	 */
 	public CheckpointRecord(BasicLogRecord rec) {
-		int txCount = (Integer) rec.nextVal(INTEGER).asJavaVal();
+		int txCount = rec.nextInt();
 		this.lsn = rec.getLSN();
 		this.txNums = new ArrayList<Long>();
 		for (int i = 0; i < txCount; i++) {
-			txNums.add((Long) rec.nextVal(BIGINT).asJavaVal());
+			txNums.add(rec.nextLong());
 		}
+		this.redoLsn = rec.nextLsn();
 	}
 
 	/**
 	 * Writes a checkpoint record to the log. This log record contains the
 	 * {@link LogRecord#OP_CHECKPOINT} operator ID, number of active transctions
-	 * during checkpointing and a list of active transaction ids.
+	 * during checkpointing, a list of active transaction ids and the redo LSN.
 	 * 
 	 * @return the LSN of the log record
 	 */
 	@Override
 	public LogSeqNum writeToLog() {
-		List<Constant> rec = buildRecord();
-		return logMgr.append(rec.toArray(new Constant[rec.size()]));
+		LogRecordBuilder rec = LogRecordBuilder.forCurrentThread();
+		buildRecord(rec);
+		return logMgr.append(rec);
 	}
 
 	@Override
@@ -121,26 +126,38 @@ class CheckpointRecord implements LogRecord {
 		if (txNums.size() > 0)
 			strbuf.delete(strbuf.length() - 1, strbuf.length());
 		
-		return strbuf.toString() + ">";
+		return strbuf.toString() + " REDO " + redoLsn + ">";
 	}
 
 	public List<Long> activeTxNums() {
 		return this.txNums;
 	}
 
+	/**
+	 * Returns the LSN from which the recovery has to redo the log. All the
+	 * modifications logged before this LSN have reached the disk.
+	 * 
+	 * @return the redo LSN
+	 */
+	public LogSeqNum redoLsn() {
+		// A quiescent checkpoint is its own redo point
+		if (redoLsn.equals(LogSeqNum.DEFAULT_VALUE))
+			return lsn;
+		return redoLsn;
+	}
+
 	public boolean isContainTxNum(long txNum) {
 		return this.txNums.contains(txNum);
 	}
 
 	@Override
-	public List<Constant> buildRecord() {
-		List<Constant> rec = new LinkedList<Constant>();
-		rec.add(new IntegerConstant(op()));
-		rec.add(new IntegerConstant(txNums.size()));
+	public void buildRecord(LogRecordBuilder rec) {
+		rec.putInt(op());
+		rec.putInt(txNums.size());
 		int recLength = txNums.size();
 		for (int i = 0; i < recLength; i++)
-			rec.add(new BigIntConstant(txNums.get(i)));
-		return rec;
+			rec.putLong(txNums.get(i));
+		rec.putLsn(redoLsn);
 	}
 
 	@Override
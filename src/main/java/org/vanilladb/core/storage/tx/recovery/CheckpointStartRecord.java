@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright 2016, 2026 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.tx.recovery;
+
+import org.vanilladb.core.storage.log.BasicLogRecord;
+import org.vanilladb.core.storage.log.LogRecordBuilder;
+import org.vanilladb.core.storage.log.LogSeqNum;
+import org.vanilladb.core.storage.tx.Transaction;
+
+/**
+ * The log record marking the beginning of a fuzzy checkpoint. The
+ * {@link DirtyPagesRecord dirty page records} and the
+ * {@link CheckpointRecord checkpoint record} of the same checkpoint follow
+ * it in the log, possibly interleaved with the records of other
+ * transactions.
+ */
+class CheckpointStartRecord implements LogRecord {
+	private LogSeqNum lsn;
+
+	public CheckpointStartRecord() {
+		this.lsn = null;
+	}
+
+	/**
+	 * Creates a log record by reading no other values from the basic log
+	 * record.
+	 * 
+	 * @param rec
+	 *            the basic log record
+	 */
+	public CheckpointStartRecord(BasicLogRecord rec) {
+		lsn = rec.getLSN();
+	}
+
+	/**
+	 * Writes a checkpoint start record to the log. This log record contains
+	 * only the {@link LogRecord#OP_CHECKPOINT_START} operator ID.
+	 * 
+	 * @return the LSN of the log record
+	 */
+	@Override
+	public LogSeqNum writeToLog() {
+		LogRecordBuilder rec = LogRecordBuilder.forCurrentThread();
+		buildRecord(rec);
+		return logMgr.append(rec);
+	}
+
+	@Override
+	public int op() {
+		return OP_CHECKPOINT_START;
+	}
+
+	/**
+	 * Checkpoint records have no associated transaction, and so the method
+	 * returns a "dummy", negative txid.
+	 */
+	@Override
+	public long txNumber() {
+		return -1; // dummy value
+	}
+
+	/**
+	 * Does nothing, because a checkpoint record contains no undo information.
+	 */
+	@Override
+	public void undo(Transaction tx) {
+		// do nothing
+	}
+
+	/**
+	 * Does nothing, because a checkpoint record contains no redo information.
+	 */
+	@Override
+	public void redo(Transaction tx) {
+		// do nothing
+	}
+
+	@Override
+	public String toString() {
+		return "<CKPT START>";
+	}
+
+	@Override
+	public void buildRecord(LogRecordBuilder rec) {
+		rec.putInt(op());
+	}
+
+	@Override
+	public LogSeqNum getLSN() {
+		return lsn;
+	}
+}
@@ -15,15 +15,8 @@
  *******************************************************************************/
 package org.vanilladb.core.storage.tx.recovery;
 
-import static org.vanilladb.core.sql.Type.BIGINT;
-
-import java.util.LinkedList;
-import java.util.List;
-
-import org.vanilladb.core.sql.BigIntConstant;
-import org.vanilladb.core.sql.Constant;
-import org.vanilladb.core.sql.IntegerConstant;
 import org.vanilladb.core.storage.log.BasicLogRecord;
+import org.vanilladb.core.storage.log.LogRecordBuilder;
 import org.vanilladb.core.storage.log.LogSeqNum;
 import org.vanilladb.core.storage.tx.Transaction;
 
@@ -31,8 +24,9 @@ import org.vanilladb.core.storage.tx.Transaction;
  * The commit log record.
  */
 class CommitRecord implements LogRecord {
-	private long txNum;
+	private long txNum, time;
 	private LogSeqNum lsn;
+
 	/**
 	 * Creates a new commit log record for the specified transaction.
 	 * 
@@ -41,30 +35,34 @@ class CommitRecord implements LogRecord {
 	 */
 	public CommitRecord(long txNum) {
 		this.txNum = txNum;
+		this.time = System.currentTimeMillis();
 		this.lsn = null;
 	}
 
 	/**
-	 * Creates a log record by reading one other value from the log.
+	 * Creates a log record by reading two other values from the log.
 	 * 
 	 * @param rec
 	 *            the basic log record
 	 */
 	public CommitRecord(BasicLogRecord rec) {
-		txNum = (Long) rec.nextVal(BIGINT).asJavaVal();
+		txNum = rec.nextLong();
+		time = rec.nextLong();
 		lsn = rec.getLSN();
 	}
 
 	/**
 	 * Writes a commit record to the log. This log record contains the
-	 * {@link LogRecord#OP_COMMIT} operator ID, followed by the transaction ID.
+	 * {@link LogRecord#OP_COMMIT} operator ID, followed by the transaction ID
+	 * and the time of the commit.
 	 * 
 	 * @return the LSN of the log record
 	 */
 	@Override
 	public LogSeqNum writeToLog() {
-		List<Constant> rec = buildRecord();
-		return logMgr.append(rec.toArray(new Constant[rec.size()]));
+		LogRecordBuilder rec = LogRecordBuilder.forCurrentThread();
+		buildRecord(rec);
+		return logMgr.append(rec);
 	}
 
 	@Override
@@ -93,17 +91,25 @@ class CommitRecord implements LogRecord {
 		// do nothing
 	}
 
+	/**
+	 * Returns the time when the transaction committed.
+	 * 
+	 * @return the time in milliseconds since the epoch
+	 */
+	long time() {
+		return time;
+	}
+
 	@Override
 	public String toString() {
 		return "<COMMIT " + txNum + ">";
 	}
 
 	@Override
-	public List<Constant> buildRecord() {
-		List<Constant> rec = new LinkedList<Constant>();
-		rec.add(new IntegerConstant(op()));
-		rec.add(new BigIntConstant(txNum));
-		return rec;
+	public void buildRecord(LogRecordBuilder rec) {
+		rec.putInt(op());
+		rec.putLong(txNum);
+		rec.putLong(time);
 	}
 	@Override
 	public LogSeqNum getLSN() {
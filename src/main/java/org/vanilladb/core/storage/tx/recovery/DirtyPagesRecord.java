@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright 2016, 2026 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.tx.recovery;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.file.Page;
+import org.vanilladb.core.storage.log.BasicLogRecord;
+import org.vanilladb.core.storage.log.LogRecordBuilder;
+import org.vanilladb.core.storage.log.LogSeqNum;
+import org.vanilladb.core.storage.tx.Transaction;
+
+/**
+ * The log record holding a part of the dirty page table taken by a fuzzy
+ * checkpoint. Each entry maps a dirty block to its recovery LSN, the LSN from
+ * which the log has to be redone to bring the block on disk up to date.
+ */
+class DirtyPagesRecord implements LogRecord {
+	// Keep each record well inside a log page
+	private static final int MAX_RECORD_SIZE = Page.BLOCK_SIZE / 2;
+
+	private Map<BlockId, LogSeqNum> dirtyPages;
+	private LogSeqNum lsn;
+
+	/**
+	 * Splits the specified dirty page table into records small enough to fit
+	 * in a log page.
+	 * 
+	 * @param dirtyPages
+	 *            the dirty page table
+	 * @return the records holding the table
+	 */
+	static List<DirtyPagesRecord> split(Map<BlockId, LogSeqNum> dirtyPages) {
+		List<DirtyPagesRecord> recs = new ArrayList<DirtyPagesRecord>();
+		Map<BlockId, LogSeqNum> chunk = new LinkedHashMap<BlockId, LogSeqNum>();
+		int size = 0;
+		for (Map.Entry<BlockId, LogSeqNum> entry : dirtyPages.entrySet()) {
+			int entrySize = entrySize(entry.getKey());
+			if (!chunk.isEmpty() && size + entrySize > MAX_RECORD_SIZE) {
+				recs.add(new DirtyPagesRecord(chunk));
+				chunk = new LinkedHashMap<BlockId, LogSeqNum>();
+				size = 0;
+			}
+			chunk.put(entry.getKey(), entry.getValue());
+			size += entrySize;
+		}
+		if (!chunk.isEmpty())
+			recs.add(new DirtyPagesRecord(chunk));
+		return recs;
+	}
+
+	private static int entrySize(BlockId blk) {
+		return LogRecordBuilder.maxSize(blk.fileName()) + 3 * LogRecordBuilder.MAX_VAR_LONG_SIZE;
+	}
+
+	public DirtyPagesRecord(Map<BlockId, LogSeqNum> dirtyPages) {
+		this.dirtyPages = dirtyPages;
+		this.lsn = null;
+	}
+
+	/**
+	 * Creates a log record by reading the entries from the basic log record.
+	 * 
+	 * @param rec
+	 *            the basic log record
+	 */
+	public DirtyPagesRecord(BasicLogRecord rec) {
+		int count = rec.nextInt();
+		dirtyPages = new LinkedHashMap<BlockId, LogSeqNum>();
+		for (int i = 0; i < count; i++) {
+			BlockId blk = new BlockId(rec.nextString(),
+					rec.nextLong());
+			LogSeqNum recLsn = rec.nextLsn();
+			dirtyPages.put(blk, recLsn);
+		}
+		lsn = rec.getLSN();
+	}
+
+	/**
+	 * Writes a dirty page record to the log. This log record contains the
+	 * {@link LogRecord#OP_DIRTY_PAGES} operator ID, the number of entries and
+	 * then the file name, block number and recovery LSN of each entry.
+	 * 
+	 * @return the LSN of the log record
+	 */
+	@Override
+	public LogSeqNum writeToLog() {
+		LogRecordBuilder rec = LogRecordBuilder.forCurrentThread();
+		buildRecord(rec);
+		return logMgr.append(rec);
+	}
+
+	@Override
+	public int op() {
+		return OP_DIRTY_PAGES;
+	}
+
+	/**
+	 * Checkpoint records have no associated transaction, and so the method
+	 * returns a "dummy", negative txid.
+	 */
+	@Override
+	public long txNumber() {
+		return -1; // dummy value
+	}
+
+	/**
+	 * Does nothing, because a dirty page record contains no undo information.
+	 */
+	@Override
+	public void undo(Transaction tx) {
+		// do nothing
+	}
+
+	/**
+	 * Does nothing, because a dirty page record contains no redo information.
+	 */
+	@Override
+	public void redo(Transaction tx) {
+		// do nothing
+	}
+
+	public Map<BlockId, LogSeqNum> dirtyPages() {
+		return dirtyPages;
+	}
+
+	@Override
+	public String toString() {
+		return "<CKPT DIRTY PAGES " + dirtyPages + ">";
+	}
+
+	@Override
+	public void buildRecord(LogRecordBuilder rec) {
+		rec.putInt(op());
+		rec.putInt(dirtyPages.size());
+		for (Map.Entry<BlockId, LogSeqNum> entry : dirtyPages.entrySet()) {
+			rec.putString(entry.getKey().fileName());
+			rec.putLong(entry.getKey().number());
+			rec.putLong(entry.getValue().blkNum());
+			rec.putLong(entry.getValue().offset());
+		}
+	}
+
+	@Override
+	public LogSeqNum getLSN() {
+		return lsn;
+	}
+}
@@ -15,23 +15,13 @@
  *******************************************************************************/
 package org.vanilladb.core.storage.tx.recovery;
 
-import static org.vanilladb.core.sql.Type.BIGINT;
-import static org.vanilladb.core.sql.Type.INTEGER;
-import static org.vanilladb.core.sql.Type.VARCHAR;
-
-import java.util.LinkedList;
-import java.util.List;
-
 import org.vanilladb.core.server.VanillaDb;
-import org.vanilladb.core.sql.BigIntConstant;
 import org.vanilladb.core.sql.Constant;
-import org.vanilladb.core.sql.IntegerConstant;
-import org.vanilladb.core.sql.Type;
-import org.vanilladb.core.sql.VarcharConstant;
 import org.vanilladb.core.storage.file.BlockId;
 import org.vanilladb.core.storage.index.Index;
 import org.vanilladb.core.storage.index.SearchKey;
 import org.vanilladb.core.storage.log.BasicLogRecord;
+import org.vanilladb.core.storage.log.LogRecordBuilder;
 import org.vanilladb.core.storage.log.LogSeqNum;
 import org.vanilladb.core.storage.metadata.index.IndexInfo;
 import org.vanilladb.core.storage.record.RecordId;
@@ -57,34 +47,32 @@ public class IndexDeleteEndRecord extends LogicalEndRecord implements LogRecord
 	}
 
 	public IndexDeleteEndRecord(BasicLogRecord rec) {
-		txNum = (Long) rec.nextVal(BIGINT).asJavaVal();
-		indexName = (String) rec.nextVal(VARCHAR).asJavaVal();
+		txNum = rec.nextLong();
+		indexName = rec.nextString();
 
 		// Search Key
-		int keyLen = (Integer) rec.nextVal(INTEGER).asJavaVal();
+		int keyLen = rec.nextInt();
 		Constant[] vals = new Constant[keyLen];
 		for (int i = 0; i < keyLen; i++) {
-			int type = (Integer) rec.nextVal(INTEGER).asJavaVal();
-			int argument = (Integer) rec.nextVal(INTEGER).asJavaVal();
-			vals[i] = rec.nextVal(Type.newInstance(type, argument));
+			vals[i] = rec.nextVal(rec.nextType());
 		}
 		searchKey = new SearchKey(vals);
 		
 		// Record Id
-		recordBlockNum = (Long) rec.nextVal(BIGINT).asJavaVal();
-		recordSlotId = (Integer) rec.nextVal(INTEGER).asJavaVal();
+		recordBlockNum = rec.nextLong();
+		recordSlotId = rec.nextInt();
 		
 		// Pointer to logical start log
-		super.logicalStartLSN = new LogSeqNum((Long) rec.nextVal(BIGINT).asJavaVal(),
-				(Long) rec.nextVal(BIGINT).asJavaVal());
+		super.logicalStartLSN = rec.nextLsn();
 		
 		lsn = rec.getLSN();
 	}
 
 	@Override
 	public LogSeqNum writeToLog() {
-		List<Constant> rec = buildRecord();
-		return logMgr.append(rec.toArray(new Constant[rec.size()]));
+		LogRecordBuilder rec = LogRecordBuilder.forCurrentThread();
+		buildRecord(rec);
+		return logMgr.append(rec);
 	}
 
 	@Override
@@ -131,29 +119,25 @@ public class IndexDeleteEndRecord extends LogicalEndRecord implements LogRecord
 	}
 
 	@Override
-	public List<Constant> buildRecord() {
-		List<Constant> rec = new LinkedList<Constant>();
-		rec.add(new IntegerConstant(op()));
-		rec.add(new BigIntConstant(txNum));
-		rec.add(new VarcharConstant(indexName));
+	public void buildRecord(LogRecordBuilder rec) {
+		rec.putInt(op());
+		rec.putLong(txNum);
+		rec.putString(indexName);
 		
 		// Search Key
-		rec.add(new IntegerConstant(searchKey.length()));
+		rec.putInt(searchKey.length());
 		for (int i = 0; i < searchKey.length(); i++) {
 			Constant val = searchKey.get(i);
-			rec.add(new IntegerConstant(val.getType().getSqlType()));
-			rec.add(new IntegerConstant(val.getType().getArgument()));
-			rec.add(val);
+			rec.putType(val.getType());
+			rec.putVal(val);
 		}
 		
 		// Record Id
-		rec.add(new BigIntConstant(recordBlockNum));
-		rec.add(new IntegerConstant(recordSlotId));
+		rec.putLong(recordBlockNum);
+		rec.putInt(recordSlotId);
 		
 		// Pointer to logical start log
-		rec.add(new BigIntConstant(super.logicalStartLSN.blkNum()));
-		rec.add(new BigIntConstant(super.logicalStartLSN.offset()));
-		return rec;
+		rec.putLsn(super.logicalStartLSN);
 	}
 
 	@Override
@@ -15,16 +15,10 @@
  *******************************************************************************/
 package org.vanilladb.core.storage.tx.recovery;
 
-import static org.vanilladb.core.sql.Type.BIGINT;
-
-import java.util.List;
-
-import org.vanilladb.core.sql.BigIntConstant;
-import org.vanilladb.core.sql.Constant;
-import org.vanilladb.core.sql.IntegerConstant;
 import org.vanilladb.core.storage.file.BlockId;
 import org.vanilladb.core.storage.index.SearchKeyType;
 import org.vanilladb.core.storage.log.BasicLogRecord;
+import org.vanilladb.core.storage.log.LogRecordBuilder;
 import org.vanilladb.core.storage.log.LogSeqNum;
 import org.vanilladb.core.storage.tx.Transaction;
 
@@ -40,7 +34,7 @@ public class IndexPageInsertClr extends IndexPageInsertRecord implements Compesa
 
 	public IndexPageInsertClr(BasicLogRecord rec) {
 		super(rec);
-		undoNextLSN = new LogSeqNum((Long) rec.nextVal(BIGINT).asJavaVal(), (Long) rec.nextVal(BIGINT).asJavaVal());
+		undoNextLSN = rec.nextLsn();
 	}
 
 	@Override
@@ -69,12 +63,9 @@ public class IndexPageInsertClr extends IndexPageInsertRecord implements Compesa
 	}
 
 	@Override
-	public List<Constant> buildRecord() {
-		List<Constant> rec = super.buildRecord();
-		rec.set(0, new IntegerConstant(op()));
-		rec.add(new BigIntConstant(undoNextLSN.blkNum()));
-		rec.add(new BigIntConstant(undoNextLSN.offset()));
-		return rec;
+	public void buildRecord(LogRecordBuilder rec) {
+		super.buildRecord(rec);
+		rec.putLsn(undoNextLSN);
 	}
 
 }
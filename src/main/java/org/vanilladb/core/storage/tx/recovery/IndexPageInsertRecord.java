@@ -15,29 +15,19 @@
  *******************************************************************************/
 package org.vanilladb.core.storage.tx.recovery;
 
-import static org.vanilladb.core.sql.Type.BIGINT;
-import static org.vanilladb.core.sql.Type.INTEGER;
-import static org.vanilladb.core.sql.Type.VARCHAR;
-
-import java.util.LinkedList;
-import java.util.List;
-
 import org.vanilladb.core.server.VanillaDb;
-import org.vanilladb.core.sql.BigIntConstant;
-import org.vanilladb.core.sql.Constant;
-import org.vanilladb.core.sql.IntegerConstant;
 import org.vanilladb.core.sql.Type;
-import org.vanilladb.core.sql.VarcharConstant;
 import org.vanilladb.core.storage.buffer.Buffer;
 import org.vanilladb.core.storage.file.BlockId;
 import org.vanilladb.core.storage.index.SearchKeyType;
 import org.vanilladb.core.storage.index.btree.BTreeDir;
 import org.vanilladb.core.storage.index.btree.BTreeLeaf;
 import org.vanilladb.core.storage.log.BasicLogRecord;
+import org.vanilladb.core.storage.log.LogRecordBuilder;
 import org.vanilladb.core.storage.log.LogSeqNum;
 import org.vanilladb.core.storage.tx.Transaction;
 
-public class IndexPageInsertRecord implements LogRecord {
+public class IndexPageInsertRecord implements LogRecord, PageLogRecord {
 	private long txNum;
 	private BlockId indexBlkId;
 	private int slotId;
@@ -57,30 +47,29 @@ public class IndexPageInsertRecord implements LogRecord {
 	}
 
 	public IndexPageInsertRecord(BasicLogRecord rec) {
-		txNum = (Long) rec.nextVal(BIGINT).asJavaVal();
-		isDirPage = (Integer) rec.nextVal(INTEGER).asJavaVal() == 1;
+		txNum = rec.nextLong();
+		isDirPage = rec.nextInt() == 1;
 		
 		// Search Key Type
-		int keyLen = (Integer) rec.nextVal(INTEGER).asJavaVal();
+		int keyLen = rec.nextInt();
 		Type[] types = new Type[keyLen];
 		for (int i = 0; i < keyLen; i++) {
-			int type = (Integer) rec.nextVal(INTEGER).asJavaVal();
-			int argument = (Integer) rec.nextVal(INTEGER).asJavaVal();
-			types[i] = Type.newInstance(type, argument);
+			types[i] = rec.nextType();
 		}
 		keyType = new SearchKeyType(types);
 		
-		String fileName = (String) rec.nextVal(VARCHAR).asJavaVal();
-		long blkNum = (Long) rec.nextVal(BIGINT).asJavaVal();
+		String fileName = rec.nextString();
+		long blkNum = rec.nextLong();
 		indexBlkId = new BlockId(fileName, blkNum);
-		slotId = (Integer) rec.nextVal(INTEGER).asJavaVal();
+		slotId = rec.nextInt();
 		lsn = rec.getLSN();
 	}
 
 	@Override
 	public LogSeqNum writeToLog() {
-		List<Constant> rec = buildRecord();
-		return logMgr.append(rec.toArray(new Constant[rec.size()]));
+		LogRecordBuilder rec = LogRecordBuilder.forCurrentThread();
+		buildRecord(rec);
+		return logMgr.append(rec);
 
 	}
 
@@ -153,25 +142,27 @@ public class IndexPageInsertRecord implements LogRecord {
 	}
 
 	@Override
-	public List<Constant> buildRecord() {
-		List<Constant> rec = new LinkedList<Constant>();
-		rec.add(new IntegerConstant(op()));
-		rec.add(new BigIntConstant(txNum));
+	public void buildRecord(LogRecordBuilder rec) {
+		rec.putInt(op());
+		rec.putLong(txNum);
 		// Covert Boolean into int
-		rec.add(new IntegerConstant(isDirPage ? 1 : 0));
+		rec.putInt(isDirPage ? 1 : 0);
 		
 		// Search Key Type
-		rec.add(new IntegerConstant(keyType.length()));
+		rec.putInt(keyType.length());
 		for (int i = 0; i < keyType.length(); i++) {
 			Type type = keyType.get(i);
-			rec.add(new IntegerConstant(type.getSqlType()));
-			rec.add(new IntegerConstant(type.getArgument()));
+			rec.putType(type);
 		}
 		
-		rec.add(new VarcharConstant(indexBlkId.fileName()));
-		rec.add(new BigIntConstant(indexBlkId.number()));
-		rec.add(new IntegerConstant(slotId));
-		return rec;
+		rec.putString(indexBlkId.fileName());
+		rec.putLong(indexBlkId.number());
+		rec.putInt(slotId);
+	}
+
+	@Override
+	public BlockId getBlockId() {
+		return indexBlkId;
 	}
 
 	@Override
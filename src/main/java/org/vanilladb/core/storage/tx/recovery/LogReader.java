@@ -17,7 +17,9 @@ package org.vanilladb.core.storage.tx.recovery;
 
 import static org.vanilladb.core.sql.Type.INTEGER;
 import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_CHECKPOINT;
+import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_CHECKPOINT_START;
 import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_COMMIT;
+import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_DIRTY_PAGES;
 import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_INDEX_FILE_DELETE_END;
 import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_INDEX_FILE_INSERT_END;
 import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_INDEX_PAGE_DELETE;
@@ -29,15 +31,17 @@ import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_LOGICAL_START;
 import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_RECORD_FILE_DELETE_END;
 import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_RECORD_FILE_INSERT_END;
 import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_ROLLBACK;
+import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_ROW;
+import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_ROW_CLR;
 import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_SET_VALUE;
 import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_SET_VALUE_CLR;
 import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_START;
 
-import org.vanilladb.core.server.VanillaDb;
 import org.vanilladb.core.sql.Type;
 import org.vanilladb.core.storage.file.BlockId;
 import org.vanilladb.core.storage.file.Page;
 import org.vanilladb.core.storage.log.BasicLogRecord;
+import org.vanilladb.core.storage.log.LogSegments;
 import org.vanilladb.core.storage.log.LogSeqNum;
 
 public class LogReader {
@@ -46,6 +50,7 @@ public class LogReader {
 	// Page
 	private int pointerSize = Page.maxSize(Type.INTEGER);
 	private Page page = new Page();
+	private LogSegments segments;
 	private BlockId currentBlk;
 	private int currentPos;
 
@@ -56,10 +61,11 @@ public class LogReader {
 	private LogRecord currentRec;
 
 	public LogReader(String logFileName) {
-		fileSize = VanillaDb.fileMgr().size(logFileName);
-		currentBlk = new BlockId(logFileName, 0);
+		segments = new LogSegments(logFileName);
+		fileSize = segments.size();
+		currentBlk = new BlockId(logFileName, segments.firstBlock());
 		currentPos = pointerSize * 2; // point to first record
-		page.read(currentBlk);
+		segments.read(currentBlk.number(), page);
 	}
 
 	public boolean nextRecord() {
@@ -93,10 +99,14 @@ public class LogReader {
 	}
 
 	private LogRecord readRecord(BasicLogRecord rec) {
-		int op = (Integer) rec.nextVal(INTEGER).asJavaVal();
+		int op = rec.nextInt();
 		switch (op) {
 		case OP_CHECKPOINT:
 			return new CheckpointRecord(rec);
+		case OP_CHECKPOINT_START:
+			return new CheckpointStartRecord(rec);
+		case OP_DIRTY_PAGES:
+			return new DirtyPagesRecord(rec);
 		case OP_START:
 			return new StartRecord(rec);
 		case OP_COMMIT:
@@ -127,6 +137,10 @@ public class LogReader {
 			return new IndexPageInsertClr(rec);
 		case OP_INDEX_PAGE_DELETE_CLR:
 			return new IndexPageDeleteClr(rec);
+		case OP_ROW:
+			return new RowRecord(rec);
+		case OP_ROW_CLR:
+			return new RowClr(rec);
 		default:
 			return null;
 		}
@@ -134,7 +148,7 @@ public class LogReader {
 
 	private void moveToNextBlock() {
 		BlockId nextBlk = new BlockId(currentBlk.fileName(), currentBlk.number() + 1);
-		page.read(nextBlk);
+		segments.read(nextBlk.number(), page);
 		currentBlk = nextBlk;
 		currentPos = pointerSize * 2; // point to first record
 	}
@@ -15,11 +15,9 @@
  *******************************************************************************/
 package org.vanilladb.core.storage.tx.recovery;
 
-import java.util.List;
-
 import org.vanilladb.core.server.VanillaDb;
-import org.vanilladb.core.sql.Constant;
 import org.vanilladb.core.storage.log.LogMgr;
+import org.vanilladb.core.storage.log.LogRecordBuilder;
 import org.vanilladb.core.storage.log.LogSeqNum;
 import org.vanilladb.core.storage.tx.Transaction;
 
@@ -34,17 +32,19 @@ public interface LogRecord {
 			OP_INDEX_DELETE = -46, OP_LOGICAL_START = -61, OP_SET_VALUE = -62, OP_LOGICAL_ABORT = -77,
 			OP_RECORD_FILE_INSERT_END = -71, OP_RECORD_FILE_DELETE_END = -72, OP_INDEX_FILE_INSERT_END = -73,
 			OP_INDEX_FILE_DELETE_END = -74, OP_INDEX_PAGE_INSERT = -75, OP_INDEX_PAGE_DELETE = -76,
-			OP_SET_VALUE_CLR = -78, OP_INDEX_PAGE_INSERT_CLR = -79, OP_INDEX_PAGE_DELETE_CLR = -80;
+			OP_SET_VALUE_CLR = -78, OP_INDEX_PAGE_INSERT_CLR = -79, OP_INDEX_PAGE_DELETE_CLR = -80,
+			OP_CHECKPOINT_START = -47, OP_DIRTY_PAGES = -48, OP_ROW = -81, OP_ROW_CLR = -82;
 
 	static LogMgr logMgr = VanillaDb.logMgr();
 
 	/**
-	 * Build the constants for the physical log record and return them as a
-	 * list.
+	 * Encodes the values of the physical log record into the specified
+	 * builder, starting with the operation ID.
 	 * 
-	 * @return a list containing the constants for a log record
+	 * @param rec
+	 *            the builder of the log record
 	 */
-	List<Constant> buildRecord();
+	void buildRecord(LogRecordBuilder rec);
 
 	/**
 	 * Writes the record to the log and returns its LSN.
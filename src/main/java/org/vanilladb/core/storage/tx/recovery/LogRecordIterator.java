@@ -15,9 +15,10 @@
  *******************************************************************************/
 package org.vanilladb.core.storage.tx.recovery;
 
-import static org.vanilladb.core.sql.Type.INTEGER;
 import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_CHECKPOINT;
+import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_CHECKPOINT_START;
 import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_COMMIT;
+import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_DIRTY_PAGES;
 import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_INDEX_FILE_DELETE_END;
 import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_INDEX_FILE_INSERT_END;
 import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_INDEX_PAGE_DELETE;
@@ -29,6 +30,8 @@ import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_LOGICAL_START;
 import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_RECORD_FILE_DELETE_END;
 import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_RECORD_FILE_INSERT_END;
 import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_ROLLBACK;
+import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_ROW;
+import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_ROW_CLR;
 import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_SET_VALUE;
 import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_SET_VALUE_CLR;
 import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_START;
@@ -62,10 +65,14 @@ class LogRecordIterator implements ReversibleIterator<LogRecord> {
 	@Override
 	public LogRecord next() {
 		BasicLogRecord rec = iter.next();
-		int op = (Integer) rec.nextVal(INTEGER).asJavaVal();
+		int op = rec.nextInt();
 		switch (op) {
 		case OP_CHECKPOINT:
 			return new CheckpointRecord(rec);
+		case OP_CHECKPOINT_START:
+			return new CheckpointStartRecord(rec);
+		case OP_DIRTY_PAGES:
+			return new DirtyPagesRecord(rec);
 		case OP_START:
 			return new StartRecord(rec);
 		case OP_COMMIT:
@@ -96,6 +103,10 @@ class LogRecordIterator implements ReversibleIterator<LogRecord> {
 			return new IndexPageInsertClr(rec);
 		case OP_INDEX_PAGE_DELETE_CLR:
 			return new IndexPageDeleteClr(rec);
+		case OP_ROW:
+			return new RowRecord(rec);
+		case OP_ROW_CLR:
+			return new RowClr(rec);
 		default:
 			throw new UnsupportedOperationException();
 		}
@@ -114,10 +125,14 @@ class LogRecordIterator implements ReversibleIterator<LogRecord> {
 	@Override
 	public LogRecord previous() {
 		BasicLogRecord rec = iter.previous();
-		int op = (Integer) rec.nextVal(INTEGER).asJavaVal();
+		int op = rec.nextInt();
 		switch (op) {
 		case OP_CHECKPOINT:
 			return new CheckpointRecord(rec);
+		case OP_CHECKPOINT_START:
+			return new CheckpointStartRecord(rec);
+		case OP_DIRTY_PAGES:
+			return new DirtyPagesRecord(rec);
 		case OP_START:
 			return new StartRecord(rec);
 		case OP_COMMIT:
@@ -148,6 +163,10 @@ class LogRecordIterator implements ReversibleIterator<LogRecord> {
 			return new IndexPageInsertClr(rec);
 		case OP_INDEX_PAGE_DELETE_CLR:
 			return new IndexPageDeleteClr(rec);
+		case OP_ROW:
+			return new RowRecord(rec);
+		case OP_ROW_CLR:
+			return new RowClr(rec);
 		default:
 			throw new UnsupportedOperationException();
 		}
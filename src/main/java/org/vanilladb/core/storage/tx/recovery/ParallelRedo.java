@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright 2016, 2026 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.tx.recovery;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.server.task.Task;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.log.LogSeqNum;
+import org.vanilladb.core.storage.tx.Transaction;
+
+/**
+ * Redoes the log with a pool of workers. The {@link PageLogRecord page log
+ * records} are partitioned by the hash of their blocks, so the records of a
+ * block are redone by the same worker in the log order, while the records of
+ * different blocks are redone in parallel. The other records are redone by
+ * the calling thread.
+ */
+class ParallelRedo {
+	private static final int BATCH_SIZE = 256;
+	private static final int MAX_PENDING_BATCHES = 16;
+	private static final List<LogRecord> END_OF_LOG = Collections.emptyList();
+
+	private class RedoWorker extends Task {
+		private BlockingQueue<List<LogRecord>> batches = new ArrayBlockingQueue<List<LogRecord>>(
+				MAX_PENDING_BATCHES);
+		private Transaction tx;
+
+		RedoWorker(Transaction tx) {
+			this.tx = tx;
+		}
+
+		@Override
+		public void run() {
+			try {
+				List<LogRecord> batch = batches.take();
+				while (batch != END_OF_LOG) {
+					if (failure == null)
+						for (LogRecord rec : batch)
+							rec.redo(tx);
+					batch = batches.take();
+				}
+			} catch (InterruptedException e) {
+				failure = new RuntimeException("redo is interrupted", e);
+			} catch (RuntimeException e) {
+				failure = e;
+			} finally {
+				done.countDown();
+			}
+		}
+
+		void submit(List<LogRecord> batch) {
+			try {
+				batches.put(batch);
+			} catch (InterruptedException e) {
+				throw new RuntimeException("redo is interrupted", e);
+			}
+		}
+	}
+
+	private RedoWorker[] workers;
+	private CountDownLatch done;
+	private volatile RuntimeException failure;
+
+	/**
+	 * Creates a parallel redo with the specified number of workers.
+	 * 
+	 * @param numWorkers
+	 *            the number of workers
+	 */
+	ParallelRedo(int numWorkers) {
+		workers = new RedoWorker[numWorkers];
+		done = new CountDownLatch(numWorkers);
+	}
+
+	/**
+	 * Redoes the log records returned by {@link ReversibleIterator#previous()}
+	 * until the end of the log. Each worker redoes its records in a
+	 * {@link org.vanilladb.core.storage.tx.TransactionMgr#newRedoTransaction()
+	 * redo transaction} of its own, since the buffer manager of a transaction
+	 * is not thread-safe.
+	 * 
+	 * @param iter
+	 *            the iterator positioned at the record where the redo starts
+	 * @param tx
+	 *            the transaction performing the recovery
+	 * @param dirtyPages
+	 *            the dirty page table used to skip the records already on disk
+	 */
+	void redo(ReversibleIterator<LogRecord> iter, Transaction tx, Map<BlockId, LogSeqNum> dirtyPages) {
+		List<List<LogRecord>> pending = new ArrayList<List<LogRecord>>(workers.length);
+		for (int i = 0; i < workers.length; i++) {
+			workers[i] = new RedoWorker(VanillaDb.txMgr().newRedoTransaction());
+			VanillaDb.taskMgr().runTask(workers[i]);
+			pending.add(new ArrayList<LogRecord>(BATCH_SIZE));
+		}
+
+		try {
+			while (iter.hasPrevious() && failure == null) {
+				LogRecord rec = iter.previous();
+				if (!RecoveryMgr.isRedoNeeded(rec, dirtyPages))
+					continue;
+				if (rec instanceof PageLogRecord) {
+					int i = partitionOf(((PageLogRecord) rec).getBlockId());
+					List<LogRecord> batch = pending.get(i);
+					batch.add(rec);
+					if (batch.size() == BATCH_SIZE) {
+						workers[i].submit(batch);
+						pending.set(i, new ArrayList<LogRecord>(BATCH_SIZE));
+					}
+				} else
+					rec.redo(tx);
+			}
+		} finally {
+			for (int i = 0; i < workers.length; i++) {
+				if (!pending.get(i).isEmpty())
+					workers[i].submit(pending.get(i));
+				workers[i].submit(END_OF_LOG);
+			}
+			try {
+				done.await();
+			} catch (InterruptedException e) {
+				throw new RuntimeException("redo is interrupted", e);
+			}
+			for (RedoWorker worker : workers)
+				worker.tx.commit();
+		}
+
+		if (failure != null)
+			throw failure;
+	}
+
+	private int partitionOf(BlockId blk) {
+		int code = blk.hashCode() % workers.length;
+		return code < 0 ? code + workers.length : code;
+	}
+}
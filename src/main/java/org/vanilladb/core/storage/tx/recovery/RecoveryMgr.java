@@ -16,32 +16,49 @@
 package org.vanilladb.core.storage.tx.recovery;
 
 import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_CHECKPOINT;
+import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_CHECKPOINT_START;
 import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_COMMIT;
+import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_DIRTY_PAGES;
 import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_ROLLBACK;
 import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_START;
 
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.vanilladb.core.server.VanillaDb;
 import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.Type;
 import org.vanilladb.core.storage.buffer.Buffer;
 import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.file.Page;
 import org.vanilladb.core.storage.index.SearchKey;
 import org.vanilladb.core.storage.index.SearchKeyType;
 import org.vanilladb.core.storage.log.LogSeqNum;
 import org.vanilladb.core.storage.tx.Transaction;
 import org.vanilladb.core.storage.tx.TransactionLifecycleListener;
+import org.vanilladb.core.util.CoreProperties;
 
 /**
  * The recovery manager. Each transaction has its own recovery manager.
  */
 public class RecoveryMgr implements TransactionLifecycleListener {
+	private static Logger logger = Logger.getLogger(RecoveryMgr.class.getName());
+
+	private static final int REDO_THREADS;
+
+	static {
+		REDO_THREADS = CoreProperties.getLoader().getPropertyAsInteger(RecoveryMgr.class.getName() + ".REDO_THREADS",
+				4);
+	}
 
 	private static boolean enableLogging = true;
+	private static volatile LogSeqNum recoveredLsn;
 
 	public static void enableLogging(boolean log) {
 		enableLogging = log;
@@ -53,20 +70,53 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 	 * log and flush it. This method should be called only during system
 	 * startup, before user transactions begin.
 	 * 
+	 * <p>
+	 * The log is kept rather than recreated, so the LSNs stamped on the pages
+	 * never run ahead of the log and can be compared with the LSNs of the log
+	 * records during the next recovery. Only the segments before the
+	 * checkpoint are removed.
+	 * </p>
+	 * 
+	 * <p>
+	 * If the database has just been restored from a {@link Backup}, the log is
+	 * cut at the point in time chosen for the restore, and the log since the
+	 * backup started is replayed instead.
+	 * </p>
+	 * 
 	 * @param tx
 	 *            the context of executing transaction
 	 */
 	public static void initializeSystem(Transaction tx) {
-		tx.recoveryMgr().recoverSystem(tx);
+		LogSeqNum backupStartLsn = Backup.prepareRestore();
+		if (backupStartLsn != null)
+			tx.recoveryMgr().recoverMedia(tx, backupStartLsn);
+		else
+			tx.recoveryMgr().recoverSystem(tx);
 		tx.bufferMgr().flushAll();
-		VanillaDb.logMgr().removeAndCreateNewLog();
-		
-		// Add a start record for this transaction
-		new StartRecord(tx.getTransactionNumber()).writeToLog();
+		LogSeqNum lsn = new CheckpointRecord().writeToLog();
+		VanillaDb.logMgr().flush(lsn);
+		VanillaDb.logMgr().truncate(lsn);
+		if (backupStartLsn != null)
+			Backup.finishRestore();
+		recoveredLsn = lsn;
+	}
+
+	/**
+	 * Returns the LSN of the checkpoint written after the last recovery. The
+	 * pages modified by the recovery do not have their page LSNs raised, so
+	 * the page LSNs cannot tell whether a page has been modified since an
+	 * earlier point of the log.
+	 * 
+	 * @return the LSN of the checkpoint, or null if the system has not been
+	 *         recovered
+	 */
+	static LogSeqNum recoveredLsn() {
+		return recoveredLsn;
 	}
 
 	private Map<Long, LogSeqNum> txUnDoNextLSN = new HashMap<Long, LogSeqNum>();
 	private long txNum; // the owner id of this recovery manger
+	private LogSeqNum startLsn = null;
 	private LogSeqNum logicalStartLSN = null;
 
 	/**
@@ -80,21 +130,33 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 	public RecoveryMgr(long txNum, boolean isReadOnly) {
 		this.txNum = txNum;
 		if (!isReadOnly && enableLogging)
-			new StartRecord(txNum).writeToLog();
+			startLsn = new StartRecord(txNum).writeToLog();
+	}
+
+	/**
+	 * Returns the LSN of the start record of the owner transaction. No log
+	 * record of the transaction precedes this LSN.
+	 * 
+	 * @return the LSN of the start record, or null if the transaction logs
+	 *         nothing
+	 */
+	public LogSeqNum startLsn() {
+		return startLsn;
 	}
 
 	/**
 	 * Writes a commit record to the log, and then flushes the log record to
-	 * disk.
+	 * disk. A transaction which has written no start record, such as a
+	 * read-only one, has nothing to log.
 	 * 
 	 * @param tx
 	 *            the context of committing transaction
 	 */
 	@Override
 	public void onTxCommit(Transaction tx) {
-		if (!tx.isReadOnly() && enableLogging) {
+		if (startLsn != null && enableLogging) {
 			LogSeqNum lsn = new CommitRecord(txNum).writeToLog();
-			VanillaDb.logMgr().flush(lsn);
+			VanillaDb.logMgr().flushCommit(lsn);
 		}
 	}
 
@@ -104,7 +166,7 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 	 */
 	@Override
 	public void onTxRollback(Transaction tx) {
-		if (!tx.isReadOnly() && enableLogging) {
+		if (startLsn != null && enableLogging) {
 			rollback(tx);
 			LogSeqNum lsn = new RollbackRecord(txNum).writeToLog();
 			VanillaDb.logMgr().flush(lsn);
@@ -116,16 +178,42 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 		// do nothing
 	}
 
+	/**
+	 * Writes a record marking the beginning of a fuzzy checkpoint to the log.
+	 * 
+	 * @return the LSN of the log record
+	 */
+	public LogSeqNum logCheckpointStart() {
+		return new CheckpointStartRecord().writeToLog();
+	}
+
+	/**
+	 * Writes the dirty page table taken by a fuzzy checkpoint to the log. The
+	 * table is split into as many records as needed.
+	 * 
+	 * @param dirtyPages
+	 *            the dirty pages and their recovery LSNs
+	 * @return the LSN of the last log record, or null if the table is empty
+	 */
+	public LogSeqNum logDirtyPages(Map<BlockId, LogSeqNum> dirtyPages) {
+		LogSeqNum lsn = null;
+		for (DirtyPagesRecord rec : DirtyPagesRecord.split(dirtyPages))
+			lsn = rec.writeToLog();
+		return lsn;
+	}
+
 	/**
 	 * Writes a checkpoint record to the log.
 	 * 
 	 * @param txNums
 	 *            the transactions that are being executed when writing the
 	 *            checkpoint.
+	 * @param redoLsn
+	 *            the LSN from which the recovery has to redo the log
 	 * @return the LSN of the log record.
 	 */
-	public LogSeqNum checkpoint(List<Long> txNums) {
-		return new CheckpointRecord(txNums).writeToLog();
+	public LogSeqNum checkpoint(List<Long> txNums, LogSeqNum redoLsn) {
+		return new CheckpointRecord(txNums, redoLsn).writeToLog();
 	}
 
 	/**
@@ -149,6 +237,120 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 			return null;
 	}
 
+	/**
+	 * Writes a row insertion record to the log. The old pointer to the next
+	 * deleted slot is read from the page.
+	 * 
+	 * @param buff
+	 *            the buffer containing the page
+	 * @param slotPos
+	 *            the offset of the slot in the page
+	 * @param ptrBlk
+	 *            the block number of the new pointer to the next deleted slot
+	 * @param ptrId
+	 *            the slot id of the new pointer to the next deleted slot
+	 * @param fields
+	 *            the positions of the written fields in the schema
+	 * @param offsets
+	 *            the offsets of the written fields in the slot
+	 * @param newVals
+	 *            the values to be written
+	 * @return the LSN of the log record, or null if updates to temporary files
+	 */
+	public LogSeqNum logRowInsertion(Buffer buff, int slotPos, long ptrBlk, int ptrId, BitSet fields,
+			int[] offsets, Constant[] newVals) {
+		if (enableLogging) {
+			BlockId blk = buff.block();
+			if (isTempBlock(blk))
+				return null;
+			return new RowRecord(txNum, RowRecord.INSERT, blk, slotPos, RowRecord.pointerBlock(buff, slotPos),
+					RowRecord.pointerId(buff, slotPos), ptrBlk, ptrId, fields, offsets, null, newVals).writeToLog();
+		} else
+			return null;
+	}
+
+	/**
+	 * Writes a row deletion record to the log. The bytes to be overwritten by
+	 * the pointer to the next deleted slot are read from the page.
+	 * 
+	 * @param buff
+	 *            the buffer containing the page
+	 * @param slotPos
+	 *            the offset of the slot in the page
+	 * @param ptrBlk
+	 *            the block number of the pointer to the next deleted slot
+	 * @param ptrId
+	 *            the slot id of the pointer to the next deleted slot
+	 * @return the LSN of the log record, or null if updates to temporary files
+	 */
+	public LogSeqNum logRowDeletion(Buffer buff, int slotPos, long ptrBlk, int ptrId) {
+		if (enableLogging) {
+			BlockId blk = buff.block();
+			if (isTempBlock(blk))
+				return null;
+			return new RowRecord(txNum, RowRecord.DELETE, blk, slotPos, RowRecord.pointerBlock(buff, slotPos),
+					RowRecord.pointerId(buff, slotPos), ptrBlk, ptrId, new BitSet(), new int[0], null, null)
+							.writeToLog();
+		} else
+			return null;
+	}
+
+	/**
+	 * Writes a row update record to the log. The old values are read from the
+	 * page.
+	 * 
+	 * @param buff
+	 *            the buffer containing the page
+	 * @param slotPos
+	 *            the offset of the slot in the page
+	 * @param fields
+	 *            the positions of the written fields in the schema
+	 * @param offsets
+	 *            the offsets of the written fields in the slot
+	 * @param newVals
+	 *            the values to be written
+	 * @return the LSN of the log record, or null if updates to temporary files
+	 */
+	public LogSeqNum logRowUpdate(Buffer buff, int slotPos, BitSet fields, int[] offsets, Constant[] newVals) {
+		if (enableLogging) {
+			BlockId blk = buff.block();
+			if (isTempBlock(blk))
+				return null;
+			Constant[] oldVals = new Constant[offsets.length];
+			for (int i = 0; i < offsets.length; i++)
+				oldVals[i] = buff.getVal(slotPos + offsets[i], newVals[i].getType());
+			return new RowRecord(txNum, RowRecord.UPDATE, blk, slotPos, 0, 0, 0, 0, fields, offsets, oldVals,
+					newVals).writeToLog();
+		} else
+			return null;
+	}
+
+	/**
+	 * Returns an upper bound of the log space taken by a row record on the
+	 * specified block, apart from the fields it writes.
+	 * 
+	 * @param blk
+	 *            the block containing the row
+	 * @param numFields
+	 *            the number of fields in the schema
+	 * @return the maximum number of bytes
+	 */
+	public static int maxRowRecordOverhead(BlockId blk, int numFields) {
+		return RowRecord.maxOverhead(blk, numFields);
+	}
+
+	/**
+	 * Returns an upper bound of the log space taken by writing a field of the
+	 * specified type in a row record.
+	 * 
+	 * @param type
+	 *            the type of the field
+	 * @return the maximum number of bytes
+	 */
+	public static int maxRowFieldSize(Type type) {
+		return RowRecord.maxFieldSize(type);
+	}
+
 	public LogSeqNum logLogicalStart() {
 		if (enableLogging) {
 			// Store logicalStartLSN inside the RecoveryMgr
@@ -266,6 +468,15 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 			return null;
 	}
 
+	LogSeqNum logRowClr(RowClr clr) {
+		if (enableLogging) {
+			if (isTempBlock(clr.getBlockId()))
+				return null;
+			return clr.writeToLog();
+		} else
+			return null;
+	}
+
 	/**
 	 * Rolls back the transaction. The method iterates through the log records,
 	 * calling {@link LogRecord#undo(Transaction)} for each log record it finds
@@ -343,57 +554,35 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 	 * and redoes all finished transactions. TODO fix comments...
 	 */
 	void recoverSystem(Transaction tx) {
-		Set<Long> finishedTxs = new HashSet<Long>();
-		Set<Long> unCompletedTxs = new HashSet<Long>();
-
-		List<Long> txsOnCheckpointing = null;
 		ReversibleIterator<LogRecord> iter = new LogRecordIterator();
+		Map<BlockId, LogSeqNum> dirtyPages = new HashMap<BlockId, LogSeqNum>();
+		Set<Long> unCompletedTxs = analyze(iter, dirtyPages);
+
 		/*
-		 * analyze phase: Find the earliest unfinished txNum
+		 * redo phase: Repeating History
 		 */
-		// analyze phase
-		while (iter.hasNext()) {
-			LogRecord rec = iter.next();
+		redo(iter, tx, dirtyPages);
 
-			int op = rec.op();
-			if (op == OP_CHECKPOINT) {
-				// Since we flush all dirtyPage at checkpoint, therefore no need
-				// to find the start record of active txNum
-				txsOnCheckpointing = ((CheckpointRecord) rec).activeTxNums();
-				for (long acTxn : txsOnCheckpointing) {
-					// txNum give us info of possible unFinshedTxs,
-					// Check if those weren't in finishedTxs, and add it to the
-					// uncompletedTxs
-					if (!finishedTxs.contains(acTxn))
-						unCompletedTxs.add(acTxn);
-				}
-				// Start Redo From checkpoint
-				break;
-			}
+		// remove the recovery tx from unCompletedTxs set
+		unCompletedTxs.remove(tx.getTransactionNumber());
 
-			if (op == OP_COMMIT) {
-				finishedTxs.add(rec.txNumber());
-			} else if (op == OP_ROLLBACK) {
-				finishedTxs.add(rec.txNumber());
-			} else if (op == OP_START && !finishedTxs.contains(rec.txNumber())) {
-				unCompletedTxs.add(rec.txNumber());
-			}
+		/*
+		 * undo phase: undo all actions performed by the active txs during last
+		 * crash
+		 */
+		undo(tx, unCompletedTxs, null);
+	}
 
-		}
+	void recoverSystemPartially(Transaction tx, int stepsInUndo) {
+		ReversibleIterator<LogRecord> iter = new LogRecordIterator();
+		Map<BlockId, LogSeqNum> dirtyPages = new HashMap<BlockId, LogSeqNum>();
+		Set<Long> unCompletedTxs = analyze(iter, dirtyPages);
 
-		finishedTxs = null;
 		/*
 		 * redo phase: Repeating History
 		 */
+		redo(iter, tx, dirtyPages);
 
-		while (iter.hasPrevious()) {
-			LogRecord rec = iter.previous();
-
-			rec.redo(tx);
-
-		}
-
-		// remove the recovery tx from unCompletedTxs set
 		unCompletedTxs.remove(tx.getTransactionNumber());
 
 		iter = new LogRecordIterator();
@@ -402,8 +591,96 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 		 * crash
 		 */
 
+		while (iter.hasNext() && stepsInUndo >= 0) {
+			LogRecord rec = iter.next();
+			// System.out.println(rec.getLSN() + rec.toString());
+			stepsInUndo--;
+			int op = rec.op();
+			if (!unCompletedTxs.contains(rec.txNumber()) || op == OP_COMMIT || op == OP_ROLLBACK)
+				continue;
+
+			if (txUnDoNextLSN.containsKey(rec.txNumber())) {
+				if (txUnDoNextLSN.get(rec.txNumber()).compareTo(rec.getLSN()) != 1)
+					continue;
+			}
+			if (op == OP_START)
+				unCompletedTxs.remove(rec.txNumber());
+			else if (rec instanceof LogicalEndRecord) {
+
+				rec.undo(tx);
+
+				LogSeqNum logicalStartLSN = ((LogicalEndRecord) rec).getlogicalStartLSN();
+
+				txUnDoNextLSN.put(rec.txNumber(), logicalStartLSN);
+
+			} else if (rec instanceof CompesationLogRecord) {
+
+				LogSeqNum undoNextLSN = ((CompesationLogRecord) rec).getUndoNextLSN();
+
+				txUnDoNextLSN.put(rec.txNumber(), undoNextLSN);
+			} else
+				rec.undo(tx);
+
+			if (unCompletedTxs.size() == 0)
+				break;
+
+		}
+	}
+
+	/**
+	 * Recovers a database restored from a {@link Backup}. Since the pages of a
+	 * backup are copied at different times, the checkpoints in the log do not
+	 * tell which modifications a page holds. Every modification logged since
+	 * the backup started is redone unless the LSN of its page shows that the
+	 * page already holds it. The transactions which have not completed by the
+	 * end of the log are then rolled back.
+	 * 
+	 * @param tx
+	 *            the transaction performing the recovery
+	 * @param startLsn
+	 *            the LSN where the backup started
+	 */
+	void recoverMedia(Transaction tx, LogSeqNum startLsn) {
+		ReversibleIterator<LogRecord> iter = new LogRecordIterator();
+		Set<Long> finishedTxs = new HashSet<Long>();
+		Set<Long> unCompletedTxs = new HashSet<Long>();
 		while (iter.hasNext()) {
 			LogRecord rec = iter.next();
+			if (rec.getLSN().compareTo(startLsn) < 0)
+				break;
+
+			int op = rec.op();
+			if (op == OP_COMMIT || op == OP_ROLLBACK)
+				finishedTxs.add(rec.txNumber());
+			else if (rec.txNumber() >= 0)
+				unCompletedTxs.add(rec.txNumber());
+		}
+		unCompletedTxs.removeAll(finishedTxs);
+
+		redo(iter, tx, null);
+
+		unCompletedTxs.remove(tx.getTransactionNumber());
+		undo(tx, unCompletedTxs, startLsn);
+	}
+
+	/**
+	 * The undo phase of recovery. The method iterates backward from the end of
+	 * the log, and rolls back the uncompleted transactions.
+	 * 
+	 * @param tx
+	 *            the transaction performing the recovery
+	 * @param unCompletedTxs
+	 *            the uncompleted transactions found by the analysis
+	 * @param firstLsn
+	 *            the LSN where the iteration stops, or null to iterate until
+	 *            all the transactions are rolled back
+	 */
+	private void undo(Transaction tx, Set<Long> unCompletedTxs, LogSeqNum firstLsn) {
+		ReversibleIterator<LogRecord> iter = new LogRecordIterator();
+		while (iter.hasNext()) {
+			LogRecord rec = iter.next();
+			if (firstLsn != null && rec.getLSN().compareTo(firstLsn) < 0)
+				break;
 
 			int op = rec.op();
 			if (!unCompletedTxs.contains(rec.txNumber()) || op == OP_COMMIT || op == OP_ROLLBACK)
@@ -455,92 +732,178 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 		}
 	}
 
-	void recoverSystemPartially(Transaction tx, int stepsInUndo) {
+	/**
+	 * The analysis phase of recovery. The method iterates backward through the
+	 * log until it passes the redo LSN of the last completed checkpoint, or
+	 * reaches the beginning of the log. A transaction is uncompleted if it was
+	 * active at the checkpoint or it appears after the redo LSN, and no commit
+	 * or rollback record of it is found. The iterator is left at the point
+	 * where the redo phase should start.
+	 * 
+	 * <p>
+	 * The method also rebuilds the dirty page table at the time of the crash
+	 * from the table logged by the checkpoint and the pages modified since the
+	 * checkpoint started. A page not in the table held all its modifications
+	 * on disk.
+	 * </p>
+	 * 
+	 * @param iter
+	 *            the iterator positioned at the end of the log
+	 * @param dirtyPages
+	 *            the map to be filled with the dirty pages and their recovery
+	 *            LSNs
+	 * @return the uncompleted transactions
+	 */
+	Set<Long> analyze(ReversibleIterator<LogRecord> iter, Map<BlockId, LogSeqNum> dirtyPages) {
 		Set<Long> finishedTxs = new HashSet<Long>();
 		Set<Long> unCompletedTxs = new HashSet<Long>();
+		Map<BlockId, LogSeqNum> ckptDirtyPages = new HashMap<BlockId, LogSeqNum>();
+		LogSeqNum redoLsn = null;
+		// Whether the records are logged after the checkpoint started
+		boolean afterCkptStart = true;
 
-		List<Long> txsOnCheckpointing = null;
-		ReversibleIterator<LogRecord> iter = new LogRecordIterator();
-		/*
-		 * analyze phase: Find the earliest unfinished txNum
-		 */
 		while (iter.hasNext()) {
 			LogRecord rec = iter.next();
 
-			int op = rec.op();
-			if (op == OP_CHECKPOINT) {
-				txsOnCheckpointing = ((CheckpointRecord) rec).activeTxNums();
-				for (long acTxn : txsOnCheckpointing) {
-
-					if (!finishedTxs.contains(acTxn))
-						unCompletedTxs.add(acTxn);
-				}
-				break;
-			}
+			// Iterating backward, the last put is the first modification
+			if (afterCkptStart && rec instanceof PageLogRecord)
+				dirtyPages.put(((PageLogRecord) rec).getBlockId(), rec.getLSN());
 
-			if (op == OP_COMMIT) {
-				finishedTxs.add(rec.txNumber());
-			} else if (op == OP_ROLLBACK) {
+			int op = rec.op();
+			if (op == OP_CHECKPOINT && redoLsn == null) {
+				// The transactions that were active at the checkpoint may
+				// have started long before the redo LSN
+				CheckpointRecord ckpt = (CheckpointRecord) rec;
+				unCompletedTxs.addAll(ckpt.activeTxNums());
+				redoLsn = ckpt.redoLsn();
+
+				// A quiescent checkpoint leaves no dirty page behind
+				if (redoLsn.equals(rec.getLSN()))
+					afterCkptStart = false;
+			} else if (op == OP_DIRTY_PAGES && redoLsn != null && afterCkptStart) {
+				ckptDirtyPages.putAll(((DirtyPagesRecord) rec).dirtyPages());
+			} else if (op == OP_CHECKPOINT_START && redoLsn != null) {
+				afterCkptStart = false;
+			} else if (op == OP_COMMIT || op == OP_ROLLBACK) {
 				finishedTxs.add(rec.txNumber());
-			} else if (op == OP_START && !finishedTxs.contains(rec.txNumber())) {
+			} else if (rec.txNumber() >= 0) {
+				// A transaction started after the checkpoint is not in its
+				// list, so any record counts
 				unCompletedTxs.add(rec.txNumber());
 			}
 
+			// Start redo from the redo LSN
+			if (redoLsn != null && rec.getLSN().compareTo(redoLsn) <= 0)
+				break;
 		}
 
-		finishedTxs = null;
-		/*
-		 * redo phase: Repeating History
-		 */
-
-		while (iter.hasPrevious()) {
-			LogRecord rec = iter.previous();
-
-			rec.redo(tx);
+		unCompletedTxs.removeAll(finishedTxs);
 
+		for (Map.Entry<BlockId, LogSeqNum> entry : ckptDirtyPages.entrySet()) {
+			LogSeqNum recLsn = dirtyPages.get(entry.getKey());
+			if (recLsn == null || entry.getValue().compareTo(recLsn) < 0)
+				dirtyPages.put(entry.getKey(), entry.getValue());
 		}
+		return unCompletedTxs;
+	}
 
-		unCompletedTxs.remove(tx.getTransactionNumber());
-
-		iter = new LogRecordIterator();
-		/*
-		 * undo phase: undo all actions performed by the active txs during last
-		 * crash
-		 */
-
-		while (iter.hasNext() && stepsInUndo >= 0) {
-			LogRecord rec = iter.next();
-			// System.out.println(rec.getLSN() + rec.toString());
-			stepsInUndo--;
-			int op = rec.op();
-			if (!unCompletedTxs.contains(rec.txNumber()) || op == OP_COMMIT || op == OP_ROLLBACK)
-				continue;
+	/**
+	 * Determines whether a log record has to be redone. The modification of a
+	 * {@link PageLogRecord} is known to be on disk if its page is not in the
+	 * dirty page table, or if the record precedes the recovery LSN of the
+	 * page. Other log records are always redone, and so are all the records if
+	 * there is no dirty page table.
+	 * 
+	 * @param rec
+	 *            the log record
+	 * @param dirtyPages
+	 *            the dirty page table rebuilt by the analysis, or null
+	 * @return true if the record has to be redone
+	 */
+	static boolean isRedoNeeded(LogRecord rec, Map<BlockId, LogSeqNum> dirtyPages) {
+		if (dirtyPages == null || !(rec instanceof PageLogRecord))
+			return true;
+		LogSeqNum recLsn = dirtyPages.get(((PageLogRecord) rec).getBlockId());
+		return recLsn != null && rec.getLSN().compareTo(recLsn) >= 0;
+	}
 
-			if (txUnDoNextLSN.containsKey(rec.txNumber())) {
-				if (txUnDoNextLSN.get(rec.txNumber()).compareTo(rec.getLSN()) != 1)
-					continue;
+	/**
+	 * The redo phase of recovery. The method redoes the log from the position
+	 * of the iterator to the end of the log, and reports how fast the log is
+	 * replayed.
+	 * 
+	 * @param iter
+	 *            the iterator positioned where the redo starts
+	 * @param tx
+	 *            the transaction performing the recovery
+	 * @param dirtyPages
+	 *            the dirty page table rebuilt by the analysis
+	 */
+	private void redo(ReversibleIterator<LogRecord> iter, Transaction tx, Map<BlockId, LogSeqNum> dirtyPages) {
+		long startTime = System.nanoTime();
+		MeteredIterator meter = new MeteredIterator(iter);
+		if (REDO_THREADS > 1)
+			new ParallelRedo(REDO_THREADS).redo(meter, tx, dirtyPages);
+		else
+			while (meter.hasPrevious()) {
+				LogRecord rec = meter.previous();
+				if (isRedoNeeded(rec, dirtyPages))
+					rec.redo(tx);
 			}
-			if (op == OP_START)
-				unCompletedTxs.remove(rec.txNumber());
-			else if (rec instanceof LogicalEndRecord) {
 
-				rec.undo(tx);
+		if (logger.isLoggable(Level.INFO) && meter.first != null) {
+			// the records may have been read in either direction
+			long bytes = Math.abs((meter.last.blkNum() - meter.first.blkNum()) * Page.BLOCK_SIZE
+					+ meter.last.offset() - meter.first.offset());
+			double mb = bytes / (1024.0 * 1024.0);
+			double secs = (System.nanoTime() - startTime) / 1e9;
+			logger.info(String.format("redo replayed %.2f MB of log in %.3f s (%.2f MB/s) with %d thread(s)", mb,
+					secs, mb / secs, REDO_THREADS));
+		}
+	}
 
-				LogSeqNum logicalStartLSN = ((LogicalEndRecord) rec).getlogicalStartLSN();
+	/**
+	 * Remembers the LSNs of the first and the last records returned by
+	 * {@link #next()} or {@link #previous()}.
+	 */
+	private static class MeteredIterator implements ReversibleIterator<LogRecord> {
+		private ReversibleIterator<LogRecord> iter;
+		private LogSeqNum first, last;
 
-				txUnDoNextLSN.put(rec.txNumber(), logicalStartLSN);
+		MeteredIterator(ReversibleIterator<LogRecord> iter) {
+			this.iter = iter;
+		}
 
-			} else if (rec instanceof CompesationLogRecord) {
+		@Override
+		public boolean hasNext() {
+			return iter.hasNext();
+		}
 
-				LogSeqNum undoNextLSN = ((CompesationLogRecord) rec).getUndoNextLSN();
+		@Override
+		public boolean hasPrevious() {
+			return iter.hasPrevious();
+		}
 
-				txUnDoNextLSN.put(rec.txNumber(), undoNextLSN);
-			} else
-				rec.undo(tx);
+		@Override
+		public LogRecord next() {
+			return meter(iter.next());
+		}
 
-			if (unCompletedTxs.size() == 0)
-				break;
+		@Override
+		public LogRecord previous() {
+			return meter(iter.previous());
+		}
+
+		@Override
+		public void remove() {
+			iter.remove();
+		}
 
+		private LogRecord meter(LogRecord rec) {
+			if (first == null)
+				first = rec.getLSN();
+			last = rec.getLSN();
+			return rec;
 		}
 	}
 
@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright 2016, 2026 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.tx.recovery;
+
+import java.util.BitSet;
+
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.log.BasicLogRecord;
+import org.vanilladb.core.storage.log.LogRecordBuilder;
+import org.vanilladb.core.storage.log.LogSeqNum;
+import org.vanilladb.core.storage.tx.Transaction;
+
+class RowClr extends RowRecord implements CompesationLogRecord {
+
+	private LogSeqNum undoNextLSN;
+
+	RowClr(long compTxNum, int kind, BlockId blk, int slotPos, long oldPtrBlk, int oldPtrId, long newPtrBlk,
+			int newPtrId, BitSet fields, int[] offsets, Constant[] oldVals, Constant[] newVals,
+			LogSeqNum undoNextLSN) {
+		super(compTxNum, kind, blk, slotPos, oldPtrBlk, oldPtrId, newPtrBlk, newPtrId, fields, offsets, oldVals,
+				newVals);
+		this.undoNextLSN = undoNextLSN;
+	}
+
+	RowClr(BasicLogRecord rec) {
+		super(rec);
+		undoNextLSN = rec.nextLsn();
+	}
+
+	@Override
+	public int op() {
+		return OP_ROW_CLR;
+	}
+
+	/**
+	 * Does nothing, because compensation log record is redo-Only
+	 */
+	@Override
+	public void undo(Transaction tx) {
+		// do nothing
+	}
+
+	@Override
+	public LogSeqNum getUndoNextLSN() {
+		return undoNextLSN;
+	}
+
+	@Override
+	public String toString() {
+		String str = super.toString();
+		return str.substring(0, str.length() - 1) + " " + undoNextLSN + ">";
+	}
+
+	@Override
+	public void buildRecord(LogRecordBuilder rec) {
+		super.buildRecord(rec);
+		rec.putLsn(undoNextLSN);
+	}
+}
@@ -0,0 +1,367 @@
+/*******************************************************************************
+ * Copyright 2016, 2026 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.tx.recovery;
+
+import static org.vanilladb.core.sql.Type.BIGINT;
+import static org.vanilladb.core.sql.Type.INTEGER;
+
+import java.util.BitSet;
+
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.sql.BigIntConstant;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.Type;
+import org.vanilladb.core.storage.buffer.Buffer;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.file.Page;
+import org.vanilladb.core.storage.log.BasicLogRecord;
+import org.vanilladb.core.storage.log.LogMgr;
+import org.vanilladb.core.storage.log.LogRecordBuilder;
+import org.vanilladb.core.storage.log.LogSeqNum;
+import org.vanilladb.core.storage.record.RecordPage;
+import org.vanilladb.core.storage.tx.Transaction;
+
+/**
+ * A physiological log record of an insertion, deletion or update on a single
+ * slot of a record page. The record names the slot instead of the byte
+ * offsets of the values, and a bitmap tells which fields of the row are
+ * written, so a row costs one log record no matter how many fields it has.
+ * 
+ * <p>
+ * An insertion marks the slot as in use, replaces the pointer to the next
+ * deleted slot and then writes the new values. A deletion marks the slot as
+ * empty and writes the pointer to the next deleted slot over the first bytes
+ * of the row. An update writes the new values of the fields in the bitmap.
+ * Each kind of record is undone by logging the opposite kind as a CLR.
+ * </p>
+ */
+class RowRecord implements LogRecord, PageLogRecord {
+	static final int INSERT = 0, DELETE = 1, UPDATE = 2;
+
+	private static final int PTR_BLK_OFFSET = RecordPage.FLAG_SIZE,
+			PTR_ID_OFFSET = PTR_BLK_OFFSET + Page.maxSize(BIGINT);
+	// The maximum encoded sizes of an integer and a long
+	private static final int MAX_INT_SIZE = 5, MAX_LONG_SIZE = LogRecordBuilder.MAX_VAR_LONG_SIZE;
+
+	/**
+	 * Returns an upper bound of the encoded size of a row record on the
+	 * specified block, apart from its fields.
+	 * 
+	 * @param blk
+	 *            the block containing the row
+	 * @param numFields
+	 *            the number of fields in the schema
+	 * @return the maximum number of bytes
+	 */
+	static int maxOverhead(BlockId blk, int numFields) {
+		int words = (numFields + 63) / 64;
+		return MAX_INT_SIZE * 6 + MAX_LONG_SIZE * (4 + words) + LogRecordBuilder.maxSize(blk.fileName());
+	}
+
+	/**
+	 * Returns an upper bound of the encoded size of a field in a row record,
+	 * counting both its old and new values.
+	 * 
+	 * @param type
+	 *            the type of the field
+	 * @return the maximum number of bytes
+	 */
+	static int maxFieldSize(Type type) {
+		int valSize;
+		switch (type.getSqlType()) {
+		case java.sql.Types.INTEGER:
+			valSize = MAX_INT_SIZE;
+			break;
+		case java.sql.Types.BIGINT:
+			valSize = MAX_LONG_SIZE;
+			break;
+		case java.sql.Types.DOUBLE:
+			valSize = 8;
+			break;
+		default:
+			// A string takes its length and up to three bytes per character
+			if (type.getArgument() < 0)
+				return LogMgr.MAX_RECORD_SIZE;
+			valSize = MAX_INT_SIZE + 3 * type.getArgument();
+		}
+		return MAX_INT_SIZE * 3 + valSize * 2;
+	}
+
+	private long txNum;
+	private int kind;
+	private BlockId blk;
+	private int slotPos;
+	private long oldPtrBlk, newPtrBlk;
+	private int oldPtrId, newPtrId;
+	private BitSet fields;
+	private int[] offsets;
+	private Type[] types;
+	private Constant[] oldVals, newVals;
+	private LogSeqNum lsn;
+
+	/**
+	 * Creates a new row log record. The pointers are only kept for insertions
+	 * and deletions, and the old values are only kept for updates.
+	 * 
+	 * @param txNum
+	 *            the ID of the specified transaction
+	 * @param kind
+	 *            {@link #INSERT}, {@link #DELETE} or {@link #UPDATE}
+	 * @param blk
+	 *            the block containing the row
+	 * @param slotPos
+	 *            the offset of the slot in the block
+	 * @param oldPtrBlk
+	 *            the block number of the old pointer to the next deleted slot
+	 * @param oldPtrId
+	 *            the slot id of the old pointer to the next deleted slot
+	 * @param newPtrBlk
+	 *            the block number of the new pointer to the next deleted slot
+	 * @param newPtrId
+	 *            the slot id of the new pointer to the next deleted slot
+	 * @param fields
+	 *            the positions of the written fields in the schema
+	 * @param offsets
+	 *            the offsets of the written fields in the slot
+	 * @param oldVals
+	 *            the old values of the written fields
+	 * @param newVals
+	 *            the new values of the written fields
+	 */
+	RowRecord(long txNum, int kind, BlockId blk, int slotPos, long oldPtrBlk, int oldPtrId, long newPtrBlk,
+			int newPtrId, BitSet fields, int[] offsets, Constant[] oldVals, Constant[] newVals) {
+		this.txNum = txNum;
+		this.kind = kind;
+		this.blk = blk;
+		this.slotPos = slotPos;
+		this.oldPtrBlk = oldPtrBlk;
+		this.oldPtrId = oldPtrId;
+		this.newPtrBlk = newPtrBlk;
+		this.newPtrId = newPtrId;
+		this.fields = fields;
+		this.offsets = offsets;
+		this.oldVals = oldVals;
+		this.newVals = newVals;
+		types = new Type[offsets.length];
+		for (int i = 0; i < offsets.length; i++)
+			types[i] = (newVals != null ? newVals[i] : oldVals[i]).getType();
+		this.lsn = null;
+	}
+
+	/**
+	 * Creates a log record by reading the values from the log.
+	 * 
+	 * @param rec
+	 *            the basic log record
+	 */
+	RowRecord(BasicLogRecord rec) {
+		txNum = rec.nextLong();
+		kind = rec.nextInt();
+		blk = new BlockId(rec.nextString(), rec.nextLong());
+		slotPos = rec.nextInt();
+		if (kind != UPDATE) {
+			oldPtrBlk = rec.nextLong();
+			oldPtrId = rec.nextInt();
+			newPtrBlk = rec.nextLong();
+			newPtrId = rec.nextInt();
+		}
+		long[] words = new long[rec.nextInt()];
+		for (int i = 0; i < words.length; i++)
+			words[i] = rec.nextLong();
+		fields = BitSet.valueOf(words);
+		int count = fields.cardinality();
+		offsets = new int[count];
+		types = new Type[count];
+		oldVals = kind == UPDATE ? new Constant[count] : null;
+		newVals = kind != DELETE ? new Constant[count] : null;
+		for (int i = 0; i < count; i++) {
+			offsets[i] = rec.nextInt();
+			types[i] = rec.nextType();
+			if (oldVals != null)
+				oldVals[i] = rec.nextVal(types[i]);
+			if (newVals != null)
+				newVals[i] = rec.nextVal(types[i]);
+		}
+		lsn = rec.getLSN();
+	}
+
+	@Override
+	public LogSeqNum writeToLog() {
+		LogRecordBuilder rec = LogRecordBuilder.forCurrentThread();
+		buildRecord(rec);
+		return logMgr.append(rec);
+	}
+
+	@Override
+	public int op() {
+		return OP_ROW;
+	}
+
+	@Override
+	public long txNumber() {
+		return txNum;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("<ROW " + op() + " " + txNum + " " + kind + " " + blk + " " + slotPos);
+		if (kind != UPDATE)
+			sb.append(" [" + oldPtrBlk + ", " + oldPtrId + "] [" + newPtrBlk + ", " + newPtrId + "]");
+		sb.append(" " + fields);
+		for (int i = 0; i < offsets.length; i++) {
+			sb.append(" " + offsets[i]);
+			if (oldVals != null)
+				sb.append(" " + oldVals[i]);
+			if (newVals != null)
+				sb.append(" " + newVals[i]);
+		}
+		return sb.append(">").toString();
+	}
+
+	/**
+	 * Reverts the slot by logging the opposite operation as a CLR and
+	 * applying it. An insertion is reverted by a deletion which restores the
+	 * old pointer to the next deleted slot, a deletion by an insertion which
+	 * restores the bytes overwritten by the pointer, and an update by an
+	 * update which writes back the old values.
+	 * 
+	 * @see LogRecord#undo(Transaction)
+	 */
+	@Override
+	public void undo(Transaction tx) {
+		RowClr comp;
+		if (kind == INSERT)
+			comp = new RowClr(txNum, DELETE, blk, slotPos, newPtrBlk, newPtrId, oldPtrBlk, oldPtrId, new BitSet(),
+					new int[0], null, null, lsn);
+		else if (kind == DELETE)
+			comp = new RowClr(txNum, INSERT, blk, slotPos, newPtrBlk, newPtrId, oldPtrBlk, oldPtrId, new BitSet(),
+					new int[0], null, new Constant[0], lsn);
+		else
+			comp = new RowClr(txNum, UPDATE, blk, slotPos, 0, 0, 0, 0, fields, offsets, newVals, oldVals, lsn);
+
+		Buffer buff = tx.bufferMgr().pin(blk);
+
+		// Apply the CLR before the page can be written
+		buff.lockFlushing();
+		try {
+			LogSeqNum lsn = tx.recoveryMgr().logRowClr(comp);
+			VanillaDb.logMgr().flush(lsn);
+
+			comp.apply(buff, tx.getTransactionNumber());
+		} finally {
+			buff.unlockFlushing();
+		}
+		tx.bufferMgr().unpin(buff);
+	}
+
+	/**
+	 * Applies the operation to the slot again, unless the LSN of the page
+	 * shows that the page already holds it.
+	 * 
+	 * @see LogRecord#redo(Transaction)
+	 */
+	@Override
+	public void redo(Transaction tx) {
+		Buffer buff = tx.bufferMgr().pin(blk);
+		if (this.lsn.compareTo(buff.lastLsn()) > 0)
+			apply(buff, tx.getTransactionNumber());
+		tx.bufferMgr().unpin(buff);
+	}
+
+	@Override
+	public void buildRecord(LogRecordBuilder rec) {
+		rec.putInt(op());
+		rec.putLong(txNum);
+		rec.putInt(kind);
+		rec.putString(blk.fileName());
+		rec.putLong(blk.number());
+		rec.putInt(slotPos);
+		if (kind != UPDATE) {
+			rec.putLong(oldPtrBlk);
+			rec.putInt(oldPtrId);
+			rec.putLong(newPtrBlk);
+			rec.putInt(newPtrId);
+		}
+		long[] words = fields.toLongArray();
+		rec.putInt(words.length);
+		for (long word : words)
+			rec.putLong(word);
+		for (int i = 0; i < offsets.length; i++) {
+			rec.putInt(offsets[i]);
+			rec.putType(types[i]);
+			if (oldVals != null)
+				rec.putVal(oldVals[i]);
+			if (newVals != null)
+				rec.putVal(newVals[i]);
+		}
+	}
+
+	@Override
+	public BlockId getBlockId() {
+		return blk;
+	}
+
+	@Override
+	public LogSeqNum getLSN() {
+		return lsn;
+	}
+
+	/**
+	 * Writes the operation to the page with a dummy LSN. The caller must hold
+	 * the flushing lock of the buffer if the page is not being recovered.
+	 */
+	void apply(Buffer buff, long txNum) {
+		if (kind != UPDATE) {
+			int flag = kind == INSERT ? RecordPage.INUSE : RecordPage.EMPTY;
+			buff.setVal(slotPos, new IntegerConstant(flag), txNum, null);
+			buff.setVal(slotPos + PTR_BLK_OFFSET, new BigIntConstant(newPtrBlk), txNum, null);
+			buff.setVal(slotPos + PTR_ID_OFFSET, new IntegerConstant(newPtrId), txNum, null);
+		}
+		if (newVals != null)
+			for (int i = 0; i < offsets.length; i++)
+				buff.setVal(slotPos + offsets[i], newVals[i], txNum, null);
+	}
+
+	/**
+	 * Reads the block number of the pointer to the next deleted slot stored in
+	 * the specified slot. The pointer of a slot in use is the raw bytes of its
+	 * first fields.
+	 * 
+	 * @param buff
+	 *            the buffer holding the slot
+	 * @param slotPos
+	 *            the offset of the slot in the block
+	 * @return the block number of the pointer
+	 */
+	static long pointerBlock(Buffer buff, int slotPos) {
+		return (Long) buff.getVal(slotPos + PTR_BLK_OFFSET, BIGINT).asJavaVal();
+	}
+
+	/**
+	 * Reads the slot id of the pointer to the next deleted slot stored in the
+	 * specified slot.
+	 * 
+	 * @param buff
+	 *            the buffer holding the slot
+	 * @param slotPos
+	 *            the offset of the slot in the block
+	 * @return the slot id of the pointer
+	 */
+	static int pointerId(Buffer buff, int slotPos) {
+		return (Integer) buff.getVal(slotPos + PTR_ID_OFFSET, INTEGER).asJavaVal();
+	}
+}
@@ -15,26 +15,17 @@
  *******************************************************************************/
 package org.vanilladb.core.storage.tx.recovery;
 
-import static org.vanilladb.core.sql.Type.BIGINT;
-import static org.vanilladb.core.sql.Type.INTEGER;
-import static org.vanilladb.core.sql.Type.VARCHAR;
-
-import java.util.LinkedList;
-import java.util.List;
-
 import org.vanilladb.core.server.VanillaDb;
-import org.vanilladb.core.sql.BigIntConstant;
 import org.vanilladb.core.sql.Constant;
-import org.vanilladb.core.sql.IntegerConstant;
 import org.vanilladb.core.sql.Type;
-import org.vanilladb.core.sql.VarcharConstant;
 import org.vanilladb.core.storage.buffer.Buffer;
 import org.vanilladb.core.storage.file.BlockId;
 import org.vanilladb.core.storage.log.BasicLogRecord;
+import org.vanilladb.core.storage.log.LogRecordBuilder;
 import org.vanilladb.core.storage.log.LogSeqNum;
 import org.vanilladb.core.storage.tx.Transaction;
 
-class SetValueRecord implements LogRecord {
+class SetValueRecord implements LogRecord, PageLogRecord {
 	private long txNum;
 	private int offset;
 	private Type type;
@@ -76,12 +67,10 @@ class SetValueRecord implements LogRecord {
 	 *            the operation ID
 	 */
 	public SetValueRecord(BasicLogRecord rec) {
-		txNum = (Long) rec.nextVal(BIGINT).asJavaVal();
-		blk = new BlockId((String) rec.nextVal(VARCHAR).asJavaVal(), (Long) rec.nextVal(BIGINT).asJavaVal());
-		offset = (Integer) rec.nextVal(INTEGER).asJavaVal();
-		int sqlType = (Integer) rec.nextVal(INTEGER).asJavaVal();
-		int sqlArg = (Integer) rec.nextVal(INTEGER).asJavaVal();
-		type = Type.newInstance(sqlType, sqlArg);
+		txNum = rec.nextLong();
+		blk = new BlockId(rec.nextString(), rec.nextLong());
+		offset = rec.nextInt();
+		type = rec.nextType();
 		val = rec.nextVal(type);
 		newVal = rec.nextVal(type);
 		lsn = rec.getLSN();
@@ -98,8 +87,9 @@ class SetValueRecord implements LogRecord {
 	@Override
 	public LogSeqNum writeToLog() {
 
-		List<Constant> rec = buildRecord();
-		return logMgr.append(rec.toArray(new Constant[rec.size()]));
+		LogRecordBuilder rec = LogRecordBuilder.forCurrentThread();
+		buildRecord(rec);
+		return logMgr.append(rec);
 
 	}
 
@@ -129,10 +119,16 @@ class SetValueRecord implements LogRecord {
 	public void undo(Transaction tx) {
 		Buffer buff = tx.bufferMgr().pin(blk);
 		
-		LogSeqNum lsn = tx.recoveryMgr().logSetValClr(this.txNum, buff, offset, val, this.lsn);
-		VanillaDb.logMgr().flush(lsn);
-		
-		buff.setVal(offset, val, tx.getTransactionNumber(), null);
+		// Apply the CLR before the page can be written
+		buff.lockFlushing();
+		try {
+			LogSeqNum lsn = tx.recoveryMgr().logSetValClr(this.txNum, buff, offset, val, this.lsn);
+			VanillaDb.logMgr().flush(lsn);
+			
+			buff.setVal(offset, val, tx.getTransactionNumber(), null);
+		} finally {
+			buff.unlockFlushing();
+		}
 		tx.bufferMgr().unpin(buff);
 		// Note that UndoNextLSN should be set to this log record's lsn in order
 		// to let RecoveryMgr to skip this log record. Since this record should
@@ -146,30 +142,35 @@ class SetValueRecord implements LogRecord {
 	/**
 	 * Replaces the specified data value with the new value saved in the log
 	 * record. The method pins a buffer to the specified block, calls setInt to
-	 * restore the saved value (using a dummy LSN), and unpins the buffer.
+	 * restore the saved value (using a dummy LSN), and unpins the buffer. The
+	 * value is not restored if the LSN of the page shows that the page already
+	 * holds it.
 	 * 
 	 * @see LogRecord#redo(Transaction)
 	 */
 	@Override
 	public void redo(Transaction tx) {
 		Buffer buff = tx.bufferMgr().pin(blk);
-		buff.setVal(offset, newVal, tx.getTransactionNumber(), null);
+		if (this.lsn.compareTo(buff.lastLsn()) > 0)
+			buff.setVal(offset, newVal, tx.getTransactionNumber(), null);
 		tx.bufferMgr().unpin(buff);
 	}
 
 	@Override
-	public List<Constant> buildRecord() {
-		List<Constant> rec = new LinkedList<Constant>();
-		rec.add(new IntegerConstant(op()));
-		rec.add(new BigIntConstant(txNum));
-		rec.add(new VarcharConstant(blk.fileName()));
-		rec.add(new BigIntConstant(blk.number()));
-		rec.add(new IntegerConstant(offset));
-		rec.add(new IntegerConstant(type.getSqlType()));
-		rec.add(new IntegerConstant(type.getArgument()));
-		rec.add(val);
-		rec.add(newVal);
-		return rec;
+	public void buildRecord(LogRecordBuilder rec) {
+		rec.putInt(op());
+		rec.putLong(txNum);
+		rec.putString(blk.fileName());
+		rec.putLong(blk.number());
+		rec.putInt(offset);
+		rec.putType(type);
+		rec.putVal(val);
+		rec.putVal(newVal);
+	}
+
+	@Override
+	public BlockId getBlockId() {
+		return blk;
 	}
 
 	@Override
@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright 2016, 2026 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.util;
+
+/**
+ * A histogram of latencies in microseconds. The i-th bucket counts the
+ * latencies in [2<sup>i-1</sup>, 2<sup>i</sup>) us, except that the first
+ * bucket counts the latencies shorter than 1 us and the last bucket counts all
+ * the latencies beyond the second last one.
+ * 
+ * <p>
+ * A histogram is not thread-safe. It is meant to be owned by a single
+ * transaction.
+ * </p>
+ */
+public class LatencyHistogram {
+	public static final int NUM_BUCKETS = 32;
+
+	private long[] buckets = new long[NUM_BUCKETS];
+	private long count, totalTime, maxTime;
+
+	/**
+	 * Records a latency.
+	 * 
+	 * @param micros
+	 *            the latency in microseconds
+	 */
+	public void record(long micros) {
+		if (micros < 0)
+			micros = 0;
+		int bucket = 64 - Long.numberOfLeadingZeros(micros);
+		buckets[Math.min(bucket, NUM_BUCKETS - 1)]++;
+		count++;
+		totalTime += micros;
+		if (micros > maxTime)
+			maxTime = micros;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the sum of all the recorded latencies in microseconds.
+	 * 
+	 * @return the total latency
+	 */
+	public long getTotalTime() {
+		return totalTime;
+	}
+
+	public long getMaxTime() {
+		return maxTime;
+	}
+
+	public long getBucketCount(int bucket) {
+		return buckets[bucket];
+	}
+
+	/**
+	 * Returns the exclusive upper bound of the specified bucket in
+	 * microseconds.
+	 * 
+	 * @param bucket
+	 *            the index of the bucket
+	 * @return the upper bound, or {@link Long#MAX_VALUE} for the last bucket
+	 */
+	public static long getBucketUpperBound(int bucket) {
+		return bucket == NUM_BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("count: %d, total: %d us, max: %d us", count, totalTime, maxTime));
+		for (int i = 0; i < NUM_BUCKETS - 1; i++)
+			if (buckets[i] > 0)
+				sb.append(String.format("\n< %d us: %d", getBucketUpperBound(i), buckets[i]));
+		if (buckets[NUM_BUCKETS - 1] > 0)
+			sb.append(String.format("\n>= %d us: %d", getBucketUpperBound(NUM_BUCKETS - 2),
+					buckets[NUM_BUCKETS - 1]));
+		return sb.toString();
+	}
+}
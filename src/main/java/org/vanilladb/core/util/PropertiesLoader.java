@@ -172,6 +172,10 @@ public abstract class PropertiesLoader {
 
 	public String[] getPropertyAsStringArray(String propertyName,
 			String[] defaultArray) {
+		// a property set to nothing is an empty list
+		if (isEmpty(propertyName))
+			return new String[0];
+
 		String value = getPropertyValue(propertyName);
 
 		// can't find property
@@ -293,6 +297,11 @@ public abstract class PropertiesLoader {
 
 	protected abstract String getConfigFilePath();
 
+	private boolean isEmpty(String propertyName) {
+		String value = System.getProperty(propertyName);
+		return value != null && value.trim().isEmpty();
+	}
+
 	private String getPropertyValue(String propertyName) {
 		// get a property value as string
 		String value = System.getProperty(propertyName);
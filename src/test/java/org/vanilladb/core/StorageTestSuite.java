@@ -23,19 +23,25 @@ import org.vanilladb.core.storage.buffer.BufferConcurrencyTest;
 import org.vanilladb.core.storage.buffer.BufferPoolConcurrencyTest;
 import org.vanilladb.core.storage.buffer.BufferTest;
 import org.vanilladb.core.storage.buffer.LastLSNTest;
+import org.vanilladb.core.storage.buffer.ReplacementPolicyTest;
+import org.vanilladb.core.storage.buffer.SequentialPrefetcherTest;
 import org.vanilladb.core.storage.file.FileTest;
 import org.vanilladb.core.storage.file.PageConcurrencyTest;
 import org.vanilladb.core.storage.index.btree.BTreeIndexTest;
 import org.vanilladb.core.storage.index.btree.BTreeLeafTest;
 import org.vanilladb.core.storage.index.btree.BTreePageTest;
 import org.vanilladb.core.storage.index.hash.HashIndexTest;
+import org.vanilladb.core.storage.log.LogMgrTest;
 import org.vanilladb.core.storage.metadata.CatalogTest;
 import org.vanilladb.core.storage.metadata.statistics.HistogramTest;
 import org.vanilladb.core.storage.record.RecordTest;
 import org.vanilladb.core.storage.tx.TxTest;
 import org.vanilladb.core.storage.tx.concurrency.ConcurrencyTest;
 import org.vanilladb.core.storage.tx.concurrency.LockTableTest;
+import org.vanilladb.core.storage.tx.concurrency.OptimisticConcurrencyTest;
+import org.vanilladb.core.storage.tx.concurrency.SnapshotTest;
 import org.vanilladb.core.storage.tx.recovery.BTreeIndexRecoveryTest;
+import org.vanilladb.core.storage.tx.recovery.BackupTest;
 import org.vanilladb.core.storage.tx.recovery.RecoveryBasicTest;
 
 @RunWith(IsolatedClassLoaderSuite.class)
@@ -46,7 +52,11 @@ import org.vanilladb.core.storage.tx.recovery.RecoveryBasicTest;
 	// storage.buffer
 	BufferTest.class, BufferConcurrencyTest.class,
 	BufferPoolConcurrencyTest.class,
-	LastLSNTest.class,
+	LastLSNTest.class, ReplacementPolicyTest.class,
+	SequentialPrefetcherTest.class,
+	
+	// storage.log
+	LogMgrTest.class,
 	
 	// storage.record
 	RecordTest.class,
@@ -68,10 +78,11 @@ import org.vanilladb.core.storage.tx.recovery.RecoveryBasicTest;
 	TxTest.class,
 	
 	// storage.tx.concurrency
-	ConcurrencyTest.class, LockTableTest.class,
+	ConcurrencyTest.class, LockTableTest.class, SnapshotTest.class, OptimisticConcurrencyTest.class,
 	
 	// storage.tx.recovery
 	RecoveryBasicTest.class, BTreeIndexRecoveryTest.class,
+	BackupTest.class,
 })
 @IsolationRoot(VanillaDb.class)
 public class StorageTestSuite {
@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright 2016, 2026 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.buffer;
+
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.vanilladb.core.server.ServerInit;
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.file.Page;
+
+/**
+ * Measures the throughput of pinning and unpinning blocks in a
+ * {@link BufferPoolMgr} with 1 to 64 threads. The hit workload pins blocks
+ * that stay in the pool, and the miss workload pins blocks from a working set
+ * twice the size of the pool, so about half of the pins replace a buffer. The
+ * last workload repeats the misses while 90% of the buffers stay pinned, so a
+ * replacement has to skip most of the pool to find a victim.
+ * 
+ * <p>
+ * Usage: {@code BufferPoolBenchmark [pool size] [seconds per run]}
+ * </p>
+ */
+public class BufferPoolBenchmark {
+	private static final String FILE_NAME = "_benchbufferpool";
+	private static final int[] THREAD_COUNTS = { 1, 2, 4, 8, 16, 32, 64 };
+
+	public static void main(String[] args) throws Exception {
+		int poolSize = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+		int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+
+		String dbName = ServerInit.resetDb(BufferPoolBenchmark.class);
+		VanillaDb.initFileMgr(dbName);
+
+		// Create the blocks, so that a miss reads a block from the file
+		Page page = new Page();
+		for (int i = 0; i < poolSize * 3; i++)
+			page.write(new BlockId(FILE_NAME, i));
+
+		System.out.println("pool size: " + poolSize + ", " + seconds + " s per run");
+		System.out.println("threads\thit pins/s\tmiss pins/s\tmiss pins/s (90% pinned)");
+		for (int threads : THREAD_COUNTS) {
+			long hits = run(new BufferPoolMgr(poolSize), poolSize / 2, threads, seconds);
+			long misses = run(new BufferPoolMgr(poolSize), poolSize * 2, threads, seconds);
+			BufferPoolMgr pinnedPool = new BufferPoolMgr(poolSize);
+			Buffer[] pinned = new Buffer[poolSize * 9 / 10];
+			for (int i = 0; i < pinned.length; i++)
+				pinned[i] = pinnedPool.pin(new BlockId(FILE_NAME, poolSize * 2 + i));
+			long pinnedMisses = run(pinnedPool, poolSize * 2, threads, seconds);
+			pinnedPool.unpin(pinned);
+			System.out.println(threads + "\t" + hits / seconds + "\t" + misses / seconds + "\t"
+					+ pinnedMisses / seconds);
+		}
+	}
+
+	private static long run(final BufferPoolMgr bufferPool, final int workingSet, int threads, int seconds)
+			throws Exception {
+		final AtomicBoolean stop = new AtomicBoolean();
+		final CyclicBarrier start = new CyclicBarrier(threads + 1);
+		final long[] counts = new long[threads];
+		Thread[] pinners = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			final int id = i;
+			pinners[i] = new Thread() {
+				@Override
+				public void run() {
+					Random random = new Random(id);
+					try {
+						start.await();
+					} catch (Exception e) {
+						return;
+					}
+					long count = 0;
+					while (!stop.get()) {
+						Buffer buff = bufferPool.pin(new BlockId(FILE_NAME, random.nextInt(workingSet)));
+						// Every buffer is pinned by another thread
+						if (buff == null) {
+							Thread.yield();
+							continue;
+						}
+						bufferPool.unpin(buff);
+						count++;
+					}
+					counts[id] = count;
+				}
+			};
+			pinners[i].start();
+		}
+
+		start.await();
+		Thread.sleep(seconds * 1000L);
+		stop.set(true);
+		long total = 0;
+		for (int i = 0; i < threads; i++) {
+			pinners[i].join();
+			total += counts[i];
+		}
+		return total;
+	}
+}
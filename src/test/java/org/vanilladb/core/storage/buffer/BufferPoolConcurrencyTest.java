@@ -164,16 +164,21 @@ public class BufferPoolConcurrencyTest {
 		private void pin() {
 			buf = bufferPool.pin(blk);
 			
-			// Handles the case of not enough buffer
-			while (buf == null) {
+			// Handles the case of not enough buffer. The retry holds the
+			// monitor, so a buffer unpinned after it is always followed by a
+			// notification this thread waits for.
+			if (buf == null) {
 				synchronized (bufferPool) {
-					try {
-						bufferPool.wait();
-					} catch (InterruptedException e) {
-						e.printStackTrace();
+					buf = bufferPool.pin(blk);
+					while (buf == null) {
+						try {
+							bufferPool.wait();
+						} catch (InterruptedException e) {
+							e.printStackTrace();
+						}
+						buf = bufferPool.pin(blk);
 					}
 				}
-				buf = bufferPool.pin(blk);
 			}
 		}
 		
@@ -16,12 +16,15 @@
 package org.vanilladb.core.storage.buffer;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.vanilladb.core.sql.Type.INTEGER;
 import static org.vanilladb.core.sql.Type.VARCHAR;
 
 import java.sql.Connection;
 import java.util.ArrayList;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -145,6 +148,70 @@ public class BufferTest {
 		assertEquals("*****BufferTest: bad available", avail7, avail1);
 	}
 
+	@Test
+	public void testPageCleaning() {
+		Transaction tx = VanillaDb.txMgr().newTransaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		BufferMgr bm = tx.bufferMgr();
+		
+		// Leave a dirty buffer which no one pins
+		BlockId blk = new BlockId(fileName, 5);
+		Buffer buff = bm.pin(blk);
+		buff.setVal(0, new IntegerConstant(5), tx.getTransactionNumber(), null);
+		bm.unpin(buff);
+		assertTrue("*****BufferTest: bad dirty flag", buff.isDirty());
+		
+		// Ask for a pool of clean buffers
+		BufferMgr.bufferPool.cleanBuffers(1.0, BufferMgr.BUFFER_POOL_SIZE);
+		assertEquals("*****BufferTest: bad buffer swapping", blk, buff.block());
+		assertFalse("*****BufferTest: bad page cleaning", buff.isDirty());
+		tx.commit();
+	}
+
+	/**
+	 * Tests that a transaction arriving while others are waiting for buffers
+	 * does not take a free buffer ahead of them, but can still share a buffer
+	 * in use.
+	 */
+	@Test
+	public void testNewcomerQueuesBehindWaiters() throws InterruptedException {
+		Transaction holder = VanillaDb.txMgr().newTransaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		final Transaction newcomer = VanillaDb.txMgr().newTransaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		BlockId inUseBlk = new BlockId(fileName, 10);
+		holder.bufferMgr().pin(inUseBlk);
+
+		// Pretend that a thread is waiting for a buffer
+		Thread waiter = new Thread();
+		BufferMgr.waitingThreads.add(waiter);
+		try {
+			// A buffer in use is shared right away
+			newcomer.bufferMgr().unpin(newcomer.bufferMgr().pin(inUseBlk));
+
+			// A free buffer is left to the waiter
+			final BlockId blk = new BlockId(fileName, 11);
+			Thread pinner = new Thread() {
+				@Override
+				public void run() {
+					newcomer.bufferMgr().pin(blk);
+				}
+			};
+			pinner.start();
+			Thread.sleep(100);
+			assertTrue("*****BufferTest: bad buffer waiting", pinner.isAlive());
+
+			// The newcomer gets the buffer once the waiter leaves
+			BufferMgr.waitingThreads.remove(waiter);
+			LockSupport.unpark(pinner);
+			pinner.join();
+		} finally {
+			BufferMgr.waitingThreads.remove(waiter);
+		}
+		newcomer.commit();
+		holder.commit();
+	}
+
 	/**
 	 * Tests the buffer manager when a transaction requires buffers more than
 	 * the buffer pool size.
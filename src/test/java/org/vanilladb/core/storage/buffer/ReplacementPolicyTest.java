@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright 2016, 2026 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.buffer;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.vanilladb.core.server.ServerInit;
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.file.Page;
+
+public class ReplacementPolicyTest {
+	private static Logger logger = Logger.getLogger(ReplacementPolicyTest.class.getName());
+
+	private static final int BUFFER_COUNT = 10;
+	private static final int HOT_BLOCK_COUNT = 3;
+	private static final int SCAN_BLOCK_COUNT = 100;
+	private static final int PREFETCH_SIZE = 4;
+
+	private static final String TEST_FILE_NAME = "_tempreplacementtest";
+
+	@BeforeClass
+	public static void init() {
+		String dbName = ServerInit.resetDb(ReplacementPolicyTest.class);
+		VanillaDb.initFileMgr(dbName);
+
+		// Prefetching stops at the end of the file
+		Page page = new Page();
+		for (int i = 0; i < HOT_BLOCK_COUNT + BUFFER_COUNT + SCAN_BLOCK_COUNT; i++)
+			page.append(TEST_FILE_NAME);
+
+		if (logger.isLoggable(Level.INFO))
+			logger.info("BEGIN REPLACEMENT POLICY TEST");
+	}
+
+	@AfterClass
+	public static void finish() {
+		if (logger.isLoggable(Level.INFO))
+			logger.info("FINISH REPLACEMENT POLICY TEST");
+	}
+
+	@Test
+	public void testClock() {
+		BufferPoolMgr bufferPool = new BufferPoolMgr(BUFFER_COUNT, new ClockReplacementPolicy());
+
+		// Every block of a scan larger than the pool must get a buffer
+		for (int i = 0; i < SCAN_BLOCK_COUNT; i++) {
+			BlockId blk = new BlockId(TEST_FILE_NAME, i);
+			Buffer buff = bufferPool.pin(blk);
+			// A sweep may only clear the reference bits, retry as BufferMgr does
+			if (buff == null)
+				buff = bufferPool.pin(blk);
+			Assert.assertNotNull(buff);
+			Assert.assertEquals(blk, buff.block());
+			bufferPool.unpin(buff);
+		}
+	}
+
+	@Test
+	public void testClockSkipsPinnedBuffers() {
+		BufferPoolMgr bufferPool = new BufferPoolMgr(BUFFER_COUNT, new ClockReplacementPolicy());
+
+		// Pin all the buffers but one
+		Buffer[] pinned = new Buffer[BUFFER_COUNT - 1];
+		for (int i = 0; i < pinned.length; i++)
+			pinned[i] = bufferPool.pin(new BlockId(TEST_FILE_NAME, i));
+
+		// The only unpinned buffer must be found by every miss at once
+		for (int i = 0; i < SCAN_BLOCK_COUNT; i++) {
+			BlockId blk = new BlockId(TEST_FILE_NAME, BUFFER_COUNT + i);
+			Buffer buff = bufferPool.pin(blk);
+			Assert.assertNotNull("no buffer for block " + blk, buff);
+			bufferPool.unpin(buff);
+		}
+
+		bufferPool.unpin(pinned);
+	}
+
+	@Test
+	public void testLruKResistsScan() {
+		checkScanResistance(new LruKReplacementPolicy(), false);
+	}
+
+	@Test
+	public void testTwoQueueResistsScan() {
+		checkScanResistance(new TwoQueueReplacementPolicy(), false);
+	}
+
+	@Test
+	public void testLruKResistsPrefetchedScan() {
+		checkScanResistance(new LruKReplacementPolicy(), true);
+	}
+
+	@Test
+	public void testTwoQueueResistsPrefetchedScan() {
+		checkScanResistance(new TwoQueueReplacementPolicy(), true);
+	}
+
+	@Test
+	public void testPrefetchRunGetsDistinctBuffers() {
+		ReplacementPolicy[] policies = { new ClockReplacementPolicy(), new LruKReplacementPolicy(),
+				new TwoQueueReplacementPolicy() };
+		for (ReplacementPolicy policy : policies) {
+			BufferPoolMgr bufferPool = new BufferPoolMgr(BUFFER_COUNT, policy);
+			bufferPool.prefetch(TEST_FILE_NAME, 0, PREFETCH_SIZE - 1);
+			for (int i = 0; i < PREFETCH_SIZE; i++)
+				Assert.assertNotNull(policy.getClass().getSimpleName() + " does not prefetch block " + i,
+						bufferPool.findExistingBuffer(new BlockId(TEST_FILE_NAME, i)));
+		}
+	}
+
+	/**
+	 * Makes a few blocks hot by referencing each of them twice with other
+	 * blocks in between, and then checks that a long sequential scan does not
+	 * swap them out. If the scan is prefetched, each block is read ahead
+	 * before it is pinned.
+	 */
+	private void checkScanResistance(ReplacementPolicy policy, boolean prefetched) {
+		BufferPoolMgr bufferPool = new BufferPoolMgr(BUFFER_COUNT, policy);
+		int nextScanBlk = HOT_BLOCK_COUNT;
+
+		// The first reference of the hot blocks
+		for (int i = 0; i < HOT_BLOCK_COUNT; i++)
+			bufferPool.unpin(bufferPool.pin(new BlockId(TEST_FILE_NAME, i)));
+
+		// Push the hot blocks out of the pool
+		for (int i = 0; i < BUFFER_COUNT; i++)
+			bufferPool.unpin(bufferPool.pin(new BlockId(TEST_FILE_NAME, nextScanBlk++)));
+
+		// The second reference of the hot blocks
+		Buffer[] hotBuffs = new Buffer[HOT_BLOCK_COUNT];
+		for (int i = 0; i < HOT_BLOCK_COUNT; i++) {
+			hotBuffs[i] = bufferPool.pin(new BlockId(TEST_FILE_NAME, i));
+			bufferPool.unpin(hotBuffs[i]);
+		}
+
+		// A sequential scan touching each block once
+		for (int i = 0; i < SCAN_BLOCK_COUNT; i++) {
+			if (prefetched && i % PREFETCH_SIZE == 0)
+				bufferPool.prefetch(TEST_FILE_NAME, nextScanBlk, nextScanBlk + PREFETCH_SIZE - 1);
+			bufferPool.unpin(bufferPool.pin(new BlockId(TEST_FILE_NAME, nextScanBlk++)));
+		}
+
+		for (int i = 0; i < HOT_BLOCK_COUNT; i++)
+			Assert.assertEquals("the hot block " + i + " has been swapped out",
+					new BlockId(TEST_FILE_NAME, i), hotBuffs[i].block());
+	}
+}
@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright 2016, 2026 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.buffer;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.vanilladb.core.server.ServerInit;
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.storage.file.BlockId;
+
+public class SequentialPrefetcherTest {
+	private static Logger logger = Logger.getLogger(SequentialPrefetcherTest.class.getName());
+
+	private static final int BUFFER_COUNT = 30;
+	private static final int FILE_SIZE = 20;
+	private static final long MAX_WAITING_TIME = 5000;
+
+	private static final String TEST_FILE_NAME = "prefetchtest.tbl";
+
+	@BeforeClass
+	public static void init() {
+		String dbName = ServerInit.resetDb(SequentialPrefetcherTest.class);
+		VanillaDb.initFileAndLogMgr(dbName);
+		VanillaDb.initTaskMgr();
+
+		// Create the blocks to be scanned
+		BufferPoolMgr bufferPool = new BufferPoolMgr(BUFFER_COUNT);
+		PageFormatter fmtr = new PageFormatter() {
+			@Override
+			public void format(Buffer buf) {
+				// do nothing
+			}
+		};
+		for (int i = 0; i < FILE_SIZE; i++)
+			bufferPool.unpin(bufferPool.pinNew(TEST_FILE_NAME, fmtr));
+		bufferPool.flushAll();
+
+		if (logger.isLoggable(Level.INFO))
+			logger.info("BEGIN SEQUENTIAL PREFETCHER TEST");
+	}
+
+	@AfterClass
+	public static void finish() {
+		if (logger.isLoggable(Level.INFO))
+			logger.info("FINISH SEQUENTIAL PREFETCHER TEST");
+	}
+
+	@Test
+	public void testReadAhead() throws InterruptedException {
+		BufferPoolMgr bufferPool = new BufferPoolMgr(BUFFER_COUNT);
+
+		// Scan the first few blocks
+		int scanned = 3;
+		for (int i = 0; i < scanned; i++)
+			bufferPool.unpin(bufferPool.pin(new BlockId(TEST_FILE_NAME, i)));
+
+		// The next block should be brought in without being pinned
+		BlockId nextBlk = new BlockId(TEST_FILE_NAME, scanned);
+		long start = System.currentTimeMillis();
+		while (bufferPool.findExistingBuffer(nextBlk) == null
+				&& System.currentTimeMillis() - start < MAX_WAITING_TIME)
+			Thread.sleep(10);
+		Assert.assertNotNull("the block " + nextBlk + " is not prefetched", bufferPool.findExistingBuffer(nextBlk));
+		Assert.assertEquals(BUFFER_COUNT, bufferPool.available());
+	}
+
+	@Test
+	public void testNoReadAheadBeyondFile() throws InterruptedException {
+		BufferPoolMgr bufferPool = new BufferPoolMgr(BUFFER_COUNT);
+
+		// Scan the tail of the file
+		for (int i = FILE_SIZE - 4; i < FILE_SIZE; i++)
+			bufferPool.unpin(bufferPool.pin(new BlockId(TEST_FILE_NAME, i)));
+
+		Thread.sleep(100);
+		Assert.assertNull(bufferPool.findExistingBuffer(new BlockId(TEST_FILE_NAME, FILE_SIZE)));
+		Assert.assertEquals(FILE_SIZE, VanillaDb.fileMgr().size(TEST_FILE_NAME));
+	}
+}
@@ -23,6 +23,8 @@ import static org.vanilladb.core.sql.Type.INTEGER;
 import static org.vanilladb.core.sql.Type.VARCHAR;
 import static org.vanilladb.core.storage.file.Page.BLOCK_SIZE;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.logging.Level;
@@ -36,6 +38,11 @@ import org.vanilladb.core.server.ServerInit;
 import org.vanilladb.core.server.VanillaDb;
 import org.vanilladb.core.sql.IntegerConstant;
 import org.vanilladb.core.sql.VarcharConstant;
+import org.vanilladb.core.storage.file.io.IoAllocator;
+import org.vanilladb.core.storage.file.io.IoBuffer;
+import org.vanilladb.core.storage.file.io.IoChannel;
+import org.vanilladb.core.storage.file.io.javanio.JavaNioFileChannel;
+import org.vanilladb.core.storage.file.io.javanio.JavaNioMappedFileChannel;
 
 public class FileTest {
 	private static Logger logger = Logger.getLogger(FileTest.class.getName());
@@ -111,6 +118,124 @@ public class FileTest {
 						&& p2.getVal(INT_SIZE, INTEGER).equals(TEST_INT_456));
 	}
 
+	@Test
+	public void testMultiBlockReadWrite() {
+		String filename = FileMgr.TMP_FILE_NAME_PREFIX + "_test_multi";
+
+		// write three consecutive blocks from block 2 in one request
+		p1.setVal(0, TEST_INT_123);
+		p2.setVal(0, TEST_INT_456);
+		p3.setVal(0, TEST_INT_789);
+		Page.write(new BlockId(filename, 2), new Page[] { p1, p2, p3 });
+		assertEquals("*****FileTest: bad multi-block write", 5, fm.size(filename));
+
+		// read the blocks one by one
+		Page p = new Page();
+		p.read(new BlockId(filename, 3));
+		assertEquals("*****FileTest: bad multi-block write", TEST_INT_456, p.getVal(0, INTEGER));
+
+		// read the last two blocks in one request
+		Page[] pages = new Page[] { new Page(), new Page() };
+		Page.read(new BlockId(filename, 3), pages);
+		assertEquals("*****FileTest: bad multi-block read", TEST_INT_456, pages[0].getVal(0, INTEGER));
+		assertEquals("*****FileTest: bad multi-block read", TEST_INT_789, pages[1].getVal(0, INTEGER));
+	}
+
+	@Test
+	public void testConcurrentChannelWrites() throws Exception {
+		File file = File.createTempFile("_test_nio", null);
+		file.deleteOnExit();
+		final IoChannel channel = new JavaNioFileChannel(file);
+		final int numThreads = 4, blocksPerThread = 16;
+		Thread[] threads = new Thread[numThreads];
+		final IOException[] errors = new IOException[numThreads];
+		try {
+			// Each thread writes its own blocks of the same file
+			for (int i = 0; i < numThreads; i++) {
+				final int id = i;
+				threads[i] = new Thread() {
+					@Override
+					public void run() {
+						IoBuffer buffer = IoAllocator.newIoBuffer(BLOCK_SIZE);
+						try {
+							for (int j = 0; j < blocksPerThread; j++) {
+								long blkNum = j * numThreads + id;
+								buffer.clear();
+								buffer.put(0, new byte[] { (byte) blkNum });
+								buffer.rewind();
+								channel.write(buffer, blkNum * BLOCK_SIZE);
+							}
+						} catch (IOException e) {
+							errors[id] = e;
+						}
+					}
+				};
+				threads[i].start();
+			}
+			for (int i = 0; i < numThreads; i++) {
+				threads[i].join();
+				if (errors[i] != null)
+					throw errors[i];
+			}
+
+			long numBlocks = numThreads * blocksPerThread;
+			assertEquals("*****FileTest: bad concurrent writes", numBlocks * BLOCK_SIZE, channel.size());
+			IoBuffer buffer = IoAllocator.newIoBuffer(BLOCK_SIZE);
+			byte[] bytes = new byte[1];
+			for (long blkNum = 0; blkNum < numBlocks; blkNum++) {
+				buffer.clear();
+				channel.read(buffer, blkNum * BLOCK_SIZE);
+				buffer.get(0, bytes);
+				assertEquals("*****FileTest: bad concurrent writes", (byte) blkNum, bytes[0]);
+			}
+		} finally {
+			channel.close();
+		}
+	}
+
+	@Test
+	public void testMappedChannel() throws IOException {
+		File file = File.createTempFile("_test_mmap", null);
+		file.deleteOnExit();
+		IoChannel channel = new JavaNioMappedFileChannel(file);
+		IoBuffer buffer = IoAllocator.newIoBuffer(BLOCK_SIZE);
+		byte[] bytes = new byte[4];
+		try {
+			// read the block written through the channel
+			buffer.put(0, new byte[] { 1, 2, 3, 4 });
+			buffer.rewind();
+			channel.write(buffer, 0);
+			buffer.clear();
+			assertEquals("*****FileTest: bad mapped read", BLOCK_SIZE, channel.read(buffer, 0));
+			buffer.get(0, bytes);
+			assertEquals("*****FileTest: bad mapped read", 4, bytes[3]);
+
+			// grow the file, the new block must be mapped on demand
+			buffer.put(0, new byte[] { 5, 6, 7, 8 });
+			buffer.rewind();
+			channel.write(buffer, 3 * BLOCK_SIZE);
+			buffer.clear();
+			assertEquals("*****FileTest: bad mapped read", BLOCK_SIZE, channel.read(buffer, 3 * BLOCK_SIZE));
+			buffer.get(0, bytes);
+			assertEquals("*****FileTest: bad mapped read", 8, bytes[3]);
+
+			// overwrite a mapped block
+			buffer.put(0, new byte[] { 9, 9, 9, 9 });
+			buffer.rewind();
+			channel.write(buffer, 0);
+			buffer.clear();
+			channel.read(buffer, 0);
+			buffer.get(0, bytes);
+			assertEquals("*****FileTest: bad mapped read", 9, bytes[0]);
+
+			// nothing to read beyond the end of the file
+			buffer.clear();
+			assertEquals("*****FileTest: bad mapped read", -1, channel.read(buffer, 4 * BLOCK_SIZE));
+		} finally {
+			channel.close();
+		}
+	}
+
 	@Test
 	/**
 	 * Test if FileMgr could automatically extend files to the writing position
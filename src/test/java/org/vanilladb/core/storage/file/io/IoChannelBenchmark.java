@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright 2016, 2026 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.file.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.vanilladb.core.storage.file.io.javanio.JavaNioFileChannel;
+import org.vanilladb.core.storage.file.io.javanio.JavaNioMappedFileChannel;
+
+/**
+ * Compares the random 4 KB reads of {@link JavaNioFileChannel} and
+ * {@link JavaNioMappedFileChannel} on a file held in a warm page cache.
+ * 
+ * <p>
+ * Usage: {@code IoChannelBenchmark [file size in MB] [seconds per run]}
+ * </p>
+ */
+public class IoChannelBenchmark {
+	private static final int BLOCK_SIZE = 4096;
+	private static final int[] THREAD_COUNTS = { 1, 4 };
+
+	public static void main(String[] args) throws Exception {
+		int sizeInMb = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+		int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+		int numBlocks = sizeInMb * 1024 * 1024 / BLOCK_SIZE;
+
+		File file = File.createTempFile("_benchiochannel", null);
+		file.deleteOnExit();
+		IoChannel channel = new JavaNioFileChannel(file);
+		IoBuffer buffer = IoAllocator.newIoBuffer(BLOCK_SIZE);
+		byte[] bytes = new byte[BLOCK_SIZE];
+		for (int blk = 0; blk < numBlocks; blk++) {
+			bytes[0] = (byte) blk;
+			buffer.clear();
+			buffer.put(0, bytes);
+			buffer.rewind();
+			channel.write(buffer, (long) blk * BLOCK_SIZE);
+		}
+		channel.close();
+
+		System.out.println("file size: " + sizeInMb + " MB, " + seconds + " s per run");
+		System.out.println("threads\tpread reads/s\tmmap reads/s");
+		for (int threads : THREAD_COUNTS) {
+			long preads = run(new JavaNioFileChannel(file), numBlocks, threads, seconds);
+			long mmaps = run(new JavaNioMappedFileChannel(file), numBlocks, threads, seconds);
+			System.out.println(threads + "\t" + preads / seconds + "\t" + mmaps / seconds);
+		}
+		file.delete();
+	}
+
+	private static long run(final IoChannel channel, final int numBlocks, int threads, int seconds)
+			throws Exception {
+		// Warm up the page cache and the mappings
+		IoBuffer buffer = IoAllocator.newIoBuffer(BLOCK_SIZE);
+		for (int blk = 0; blk < numBlocks; blk++) {
+			buffer.clear();
+			channel.read(buffer, (long) blk * BLOCK_SIZE);
+		}
+
+		final AtomicBoolean stop = new AtomicBoolean();
+		final CyclicBarrier start = new CyclicBarrier(threads + 1);
+		final long[] counts = new long[threads];
+		Thread[] readers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			final int id = i;
+			readers[i] = new Thread() {
+				@Override
+				public void run() {
+					Random random = new Random(id);
+					IoBuffer buffer = IoAllocator.newIoBuffer(BLOCK_SIZE);
+					try {
+						start.await();
+						long count = 0;
+						while (!stop.get()) {
+							buffer.clear();
+							channel.read(buffer, (long) random.nextInt(numBlocks) * BLOCK_SIZE);
+							count++;
+						}
+						counts[id] = count;
+					} catch (Exception e) {
+						e.printStackTrace();
+					}
+				}
+			};
+			readers[i].start();
+		}
+
+		start.await();
+		Thread.sleep(seconds * 1000L);
+		stop.set(true);
+		long total = 0;
+		for (int i = 0; i < threads; i++) {
+			readers[i].join();
+			total += counts[i];
+		}
+		try {
+			channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return total;
+	}
+}
@@ -0,0 +1,172 @@
+/*******************************************************************************
+ * Copyright 2016, 2026 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.log;
+
+import static org.vanilladb.core.sql.Type.DOUBLE;
+import static org.vanilladb.core.sql.Type.INTEGER;
+import static org.vanilladb.core.sql.Type.VARCHAR;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.sql.Connection;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.vanilladb.core.server.ServerInit;
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.DoubleConstant;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.VarcharConstant;
+import org.vanilladb.core.storage.metadata.TableInfo;
+import org.vanilladb.core.storage.record.RecordFile;
+import org.vanilladb.core.storage.record.RecordId;
+import org.vanilladb.core.storage.tx.Transaction;
+import org.vanilladb.core.util.CoreProperties;
+
+/**
+ * Compares the commit latency and the log I/O of a TPC-C-like workload with
+ * and without the compression of the log blocks. Each transaction resembles a
+ * New-Order: it updates 10 stock records and inserts 10 order lines. The
+ * tables fit in the buffer pool, so the bytes written by the process are the
+ * bytes written to the log.
+ * 
+ * <p>
+ * Usage: {@code LogCompressionBenchmark [compress blocks] [transactions]}
+ * </p>
+ */
+public class LogCompressionBenchmark {
+	private static final int NUM_STOCKS = 1000;
+	private static final int ITEMS_PER_ORDER = 10;
+	private static final String CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+
+	private static Random random = new Random(0);
+
+	public static void main(String[] args) throws IOException {
+		boolean compress = args.length > 0 ? Boolean.parseBoolean(args[0]) : false;
+		int numTxs = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+		// Override the configuration before the log is opened
+		CoreProperties.getLoader();
+		System.setProperty(LogSegments.class.getName() + ".COMPRESS_BLOCKS", Boolean.toString(compress));
+		ServerInit.init(LogCompressionBenchmark.class);
+
+		Transaction tx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		Schema sch = new Schema();
+		sch.addField("s_i_id", INTEGER);
+		sch.addField("s_quantity", INTEGER);
+		sch.addField("s_dist_01", VARCHAR(24));
+		sch.addField("s_data", VARCHAR(50));
+		VanillaDb.catalogMgr().createTable("stock", sch, tx);
+		sch = new Schema();
+		sch.addField("ol_o_id", INTEGER);
+		sch.addField("ol_number", INTEGER);
+		sch.addField("ol_i_id", INTEGER);
+		sch.addField("ol_quantity", INTEGER);
+		sch.addField("ol_amount", DOUBLE);
+		sch.addField("ol_dist_info", VARCHAR(24));
+		VanillaDb.catalogMgr().createTable("order_line", sch, tx);
+
+		TableInfo stock = VanillaDb.catalogMgr().getTableInfo("stock", tx);
+		TableInfo orderLine = VanillaDb.catalogMgr().getTableInfo("order_line", tx);
+		RecordId[] stockIds = new RecordId[NUM_STOCKS];
+		RecordFile rf = stock.open(tx, true);
+		for (int i = 0; i < NUM_STOCKS; i++) {
+			Map<String, Constant> vals = new HashMap<String, Constant>();
+			vals.put("s_i_id", new IntegerConstant(i));
+			vals.put("s_quantity", new IntegerConstant(50 + random.nextInt(50)));
+			vals.put("s_dist_01", new VarcharConstant(randomString(24)));
+			vals.put("s_data", new VarcharConstant(randomString(26 + random.nextInt(25))));
+			rf.insert(vals);
+			stockIds[i] = rf.currentRecordId();
+		}
+		rf.close();
+		tx.commit();
+
+		long[] commitTimes = new long[numTxs];
+		long writtenBefore = writtenBytes();
+		long start = System.nanoTime();
+		for (int n = 0; n < numTxs; n++) {
+			tx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+			RecordFile stockFile = stock.open(tx, true);
+			RecordFile orderLineFile = orderLine.open(tx, true);
+			for (int i = 0; i < ITEMS_PER_ORDER; i++) {
+				int item = random.nextInt(NUM_STOCKS);
+				stockFile.moveToRecordId(stockIds[item]);
+				int quantity = (Integer) stockFile.getVal("s_quantity").asJavaVal();
+				Map<String, Constant> vals = new HashMap<String, Constant>();
+				vals.put("s_quantity", new IntegerConstant(quantity > 10 ? quantity - 5 : quantity + 86));
+				vals.put("s_data", new VarcharConstant(randomString(26 + random.nextInt(25))));
+				stockFile.setVals(vals);
+
+				vals = new HashMap<String, Constant>();
+				vals.put("ol_o_id", new IntegerConstant(n));
+				vals.put("ol_number", new IntegerConstant(i));
+				vals.put("ol_i_id", new IntegerConstant(item));
+				vals.put("ol_quantity", new IntegerConstant(5));
+				vals.put("ol_amount", new DoubleConstant(random.nextInt(10000) / 100.0));
+				vals.put("ol_dist_info", new VarcharConstant(randomString(24)));
+				orderLineFile.insert(vals);
+			}
+			stockFile.close();
+			orderLineFile.close();
+
+			long commitStart = System.nanoTime();
+			tx.commit();
+			commitTimes[n] = System.nanoTime() - commitStart;
+		}
+		double secs = (System.nanoTime() - start) / 1e9;
+		long written = writtenBytes() - writtenBefore;
+
+		Arrays.sort(commitTimes);
+		long sum = 0;
+		for (long t : commitTimes)
+			sum += t;
+		System.out.println("compress blocks: " + compress + ", transactions: " + numTxs);
+		System.out.println(String.format("throughput: %.0f tx/s", numTxs / secs));
+		System.out.println(String.format("commit latency: mean %.1f us, median %.1f us, p99 %.1f us",
+				sum / 1000.0 / numTxs, commitTimes[numTxs / 2] / 1000.0, commitTimes[numTxs * 99 / 100] / 1000.0));
+		System.out.println(String.format("bytes written: %.2f MB", written / (1024.0 * 1024.0)));
+	}
+
+	private static String randomString(int length) {
+		StringBuilder sb = new StringBuilder(length);
+		for (int i = 0; i < length; i++)
+			sb.append(CHARS.charAt(random.nextInt(CHARS.length())));
+		return sb.toString();
+	}
+
+	/**
+	 * Returns the number of bytes the process has written, as reported by
+	 * Linux, or -1 if it is unknown.
+	 */
+	private static long writtenBytes() throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader("/proc/self/io"));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null)
+				if (line.startsWith("wchar:"))
+					return Long.parseLong(line.substring(6).trim());
+			return -1;
+		} finally {
+			reader.close();
+		}
+	}
+}
@@ -0,0 +1,364 @@
+/*******************************************************************************
+ * Copyright 2016, 2026 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.vanilladb.core.sql.Type.DOUBLE;
+import static org.vanilladb.core.sql.Type.INTEGER;
+import static org.vanilladb.core.sql.Type.VARCHAR;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.vanilladb.core.server.ServerInit;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.DoubleConstant;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.Type;
+import org.vanilladb.core.sql.VarcharConstant;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.file.Page;
+import org.vanilladb.core.storage.tx.recovery.ReversibleIterator;
+
+public class LogMgrTest {
+	private static Logger logger = Logger.getLogger(LogMgrTest.class.getName());
+
+	private static final int NUM_COMMITTERS = 8;
+	private static final int RECORDS_PER_COMMITTER = 50;
+	// Enough records to fill the log buffer several times
+	private static final int NUM_RECORDS = 5000;
+
+	@BeforeClass
+	public static void init() {
+		ServerInit.init(LogMgrTest.class);
+
+		if (logger.isLoggable(Level.INFO))
+			logger.info("BEGIN LOG MANAGER TEST");
+	}
+
+	@AfterClass
+	public static void finish() {
+		if (logger.isLoggable(Level.INFO))
+			logger.info("FINISH LOG MANAGER TEST");
+	}
+
+	@Test
+	public void testGroupCommit() throws InterruptedException {
+		final LogMgr logMgr = new LogMgr("_test_groupcommit.log");
+		Thread flusher = new Thread(new LogFlushTask(logMgr));
+		flusher.setDaemon(true);
+		flusher.start();
+
+		// Wait for the flusher to take over the flushes
+		while (flusher.getState() != Thread.State.WAITING)
+			Thread.sleep(10);
+
+		Thread[] committers = new Thread[NUM_COMMITTERS];
+		for (int i = 0; i < NUM_COMMITTERS; i++) {
+			final int id = i;
+			committers[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < RECORDS_PER_COMMITTER; j++) {
+						int val = id * RECORDS_PER_COMMITTER + j;
+						LogSeqNum lsn = logMgr.append(new Constant[] { new IntegerConstant(val) });
+						logMgr.flushCommit(lsn);
+					}
+				}
+			};
+			committers[i].start();
+		}
+		for (Thread committer : committers)
+			committer.join();
+
+		// Every committed record must be in the log
+		Set<Integer> vals = new HashSet<Integer>();
+		Iterator<BasicLogRecord> iter = logMgr.iterator();
+		while (iter.hasNext())
+			vals.add((Integer) iter.next().nextVal(INTEGER).asJavaVal());
+		assertEquals("*****LogMgrTest: bad group commit", NUM_COMMITTERS * RECORDS_PER_COMMITTER, vals.size());
+	}
+
+	@Test
+	public void testAsyncLogWriting() throws InterruptedException {
+		LogMgr logMgr = new LogMgr("_test_asynclog.log");
+		Thread writer = new Thread(new LogWriterTask(logMgr));
+		writer.setDaemon(true);
+		writer.start();
+
+		// Wait for the writer to take over the full pages
+		while (writer.getState() != Thread.State.WAITING)
+			Thread.sleep(10);
+
+		for (int i = 0; i < NUM_RECORDS; i++)
+			logMgr.append(new Constant[] { new IntegerConstant(i) });
+
+		// The records must be read back in reverse order
+		Iterator<BasicLogRecord> iter = logMgr.iterator();
+		int expected = NUM_RECORDS;
+		while (iter.hasNext()) {
+			expected--;
+			assertEquals("*****LogMgrTest: bad async log writing", expected,
+					(int) (Integer) iter.next().nextVal(INTEGER).asJavaVal());
+		}
+		assertEquals("*****LogMgrTest: bad async log writing", 0, expected);
+	}
+
+	@Test
+	public void testConcurrentAppends() throws InterruptedException {
+		final LogMgr logMgr = new LogMgr("_test_concurrentlog.log");
+		Thread writer = new Thread(new LogWriterTask(logMgr));
+		writer.setDaemon(true);
+		writer.start();
+
+		Thread[] appenders = new Thread[NUM_COMMITTERS];
+		final int recordsPerAppender = NUM_RECORDS / NUM_COMMITTERS;
+		for (int i = 0; i < NUM_COMMITTERS; i++) {
+			final int id = i;
+			appenders[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < recordsPerAppender; j++) {
+						int val = id * recordsPerAppender + j;
+						logMgr.append(new Constant[] { new IntegerConstant(val), new IntegerConstant(-val) });
+					}
+				}
+			};
+			appenders[i].start();
+		}
+		for (Thread appender : appenders)
+			appender.join();
+
+		// Every record must be complete and linked in both directions
+		Set<Integer> vals = new HashSet<Integer>();
+		ReversibleIterator<BasicLogRecord> iter = logMgr.iterator();
+		while (iter.hasNext()) {
+			BasicLogRecord rec = iter.next();
+			int val = (Integer) rec.nextVal(INTEGER).asJavaVal();
+			assertEquals("*****LogMgrTest: bad concurrent appends", -val, (int) (Integer) rec.nextVal(INTEGER).asJavaVal());
+			vals.add(val);
+		}
+		assertEquals("*****LogMgrTest: bad concurrent appends", NUM_COMMITTERS * recordsPerAppender, vals.size());
+
+		int count = 0;
+		while (iter.hasPrevious()) {
+			iter.previous();
+			count++;
+		}
+		assertEquals("*****LogMgrTest: bad concurrent appends", vals.size(), count);
+	}
+
+	@Test
+	public void testRecordCodec() {
+		LogMgr logMgr = new LogMgr("_test_logcodec.log");
+		LogRecordBuilder builder = LogRecordBuilder.forCurrentThread();
+		builder.putInt(-62).putInt(Integer.MAX_VALUE).putLong(Long.MIN_VALUE).putString("caf\u00e9.tbl")
+				.putType(Type.VARCHAR(20)).putVal(new DoubleConstant(-1.5))
+				.putVal(new VarcharConstant("vanilla", Type.VARCHAR(20))).putLsn(new LogSeqNum(7, 300));
+		LogSeqNum lsn = logMgr.append(builder);
+
+		BasicLogRecord rec = logMgr.iterator().next();
+		assertEquals("*****LogMgrTest: bad record codec", lsn, rec.getLSN());
+		assertEquals("*****LogMgrTest: bad record codec", -62, rec.nextInt());
+		assertEquals("*****LogMgrTest: bad record codec", Integer.MAX_VALUE, rec.nextInt());
+		assertEquals("*****LogMgrTest: bad record codec", Long.MIN_VALUE, rec.nextLong());
+		assertEquals("*****LogMgrTest: bad record codec", "caf\u00e9.tbl", rec.nextString());
+		Type type = rec.nextType();
+		assertEquals("*****LogMgrTest: bad record codec", Type.VARCHAR(20), type);
+		assertEquals("*****LogMgrTest: bad record codec", new DoubleConstant(-1.5), rec.nextVal(DOUBLE));
+		assertEquals("*****LogMgrTest: bad record codec", new VarcharConstant("vanilla"), rec.nextVal(type));
+		assertEquals("*****LogMgrTest: bad record codec", new LogSeqNum(7, 300), rec.nextLsn());
+	}
+
+	@Test
+	public void testBlockCompression() {
+		// Repeated file names compress well, random bytes do not
+		LogBlockCodec codec = new LogBlockCodec();
+		byte[] raw = new byte[Page.BLOCK_SIZE];
+		for (int i = 0; i + 32 <= raw.length; i += 32) {
+			byte[] rec = ("tx" + i / 320 + " course.tbl " + i).getBytes();
+			System.arraycopy(rec, 0, raw, i, rec.length);
+		}
+		byte[] compressed = new byte[raw.length];
+		int size = codec.compress(raw, raw.length, compressed);
+		assertTrue("*****LogMgrTest: bad block compression", size > 0 && size < raw.length / 3);
+		byte[] decompressed = new byte[raw.length];
+		assertEquals("*****LogMgrTest: bad block compression", raw.length,
+				LogBlockCodec.decompress(compressed, 0, size, decompressed));
+		assertTrue("*****LogMgrTest: bad block compression", Arrays.equals(raw, decompressed));
+		new Random(1).nextBytes(raw);
+		assertEquals("*****LogMgrTest: bad block compression", -1,
+				codec.compress(raw, raw.length, new byte[raw.length / 2]));
+
+		// The records are read back after the log is reopened, with the
+		// compression turned off
+		String logFile = "_test_compresslog.log";
+		LogMgr logMgr = new LogMgr(logFile, true);
+		LogSeqNum lsn = null;
+		for (int i = 0; i < 500; i++)
+			lsn = logMgr.append(new Constant[] { new VarcharConstant("course.tbl"), new IntegerConstant(i) });
+		logMgr.flush(lsn);
+		logMgr = new LogMgr(logFile);
+		logMgr.append(new Constant[] { new VarcharConstant("course.tbl"), new IntegerConstant(500) });
+		ReversibleIterator<BasicLogRecord> iter = logMgr.iterator();
+		for (int i = 500; i >= 0; i--) {
+			BasicLogRecord rec = iter.next();
+			assertEquals("*****LogMgrTest: bad compressed log", "course.tbl", rec.nextVal(VARCHAR).asJavaVal());
+			assertEquals("*****LogMgrTest: bad compressed log", i, rec.nextVal(INTEGER).asJavaVal());
+		}
+		assertTrue("*****LogMgrTest: bad compressed log", !iter.hasNext());
+	}
+
+	@Test
+	public void testSegmentTruncation() {
+		String logFile = "_test_truncatelog.log";
+		LogMgr logMgr = new LogMgr(logFile);
+
+		// Fill a few segments
+		List<LogSeqNum> lsns = new ArrayList<LogSeqNum>();
+		LogSeqNum lsn;
+		do {
+			lsn = logMgr.append(new Constant[] { new IntegerConstant(lsns.size()) });
+			lsns.add(lsn);
+		} while (lsn.blkNum() < 2 * LogSegments.SEGMENT_SIZE);
+		int numRecords = lsns.size();
+
+		// Keep the records from the second segment
+		int firstKept = 0;
+		while (lsns.get(firstKept).blkNum() < LogSegments.SEGMENT_SIZE)
+			firstKept++;
+		assertEquals("*****LogMgrTest: bad log truncation", 1, logMgr.truncate(lsns.get(firstKept)));
+
+		// The iterator stops at the first segment kept
+		Iterator<BasicLogRecord> iter = logMgr.iterator();
+		int expected = numRecords;
+		while (iter.hasNext()) {
+			expected--;
+			assertEquals("*****LogMgrTest: bad log truncation", expected,
+					(int) (Integer) iter.next().nextVal(INTEGER).asJavaVal());
+		}
+		assertEquals("*****LogMgrTest: bad log truncation", firstKept, expected);
+
+		// A reopened log continues the LSNs of the remaining segments
+		logMgr.flush(lsn);
+		LogMgr reopened = new LogMgr(logFile);
+		lsn = reopened.append(new Constant[] { new IntegerConstant(numRecords) });
+		assertTrue("*****LogMgrTest: bad log truncation", lsn.compareTo(lsns.get(numRecords - 1)) > 0);
+		reopened.flush(lsn);
+		assertEquals("*****LogMgrTest: bad log truncation", numRecords,
+				(int) (Integer) reopened.iterator().next().nextVal(INTEGER).asJavaVal());
+	}
+
+	@Test
+	public void testFormatVersion() {
+		// A new log is reopened with its format header
+		String logFile = "_test_formatlog.log";
+		LogMgr logMgr = new LogMgr(logFile);
+		logMgr.flush(logMgr.append(new Constant[] { new IntegerConstant(1) }));
+		logMgr = new LogMgr(logFile);
+
+		// A log of another version is rejected
+		Page page = new Page();
+		page.setVal(0, new IntegerConstant(0x56444c47));
+		page.setVal(Page.maxSize(INTEGER), new IntegerConstant(LogSegments.FORMAT_VERSION - 1));
+		page.write(new BlockId(logFile + ".header", 0));
+		try {
+			new LogMgr(logFile);
+			fail("*****LogMgrTest: a log of another format is opened");
+		} catch (RuntimeException e) {
+			assertTrue("*****LogMgrTest: bad format error", e.getMessage().contains("format version"));
+		}
+
+		// So is the single-file log without a header
+		String oldLogFile = "_test_oldformatlog.log";
+		page.write(new BlockId(oldLogFile, 0));
+		page.close();
+		try {
+			new LogMgr(oldLogFile);
+			fail("*****LogMgrTest: a log of the old format is opened");
+		} catch (RuntimeException e) {
+			assertTrue("*****LogMgrTest: bad format error", e.getMessage().contains("format version 1"));
+		}
+	}
+
+	@Test
+	public void testLogCut() {
+		String logFile = "_test_cutlog.log";
+		LogMgr logMgr = new LogMgr(logFile);
+		List<LogSeqNum> lsns = new ArrayList<LogSeqNum>();
+		LogSeqNum lsn;
+		do {
+			lsn = logMgr.append(new Constant[] { new IntegerConstant(lsns.size()) });
+			lsns.add(lsn);
+		} while (lsn.blkNum() < 3);
+
+		// Cut in the middle of a block
+		int last = 0;
+		while (lsns.get(last).blkNum() < 1)
+			last++;
+		last += 5;
+		logMgr.cut(lsns.get(last));
+		assertEquals("*****LogMgrTest: bad log cut", last,
+				(int) (Integer) logMgr.iterator().next().nextVal(INTEGER).asJavaVal());
+
+		// The next record takes the place of the first one discarded
+		lsn = logMgr.append(new Constant[] { new IntegerConstant(-1) });
+		assertEquals("*****LogMgrTest: bad log cut", lsns.get(last + 1), lsn);
+		logMgr.flush(lsn);
+
+		LogMgr reopened = new LogMgr(logFile);
+		ReversibleIterator<BasicLogRecord> iter = reopened.iterator();
+		assertEquals("*****LogMgrTest: bad log cut", -1, (int) (Integer) iter.next().nextVal(INTEGER).asJavaVal());
+		for (int i = last; i >= 0; i--)
+			assertEquals("*****LogMgrTest: bad log cut", i, (int) (Integer) iter.next().nextVal(INTEGER).asJavaVal());
+		assertTrue("*****LogMgrTest: bad log cut", !iter.hasNext());
+	}
+
+	@Test
+	public void testOversizeRecord() {
+		LogMgr logMgr = new LogMgr("_test_oversizelog.log");
+		char[] chars = new char[LogMgr.MAX_RECORD_SIZE];
+		Arrays.fill(chars, 'a');
+		LogRecordBuilder builder = LogRecordBuilder.forCurrentThread();
+		builder.putString(new String(chars));
+		try {
+			logMgr.append(builder);
+			fail("*****LogMgrTest: oversize record is appended");
+		} catch (IllegalArgumentException e) {
+		}
+
+		// The largest record still fits in a block
+		builder = LogRecordBuilder.forCurrentThread();
+		builder.putString(new String(chars, 0, 16));
+		while (builder.size() < LogMgr.MAX_RECORD_SIZE)
+			builder.putInt(0);
+		assertEquals("*****LogMgrTest: bad record size", LogMgr.MAX_RECORD_SIZE, builder.size());
+		LogSeqNum lsn = logMgr.append(builder);
+		assertEquals("*****LogMgrTest: bad oversize check", lsn, logMgr.iterator().next().getLSN());
+	}
+}
@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright 2016, 2026 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.tx;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+
+import org.vanilladb.core.server.ServerInit;
+import org.vanilladb.core.server.VanillaDb;
+
+/**
+ * Measures the begin/commit overhead of empty read-only transactions: the time
+ * and the bytes allocated per transaction, without any record access.
+ * 
+ * <p>
+ * Usage: {@code TransactionBenchmark [transactions per round] [rounds]}
+ * </p>
+ */
+public class TransactionBenchmark {
+
+	public static void main(String[] args) {
+		int numTxs = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		ServerInit.init(TransactionBenchmark.class);
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+
+		// The first round warms up the JIT and is not reported
+		for (int r = 0; r <= rounds; r++) {
+			long allocated = threads.getThreadAllocatedBytes(threadId);
+			long start = System.nanoTime();
+			for (int i = 0; i < numTxs; i++) {
+				Transaction tx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, true);
+				tx.commit();
+			}
+			long elapsed = System.nanoTime() - start;
+			allocated = threads.getThreadAllocatedBytes(threadId) - allocated;
+			if (r > 0)
+				System.out.println(String.format("round %d: %.0f ns/tx, %.0f bytes/tx", r,
+						(double) elapsed / numTxs, (double) allocated / numTxs));
+		}
+	}
+}
@@ -154,11 +154,38 @@ public class TxTest {
 		tx1.commit();
 	}
 
+	@Test
+	public void testWatermark() {
+		TransactionMgr txMgr = VanillaDb.txMgr();
+		int activeCount = txMgr.getActiveTxCount();
+		
+		Transaction tx1 = txMgr.newTransaction(
+				Connection.TRANSACTION_SERIALIZABLE, false);
+		Transaction tx2 = txMgr.newTransaction(
+				Connection.TRANSACTION_SERIALIZABLE, true);
+		assertEquals("TxTest: bad active tx count", activeCount + 2,
+				txMgr.getActiveTxCount());
+		assertTrue("TxTest: bad oldest tx number",
+				txMgr.oldestActiveTxNum() <= tx1.getTransactionNumber());
+		assertTrue("TxTest: bad oldest start lsn", txMgr.oldestStartLsn()
+				.compareTo(tx1.recoveryMgr().startLsn()) <= 0);
+		
+		// The watermark stays below the active read-only tx
+		tx1.commit();
+		assertTrue("TxTest: bad oldest tx number",
+				txMgr.oldestActiveTxNum() <= tx2.getTransactionNumber());
+		tx2.commit();
+		assertEquals("TxTest: bad active tx count", activeCount,
+				txMgr.getActiveTxCount());
+		assertTrue("TxTest: bad oldest tx number",
+				txMgr.oldestActiveTxNum() <= txMgr.getNextTxNum());
+	}
+
 	@Test
 	public void testConcurrency() {
 		TxClientA thA = new TxClientA(0, 600);
 		thA.start();
-		TxClientD thD = new TxClientD(200, 800);
+		TxClientD thD = new TxClientD(200, 400);
 		thD.start();
 		TxClientC thC = new TxClientC(400, 400);
 		thC.start();
@@ -168,12 +195,13 @@ public class TxTest {
 			thC.join();
 		} catch (InterruptedException e) {
 		}
+		// Tx C does not overtake the xlock request of Tx D queued before it
 		String expected = "Tx A: read 1 start\n" + "Tx A: read 1 end\n"
 				+ "Tx D: write 1 start\n" + "Tx C: read 1 start\n"
-				+ "Tx C: read 1 end\n" + "Tx A: read 2 start\n"
-				+ "Tx A: read 2 end\n" + "Tx C: write 2 start\n"
-				+ "Tx C: write 2 end\n" + "Tx D: write 1 end\n"
-				+ "Tx D: read 2 start\n" + "Tx D: read 2 end\n";
+				+ "Tx A: read 2 start\n" + "Tx A: read 2 end\n"
+				+ "Tx D: write 1 end\n" + "Tx D: read 2 start\n"
+				+ "Tx D: read 2 end\n" + "Tx C: read 1 end\n"
+				+ "Tx C: write 2 start\n" + "Tx C: write 2 end\n";
 		assertEquals("TxTest: bad tx history", expected, result);
 	}
 
@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright 2016, 2026 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.tx.concurrency;
+
+import static org.vanilladb.core.sql.Type.DOUBLE;
+import static org.vanilladb.core.sql.Type.INTEGER;
+import static org.vanilladb.core.sql.Type.VARCHAR;
+
+import java.sql.Connection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.vanilladb.core.server.ServerInit;
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.DoubleConstant;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.VarcharConstant;
+import org.vanilladb.core.storage.metadata.TableInfo;
+import org.vanilladb.core.storage.record.RecordFile;
+import org.vanilladb.core.storage.record.RecordId;
+import org.vanilladb.core.storage.tx.Transaction;
+import org.vanilladb.core.storage.tx.TransactionMgr;
+import org.vanilladb.core.util.CoreProperties;
+
+/**
+ * Compares the concurrency managers providing the serializable isolation level
+ * on a TPC-C-like workload. Each transaction resembles a New-Order: it reads
+ * and updates a few random stock records and, optionally, inserts an order
+ * line for each of them. An aborted transaction is rolled back and not
+ * retried.
+ * 
+ * <p>
+ * Usage:
+ * {@code ConcurrencyMgrBenchmark [manager class] [threads] [stocks] [items per tx] [insert order lines] [seconds]}
+ * </p>
+ */
+public class ConcurrencyMgrBenchmark {
+
+	public static void main(String[] args) throws InterruptedException {
+		String mgrCls = args.length > 0 ? args[0] : SerializableConcurrencyMgr.class.getName();
+		int numThreads = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+		final int numStocks = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+		final int itemsPerTx = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+		final boolean inserts = args.length > 4 ? Boolean.parseBoolean(args[4]) : false;
+		int seconds = args.length > 5 ? Integer.parseInt(args[5]) : 10;
+
+		// Override the configuration before the transaction manager is loaded
+		CoreProperties.getLoader();
+		System.setProperty(TransactionMgr.class.getName() + ".SERIALIZABLE_CONCUR_MGR", mgrCls);
+		ServerInit.init(ConcurrencyMgrBenchmark.class);
+
+		Transaction tx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		Schema sch = new Schema();
+		sch.addField("s_i_id", INTEGER);
+		sch.addField("s_quantity", INTEGER);
+		sch.addField("s_ytd", INTEGER);
+		sch.addField("s_data", VARCHAR(50));
+		VanillaDb.catalogMgr().createTable("stock", sch, tx);
+		sch = new Schema();
+		sch.addField("ol_i_id", INTEGER);
+		sch.addField("ol_quantity", INTEGER);
+		sch.addField("ol_amount", DOUBLE);
+		VanillaDb.catalogMgr().createTable("order_line", sch, tx);
+
+		final TableInfo stock = VanillaDb.catalogMgr().getTableInfo("stock", tx);
+		final TableInfo orderLine = VanillaDb.catalogMgr().getTableInfo("order_line", tx);
+		final RecordId[] stockIds = new RecordId[numStocks];
+		RecordFile rf = stock.open(tx, true);
+		for (int i = 0; i < numStocks; i++) {
+			Map<String, Constant> vals = new HashMap<String, Constant>();
+			vals.put("s_i_id", new IntegerConstant(i));
+			vals.put("s_quantity", new IntegerConstant(100));
+			vals.put("s_ytd", new IntegerConstant(0));
+			vals.put("s_data", new VarcharConstant("stock data " + i));
+			rf.insert(vals);
+			stockIds[i] = rf.currentRecordId();
+		}
+		rf.close();
+		tx.commit();
+
+		final long[] commits = new long[numThreads];
+		final long[] aborts = new long[numThreads];
+		final boolean[] stop = new boolean[1];
+		Thread[] threads = new Thread[numThreads];
+		for (int t = 0; t < numThreads; t++) {
+			final int id = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					Random random = new Random(id);
+					while (!isStopped()) {
+						Transaction tx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE,
+								false);
+						try {
+							RecordFile stockFile = stock.open(tx, true);
+							RecordFile orderLineFile = inserts ? orderLine.open(tx, true) : null;
+							for (int i = 0; i < itemsPerTx; i++) {
+								int item = random.nextInt(numStocks);
+								stockFile.moveToRecordId(stockIds[item]);
+								int quantity = (Integer) stockFile.getVal("s_quantity").asJavaVal();
+								int ytd = (Integer) stockFile.getVal("s_ytd").asJavaVal();
+								Map<String, Constant> vals = new HashMap<String, Constant>();
+								vals.put("s_quantity", new IntegerConstant(quantity > 10 ? quantity - 5 : 100));
+								vals.put("s_ytd", new IntegerConstant(ytd + 5));
+								stockFile.setVals(vals);
+								if (inserts) {
+									vals = new HashMap<String, Constant>();
+									vals.put("ol_i_id", new IntegerConstant(item));
+									vals.put("ol_quantity", new IntegerConstant(5));
+									vals.put("ol_amount", new DoubleConstant(random.nextInt(10000) / 100.0));
+									orderLineFile.insert(vals);
+								}
+							}
+							stockFile.close();
+							if (inserts)
+								orderLineFile.close();
+							tx.commit();
+							commits[id]++;
+						} catch (LockAbortException e) {
+							tx.rollback();
+							aborts[id]++;
+						}
+					}
+				}
+
+				private boolean isStopped() {
+					synchronized (stop) {
+						return stop[0];
+					}
+				}
+			};
+		}
+
+		long start = System.nanoTime();
+		for (Thread t : threads)
+			t.start();
+		Thread.sleep(seconds * 1000L);
+		synchronized (stop) {
+			stop[0] = true;
+		}
+		for (Thread t : threads)
+			t.join();
+		double secs = (System.nanoTime() - start) / 1e9;
+
+		long totalCommits = 0, totalAborts = 0;
+		for (int t = 0; t < numThreads; t++) {
+			totalCommits += commits[t];
+			totalAborts += aborts[t];
+		}
+		System.out.println(String.format("manager: %s, threads: %d, stocks: %d, items/tx: %d, inserts: %b",
+				mgrCls.substring(mgrCls.lastIndexOf('.') + 1), numThreads, numStocks, itemsPerTx, inserts));
+		System.out.println(String.format("committed: %.0f tx/s, aborted: %.0f tx/s (%.1f%%)", totalCommits / secs,
+				totalAborts / secs, 100.0 * totalAborts / (totalCommits + totalAborts)));
+	}
+}
@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright 2016, 2026 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.tx.concurrency;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.vanilladb.core.server.ServerInit;
+
+/**
+ * Measures the lock/unlock throughput of {@link LockTable} under contention.
+ * Each thread runs transactions that lock a few objects drawn from a small
+ * set, in ascending order, and then release all their locks. A transaction
+ * aborted by the deadlock handling releases its locks and counts as an abort.
+ * 
+ * <p>
+ * Usage:
+ * {@code LockTableBenchmark [threads] [objects] [locks per tx] [write ratio] [seconds]}
+ * </p>
+ */
+public class LockTableBenchmark {
+
+	public static void main(String[] args) throws InterruptedException {
+		int numThreads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+		final int numObjects = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+		final int locksPerTx = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+		final double writeRatio = args.length > 3 ? Double.parseDouble(args[3]) : 0.2;
+		int seconds = args.length > 4 ? Integer.parseInt(args[4]) : 5;
+		ServerInit.init(LockTableBenchmark.class);
+
+		final LockTable lockTable = new LockTable();
+		final Object[] objects = new Object[numObjects];
+		for (int i = 0; i < numObjects; i++)
+			objects[i] = "obj" + i;
+		final AtomicLong nextTxNum = new AtomicLong();
+		final long[] commits = new long[numThreads];
+		final long[] aborts = new long[numThreads];
+		final boolean[] stop = new boolean[1];
+
+		Thread[] threads = new Thread[numThreads];
+		for (int t = 0; t < numThreads; t++) {
+			final int id = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					Random random = new Random(id);
+					int[] picks = new int[locksPerTx];
+					while (!isStopped()) {
+						long txNum = nextTxNum.incrementAndGet();
+						for (int i = 0; i < locksPerTx; i++)
+							picks[i] = random.nextInt(numObjects);
+						Arrays.sort(picks);
+						try {
+							for (int i = 0; i < locksPerTx; i++) {
+								if (random.nextDouble() < writeRatio)
+									lockTable.xLock(objects[picks[i]], txNum);
+								else
+									lockTable.sLock(objects[picks[i]], txNum);
+							}
+							commits[id]++;
+						} catch (LockAbortException e) {
+							aborts[id]++;
+						}
+						lockTable.releaseAll(txNum, false);
+					}
+				}
+
+				private boolean isStopped() {
+					synchronized (stop) {
+						return stop[0];
+					}
+				}
+			};
+		}
+
+		long start = System.nanoTime();
+		for (Thread t : threads)
+			t.start();
+		Thread.sleep(seconds * 1000L);
+		synchronized (stop) {
+			stop[0] = true;
+		}
+		for (Thread t : threads)
+			t.join();
+		double secs = (System.nanoTime() - start) / 1e9;
+
+		long totalCommits = 0, totalAborts = 0;
+		for (int t = 0; t < numThreads; t++) {
+			totalCommits += commits[t];
+			totalAborts += aborts[t];
+		}
+		System.out.println(String.format("threads: %d, objects: %d, locks/tx: %d, write ratio: %.2f", numThreads,
+				numObjects, locksPerTx, writeRatio));
+		System.out.println(String.format("committed: %.0f tx/s (%.0f locks/s), aborted: %.0f tx/s",
+				totalCommits / secs, totalCommits * locksPerTx / secs, totalAborts / secs));
+	}
+}
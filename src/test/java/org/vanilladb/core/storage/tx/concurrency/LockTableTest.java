@@ -15,6 +15,7 @@
  *******************************************************************************/
 package org.vanilladb.core.storage.tx.concurrency;
 
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.util.logging.Level;
@@ -38,6 +39,7 @@ public class LockTableTest {
 	private static RecordId[] records;
 	private static long txNum1 = 1;
 	private static long txNum2 = 2;
+	private static long txNum3 = 3;
 
 	private static LockTable lockTbl;
 
@@ -69,6 +71,7 @@ public class LockTableTest {
 	public void setup() {
 		lockTbl.releaseAll(txNum1, false);
 		lockTbl.releaseAll(txNum2, false);
+		lockTbl.releaseAll(txNum3, false);
 	}
 
 	@Test
@@ -242,4 +245,235 @@ public class LockTableTest {
 			fail("*****LockTableTest: bad slocks");
 		}
 	}
+
+	@Test
+	public void testHandOff() {
+		final boolean[] granted = new boolean[2];
+		lockTbl.xLock(blocks[0], txNum1);
+
+		// Both waiters get the compatible slocks once the xlock is released
+		Thread[] waiters = new Thread[2];
+		for (int i = 0; i < waiters.length; i++) {
+			final int id = i;
+			final long txNum = i == 0 ? txNum2 : txNum3;
+			waiters[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						lockTbl.sLock(blocks[0], txNum);
+						granted[id] = true;
+					} catch (LockAbortException e) {
+					}
+				}
+			};
+			waiters[i].start();
+		}
+
+		try {
+			Thread.sleep(100);
+			long start = System.currentTimeMillis();
+			lockTbl.release(blocks[0], txNum1, LockTable.X_LOCK);
+			for (Thread waiter : waiters)
+				waiter.join();
+			assertTrue("*****LockTableTest: waiters are not handed the lock",
+					granted[0] && granted[1]);
+			assertTrue("*****LockTableTest: waiters are not woken up directly",
+					System.currentTimeMillis() - start < 500);
+		} catch (InterruptedException e) {
+			fail("*****LockTableTest: interrupted");
+		}
+
+		lockTbl.releaseAll(txNum2, false);
+		lockTbl.releaseAll(txNum3, false);
+	}
+
+	@Test
+	public void testFifoGrant() {
+		final boolean[] granted = new boolean[2];
+		lockTbl.sLock(blocks[0], txNum1);
+
+		// The xlock waits for the slock of tx1, and the later slock waits
+		// behind the xlock although it is compatible with tx1
+		Thread[] waiters = new Thread[2];
+		for (int i = 0; i < waiters.length; i++) {
+			final int id = i;
+			waiters[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						if (id == 0)
+							lockTbl.xLock(blocks[0], txNum2);
+						else
+							lockTbl.sLock(blocks[0], txNum3);
+						granted[id] = true;
+					} catch (LockAbortException e) {
+					}
+				}
+			};
+		}
+
+		try {
+			waiters[0].start();
+			Thread.sleep(100);
+			waiters[1].start();
+			Thread.sleep(100);
+			assertTrue("*****LockTableTest: the slock overtakes the queued xlock",
+					!granted[0] && !granted[1]);
+
+			lockTbl.release(blocks[0], txNum1, LockTable.S_LOCK);
+			waiters[0].join(1000);
+			Thread.sleep(100);
+			assertTrue("*****LockTableTest: the queued xlock is not granted first",
+					granted[0] && !granted[1]);
+
+			lockTbl.release(blocks[0], txNum2, LockTable.X_LOCK);
+			waiters[1].join(1000);
+			assertTrue("*****LockTableTest: the queued slock is not granted",
+					granted[1]);
+		} catch (InterruptedException e) {
+			fail("*****LockTableTest: interrupted");
+		}
+
+		lockTbl.releaseAll(txNum2, false);
+		lockTbl.releaseAll(txNum3, false);
+	}
+
+	@Test
+	public void testCompatibleRequestNotQueued() {
+		final boolean[] granted = new boolean[1];
+		lockTbl.sLock(blocks[0], txNum1);
+
+		// The ixlock waits for the slock of tx1
+		Thread waiter = new Thread() {
+			@Override
+			public void run() {
+				try {
+					lockTbl.ixLock(blocks[0], txNum2);
+					granted[0] = true;
+				} catch (LockAbortException e) {
+				}
+			}
+		};
+
+		try {
+			waiter.start();
+			Thread.sleep(100);
+			assertTrue("*****LockTableTest: the ixlock is not queued", !granted[0]);
+
+			// An islock is compatible with both the slock and the queued
+			// ixlock, so it must not wait behind the queue
+			lockTbl.isLock(blocks[0], txNum3);
+
+			lockTbl.release(blocks[0], txNum1, LockTable.S_LOCK);
+			waiter.join(1000);
+			assertTrue("*****LockTableTest: the queued ixlock is not granted", granted[0]);
+		} catch (LockAbortException e) {
+			fail("*****LockTableTest: the compatible islock waits behind the queue");
+		} catch (InterruptedException e) {
+			fail("*****LockTableTest: interrupted");
+		}
+
+		lockTbl.releaseAll(txNum2, false);
+		lockTbl.releaseAll(txNum3, false);
+	}
+
+	@Test
+	public void testHandOffSkipsBlockedRequest() {
+		final long txNum4 = 4;
+		final boolean[] granted = new boolean[3];
+		lockTbl.xLock(blocks[0], txNum1);
+
+		// An ixlock, an slock and an islock queue up behind the xlock
+		Thread[] waiters = new Thread[3];
+		for (int i = 0; i < waiters.length; i++) {
+			final int id = i;
+			waiters[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						if (id == 0)
+							lockTbl.ixLock(blocks[0], txNum2);
+						else if (id == 1)
+							lockTbl.sLock(blocks[0], txNum3);
+						else
+							lockTbl.isLock(blocks[0], txNum4);
+						granted[id] = true;
+					} catch (LockAbortException e) {
+					}
+				}
+			};
+		}
+
+		try {
+			for (Thread waiter : waiters) {
+				waiter.start();
+				Thread.sleep(100);
+			}
+			assertTrue("*****LockTableTest: a request overtakes the xlock",
+					!granted[0] && !granted[1] && !granted[2]);
+
+			// The slock still conflicts with the granted ixlock, but the
+			// islock queued behind it is compatible with both
+			lockTbl.release(blocks[0], txNum1, LockTable.X_LOCK);
+			waiters[0].join(1000);
+			waiters[2].join(1000);
+			assertTrue("*****LockTableTest: the compatible requests are not granted",
+					granted[0] && !granted[1] && granted[2]);
+
+			lockTbl.releaseAll(txNum2, false);
+			waiters[1].join(1000);
+			assertTrue("*****LockTableTest: the queued slock is not granted", granted[1]);
+		} catch (InterruptedException e) {
+			fail("*****LockTableTest: interrupted");
+		}
+
+		lockTbl.releaseAll(txNum3, false);
+		lockTbl.releaseAll(txNum4, false);
+	}
+
+	@Test
+	public void testDeadlockDetection() {
+		final LockTable detectingTbl = new LockTable(true);
+		final boolean[] aborted = new boolean[2];
+		final boolean[] granted = new boolean[2];
+		detectingTbl.xLock(blocks[0], txNum1);
+		for (int i = 1; i < 4; i++)
+			detectingTbl.xLock(blocks[i], txNum2);
+
+		// Each transaction waits for the other one
+		Thread[] waiters = new Thread[2];
+		for (int i = 0; i < waiters.length; i++) {
+			final int id = i;
+			final long txNum = i == 0 ? txNum1 : txNum2;
+			final BlockId blk = i == 0 ? blocks[1] : blocks[0];
+			waiters[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						detectingTbl.xLock(blk, txNum);
+						granted[id] = true;
+					} catch (LockAbortException e) {
+						aborted[id] = true;
+						detectingTbl.releaseAll(txNum, false);
+					}
+				}
+			};
+			waiters[i].start();
+		}
+
+		try {
+			for (Thread waiter : waiters)
+				waiter.join();
+		} catch (InterruptedException e) {
+			fail("*****LockTableTest: interrupted");
+		}
+
+		// The older transaction holding fewer locks is the victim
+		assertTrue("*****LockTableTest: bad deadlock victim", aborted[0] && !aborted[1]);
+		assertTrue("*****LockTableTest: survivor is not granted", granted[1]);
+		assertTrue("*****LockTableTest: bad abort count",
+				detectingTbl.deadlockAbortCount() == 1 && detectingTbl.timeoutAbortCount() == 0);
+
+		detectingTbl.releaseAll(txNum2, false);
+	}
 }
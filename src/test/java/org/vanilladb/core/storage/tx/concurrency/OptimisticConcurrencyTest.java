@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright 2016, 2026 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.tx.concurrency;
+
+import static org.junit.Assert.fail;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.vanilladb.core.server.ServerInit;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.record.RecordId;
+
+public class OptimisticConcurrencyTest {
+	private static Logger logger = Logger.getLogger(OptimisticConcurrencyTest.class.getName());
+
+	private static final String FILE_NAME = "_testocc" + System.currentTimeMillis() + ".tbl";
+
+	private static long nextTxNum = 1000000;
+
+	@BeforeClass
+	public static void init() {
+		ServerInit.init(OptimisticConcurrencyTest.class);
+
+		if (logger.isLoggable(Level.INFO))
+			logger.info("BEGIN OPTIMISTIC CONCURRENCY TEST");
+	}
+
+	@AfterClass
+	public static void finish() {
+		if (logger.isLoggable(Level.INFO))
+			logger.info("FINISH OPTIMISTIC CONCURRENCY TEST");
+	}
+
+	@Test
+	public void testValidation() {
+		RecordId rid = new RecordId(new BlockId(FILE_NAME, 0), 0);
+
+		// The reader fails if a writer commits after the read
+		OptimisticConcurrencyMgr reader = newMgr();
+		OptimisticConcurrencyMgr writer = newMgr();
+		reader.readRecord(rid);
+		writer.modifyRecord(rid);
+		writer.validate();
+		writer.onTxCommit(null);
+		try {
+			reader.validate();
+			fail("*****OptimisticConcurrencyTest: bad validation");
+		} catch (LockAbortException e) {
+		}
+		reader.onTxRollback(null);
+
+		// A reader started after the commit sees the new version
+		reader = newMgr();
+		reader.readRecord(rid);
+		reader.validate();
+		reader.onTxCommit(null);
+	}
+
+	@Test
+	public void testNoWait() {
+		RecordId rid = new RecordId(new BlockId(FILE_NAME, 1), 0);
+
+		OptimisticConcurrencyMgr writer1 = newMgr();
+		OptimisticConcurrencyMgr writer2 = newMgr();
+		OptimisticConcurrencyMgr reader = newMgr();
+		writer1.modifyRecord(rid);
+		try {
+			writer2.modifyRecord(rid);
+			fail("*****OptimisticConcurrencyTest: bad ownership");
+		} catch (LockAbortException e) {
+		}
+		try {
+			reader.readRecord(rid);
+			fail("*****OptimisticConcurrencyTest: bad ownership");
+		} catch (LockAbortException e) {
+		}
+		writer2.onTxRollback(null);
+		reader.onTxRollback(null);
+
+		// The record is released on rollback
+		writer1.onTxRollback(null);
+		writer2 = newMgr();
+		writer2.modifyRecord(rid);
+		writer2.validate();
+		writer2.onTxCommit(null);
+	}
+
+	@Test
+	public void testReadModifyWrite() {
+		RecordId rid1 = new RecordId(new BlockId(FILE_NAME, 2), 0);
+		RecordId rid2 = new RecordId(new BlockId(FILE_NAME, 2), 1);
+
+		// A stale read is detected when the record is modified
+		OptimisticConcurrencyMgr tx1 = newMgr();
+		OptimisticConcurrencyMgr tx2 = newMgr();
+		tx1.readRecord(rid1);
+		tx2.readRecord(rid1);
+		tx2.modifyRecord(rid1);
+		tx2.validate();
+		tx2.onTxCommit(null);
+		try {
+			tx1.modifyRecord(rid1);
+			fail("*****OptimisticConcurrencyTest: bad validation");
+		} catch (LockAbortException e) {
+		}
+		tx1.onTxRollback(null);
+
+		// The transactions touching different records both commit
+		tx1 = newMgr();
+		tx2 = newMgr();
+		tx1.readRecord(rid1);
+		tx1.modifyRecord(rid1);
+		tx2.readRecord(rid2);
+		tx2.modifyRecord(rid2);
+		tx1.validate();
+		tx2.validate();
+		tx1.onTxCommit(null);
+		tx2.onTxCommit(null);
+	}
+
+	private OptimisticConcurrencyMgr newMgr() {
+		return new OptimisticConcurrencyMgr(nextTxNum++);
+	}
+}
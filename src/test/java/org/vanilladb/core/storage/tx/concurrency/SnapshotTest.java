@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright 2016, 2026 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.tx.concurrency;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.vanilladb.core.sql.Type.INTEGER;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.vanilladb.core.server.ServerInit;
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.storage.buffer.Buffer;
+import org.vanilladb.core.storage.buffer.VersionStore;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.log.LogSeqNum;
+import org.vanilladb.core.storage.record.RecordId;
+import org.vanilladb.core.storage.tx.Transaction;
+
+public class SnapshotTest {
+	private static Logger logger = Logger.getLogger(SnapshotTest.class.getName());
+
+	private static final String FILE_NAME = "_testsnapshot" + System.currentTimeMillis() + ".tbl";
+
+	private static final Constant INT_1 = new IntegerConstant(1);
+	private static final Constant INT_2 = new IntegerConstant(2);
+	private static final Constant INT_3 = new IntegerConstant(3);
+
+	@BeforeClass
+	public static void init() {
+		ServerInit.init(SnapshotTest.class);
+
+		if (logger.isLoggable(Level.INFO))
+			logger.info("BEGIN SNAPSHOT TEST");
+	}
+
+	@AfterClass
+	public static void finish() {
+		if (logger.isLoggable(Level.INFO))
+			logger.info("FINISH SNAPSHOT TEST");
+	}
+
+	@Test
+	public void testSnapshotReads() {
+		BlockId blk = new BlockId(FILE_NAME, 1);
+		RecordId rid = new RecordId(blk, 0);
+		write(blk, INT_1).commit();
+
+		// The reader sees neither the ongoing nor the later modifications
+		Transaction reader1 = newReader();
+		Transaction writer = write(blk, INT_2);
+		reader1.concurrencyMgr().readRecord(rid);
+		assertEquals("*****SnapshotTest: bad snapshot", INT_1, read(reader1, blk));
+		writer.commit();
+		assertEquals("*****SnapshotTest: bad snapshot", INT_1, read(reader1, blk));
+
+		// A later reader sees the committed modification, but not the
+		// rolled back one
+		Transaction reader2 = newReader();
+		assertEquals("*****SnapshotTest: bad snapshot", INT_2, read(reader2, blk));
+		writer = write(blk, INT_3);
+		assertEquals("*****SnapshotTest: bad snapshot", INT_2, read(reader2, blk));
+		writer.rollback();
+		assertEquals("*****SnapshotTest: bad snapshot", INT_2, read(reader2, blk));
+
+		assertEquals("*****SnapshotTest: bad snapshot", INT_1, read(reader1, blk));
+		reader1.commit();
+		reader2.commit();
+
+		Transaction reader3 = newReader();
+		assertEquals("*****SnapshotTest: bad snapshot", INT_2, read(reader3, blk));
+		reader3.commit();
+	}
+
+	@Test
+	public void testFileHeaderNotVersioned() {
+		BlockId header = new BlockId(FILE_NAME, 0);
+		assertFalse("*****SnapshotTest: the file header is versioned", VersionStore.isVersioned(header));
+
+		// The reader locks the header and sees its latest committed value
+		Transaction reader = newReader();
+		write(header, INT_1).commit();
+		reader.concurrencyMgr().readBlock(header);
+		assertEquals("*****SnapshotTest: bad file header", INT_1, read(reader, header));
+		reader.commit();
+	}
+
+	// The snapshot reads are disabled in the test configuration, so the
+	// transactions of this test take part in them explicitly
+	private Transaction newReader() {
+		return VanillaDb.txMgr().newSnapshotTransaction(true);
+	}
+
+	private Transaction write(BlockId blk, Constant val) {
+		Transaction tx = VanillaDb.txMgr().newSnapshotTransaction(false);
+		tx.concurrencyMgr().modifyRecord(new RecordId(blk, 0));
+		Buffer buff = tx.bufferMgr().pin(blk);
+		buff.lockFlushing();
+		try {
+			LogSeqNum lsn = tx.recoveryMgr().logSetVal(buff, 0, val);
+			buff.setVal(0, val, tx.getTransactionNumber(), lsn);
+		} finally {
+			buff.unlockFlushing();
+		}
+		tx.bufferMgr().unpin(buff);
+		return tx;
+	}
+
+	private Constant read(Transaction tx, BlockId blk) {
+		Buffer buff = tx.bufferMgr().pin(blk);
+		Constant val = buff.getVal(0, INTEGER);
+		tx.bufferMgr().unpin(buff);
+		return val;
+	}
+}
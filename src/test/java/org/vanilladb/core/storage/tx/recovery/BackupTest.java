@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright 2016, 2026 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.tx.recovery;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.sql.Connection;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.vanilladb.core.server.ServerInit;
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.storage.buffer.Buffer;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.file.FileMgr;
+import org.vanilladb.core.storage.file.Page;
+import org.vanilladb.core.storage.log.LogMgr;
+import org.vanilladb.core.storage.log.LogSegments;
+import org.vanilladb.core.storage.log.LogSeqNum;
+import org.vanilladb.core.storage.tx.Transaction;
+
+public class BackupTest {
+	private static Logger logger = Logger.getLogger(BackupTest.class.getName());
+
+	private static String fileName = "backuptest.0";
+	private static String restoredDbName = ServerInit.DB_MAIN_DIR + "/backuptest-restored";
+	private static File backupDir;
+
+	@BeforeClass
+	public static void init() {
+		ServerInit.init(BackupTest.class);
+
+		backupDir = new File(FileMgr.DB_FILES_DIR, ServerInit.DB_MAIN_DIR + "/backuptest-backups");
+		delete(backupDir);
+		delete(new File(FileMgr.DB_FILES_DIR, restoredDbName));
+		delete(new File(FileMgr.LOG_FILES_DIR, restoredDbName));
+
+		if (logger.isLoggable(Level.INFO))
+			logger.info("BEGIN BACKUP TEST");
+	}
+
+	@AfterClass
+	public static void finish() {
+		if (logger.isLoggable(Level.INFO))
+			logger.info("FINISH BACKUP TEST");
+	}
+
+	@Test
+	public void testIncrementalBackup() throws IOException {
+		BlockId blk0 = new BlockId(fileName, 0);
+		BlockId blk1 = new BlockId(fileName, 1);
+		setVal(blk0, 100);
+		setVal(blk1, 200);
+		Transaction tx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, true);
+		tx.bufferMgr().flushAll();
+
+		Backup full = Backup.create(tx, new File(backupDir, "full"));
+		assertTrue("*****BackupTest: bad full backup", full.startLsn().compareTo(full.endLsn()) <= 0);
+		assertEquals("*****BackupTest: bad full backup", 2, blocksIn(new File(backupDir, "full")));
+
+		// The modification is copied from the buffer before it is flushed
+		setVal(blk1, 201);
+		Backup inc = Backup.create(tx, new File(backupDir, "inc"), full);
+		assertTrue("*****BackupTest: bad incremental backup", inc.startLsn().compareTo(full.endLsn()) >= 0);
+		assertEquals("*****BackupTest: bad incremental backup", 1, blocksIn(new File(backupDir, "inc")));
+		tx.commit();
+
+		// Reopen the backup from its directory
+		inc = new Backup(new File(backupDir, "inc"));
+		assertEquals("*****BackupTest: bad incremental backup", full.startLsn(), inc.base().startLsn());
+		try {
+			inc.restore(restoredDbName, null, full.endLsn());
+			fail("*****BackupTest: restored before the end of the backup");
+		} catch (IllegalArgumentException e) {
+			// the log before the end cannot bring the pages to a consistent state
+		}
+
+		// The blocks of the full backup are overwritten by the newer ones
+		inc.restore(restoredDbName, null);
+		File restoredFile = new File(new File(FileMgr.DB_FILES_DIR, restoredDbName), fileName);
+		assertEquals("*****BackupTest: bad restore", 100, readInt(restoredFile, 0));
+		assertEquals("*****BackupTest: bad restore", 201, readInt(restoredFile, 1));
+		File logDir = new File(FileMgr.LOG_FILES_DIR, restoredDbName);
+		assertTrue("*****BackupTest: bad restore", new File(logDir, LogMgr.DEFAULT_LOG_FILE + ".restore").exists());
+		assertTrue("*****BackupTest: bad restore",
+				new File(logDir, LogMgr.DEFAULT_LOG_FILE + "." + LogSegments.segmentOf(inc.startLsn().blkNum())).exists());
+	}
+
+	private void setVal(BlockId blk, int val) {
+		Transaction tx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		Buffer buff = tx.bufferMgr().pin(blk);
+		buff.lockFlushing();
+		try {
+			LogSeqNum lsn = tx.recoveryMgr().logSetVal(buff, 0, new IntegerConstant(val));
+			buff.setVal(0, new IntegerConstant(val), tx.getTransactionNumber(), lsn);
+		} finally {
+			buff.unlockFlushing();
+		}
+		tx.bufferMgr().unpin(buff);
+		tx.commit();
+	}
+
+	private static long blocksIn(File dir) {
+		return new File(new File(dir, "data"), fileName).length() / (8 + Page.BLOCK_SIZE);
+	}
+
+	private static int readInt(File file, long blkNum) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			raf.seek(blkNum * Page.BLOCK_SIZE + LogSeqNum.SIZE);
+			return raf.readInt();
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static void delete(File file) {
+		File[] files = file.listFiles();
+		if (files != null)
+			for (File f : files)
+				delete(f);
+		file.delete();
+	}
+}
@@ -15,14 +15,18 @@
  *******************************************************************************/
 package org.vanilladb.core.storage.tx.recovery;
 
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.vanilladb.core.sql.Type.BIGINT;
 import static org.vanilladb.core.sql.Type.INTEGER;
 import static org.vanilladb.core.sql.Type.VARCHAR;
 
 import java.sql.Connection;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BrokenBarrierException;
 import java.util.concurrent.CyclicBarrier;
 import java.util.logging.Level;
@@ -34,6 +38,7 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import org.vanilladb.core.server.ServerInit;
 import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.sql.BigIntConstant;
 import org.vanilladb.core.sql.Constant;
 import org.vanilladb.core.sql.IntegerConstant;
 import org.vanilladb.core.sql.Schema;
@@ -47,8 +52,11 @@ import org.vanilladb.core.storage.index.SearchKey;
 import org.vanilladb.core.storage.index.SearchRange;
 import org.vanilladb.core.storage.log.LogSeqNum;
 import org.vanilladb.core.storage.metadata.CatalogMgr;
+import org.vanilladb.core.storage.metadata.TableInfo;
 import org.vanilladb.core.storage.metadata.index.IndexInfo;
+import org.vanilladb.core.storage.record.RecordFile;
 import org.vanilladb.core.storage.record.RecordId;
+import org.vanilladb.core.storage.record.RecordPage;
 import org.vanilladb.core.storage.tx.Transaction;
 import org.vanilladb.core.util.BarrierStartRunner;
 
@@ -414,6 +422,262 @@ public class RecoveryBasicTest {
 
 	}
 
+	@Test
+	public void testFuzzyCheckpointRecords() {
+		// An active tx still pinning the page it modified
+		Transaction tx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		Buffer buff = tx.bufferMgr().pin(blk);
+		LogSeqNum lsn = tx.recoveryMgr().logSetVal(buff, 404, new IntegerConstant(7777));
+		buff.setVal(404, new IntegerConstant(7777), tx.getTransactionNumber(), lsn);
+
+		Transaction chkpnt = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		VanillaDb.txMgr().createCheckpoint(chkpnt);
+		chkpnt.commit();
+		tx.bufferMgr().unpin(buff);
+
+		// Find the records of the checkpoint
+		ReversibleIterator<LogRecord> iter = new LogRecordIterator();
+		CheckpointRecord end = null;
+		boolean blkLogged = false;
+		while (iter.hasNext()) {
+			LogRecord rec = iter.next();
+			if (rec.op() == LogRecord.OP_CHECKPOINT && end == null)
+				end = (CheckpointRecord) rec;
+			else if (rec.op() == LogRecord.OP_DIRTY_PAGES && end != null) {
+				LogSeqNum recLsn = ((DirtyPagesRecord) rec).dirtyPages().get(blk);
+				if (recLsn != null && recLsn.compareTo(lsn) <= 0)
+					blkLogged = true;
+			} else if (rec.op() == LogRecord.OP_CHECKPOINT_START && end != null)
+				break;
+		}
+
+		assertTrue("*****RecoveryTest: active tx not in checkpoint",
+				end != null && end.isContainTxNum(tx.getTransactionNumber()));
+		assertTrue("*****RecoveryTest: bad redo LSN", end.redoLsn().compareTo(tx.recoveryMgr().startLsn()) <= 0);
+		assertTrue("*****RecoveryTest: dirty page not logged", blkLogged);
+
+		tx.rollback();
+	}
+
+	@Test
+	public void testParallelRedo() {
+		int numBlocks = 8, numRounds = 3;
+
+		// Log several modifications of each block, so the order of redo
+		// matters, but never apply them as if the pages were lost
+		Transaction tx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		for (int round = 0; round < numRounds; round++) {
+			for (int i = 0; i < numBlocks; i++) {
+				Buffer buff = tx.bufferMgr().pin(new BlockId(fileName, 20 + i));
+				tx.recoveryMgr().logSetVal(buff, 4, new IntegerConstant(round * 100 + i));
+				tx.bufferMgr().unpin(buff);
+			}
+		}
+		tx.commit();
+
+		Transaction recoveryTx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		RecoveryMgr.initializeSystem(recoveryTx);
+		for (int i = 0; i < numBlocks; i++) {
+			Buffer buff = recoveryTx.bufferMgr().pin(new BlockId(fileName, 20 + i));
+			int val = (Integer) buff.getVal(4, INTEGER).asJavaVal();
+			assertTrue("*****RecoveryTest: bad parallel redo", val == (numRounds - 1) * 100 + i);
+			recoveryTx.bufferMgr().unpin(buff);
+		}
+		recoveryTx.commit();
+	}
+
+	@Test
+	public void testParallelRedoWithSnapshots() {
+		String tblFileName = "recoverysnapshottest.tbl";
+		int numBlocks = 8;
+
+		// The redo must write the shared pages even when snapshot reads are
+		// in use, or the redone modifications are thrown away
+		Transaction redoTx = VanillaDb.txMgr().newRedoTransaction();
+		assertFalse("*****RecoveryTest: redo reads a snapshot", redoTx.bufferMgr().readsSnapshot());
+		redoTx.commit();
+
+		Transaction tx = VanillaDb.txMgr().newSnapshotTransaction(false);
+		for (int i = 1; i <= numBlocks; i++) {
+			Buffer buff = tx.bufferMgr().pin(new BlockId(tblFileName, i));
+			tx.recoveryMgr().logSetVal(buff, 4, new IntegerConstant(i));
+			tx.bufferMgr().unpin(buff);
+		}
+		tx.commit();
+
+		Transaction recoveryTx = VanillaDb.txMgr().newSnapshotTransaction(false);
+		RecoveryMgr.initializeSystem(recoveryTx);
+		recoveryTx.commit();
+
+		Transaction reader = VanillaDb.txMgr().newSnapshotTransaction(true);
+		for (int i = 1; i <= numBlocks; i++) {
+			Buffer buff = reader.bufferMgr().pin(new BlockId(tblFileName, i));
+			int val = (Integer) buff.getVal(4, INTEGER).asJavaVal();
+			assertTrue("*****RecoveryTest: redo lost under snapshots", val == i);
+			reader.bufferMgr().unpin(buff);
+		}
+		reader.commit();
+	}
+
+	@Test
+	public void testRedoDirtyPageTable() {
+		BlockId writtenBlk = new BlockId(fileName, 30);
+		BlockId dirtyBlk = new BlockId(fileName, 31);
+
+		// The checkpoint writes back the first block
+		Transaction tx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		Buffer buff = tx.bufferMgr().pin(writtenBlk);
+		LogSeqNum lsn = tx.recoveryMgr().logSetVal(buff, 4, new IntegerConstant(1111));
+		buff.setVal(4, new IntegerConstant(1111), tx.getTransactionNumber(), lsn);
+		tx.bufferMgr().unpin(buff);
+		tx.commit();
+
+		Transaction chkpnt = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		VanillaDb.txMgr().createCheckpoint(chkpnt);
+		chkpnt.commit();
+
+		// The second block is modified after the checkpoint
+		tx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		buff = tx.bufferMgr().pin(dirtyBlk);
+		lsn = tx.recoveryMgr().logSetVal(buff, 4, new IntegerConstant(2222));
+		buff.setVal(4, new IntegerConstant(2222), tx.getTransactionNumber(), lsn);
+		tx.bufferMgr().unpin(buff);
+		tx.commit();
+
+		Map<BlockId, LogSeqNum> dirtyPages = new HashMap<BlockId, LogSeqNum>();
+		Transaction recoveryTx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, true);
+		recoveryTx.recoveryMgr().analyze(new LogRecordIterator(), dirtyPages);
+		recoveryTx.commit();
+
+		assertTrue("*****RecoveryTest: written page in dirty page table", !dirtyPages.containsKey(writtenBlk));
+		assertTrue("*****RecoveryTest: bad recovery LSN", lsn.equals(dirtyPages.get(dirtyBlk)));
+	}
+
+	@Test
+	public void testRowRecords() {
+		// Insert a row with all its values
+		Transaction tx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		TableInfo ti = md.getTableInfo(dataTableName, tx);
+		RecordFile rf = ti.open(tx, true);
+		Map<String, Constant> vals = new HashMap<String, Constant>();
+		vals.put("cid", new IntegerConstant(77));
+		vals.put("title", new VarcharConstant("row"));
+		vals.put("majorid", new BigIntConstant(7));
+		rf.insert(vals);
+		RecordId rid = rf.currentRecordId();
+		rf.close();
+		tx.commit();
+
+		// Update two fields of the row by a single log record
+		tx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		rf = ti.open(tx, true);
+		rf.moveToRecordId(rid);
+		vals = new HashMap<String, Constant>();
+		vals.put("title", new VarcharConstant("updated"));
+		vals.put("majorid", new BigIntConstant(8));
+		rf.setVals(vals);
+		rf.close();
+		LogRecordIterator iter = new LogRecordIterator();
+		LogRecord rec = iter.next();
+		assertTrue("*****RecoveryTest: bad row update record",
+				rec.op() == LogRecord.OP_ROW && rec.txNumber() == tx.getTransactionNumber());
+		assertTrue("*****RecoveryTest: bad row update record", iter.next().op() == LogRecord.OP_START);
+		tx.rollback();
+
+		tx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		rf = ti.open(tx, true);
+		rf.moveToRecordId(rid);
+		assertTrue("*****RecoveryTest: bad row update rollback", rf.getVal("cid").equals(new IntegerConstant(77))
+				&& rf.getVal("title").equals(new VarcharConstant("row"))
+				&& rf.getVal("majorid").equals(new BigIntConstant(7)));
+
+		rf.close();
+		tx.commit();
+
+		// Delete the row from its page and roll back, the pointer to the next
+		// deleted slot overwrites the first fields
+		tx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		RecordPage rp = new RecordPage(rid.block(), ti, tx, true);
+		rp.moveToId(rid.id());
+		rp.delete(new RecordId(new BlockId(ti.fileName(), 123), 45));
+		rp.close();
+		tx.rollback();
+
+		tx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		rf = ti.open(tx, true);
+		rf.beforeFirst();
+		boolean found = false;
+		while (rf.next())
+			if (rf.currentRecordId().equals(rid))
+				found = rf.getVal("cid").equals(new IntegerConstant(77))
+						&& rf.getVal("title").equals(new VarcharConstant("row"))
+						&& rf.getVal("majorid").equals(new BigIntConstant(7));
+		rf.close();
+		tx.commit();
+		assertTrue("*****RecoveryTest: bad row deletion rollback", found);
+	}
+
+	@Test
+	public void testWideRowRecords() {
+		// A row with non-ASCII strings taking more than half a block
+		Transaction tx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		Schema schema = new Schema();
+		String[] flds = { "a", "b", "c", "d" };
+		for (String fld : flds)
+			schema.addField(fld, VARCHAR(200));
+		md.createTable("recoverywiderowtest", schema, tx);
+		TableInfo ti = md.getTableInfo("recoverywiderowtest", tx);
+		RecordFile rf = ti.open(tx, true);
+		rf.insert(wideRow(flds, '\u4e00'));
+		RecordId rid = rf.currentRecordId();
+		rf.close();
+		tx.commit();
+
+		// A full-row update does not fit in one log record
+		tx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		rf = ti.open(tx, true);
+		rf.moveToRecordId(rid);
+		rf.setVals(wideRow(flds, '\u4e8c'));
+		rf.close();
+		LogRecordIterator iter = new LogRecordIterator();
+		int rowRecords = 0;
+		LogRecord rec;
+		while ((rec = iter.next()).op() == LogRecord.OP_ROW)
+			rowRecords++;
+		assertTrue("*****RecoveryTest: bad wide row update record", rowRecords > 1 && rec.op() == LogRecord.OP_START);
+		tx.rollback();
+
+		tx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		rf = ti.open(tx, true);
+		rf.moveToRecordId(rid);
+		Map<String, Constant> vals = wideRow(flds, '\u4e00');
+		for (String fld : flds)
+			assertTrue("*****RecoveryTest: bad wide row rollback", rf.getVal(fld).equals(vals.get(fld)));
+		rf.setVals(wideRow(flds, '\u4e09'));
+		rf.close();
+		tx.commit();
+
+		tx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		rf = ti.open(tx, true);
+		rf.moveToRecordId(rid);
+		vals = wideRow(flds, '\u4e09');
+		for (String fld : flds)
+			assertTrue("*****RecoveryTest: bad wide row update", rf.getVal(fld).equals(vals.get(fld)));
+		rf.close();
+		tx.commit();
+	}
+
+	private Map<String, Constant> wideRow(String[] flds, char c) {
+		Map<String, Constant> vals = new HashMap<String, Constant>();
+		for (int i = 0; i < flds.length; i++) {
+			char[] chars = new char[200];
+			Arrays.fill(chars, c);
+			chars[0] = (char) ('a' + i);
+			vals.put(flds[i], new VarcharConstant(new String(chars)));
+		}
+		return vals;
+	}
+
 	class SetValTx extends BarrierStartRunner {
 		BlockId blk;
 		int offset;
@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright 2016, 2026 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.tx.recovery;
+
+import java.sql.Connection;
+import java.util.Random;
+
+import org.vanilladb.core.server.ServerInit;
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.storage.buffer.Buffer;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.file.Page;
+import org.vanilladb.core.storage.log.LogSeqNum;
+import org.vanilladb.core.storage.tx.Transaction;
+import org.vanilladb.core.util.CoreProperties;
+
+/**
+ * Measures how fast {@link RecoveryMgr#recoverSystem(Transaction)} replays the
+ * log. The modifications are logged but never applied to the pages, as if the
+ * pages were lost in a crash, so every record has to be redone.
+ * 
+ * <p>
+ * Usage: {@code RecoveryBenchmark [redo threads] [records] [blocks]}
+ * </p>
+ */
+public class RecoveryBenchmark {
+	private static final String FILE_NAME = "_benchrecovery.tbl";
+	private static final int RECORDS_PER_TX = 100;
+
+	public static void main(String[] args) {
+		int redoThreads = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+		int numRecords = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+		int numBlocks = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+
+		// Override the configuration before the recovery manager is loaded
+		CoreProperties.getLoader();
+		System.setProperty(RecoveryMgr.class.getName() + ".REDO_THREADS", Integer.toString(redoThreads));
+		ServerInit.init(RecoveryBenchmark.class);
+
+		Page page = new Page();
+		for (int i = 0; i < numBlocks; i++)
+			page.write(new BlockId(FILE_NAME, i));
+		page.close();
+
+		Random random = new Random(0);
+		LogSeqNum first = null, last = null;
+		for (int n = 0; n < numRecords; n += RECORDS_PER_TX) {
+			Transaction tx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+			for (int i = 0; i < RECORDS_PER_TX; i++) {
+				Buffer buff = tx.bufferMgr().pin(new BlockId(FILE_NAME, random.nextInt(numBlocks)));
+				last = tx.recoveryMgr().logSetVal(buff, random.nextInt(1000) * 4, new IntegerConstant(n + i));
+				if (first == null)
+					first = last;
+				tx.bufferMgr().unpin(buff);
+			}
+			tx.commit();
+		}
+		VanillaDb.logMgr().flush(last);
+
+		long bytes = (last.blkNum() - first.blkNum()) * Page.BLOCK_SIZE + last.offset() - first.offset();
+		Transaction recoveryTx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+		long start = System.nanoTime();
+		recoveryTx.recoveryMgr().recoverSystem(recoveryTx);
+		double secs = (System.nanoTime() - start) / 1e9;
+		recoveryTx.commit();
+
+		double mb = bytes / (1024.0 * 1024.0);
+		System.out.println(String.format("redo threads: %d, records: %d, blocks: %d", redoThreads, numRecords,
+				numBlocks));
+		System.out.println(String.format("recovered %.2f MB of log in %.3f s (%.2f MB/s)", mb, secs, mb / secs));
+	}
+}